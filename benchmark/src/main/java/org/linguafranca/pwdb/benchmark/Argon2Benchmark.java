@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.linguafranca.pwdb.benchmark;
+
+import org.linguafranca.pwdb.security.Argon2Backend;
+import org.linguafranca.pwdb.security.Jargon2Backend;
+import org.linguafranca.pwdb.security.JavaArgon2Backend;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Argon2d key derivation by the native backend and the multi-threaded Java backend, at the KeePass
+ * default memory and larger, e.g.
+ * <pre>java -jar benchmark/target/benchmarks.jar Argon2Benchmark -p memoryKiB=1048576 -p parallelism=4</pre>
+ *
+ * @author jo
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class Argon2Benchmark {
+
+    public enum Backend {
+        NATIVE {
+            @Override
+            Argon2Backend create() {
+                return new Jargon2Backend();
+            }
+        },
+        JAVA {
+            @Override
+            Argon2Backend create() {
+                return new JavaArgon2Backend();
+            }
+        };
+
+        abstract Argon2Backend create();
+    }
+
+    @Param({"NATIVE", "JAVA"})
+    public Backend backend;
+
+    @Param({"65536", "262144"})
+    public int memoryKiB;
+
+    @Param({"2", "4"})
+    public int parallelism;
+
+    @Param({"2"})
+    public int iterations;
+
+    private Argon2Backend argon2;
+    private byte[] password = new byte[32];
+    private byte[] salt = new byte[32];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        argon2 = backend.create();
+        Random random = new Random(0);
+        random.nextBytes(password);
+        random.nextBytes(salt);
+    }
+
+    @Benchmark
+    public byte[] hash() {
+        return argon2.hash(password, salt, parallelism, memoryKiB, iterations, 0x13, 32);
+    }
+}
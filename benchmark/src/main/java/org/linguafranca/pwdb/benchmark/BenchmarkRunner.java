@@ -0,0 +1,54 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Main class of the benchmarks jar. Accepts the usual JMH command line options
+ * and always adds the GC profiler so that allocation rates are reported.
+ *
+ * <p>On Java 9 and later the forked JVMs are given the module openings that the
+ * JAXB and Simple implementations need for reflective access.
+ *
+ * <pre>java -jar benchmark/target/benchmarks.jar QueryBenchmark -p entries=1000000</pre>
+ *
+ * @author jo
+ */
+public class BenchmarkRunner {
+
+    private static final String[] MODULE_OPENINGS = {
+            "--add-opens", "java.base/java.util=ALL-UNNAMED",
+            "--add-opens", "java.base/java.lang=ALL-UNNAMED"
+    };
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        ChainedOptionsBuilder builder = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class);
+        if (!System.getProperty("java.specification.version").startsWith("1.")) {
+            builder.jvmArgsAppend(MODULE_OPENINGS);
+        }
+        new Runner(builder.build()).run();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+package org.linguafranca.pwdb.benchmark;
+
+import com.google.common.io.ByteStreams;
+import org.linguafranca.pwdb.security.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decryption and encryption of the outer stream by the Bouncy Castle and JCE implementations of each cipher, e.g.
+ * <pre>java -jar benchmark/target/benchmarks.jar CipherBenchmark -p size=67108864</pre>
+ *
+ * @author jo
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CipherBenchmark {
+
+    public enum Implementation {
+        AES_BC(Aes.getInstance()),
+        AES_JCE(JceAes.getInstance()),
+        CHACHA_BC(ChaCha.getInstance()),
+        CHACHA_JCE(JceChaCha.getInstance());
+
+        final CipherAlgorithm cipher;
+
+        Implementation(CipherAlgorithm cipher) {
+            this.cipher = cipher;
+        }
+    }
+
+    @Param({"AES_BC", "AES_JCE", "CHACHA_BC", "CHACHA_JCE"})
+    public Implementation implementation;
+
+    @Param({"16777216"})
+    public int size;
+
+    private final byte[] key = new byte[32];
+    private byte[] iv;
+    private byte[] plain;
+    private byte[] encrypted;
+    private final byte[] buffer = new byte[8192];
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(0);
+        random.nextBytes(key);
+        iv = new byte[implementation.name().startsWith("AES") ? 16 : 12];
+        random.nextBytes(iv);
+        plain = new byte[size];
+        random.nextBytes(plain);
+        encrypted = encrypt();
+    }
+
+    @Benchmark
+    public long decrypt() throws IOException {
+        long total = 0;
+        try (InputStream inputStream = implementation.cipher.getDecryptedInputStream(new ByteArrayInputStream(encrypted), key, iv)) {
+            int count;
+            while ((count = inputStream.read(buffer)) != -1) {
+                total += count;
+            }
+        }
+        return total;
+    }
+
+    @Benchmark
+    public byte[] encrypt() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(size + 16);
+        try (OutputStream outputStream = implementation.cipher.getEncryptedOutputStream(bytes, key, iv)) {
+            ByteStreams.copy(new ByteArrayInputStream(plain), outputStream);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.benchmark;
+
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.Database;
+import org.linguafranca.pwdb.generator.DatabaseGenerator;
+import org.linguafranca.pwdb.kdbx.KdbxHeader;
+import org.linguafranca.pwdb.kdbx.KdbxStreamFormat;
+import org.linguafranca.pwdb.kdbx.StreamFormat;
+import org.linguafranca.pwdb.kdbx.dom.DomDatabaseWrapper;
+import org.linguafranca.pwdb.kdbx.jaxb.JaxbDatabase;
+import org.linguafranca.pwdb.kdbx.simple.SimpleDatabase;
+import org.linguafranca.pwdb.security.Encryption;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Command line generation of synthetic databases using {@link DatabaseGenerator}.
+ *
+ * <pre>
+ * java -cp benchmark/target/benchmarks.jar org.linguafranca.pwdb.benchmark.GenerateCorpus \
+ *      --depth=3 --groups=10 --entries=50 --attachments=1 --all-encryptions
+ * </pre>
+ *
+ * Files are named {@code <name>-<cipher>-<kdf>.kdbx}.
+ *
+ * @author jo
+ */
+public class GenerateCorpus {
+
+    private static final String USAGE = "Usage: GenerateCorpus [options]\n" +
+            "  --implementation=DOM|JAXB|SIMPLE  (default SIMPLE)\n" +
+            "  --output=<directory>              (default .)\n" +
+            "  --name=<file name prefix>         (default corpus)\n" +
+            "  --password=<password>             (default 123)\n" +
+            "  --seed=<long>                     (default 1)\n" +
+            "  --depth=<levels of groups>        (default 2)\n" +
+            "  --groups=<groups per group>       (default 3)\n" +
+            "  --entries=<entries per group>     (default 10)\n" +
+            "  --properties=<custom properties>  (default 0)\n" +
+            "  --history=<revisions per entry>   (default 0)\n" +
+            "  --attachments=<per entry>         (default 0)\n" +
+            "  --attachment-size=<bytes>         (default 1024)\n" +
+            "  --protected=<ratio 0..1>          (default 1.0)\n" +
+            "  --cipher=AES|CHACHA               (default AES)\n" +
+            "  --kdf=AES|ARGON2                  (default AES)\n" +
+            "  --all-encryptions                 one file for each cipher and kdf combination";
+
+    public static void main(String[] args) throws IOException {
+        Implementation implementation = Implementation.SIMPLE;
+        File output = new File(".");
+        String name = "corpus";
+        String password = "123";
+        boolean allEncryptions = false;
+        DatabaseGenerator.Spec spec = new DatabaseGenerator.Spec();
+
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            String value = option.length > 1 ? option[1] : "";
+            switch (option[0]) {
+                case "--implementation": implementation = Implementation.valueOf(value.toUpperCase()); break;
+                case "--output": output = new File(value); break;
+                case "--name": name = value; break;
+                case "--password": password = value; break;
+                case "--seed": spec.setSeed(Long.parseLong(value)); break;
+                case "--depth": spec.setDepth(Integer.parseInt(value)); break;
+                case "--groups": spec.setGroupsPerGroup(Integer.parseInt(value)); break;
+                case "--entries": spec.setEntriesPerGroup(Integer.parseInt(value)); break;
+                case "--properties": spec.setCustomProperties(Integer.parseInt(value)); break;
+                case "--history": spec.setHistoryDepth(Integer.parseInt(value)); break;
+                case "--attachments": spec.setAttachmentsPerEntry(Integer.parseInt(value)); break;
+                case "--attachment-size": spec.setAttachmentSize(Integer.parseInt(value)); break;
+                case "--protected": spec.setProtectedRatio(Double.parseDouble(value)); break;
+                case "--cipher": spec.setCipher(Encryption.Cipher.valueOf(value.toUpperCase())); break;
+                case "--kdf": spec.setKdf(Encryption.Kdf.valueOf(value.toUpperCase())); break;
+                case "--all-encryptions": allEncryptions = true; break;
+                default:
+                    System.err.println(USAGE);
+                    System.exit(1);
+            }
+        }
+        if (!implementation.supportsSave()) {
+            throw new IllegalArgumentException(implementation + " databases cannot be saved");
+        }
+        if (!output.isDirectory() && !output.mkdirs()) {
+            throw new IOException("Cannot create directory " + output);
+        }
+
+        List<DatabaseGenerator.Spec> specs = allEncryptions ? spec.forAllEncryptions() : Collections.singletonList(spec);
+        Credentials credentials = implementation.getCredentials(password.getBytes());
+        for (DatabaseGenerator.Spec s : specs) {
+            File file = new File(output, name + "-" + s.getCipher() + "-" + s.getKdf() + ".kdbx");
+            Database<?, ?, ?, ?> database = implementation.createEmpty();
+            DatabaseGenerator.populate(database, s);
+            try (OutputStream outputStream = new FileOutputStream(file)) {
+                save(database, s, credentials, outputStream);
+                System.out.println("Wrote " + s.getEntryCount() + " entries to " + file + " " + s);
+            } catch (UnsupportedOperationException e) {
+                System.out.println("Skipped " + file + ": " + e.getMessage());
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Save using the cipher and kdf of the spec, as KDBX 3.1 if they are both AES, otherwise as KDBX 4
+     */
+    static void save(Database<?, ?, ?, ?> database, DatabaseGenerator.Spec spec, Credentials credentials, OutputStream outputStream) throws IOException {
+        if (spec.getCipher() == Encryption.Cipher.AES && spec.getKdf() == Encryption.Kdf.AES) {
+            database.save(credentials, outputStream);
+            return;
+        }
+        if (database instanceof SimpleDatabase) {
+            ((SimpleDatabase) database).save(new KdbxHeader(4, spec.getCipher(), spec.getKdf()), credentials, outputStream);
+            return;
+        }
+        StreamFormat streamFormat = new KdbxStreamFormat(KdbxStreamFormat.Version.KDBX4, spec.getCipher(), spec.getKdf());
+        if (database instanceof DomDatabaseWrapper) {
+            ((DomDatabaseWrapper) database).save(streamFormat, credentials, outputStream);
+        } else if (database instanceof JaxbDatabase) {
+            ((JaxbDatabase) database).save(streamFormat, credentials, outputStream);
+        } else {
+            throw new UnsupportedOperationException(database.getClass().getSimpleName() + " cannot be saved as KDBX 4");
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.benchmark;
+
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.Database;
+import org.linguafranca.pwdb.kdb.KdbCredentials;
+import org.linguafranca.pwdb.kdb.KdbDatabase;
+import org.linguafranca.pwdb.kdbx.KdbxCreds;
+import org.linguafranca.pwdb.kdbx.dom.DomDatabaseWrapper;
+import org.linguafranca.pwdb.kdbx.jaxb.JaxbDatabase;
+import org.linguafranca.pwdb.kdbx.simple.SimpleDatabase;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The Database implementations under benchmark, with a uniform way to create, load and credential each of them.
+ *
+ * @author jo
+ */
+public enum Implementation {
+    DOM {
+        @Override
+        public Database<?, ?, ?, ?> createEmpty() throws IOException {
+            return new DomDatabaseWrapper();
+        }
+
+        @Override
+        public Database<?, ?, ?, ?> load(Credentials credentials, InputStream inputStream) throws IOException {
+            return DomDatabaseWrapper.load(credentials, inputStream);
+        }
+    },
+    JAXB {
+        @Override
+        public Database<?, ?, ?, ?> createEmpty() {
+            return new JaxbDatabase();
+        }
+
+        @Override
+        public Database<?, ?, ?, ?> load(Credentials credentials, InputStream inputStream) {
+            return JaxbDatabase.load(credentials, inputStream);
+        }
+    },
+    SIMPLE {
+        @Override
+        public Database<?, ?, ?, ?> createEmpty() {
+            return new SimpleDatabase();
+        }
+
+        @Override
+        public Database<?, ?, ?, ?> load(Credentials credentials, InputStream inputStream) {
+            try {
+                return SimpleDatabase.load(credentials, inputStream);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    },
+    KDB {
+        @Override
+        public Database<?, ?, ?, ?> createEmpty() {
+            return new KdbDatabase();
+        }
+
+        @Override
+        public Database<?, ?, ?, ?> load(Credentials credentials, InputStream inputStream) throws IOException {
+            return KdbDatabase.load(credentials, inputStream);
+        }
+
+        @Override
+        public Credentials getCredentials(byte[] password) {
+            return new KdbCredentials.Password(password);
+        }
+
+        @Override
+        public String getFileExtension() {
+            return ".kdb";
+        }
+
+        @Override
+        public boolean supportsSave() {
+            return false;
+        }
+    };
+
+    /**
+     * Create an empty database of this implementation
+     */
+    public abstract Database<?, ?, ?, ?> createEmpty() throws IOException;
+
+    /**
+     * Load a database of this implementation from a stream
+     */
+    public abstract Database<?, ?, ?, ?> load(Credentials credentials, InputStream inputStream) throws IOException;
+
+    /**
+     * Credentials of the kind this implementation expects, for the password supplied
+     */
+    public Credentials getCredentials(byte[] password) {
+        return new KdbxCreds(password);
+    }
+
+    /**
+     * The file extension of the format this implementation reads
+     */
+    public String getFileExtension() {
+        return ".kdbx";
+    }
+
+    /**
+     * KDB databases cannot be saved
+     */
+    public boolean supportsSave() {
+        return true;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.benchmark;
+
+import com.google.common.io.ByteStreams;
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.Database;
+import org.linguafranca.pwdb.generator.DatabaseGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load and save of synthetic databases, for those implementations that can save.
+ *
+ * <p>1M entries is not in the default parameter set, run it using {@code -p entries=1000000}.
+ *
+ * @author jo
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LoadSaveBenchmark {
+
+    private static final byte[] PASSWORD = "123".getBytes();
+
+    @Param({"DOM", "JAXB", "SIMPLE"})
+    public Implementation implementation;
+
+    @Param({"10000", "100000"})
+    public int entries;
+
+    private Credentials credentials;
+    private Database<?, ?, ?, ?> database;
+    private byte[] saved;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        credentials = implementation.getCredentials(PASSWORD);
+        database = implementation.createEmpty();
+        DatabaseGenerator.populate(database, DatabaseGenerator.specForEntryCount(entries));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        database.save(credentials, outputStream);
+        saved = outputStream.toByteArray();
+    }
+
+    @Benchmark
+    public Database<?, ?, ?, ?> load() throws IOException {
+        return implementation.load(credentials, new ByteArrayInputStream(saved));
+    }
+
+    @Benchmark
+    public void save() throws IOException {
+        database.save(credentials, ByteStreams.nullOutputStream());
+    }
+}
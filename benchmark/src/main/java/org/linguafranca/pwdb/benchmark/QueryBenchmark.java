@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.benchmark;
+
+import org.linguafranca.pwdb.Database;
+import org.linguafranca.pwdb.Entry;
+import org.linguafranca.pwdb.Group;
+import org.linguafranca.pwdb.Visitor;
+import org.linguafranca.pwdb.base.AbstractDatabase;
+import org.linguafranca.pwdb.generator.DatabaseGenerator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Searching and traversal of synthetic databases held in memory, with and without the UUID index.
+ *
+ * <p>1M entries is not in the default parameter set, run it using {@code -p entries=1000000}.
+ *
+ * @author jo
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class QueryBenchmark {
+
+    @Param({"DOM", "JAXB", "SIMPLE", "KDB"})
+    public Implementation implementation;
+
+    @Param({"10000", "100000"})
+    public int entries;
+
+    @Param({"false", "true"})
+    public boolean indexed;
+
+    private Database<?, ?, ?, ?> database;
+    private final List<UUID> entryUuids = new ArrayList<>();
+    private final List<UUID> groupUuids = new ArrayList<>();
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        database = implementation.createEmpty();
+        DatabaseGenerator.populate(database, DatabaseGenerator.specForEntryCount(entries));
+        ((AbstractDatabase<?, ?, ?, ?>) database).enableIndex(indexed);
+        database.visit(new Visitor.Default() {
+            @Override
+            public void startVisit(Group group) {
+                groupUuids.add(group.getUuid());
+            }
+
+            @Override
+            public void visit(Entry entry) {
+                entryUuids.add(entry.getUuid());
+            }
+        });
+    }
+
+    @Benchmark
+    public Object findEntryByUuid() {
+        next = (next + 7919) % entryUuids.size();
+        return database.findEntry(entryUuids.get(next));
+    }
+
+    @Benchmark
+    public Object findGroupByUuid() {
+        next = (next + 7919) % groupUuids.size();
+        return database.findGroup(groupUuids.get(next));
+    }
+
+    @Benchmark
+    public Object findEntriesByText() {
+        return database.findEntries("kilo42.example");
+    }
+
+    @Benchmark
+    public Object findEntriesByMatcher() {
+        return database.findEntries(new Entry.Matcher() {
+            @Override
+            public boolean matches(Entry entry) {
+                return String.valueOf(entry.getTitle()).endsWith("99");
+            }
+        });
+    }
+
+    @Benchmark
+    public void visit(final Blackhole blackhole) {
+        database.visit(new Visitor.Default() {
+            @Override
+            public void startVisit(Group group) {
+                blackhole.consume(group);
+            }
+
+            @Override
+            public void visit(Entry entry) {
+                blackhole.consume(entry);
+            }
+        });
+    }
+}
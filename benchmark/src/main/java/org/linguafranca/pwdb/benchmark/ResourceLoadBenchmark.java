@@ -0,0 +1,71 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.benchmark;
+
+import com.google.common.io.ByteStreams;
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.Database;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load of the sample files in the test module, the resource being named without its extension,
+ * which is supplied by the implementation. Other KDBX samples, e.g. {@code test123-ChaCha20-Argon2},
+ * may be run using {@code -p resource=...}.
+ *
+ * @author jo
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ResourceLoadBenchmark {
+
+    private static final byte[] PASSWORD = "123".getBytes();
+
+    @Param({"DOM", "JAXB", "SIMPLE", "KDB"})
+    public Implementation implementation;
+
+    @Param({"test123"})
+    public String resource;
+
+    private Credentials credentials;
+    private byte[] content;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        credentials = implementation.getCredentials(PASSWORD);
+        String resourceName = resource + implementation.getFileExtension();
+        try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream(resourceName)) {
+            if (inputStream == null) {
+                throw new IllegalArgumentException("Resource not found " + resourceName);
+            }
+            content = ByteStreams.toByteArray(inputStream);
+        }
+    }
+
+    @Benchmark
+    public Database<?, ?, ?, ?> load() throws IOException {
+        return implementation.load(credentials, new ByteArrayInputStream(content));
+    }
+}
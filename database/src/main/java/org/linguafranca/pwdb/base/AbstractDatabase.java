@@ -19,17 +19,39 @@ package org.linguafranca.pwdb.base;
 import org.linguafranca.pwdb.*;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Base implementation of Database
  *
+ * <p>Optionally maintains an index of entries and groups by UUID (see {@link #enableIndex(boolean)}),
+ * so that {@link #findEntry(UUID)}, {@link #findGroup(UUID)}, {@link #deleteEntry(UUID)} and
+ * {@link #deleteGroup(UUID)} don't need to search the database. The index is built on first use and kept up to date
+ * by implementations calling {@link #entryAdded}, {@link #entryRemoved}, {@link #groupAdded} and
+ * {@link #groupRemoved} when they change the structure of the database.
+ *
+ * <p>Optionally maintains a {@link TextIndex} of the text properties of entries (see {@link #enableTextIndex}),
+ * which {@link #findEntries(String)} and {@link #searchEntries(String)} use instead of searching the database.
+ * Implementations keep it up to date by also calling {@link #entryChanged} when the properties of an entry change.
+ * Other indexes of entries can be kept up to date in the same way by adding them as an {@link EntryIndex}.
+ *
  * @author Jo
  */
 public abstract class AbstractDatabase<D extends Database<D, G, E, I>, G extends Group<D, G, E, I>, E extends Entry<D,G,E,I>, I extends Icon> implements Database<D, G, E, I> {
 
-    private boolean isDirty;
+    private volatile boolean isDirty;
+
+    private boolean indexEnabled;
+    // null unless the index is enabled and has been built, volatile since it may be built by concurrent readers
+    private volatile Map<UUID, E> entryIndex;
+    private volatile Map<UUID, G> groupIndex;
+    // null unless enabled
+    private volatile TextIndex<E> textIndex;
+    private final List<EntryIndex<? super E>> entryIndexes = new CopyOnWriteArrayList<>();
 
     @Override
     public boolean isDirty() {
@@ -40,6 +62,222 @@ public abstract class AbstractDatabase<D extends Database<D, G, E, I>, G extends
         isDirty = dirty;
     }
 
+    /**
+     * Whether lookups by UUID use an index
+     */
+    public boolean isIndexEnabled() {
+        return indexEnabled;
+    }
+
+    /**
+     * Enable or disable the use of an index for lookups by UUID. The index takes memory
+     * proportional to the number of entries and groups, and is worth having when there are
+     * frequent lookups in a large database.
+     * @param enable true to enable
+     */
+    public void enableIndex(boolean enable) {
+        indexEnabled = enable;
+        entryIndex = null;
+        groupIndex = null;
+    }
+
+    /**
+     * Whether text searches use an index
+     */
+    public boolean isTextIndexEnabled() {
+        return textIndex != null;
+    }
+
+    /**
+     * Enable or disable the use of an index for text searches, not indexing properties that should be protected
+     * @param enable true to enable
+     * @throws UnsupportedOperationException if the implementation does not support a text index
+     * @see #enableTextIndex(boolean, boolean)
+     */
+    public void enableTextIndex(boolean enable) {
+        enableTextIndex(enable, false);
+    }
+
+    /**
+     * Enable or disable the use of an index for text searches. The index is built when enabled, takes memory
+     * proportional to the total length of the properties indexed, and is worth having when there are
+     * frequent searches of a large database.
+     * <p>
+     * While the index is enabled {@link #findEntries(String)} returns entries in the order they were indexed
+     * rather than the order they appear in the database.
+     * <p>
+     * Not all implementations support a text index, KDB databases don't, since their entries also match
+     * on a binary description the index doesn't know about. Searches then always scan the database.
+     * @param enable true to enable
+     * @param includeProtected true to also index properties that should be protected, which then
+     *                         are held in memory in the clear
+     * @throws UnsupportedOperationException if enabling and the implementation does not support a text index
+     */
+    public void enableTextIndex(boolean enable, boolean includeProtected) {
+        if (textIndex != null) {
+            removeEntryIndex(textIndex);
+            textIndex = null;
+        }
+        if (enable) {
+            TextIndex<E> index = new TextIndex<>(this, includeProtected);
+            addEntryIndex(index);
+            textIndex = index;
+        }
+    }
+
+    /**
+     * Add an index, which is populated with the entries of the database and then kept up to date as they change
+     * @param index the index
+     */
+    public void addEntryIndex(EntryIndex<? super E> index) {
+        addToIndex(getRootGroup(), index);
+        entryIndexes.add(index);
+    }
+
+    /**
+     * Stop keeping an index up to date
+     * @param index the index
+     */
+    public void removeEntryIndex(EntryIndex<? super E> index) {
+        entryIndexes.remove(index);
+    }
+
+    private void addToIndex(G group, EntryIndex<? super E> index) {
+        for (E entry : group.getEntries()) {
+            index.add(entry);
+        }
+        for (G child : group.getGroups()) {
+            addToIndex(child, index);
+        }
+    }
+
+    /**
+     * Called by implementations when an entry has been added to a group
+     * @param entry the entry, whose parent is the group it was added to
+     */
+    public void entryAdded(E entry) {
+        if ((entryIndex == null && entryIndexes.isEmpty()) || !isAttached(entry.getParent())) {
+            return;
+        }
+        if (entryIndex != null) {
+            entryIndex.put(entry.getUuid(), entry);
+        }
+        for (EntryIndex<? super E> index : entryIndexes) {
+            index.add(entry);
+        }
+    }
+
+    /**
+     * Called by implementations when an entry has been removed from its group
+     * @param entry the entry
+     */
+    public void entryRemoved(E entry) {
+        if (entryIndex != null) {
+            entryIndex.remove(entry.getUuid());
+        }
+        for (EntryIndex<? super E> index : entryIndexes) {
+            index.remove(entry.getUuid());
+        }
+    }
+
+    /**
+     * Called by implementations when a property of an entry has been set or removed
+     * @param entry the entry
+     */
+    public void entryChanged(E entry) {
+        for (EntryIndex<? super E> index : entryIndexes) {
+            if (index.contains(entry.getUuid())) {
+                index.add(entry);
+            }
+        }
+    }
+
+    /**
+     * Called by implementations when a group, along with its sub groups and entries, has been added to a group
+     * @param group the group, whose parent is the group it was added to
+     */
+    public void groupAdded(G group) {
+        if ((groupIndex == null && entryIndexes.isEmpty()) || !isAttached(group.getParent())) {
+            return;
+        }
+        if (groupIndex != null) {
+            index(group);
+        }
+        for (EntryIndex<? super E> index : entryIndexes) {
+            addToIndex(group, index);
+        }
+    }
+
+    /**
+     * Called by implementations when a group, along with its sub groups and entries, has been removed from its group
+     * @param group the group
+     */
+    public void groupRemoved(G group) {
+        if (groupIndex == null && entryIndexes.isEmpty()) {
+            return;
+        }
+        if (groupIndex != null) {
+            groupIndex.remove(group.getUuid());
+        }
+        for (E entry : group.getEntries()) {
+            entryRemoved(entry);
+        }
+        for (G child : group.getGroups()) {
+            groupRemoved(child);
+        }
+    }
+
+    /**
+     * true if the group is part of the tree descending from the root group
+     */
+    private boolean isAttached(G group) {
+        while (group != null) {
+            if (group.isRootGroup()) {
+                return true;
+            }
+            group = group.getParent();
+        }
+        return false;
+    }
+
+    /**
+     * true if the group is the recycle bin or is contained in it
+     */
+    private boolean isInRecycleBin(G group) {
+        while (group != null) {
+            if (group.isRecycleBin()) {
+                return true;
+            }
+            group = group.getParent();
+        }
+        return false;
+    }
+
+    private synchronized void ensureIndex() {
+        if (groupIndex == null) {
+            Map<UUID, E> entries = new HashMap<>();
+            Map<UUID, G> groups = new HashMap<>();
+            index(getRootGroup(), entries, groups);
+            // groupIndex is tested to see whether the index has been built so is published last
+            entryIndex = entries;
+            groupIndex = groups;
+        }
+    }
+
+    private void index(G group) {
+        index(group, entryIndex, groupIndex);
+    }
+
+    private void index(G group, Map<UUID, E> entries, Map<UUID, G> groups) {
+        groups.put(group.getUuid(), group);
+        for (E entry : group.getEntries()) {
+            entries.put(entry.getUuid(), entry);
+        }
+        for (G child : group.getGroups()) {
+            index(child, entries, groups);
+        }
+    }
+
     @Override
     public void visit(Visitor visitor) {
         visitor.startVisit(getRootGroup());
@@ -76,9 +314,54 @@ public abstract class AbstractDatabase<D extends Database<D, G, E, I>, G extends
 
     @Override
     public List<? extends E> findEntries(String find) {
+        TextIndex<E> index = textIndex;
+        if (index != null && index.isIndexed(TextIndex.MATCH_PROPERTY_NAMES)) {
+            return notInRecycleBin(index.find(find, TextIndex.MATCH_PROPERTY_NAMES));
+        }
         return getRootGroup().findEntries(find, true);
     }
 
+    /**
+     * Find entries any of whose text properties, including non-standard ones, contains some text, ignoring case.
+     * Properties that should be protected are only searched when the text index is enabled to include them.
+     * Entries in the recycle bin are not found.
+     * @param text the text to find
+     * @return a list of entries
+     */
+    public List<? extends E> searchEntries(String text) {
+        TextIndex<E> index = textIndex;
+        if (index != null) {
+            return notInRecycleBin(index.find(text, null));
+        }
+        final String lower = text.toLowerCase();
+        return findEntries(new Entry.Matcher() {
+            @Override
+            public boolean matches(Entry entry) {
+                for (Object name : entry.getPropertyNames()) {
+                    String propertyName = (String) name;
+                    if (shouldProtect(propertyName)) {
+                        continue;
+                    }
+                    char[] value = entry.getProperty(propertyName);
+                    if (value != null && String.valueOf(value).toLowerCase().contains(lower)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        });
+    }
+
+    private List<E> notInRecycleBin(List<E> entries) {
+        List<E> result = new ArrayList<>(entries.size());
+        for (E entry : entries) {
+            if (!isInRecycleBin(entry.getParent())) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
     @Override
     public G newGroup(String name) {
         G result = newGroup();
@@ -131,6 +414,15 @@ public abstract class AbstractDatabase<D extends Database<D, G, E, I>, G extends
 
     @Override
     public E findEntry(final UUID uuid) {
+        if (indexEnabled) {
+            ensureIndex();
+            E entry = entryIndex.get(uuid);
+            // entries in the recycle bin are not found, as below
+            if (entry == null || isInRecycleBin(entry.getParent())) {
+                return null;
+            }
+            return entry;
+        }
         List<? extends E> entries = findEntries(new Entry.Matcher() {
             @Override
             public boolean matches(Entry entry) {
@@ -164,6 +456,15 @@ public abstract class AbstractDatabase<D extends Database<D, G, E, I>, G extends
 
     @Override
     public G findGroup(final UUID uuid){
+        if (indexEnabled) {
+            ensureIndex();
+            G group = groupIndex.get(uuid);
+            // the recycle bin is found but groups it contains are not, as below
+            if (group == null || isInRecycleBin(group.getParent())) {
+                return null;
+            }
+            return group;
+        }
         final List<G> groups = new ArrayList<>();
         visit(new Visitor.Default() {
             // set to true while visiting sub groups of recycle bin
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.base;
+
+import org.linguafranca.pwdb.Entry;
+
+import java.util.UUID;
+
+/**
+ * An index of entries, kept up to date by an {@link AbstractDatabase} it has been added to
+ * using {@link AbstractDatabase#addEntryIndex}.
+ *
+ * @author jo
+ */
+public interface EntryIndex<E extends Entry> {
+
+    /**
+     * Add an entry that is now part of the database, or replace it if it is already indexed
+     */
+    void add(E entry);
+
+    /**
+     * Remove an entry that is no longer part of the database
+     */
+    void remove(UUID uuid);
+
+    /**
+     * true if the entry is indexed
+     */
+    boolean contains(UUID uuid);
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.base;
+
+import org.jetbrains.annotations.Nullable;
+import org.linguafranca.pwdb.Database;
+import org.linguafranca.pwdb.Entry;
+
+import java.util.*;
+
+/**
+ * An in-memory index of the text properties of entries, supporting case-insensitive substring search.
+ * <p>
+ * Property values are held lower-cased, and every three character sequence occurring in them is mapped to the
+ * entries it occurs in. A search looks up the sequences of the search text, checks only the entries
+ * of the shortest list found and so doesn't need to look at most entries at all. Searches of fewer than
+ * three characters check the lower-cased values of every entry, which is still much cheaper than
+ * reading and lower-casing every property of every entry.
+ * <p>
+ * Properties that the database says should be protected are only indexed if that is asked for, since the
+ * index holds their values in the clear.
+ * <p>
+ * Results are in the order entries were last indexed. The index is not thread safe.
+ *
+ * @author jo
+ */
+@SuppressWarnings("WeakerAccess")
+public class TextIndex<E extends Entry<?, ?, ?, ?>> implements EntryIndex<E> {
+
+    /**
+     * The properties that {@link Entry#match(String)} looks at
+     */
+    public static final List<String> MATCH_PROPERTY_NAMES = Collections.unmodifiableList(Arrays.asList(
+            Entry.STANDARD_PROPERTY_NAME_TITLE,
+            Entry.STANDARD_PROPERTY_NAME_NOTES,
+            Entry.STANDARD_PROPERTY_NAME_URL,
+            Entry.STANDARD_PROPERTY_NAME_USER_NAME));
+
+    private static final int GRAM_LENGTH = 3;
+    // don't bother compacting small indexes
+    private static final int MIN_COMPACT_SIZE = 1024;
+
+    private final Database<?, ?, ?, ?> database;
+    private final boolean includeProtected;
+    // document ids by entry UUID
+    private final Map<UUID, Integer> ids = new HashMap<>();
+    // indexed by document id, null when removed
+    private List<Document<E>> documents = new ArrayList<>();
+    private int live;
+    private final Map<Long, Postings> postings = new HashMap<>();
+
+    /**
+     * Create an empty index
+     *
+     * @param database         the database whose entries are to be indexed
+     * @param includeProtected true to index properties that should be protected
+     */
+    public TextIndex(Database<?, ?, ?, ?> database, boolean includeProtected) {
+        this.database = database;
+        this.includeProtected = includeProtected;
+    }
+
+    public boolean isIncludeProtected() {
+        return includeProtected;
+    }
+
+    /**
+     * true if the values of all the named properties are indexed
+     */
+    public boolean isIndexed(Collection<String> propertyNames) {
+        for (String propertyName : propertyNames) {
+            if (!isIndexed(propertyName)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isIndexed(String propertyName) {
+        return includeProtected || !database.shouldProtect(propertyName);
+    }
+
+    /**
+     * The number of entries indexed
+     */
+    public int size() {
+        return live;
+    }
+
+    @Override
+    public boolean contains(UUID uuid) {
+        return ids.containsKey(uuid);
+    }
+
+    /**
+     * Add an entry to the index, or replace it if its properties have changed
+     */
+    @Override
+    public void add(E entry) {
+        remove(entry.getUuid());
+        Map<String, String> fields = new LinkedHashMap<>();
+        for (Object name : entry.getPropertyNames()) {
+            String propertyName = (String) name;
+            if (!isIndexed(propertyName)) {
+                continue;
+            }
+            char[] value = entry.getProperty(propertyName);
+            if (value != null) {
+                fields.put(propertyName, String.valueOf(value).toLowerCase());
+            }
+        }
+        addDocument(new Document<>(entry, fields));
+    }
+
+    /**
+     * Remove an entry from the index
+     */
+    @Override
+    public void remove(UUID uuid) {
+        Integer id = ids.remove(uuid);
+        if (id == null) {
+            return;
+        }
+        documents.set(id, null);
+        live--;
+        // removed documents leave their ids in the postings, so rebuild once they are the majority
+        if (documents.size() > MIN_COMPACT_SIZE && live < documents.size() / 2) {
+            List<Document<E>> old = documents;
+            documents = new ArrayList<>(live);
+            ids.clear();
+            postings.clear();
+            live = 0;
+            for (Document<E> document : old) {
+                if (document != null) {
+                    addDocument(document);
+                }
+            }
+        }
+    }
+
+    private void addDocument(Document<E> document) {
+        int id = documents.size();
+        documents.add(document);
+        ids.put(document.entry.getUuid(), id);
+        live++;
+        Set<Long> grams = new HashSet<>();
+        for (String value : document.fields.values()) {
+            for (int i = 0; i <= value.length() - GRAM_LENGTH; i++) {
+                grams.add(gram(value, i));
+            }
+        }
+        for (Long gram : grams) {
+            Postings list = postings.get(gram);
+            if (list == null) {
+                list = new Postings();
+                postings.put(gram, list);
+            }
+            list.add(id);
+        }
+    }
+
+    /**
+     * Find entries with a property containing some text, ignoring case
+     *
+     * @param text          the text to find
+     * @param propertyNames the properties to look in, or null for all indexed properties
+     * @return a list of matching entries
+     */
+    public List<E> find(String text, @Nullable Collection<String> propertyNames) {
+        String lower = text.toLowerCase();
+        List<E> result = new ArrayList<>();
+        if (lower.length() < GRAM_LENGTH) {
+            for (Document<E> document : documents) {
+                if (document != null && document.matches(lower, propertyNames)) {
+                    result.add(document.entry);
+                }
+            }
+            return result;
+        }
+        Postings shortest = null;
+        for (int i = 0; i <= lower.length() - GRAM_LENGTH; i++) {
+            Postings list = postings.get(gram(lower, i));
+            if (list == null) {
+                return result;
+            }
+            if (shortest == null || list.size < shortest.size) {
+                shortest = list;
+            }
+        }
+        //noinspection ConstantConditions
+        for (int i = 0; i < shortest.size; i++) {
+            Document<E> document = documents.get(shortest.ids[i]);
+            if (document != null && document.matches(lower, propertyNames)) {
+                result.add(document.entry);
+            }
+        }
+        return result;
+    }
+
+    private static Long gram(String value, int offset) {
+        return ((long) value.charAt(offset) << 32) | ((long) value.charAt(offset + 1) << 16) | value.charAt(offset + 2);
+    }
+
+    /**
+     * An entry and its lower-cased indexed properties
+     */
+    private static class Document<E> {
+        final E entry;
+        final Map<String, String> fields;
+
+        Document(E entry, Map<String, String> fields) {
+            this.entry = entry;
+            this.fields = fields;
+        }
+
+        boolean matches(String lower, @Nullable Collection<String> propertyNames) {
+            if (propertyNames == null) {
+                for (String value : fields.values()) {
+                    if (value.contains(lower)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            for (String propertyName : propertyNames) {
+                String value = fields.get(propertyName);
+                if (value != null && value.contains(lower)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Ids of the documents containing a sequence, in increasing order
+     */
+    private static class Postings {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+}
@@ -0,0 +1,645 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.concurrent;
+
+import org.jetbrains.annotations.Nullable;
+import org.linguafranca.pwdb.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A decorator that makes a {@link Database} safe for use by several threads.
+ * <p>
+ * All access to the database, and to the groups, entries and icons obtained from it, is through
+ * a single read/write lock. Any number of threads may read at the same time, while writers have exclusive access.
+ * Operations that span several calls and need to be atomic, e.g. reading or setting both the username and
+ * password of an entry, can be made under the lock using {@link #withReadLock} and {@link #withWriteLock}.
+ * <p>
+ * Parallel reads require that reads of the underlying implementation don't change it. That is true of the Simple,
+ * JAXB and DOM implementations. For any implementation of which it isn't true construct with
+ * {@code concurrentReads} false, so that reads are serialised too.
+ * <p>
+ * Visitors and matchers are called while the lock is held and must not modify the database.
+ * <p>
+ * Readers that don't need the latest state can instead use an immutable {@link #snapshot()}, which they
+ * traverse without any locking at all. Snapshots only see changes made through this wrapper,
+ * not changes made directly to the {@link #getDelegate() delegate}.
+ *
+ * @author jo
+ */
+@SuppressWarnings({"WeakerAccess", "unchecked"})
+public class ConcurrentDatabase implements Database<ConcurrentDatabase, ConcurrentGroup, ConcurrentEntry, ConcurrentIcon> {
+
+    private final Database database;
+    private final Lock readLock;
+    private final Lock writeLock;
+    // incremented each time the write lock is released
+    private volatile long version;
+    private final AtomicReference<Published> published = new AtomicReference<>();
+    // what the next snapshot must capture again, changed only while holding the write lock
+    private final Set<UUID> changedGroups = new HashSet<>();
+    private final Set<UUID> changedEntries = new HashSet<>();
+    private boolean changedAll;
+
+    /**
+     * Wrap a database allowing concurrent reads
+     *
+     * @param database the database to wrap, which should not be used other than via this wrapper
+     */
+    public ConcurrentDatabase(Database<?, ?, ?, ?> database) {
+        this(database, true);
+    }
+
+    /**
+     * Wrap a database
+     *
+     * @param database        the database to wrap, which should not be used other than via this wrapper
+     * @param concurrentReads false if reading the underlying database changes its state
+     */
+    public ConcurrentDatabase(Database<?, ?, ?, ?> database, boolean concurrentReads) {
+        this.database = database;
+        ReadWriteLock lock = new ReentrantReadWriteLock();
+        this.writeLock = new VersionedLock(lock.writeLock());
+        // when reads are serialised they don't change the version, so don't invalidate the snapshot
+        this.readLock = concurrentReads ? lock.readLock() : lock.writeLock();
+    }
+
+    /**
+     * The underlying database, which is not thread safe
+     */
+    public Database getDelegate() {
+        return database;
+    }
+
+    /**
+     * Perform several reads atomically
+     *
+     * @param reader the reads to perform, which must not modify the database
+     * @return the result of the reader
+     */
+    public <T> T withReadLock(Callable<T> reader) {
+        readLock.lock();
+        try {
+            return reader.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Perform several reads and writes atomically
+     *
+     * @param writer the operations to perform
+     * @return the result of the writer
+     */
+    public <T> T withWriteLock(Callable<T> writer) {
+        writeLock.lock();
+        try {
+            return writer.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * An immutable snapshot of the database as of the last change to it. The snapshot is taken on the first
+     * call after a change and is then shared by all callers until the next change, so readers that use it
+     * contend neither with each other nor with writers, other than while it is being taken.
+     * <p>
+     * The first snapshot reads the whole database. After that, writes note which entries and groups they
+     * change, and a new snapshot reads only those and the groups containing them, sharing the rest with the
+     * snapshot it replaces. The cost of taking it, during which writers wait, is then proportional to the
+     * size of the changed groups and their parents, not to the size of the database. Enabling or disabling
+     * the recycle bin is the exception and causes the next snapshot to read everything again.
+     * <p>
+     * Groups and entries of a snapshot, and its index by UUID, are created as readers first ask for them.
+     *
+     * @return a snapshot
+     */
+    public SnapshotDatabase snapshot() {
+        Published current = published.get();
+        if (current != null && current.version == version) {
+            return current.snapshot;
+        }
+        readLock.lock();
+        try {
+            // only one reader takes the snapshot, the others wait for it
+            synchronized (published) {
+                // version can't change while we hold the read lock
+                long version = this.version;
+                current = published.get();
+                if (current == null || current.version != version) {
+                    SnapshotDatabase snapshot = current == null || changedAll ?
+                            SnapshotDatabase.of(database) :
+                            SnapshotDatabase.of(database, current.snapshot, changedGroups, changedEntries);
+                    changedGroups.clear();
+                    changedEntries.clear();
+                    changedAll = false;
+                    current = new Published(version, snapshot);
+                    published.set(current);
+                }
+                return current.snapshot;
+            }
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    Lock readLock() {
+        return readLock;
+    }
+
+    Lock writeLock() {
+        return writeLock;
+    }
+
+    /* called holding the write lock before changing an entry, the next snapshot must capture it and its parents again */
+    void changed(@Nullable Entry entry) {
+        if (entry != null) {
+            changedEntries.add(entry.getUuid());
+            changed(entry.getParent());
+        }
+    }
+
+    /* called holding the write lock before changing a group, the next snapshot must capture it and its parents again */
+    void changed(@Nullable Group group) {
+        for (; group != null; group = group.getParent()) {
+            changedGroups.add(group.getUuid());
+        }
+    }
+
+    ConcurrentGroup wrap(@Nullable Group group) {
+        return group == null ? null : new ConcurrentGroup(this, group);
+    }
+
+    ConcurrentEntry wrap(@Nullable Entry entry) {
+        return entry == null ? null : new ConcurrentEntry(this, entry);
+    }
+
+    ConcurrentIcon wrap(@Nullable Icon icon) {
+        return icon == null ? null : new ConcurrentIcon(this, icon);
+    }
+
+    List<ConcurrentGroup> wrapGroups(List<? extends Group> groups) {
+        List<ConcurrentGroup> result = new ArrayList<>(groups.size());
+        for (Group group : groups) {
+            result.add(wrap(group));
+        }
+        return result;
+    }
+
+    List<ConcurrentEntry> wrapEntries(List<? extends Entry> entries) {
+        List<ConcurrentEntry> result = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            result.add(wrap(entry));
+        }
+        return result;
+    }
+
+    /* matchers see wrapped entries */
+    Entry.Matcher wrap(final Entry.Matcher matcher) {
+        return new Entry.Matcher() {
+            @Override
+            public boolean matches(Entry entry) {
+                return matcher.matches(wrap(entry));
+            }
+        };
+    }
+
+    /* visitors see wrapped groups and entries */
+    private Visitor wrap(final Visitor visitor) {
+        return new Visitor() {
+            @Override
+            public void startVisit(Group group) {
+                visitor.startVisit(wrap(group));
+            }
+
+            @Override
+            public void endVisit(Group group) {
+                visitor.endVisit(wrap(group));
+            }
+
+            @Override
+            public void visit(Entry entry) {
+                visitor.visit(wrap(entry));
+            }
+
+            @Override
+            public boolean isEntriesFirst() {
+                return visitor.isEntriesFirst();
+            }
+        };
+    }
+
+    @Override
+    public ConcurrentGroup getRootGroup() {
+        readLock.lock();
+        try {
+            return wrap(database.getRootGroup());
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public ConcurrentGroup newGroup() {
+        writeLock.lock();
+        try {
+            return wrap(database.newGroup());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public ConcurrentGroup newGroup(String name) {
+        writeLock.lock();
+        try {
+            return wrap(database.newGroup(name));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public ConcurrentGroup newGroup(Group group) {
+        writeLock.lock();
+        try {
+            return wrap(database.newGroup(group));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public ConcurrentEntry newEntry() {
+        writeLock.lock();
+        try {
+            return wrap(database.newEntry());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public ConcurrentEntry newEntry(String title) {
+        writeLock.lock();
+        try {
+            return wrap(database.newEntry(title));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public ConcurrentEntry newEntry(Entry<?, ?, ?, ?> entry) {
+        writeLock.lock();
+        try {
+            return wrap(database.newEntry(entry));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public ConcurrentIcon newIcon() {
+        writeLock.lock();
+        try {
+            return wrap(database.newIcon());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public ConcurrentIcon newIcon(Integer i) {
+        writeLock.lock();
+        try {
+            return wrap(database.newIcon(i));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Nullable
+    @Override
+    public ConcurrentEntry findEntry(UUID uuid) {
+        readLock.lock();
+        try {
+            return wrap(database.findEntry(uuid));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean deleteEntry(UUID uuid) {
+        writeLock.lock();
+        try {
+            changed(database.findEntry(uuid));
+            boolean result = database.deleteEntry(uuid);
+            if (result && database.isRecycleBinEnabled()) {
+                // which may have been created to receive it
+                changed(database.getRecycleBin());
+            }
+            return result;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Nullable
+    @Override
+    public ConcurrentGroup findGroup(UUID uuid) {
+        readLock.lock();
+        try {
+            return wrap(database.findGroup(uuid));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean deleteGroup(UUID uuid) {
+        writeLock.lock();
+        try {
+            changed(database.findGroup(uuid));
+            boolean result = database.deleteGroup(uuid);
+            if (result && database.isRecycleBinEnabled()) {
+                changed(database.getRecycleBin());
+            }
+            return result;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isRecycleBinEnabled() {
+        readLock.lock();
+        try {
+            return database.isRecycleBinEnabled();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public void enableRecycleBin(boolean enable) {
+        writeLock.lock();
+        try {
+            // which group is the recycle bin may change
+            changedAll = true;
+            database.enableRecycleBin(enable);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Implementations may create the recycle bin on demand, so this takes the write lock
+     */
+    @Nullable
+    @Override
+    public ConcurrentGroup getRecycleBin() {
+        writeLock.lock();
+        try {
+            Group recycleBin = database.getRecycleBin();
+            changed(recycleBin);
+            return wrap(recycleBin);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void emptyRecycleBin() {
+        writeLock.lock();
+        try {
+            database.emptyRecycleBin();
+            changed(database.getRecycleBin());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void visit(Visitor visitor) {
+        readLock.lock();
+        try {
+            database.visit(wrap(visitor));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public void visit(ConcurrentGroup group, Visitor visitor) {
+        readLock.lock();
+        try {
+            database.visit(group.getDelegate(), wrap(visitor));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public List<ConcurrentEntry> findEntries(Entry.Matcher matcher) {
+        readLock.lock();
+        try {
+            return wrapEntries(database.findEntries(wrap(matcher)));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public List<ConcurrentEntry> findEntries(String find) {
+        readLock.lock();
+        try {
+            return wrapEntries(database.findEntries(find));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public String getName() {
+        readLock.lock();
+        try {
+            return database.getName();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public void setName(String name) {
+        writeLock.lock();
+        try {
+            database.setName(name);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public String getDescription() {
+        readLock.lock();
+        try {
+            return database.getDescription();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public void setDescription(String description) {
+        writeLock.lock();
+        try {
+            database.setDescription(description);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isDirty() {
+        readLock.lock();
+        try {
+            return database.isDirty();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Implementations may update the database while saving (e.g. clearing the dirty flag), so this takes the write lock
+     */
+    @Override
+    public void save(Credentials credentials, OutputStream outputStream) throws IOException {
+        writeLock.lock();
+        try {
+            database.save(credentials, outputStream);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean shouldProtect(String propertyName) {
+        readLock.lock();
+        try {
+            return database.shouldProtect(propertyName);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean supportsNonStandardPropertyNames() {
+        return database.supportsNonStandardPropertyNames();
+    }
+
+    @Override
+    public boolean supportsBinaryProperties() {
+        return database.supportsBinaryProperties();
+    }
+
+    @Override
+    public boolean supportsRecycleBin() {
+        return database.supportsRecycleBin();
+    }
+
+    /**
+     * A snapshot and the version of the database it was taken from
+     */
+    private static class Published {
+        final long version;
+        final SnapshotDatabase snapshot;
+
+        Published(long version, SnapshotDatabase snapshot) {
+            this.version = version;
+            this.snapshot = snapshot;
+        }
+    }
+
+    /**
+     * Write lock that notes that the database may have changed when it is released
+     */
+    private class VersionedLock implements Lock {
+        private final Lock lock;
+
+        VersionedLock(Lock lock) {
+            this.lock = lock;
+        }
+
+        @Override
+        public void lock() {
+            lock.lock();
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            lock.lockInterruptibly();
+        }
+
+        @Override
+        public boolean tryLock() {
+            return lock.tryLock();
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            return lock.tryLock(time, unit);
+        }
+
+        @Override
+        public void unlock() {
+            // only the holder of the write lock changes version
+            //noinspection NonAtomicOperationOnVolatileField
+            version++;
+            lock.unlock();
+        }
+
+        @Override
+        public Condition newCondition() {
+            return lock.newCondition();
+        }
+    }
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.concurrent;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.linguafranca.pwdb.Entry;
+
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * An entry of a {@link ConcurrentDatabase}, accessed under the database's lock
+ *
+ * @author jo
+ */
+@SuppressWarnings({"WeakerAccess", "unchecked"})
+public class ConcurrentEntry implements Entry<ConcurrentDatabase, ConcurrentGroup, ConcurrentEntry, ConcurrentIcon> {
+
+    private final ConcurrentDatabase database;
+    private final Entry entry;
+
+    ConcurrentEntry(ConcurrentDatabase database, Entry entry) {
+        this.database = database;
+        this.entry = entry;
+    }
+
+    /**
+     * The underlying entry, which is not thread safe
+     */
+    public Entry getDelegate() {
+        return entry;
+    }
+
+    @Override
+    public boolean match(String text) {
+        database.readLock().lock();
+        try {
+            return entry.match(text);
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean match(Entry.Matcher matcher) {
+        database.readLock().lock();
+        try {
+            return entry.match(database.wrap(matcher));
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String getPath() {
+        database.readLock().lock();
+        try {
+            return entry.getPath();
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public char[] getProperty(String name) {
+        database.readLock().lock();
+        try {
+            return entry.getProperty(name);
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void setProperty(String name, String value) {
+        database.writeLock().lock();
+        try {
+            database.changed(entry);
+            entry.setProperty(name, value);
+        } finally {
+            database.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean removeProperty(String name) {
+        database.writeLock().lock();
+        try {
+            database.changed(entry);
+            return entry.removeProperty(name);
+        } finally {
+            database.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<String> getPropertyNames() {
+        database.readLock().lock();
+        try {
+            return entry.getPropertyNames();
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public byte[] getBinaryProperty(String name) {
+        database.readLock().lock();
+        try {
+            return entry.getBinaryProperty(name);
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void setBinaryProperty(String name, byte[] value) {
+        database.writeLock().lock();
+        try {
+            database.changed(entry);
+            entry.setBinaryProperty(name, value);
+        } finally {
+            database.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean removeBinaryProperty(String name) {
+        database.writeLock().lock();
+        try {
+            database.changed(entry);
+            return entry.removeBinaryProperty(name);
+        } finally {
+            database.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<String> getBinaryPropertyNames() {
+        database.readLock().lock();
+        try {
+            return entry.getBinaryPropertyNames();
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Nullable
+    @Override
+    public ConcurrentGroup getParent() {
+        database.readLock().lock();
+        try {
+            return database.wrap(entry.getParent());
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @NotNull
+    @Override
+    public UUID getUuid() {
+        database.readLock().lock();
+        try {
+            return entry.getUuid();
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public char[] getUsername() {
+        database.readLock().lock();
+        try {
+            return entry.getUsername();
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void setUsername(String username) {
+        database.writeLock().lock();
+        try {
+            database.changed(entry);
+            entry.setUsername(username);
+        } finally {
+            database.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean matchUsername(String username) {
+        database.readLock().lock();
+        try {
+            return entry.matchUsername(username);
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public char[] getPassword() {
+        database.readLock().lock();
+        try {
+            return entry.getPassword();
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void setPassword(String pass) {
+        database.writeLock().lock();
+        try {
+            database.changed(entry);
+            entry.setPassword(pass);
+        } finally {
+            database.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public char[] getUrl() {
+        database.readLock().lock();
+        try {
+            return entry.getUrl();
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void setUrl(String url) {
+        database.writeLock().lock();
+        try {
+            database.changed(entry);
+            entry.setUrl(url);
+        } finally {
+            database.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean matchUrl(String url) {
+        database.readLock().lock();
+        try {
+            return entry.matchUrl(url);
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public char[] getTitle() {
+        database.readLock().lock();
+        try {
+            return entry.getTitle();
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void setTitle(String title) {
+        database.writeLock().lock();
+        try {
+            database.changed(entry);
+            entry.setTitle(title);
+        } finally {
+            database.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean matchTitle(String text) {
+        database.readLock().lock();
+        try {
+            return entry.matchTitle(text);
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public char[] getNotes() {
+        database.readLock().lock();
+        try {
+            return entry.getNotes();
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void setNotes(String notes) {
+        database.writeLock().lock();
+        try {
+            database.changed(entry);
+            entry.setNotes(notes);
+        } finally {
+            database.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean matchNotes(String text) {
+        database.readLock().lock();
+        try {
+            return entry.matchNotes(text);
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public ConcurrentIcon getIcon() {
+        database.readLock().lock();
+        try {
+            return database.wrap(entry.getIcon());
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void setIcon(ConcurrentIcon icon) {
+        database.writeLock().lock();
+        try {
+            database.changed(entry);
+            entry.setIcon(icon == null ? null : icon.getDelegate());
+        } finally {
+            database.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Date getLastAccessTime() {
+        database.readLock().lock();
+        try {
+            return entry.getLastAccessTime();
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Date getCreationTime() {
+        database.readLock().lock();
+        try {
+            return entry.getCreationTime();
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean getExpires() {
+        database.readLock().lock();
+        try {
+            return entry.getExpires();
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void setExpires(boolean expires) {
+        database.writeLock().lock();
+        try {
+            database.changed(entry);
+            entry.setExpires(expires);
+        } finally {
+            database.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Date getExpiryTime() {
+        database.readLock().lock();
+        try {
+            return entry.getExpiryTime();
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void setExpiryTime(Date expiryTime) {
+        database.writeLock().lock();
+        try {
+            database.changed(entry);
+            entry.setExpiryTime(expiryTime);
+        } finally {
+            database.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Date getLastModificationTime() {
+        database.readLock().lock();
+        try {
+            return entry.getLastModificationTime();
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ConcurrentEntry && ((ConcurrentEntry) o).entry.equals(entry);
+    }
+
+    @Override
+    public int hashCode() {
+        return entry.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        database.readLock().lock();
+        try {
+            return entry.toString();
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+}
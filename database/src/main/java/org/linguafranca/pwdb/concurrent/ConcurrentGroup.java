@@ -0,0 +1,306 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.concurrent;
+
+import org.jetbrains.annotations.NotNull;
+import org.linguafranca.pwdb.*;
+
+import javax.annotation.Nullable;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A group of a {@link ConcurrentDatabase}, accessed under the database's lock
+ *
+ * @author jo
+ */
+@SuppressWarnings({"WeakerAccess", "unchecked"})
+public class ConcurrentGroup implements Group<ConcurrentDatabase, ConcurrentGroup, ConcurrentEntry, ConcurrentIcon> {
+
+    private final ConcurrentDatabase database;
+    private final Group group;
+
+    ConcurrentGroup(ConcurrentDatabase database, Group group) {
+        this.database = database;
+        this.group = group;
+    }
+
+    /**
+     * The underlying group, which is not thread safe
+     */
+    public Group getDelegate() {
+        return group;
+    }
+
+    @Override
+    public boolean isRootGroup() {
+        database.readLock().lock();
+        try {
+            return group.isRootGroup();
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean isRecycleBin() {
+        database.readLock().lock();
+        try {
+            return group.isRecycleBin();
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Nullable
+    @Override
+    public ConcurrentGroup getParent() {
+        database.readLock().lock();
+        try {
+            return database.wrap(group.getParent());
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void setParent(ConcurrentGroup parent) {
+        database.writeLock().lock();
+        try {
+            database.changed(group);
+            group.setParent(parent == null ? null : parent.getDelegate());
+            database.changed(group);
+        } finally {
+            database.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<ConcurrentGroup> getGroups() {
+        database.readLock().lock();
+        try {
+            return database.wrapGroups(group.getGroups());
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int getGroupsCount() {
+        database.readLock().lock();
+        try {
+            return group.getGroupsCount();
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public ConcurrentGroup addGroup(ConcurrentGroup child) {
+        database.writeLock().lock();
+        try {
+            database.changed(child.getDelegate());
+            database.changed(group);
+            return database.wrap(group.addGroup(child.getDelegate()));
+        } finally {
+            database.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<ConcurrentGroup> findGroups(String groupName) {
+        database.readLock().lock();
+        try {
+            return database.wrapGroups(group.findGroups(groupName));
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public ConcurrentGroup removeGroup(ConcurrentGroup child) {
+        database.writeLock().lock();
+        try {
+            database.changed(group);
+            return database.wrap(group.removeGroup(child.getDelegate()));
+        } finally {
+            database.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<ConcurrentEntry> getEntries() {
+        database.readLock().lock();
+        try {
+            return database.wrapEntries(group.getEntries());
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int getEntriesCount() {
+        database.readLock().lock();
+        try {
+            return group.getEntriesCount();
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<ConcurrentEntry> findEntries(String match, boolean recursive) {
+        database.readLock().lock();
+        try {
+            return database.wrapEntries(group.findEntries(match, recursive));
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<ConcurrentEntry> findEntries(Entry.Matcher matcher, boolean recursive) {
+        database.readLock().lock();
+        try {
+            return database.wrapEntries(group.findEntries(database.wrap(matcher), recursive));
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public ConcurrentEntry addEntry(ConcurrentEntry entry) {
+        database.writeLock().lock();
+        try {
+            database.changed(entry.getDelegate());
+            database.changed(group);
+            return database.wrap(group.addEntry(entry.getDelegate()));
+        } finally {
+            database.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public ConcurrentEntry removeEntry(ConcurrentEntry entry) {
+        database.writeLock().lock();
+        try {
+            database.changed(group);
+            return database.wrap(group.removeEntry(entry.getDelegate()));
+        } finally {
+            database.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void copy(Group<? extends Database, ? extends Group, ? extends Entry, ? extends Icon> parent) {
+        database.writeLock().lock();
+        try {
+            database.changed(group);
+            group.copy(parent instanceof ConcurrentGroup ? ((ConcurrentGroup) parent).getDelegate() : parent);
+        } finally {
+            database.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public String getPath() {
+        database.readLock().lock();
+        try {
+            return group.getPath();
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String getName() {
+        database.readLock().lock();
+        try {
+            return group.getName();
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void setName(String name) {
+        database.writeLock().lock();
+        try {
+            database.changed(group);
+            group.setName(name);
+        } finally {
+            database.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public UUID getUuid() {
+        database.readLock().lock();
+        try {
+            return group.getUuid();
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Icon getIcon() {
+        database.readLock().lock();
+        try {
+            return database.wrap(group.getIcon());
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void setIcon(ConcurrentIcon icon) {
+        database.writeLock().lock();
+        try {
+            database.changed(group);
+            group.setIcon(icon == null ? null : icon.getDelegate());
+        } finally {
+            database.writeLock().unlock();
+        }
+    }
+
+    @NotNull
+    @Override
+    public ConcurrentDatabase getDatabase() {
+        return database;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ConcurrentGroup && ((ConcurrentGroup) o).group.equals(group);
+    }
+
+    @Override
+    public int hashCode() {
+        return group.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        database.readLock().lock();
+        try {
+            return group.toString();
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+}
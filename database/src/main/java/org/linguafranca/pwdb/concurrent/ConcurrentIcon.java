@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.concurrent;
+
+import org.linguafranca.pwdb.Icon;
+
+/**
+ * An icon of a {@link ConcurrentDatabase}, accessed under the database's lock
+ *
+ * @author jo
+ */
+@SuppressWarnings("WeakerAccess")
+public class ConcurrentIcon implements Icon {
+
+    private final ConcurrentDatabase database;
+    private final Icon icon;
+
+    ConcurrentIcon(ConcurrentDatabase database, Icon icon) {
+        this.database = database;
+        this.icon = icon;
+    }
+
+    /**
+     * The underlying icon, which is not thread safe
+     */
+    public Icon getDelegate() {
+        return icon;
+    }
+
+    @Override
+    public int getIndex() {
+        database.readLock().lock();
+        try {
+            return icon.getIndex();
+        } finally {
+            database.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void setIndex(int index) {
+        database.writeLock().lock();
+        try {
+            icon.setIndex(index);
+        } finally {
+            database.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ConcurrentIcon && ((ConcurrentIcon) o).icon.equals(icon);
+    }
+
+    @Override
+    public int hashCode() {
+        return icon.hashCode();
+    }
+}
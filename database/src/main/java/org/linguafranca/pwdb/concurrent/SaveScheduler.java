@@ -0,0 +1,463 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.concurrent;
+
+import org.jetbrains.annotations.Nullable;
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.Database;
+
+import java.io.*;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Saves a database in the background some time after being asked to, so that a burst of changes
+ * results in a single save rather than one per change.
+ * <p>
+ * Each request for a save restarts the delay, but a save is never put off for longer than
+ * the maximum delay from the first request it covers, so a steady stream of changes still gets saved.
+ * A save is skipped if the database is not {@link Database#isDirty() dirty} when it comes to be done.
+ * <p>
+ * Saves are done on a single background thread, to a temporary file in the same directory as the
+ * destination, which is synced to disk and then renamed over the destination, so that the destination
+ * always contains either the previous or the new version of the database in full.
+ * <p>
+ * The database must not be changed while a save is in progress. Either supply a lock that is held by anything
+ * changing the database, which is also held while saving, or use a database that takes care of that itself,
+ * such as a {@link ConcurrentDatabase}.
+ *
+ * @author jo
+ */
+@SuppressWarnings("WeakerAccess")
+public class SaveScheduler implements Closeable {
+
+    /**
+     * The size of the buffer used when saving to a file
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    private final Database<?, ?, ?, ?> database;
+    private final Credentials credentials;
+    private final Path path;
+    private final long delayMillis;
+    private final long maxDelayMillis;
+    private final Lock saveLock;
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "pwdb-save-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // the following are guarded by this
+    private ScheduledFuture<?> scheduled;
+    // when the first request not yet covered by a save was made, 0 if none
+    private long firstRequestNanos;
+    // requests not yet covered by a save
+    private long pendingRequests;
+    private boolean saving;
+    private long requestCount;
+    private long saveCount;
+    private long coalescedCount;
+    private long skippedCount;
+    private long failureCount;
+    private Throwable lastFailure;
+
+    private final Callable<Void> scheduledSave = new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+            runSave();
+            return null;
+        }
+    };
+
+    /**
+     * Save to a file, waiting at most ten times the delay for a save
+     *
+     * @param database    the database to save
+     * @param credentials the credentials to save it with
+     * @param path        the file to save to
+     * @param delayMillis how long to wait for further changes before saving
+     */
+    public SaveScheduler(Database<?, ?, ?, ?> database, Credentials credentials, Path path, long delayMillis) {
+        this(database, credentials, path, delayMillis, delayMillis * 10, null);
+    }
+
+    /**
+     * Save to a file
+     *
+     * @param database       the database to save
+     * @param credentials    the credentials to save it with
+     * @param path           the file to save to
+     * @param delayMillis    how long to wait for further changes before saving
+     * @param maxDelayMillis the longest to put off a save in the face of further changes
+     * @param saveLock       a lock held by anything changing the database, or null
+     */
+    public SaveScheduler(Database<?, ?, ?, ?> database, Credentials credentials, Path path,
+                         long delayMillis, long maxDelayMillis, @Nullable Lock saveLock) {
+        this.database = database;
+        this.credentials = credentials;
+        this.path = path;
+        this.delayMillis = delayMillis;
+        this.maxDelayMillis = Math.max(delayMillis, maxDelayMillis);
+        this.saveLock = saveLock;
+    }
+
+    /**
+     * For subclasses that override {@link #save()} to save somewhere other than a file
+     */
+    protected SaveScheduler(Database<?, ?, ?, ?> database, long delayMillis, long maxDelayMillis, @Nullable Lock saveLock) {
+        this(database, null, null, delayMillis, maxDelayMillis, saveLock);
+    }
+
+    /**
+     * Ask for the database to be saved once there have been no further requests for the delay,
+     * or the maximum delay has passed since the first request not yet saved
+     */
+    public synchronized void requestSave() {
+        if (executor.isShutdown()) {
+            throw new IllegalStateException("Save scheduler is closed");
+        }
+        requestCount++;
+        pendingRequests++;
+        long now = System.nanoTime();
+        if (firstRequestNanos == 0) {
+            firstRequestNanos = now;
+        }
+        long remainingMillis = maxDelayMillis - TimeUnit.NANOSECONDS.toMillis(now - firstRequestNanos);
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
+        scheduled = executor.schedule(scheduledSave, Math.max(0, Math.min(delayMillis, remainingMillis)), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Save now if there are changes, waiting for the save to complete
+     *
+     * @throws IOException if the save fails
+     */
+    public void flush() throws IOException {
+        synchronized (this) {
+            if (executor.isShutdown()) {
+                return;
+            }
+            // so that this save is counted as covering any pending requests
+            if (scheduled != null) {
+                scheduled.cancel(false);
+                scheduled = null;
+            }
+        }
+        try {
+            executor.submit(scheduledSave).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for save");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Wait for any requested save to complete, without bringing it forward
+     *
+     * @return false if the timeout expired first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (pendingRequests > 0 || saving) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    /**
+     * Save any changes and stop the background thread. Further requests for a save are rejected.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void runSave() throws IOException {
+        synchronized (this) {
+            if (pendingRequests > 1) {
+                coalescedCount += pendingRequests - 1;
+            }
+            pendingRequests = 0;
+            firstRequestNanos = 0;
+            scheduled = null;
+            saving = true;
+        }
+        boolean saved = false;
+        boolean skipped = false;
+        Throwable failure = null;
+        if (saveLock != null) {
+            saveLock.lock();
+        }
+        try {
+            if (database.isDirty()) {
+                save();
+                saved = true;
+            } else {
+                skipped = true;
+            }
+        } catch (Throwable t) {
+            failure = t;
+            throw t;
+        } finally {
+            if (saveLock != null) {
+                saveLock.unlock();
+            }
+            synchronized (this) {
+                saving = false;
+                saveCount += saved ? 1 : 0;
+                skippedCount += skipped ? 1 : 0;
+                if (failure != null) {
+                    failureCount++;
+                    lastFailure = failure;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Save the database, called on the background thread. Override to save somewhere other than a file.
+     *
+     * @throws IOException on error
+     */
+    protected void save() throws IOException {
+        saveAtomically(database, credentials, path);
+    }
+
+    /**
+     * The database being saved
+     */
+    protected Database<?, ?, ?, ?> getDatabase() {
+        return database;
+    }
+
+    /**
+     * The number of times a save has been requested
+     */
+    public synchronized long getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * The number of saves done
+     */
+    public synchronized long getSaveCount() {
+        return saveCount;
+    }
+
+    /**
+     * The number of requests that were covered by a save made for another request
+     */
+    public synchronized long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    /**
+     * The number of saves not done because the database had no changes
+     */
+    public synchronized long getSkippedCount() {
+        return skippedCount;
+    }
+
+    /**
+     * The number of saves that failed
+     */
+    public synchronized long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * The exception or error causing the most recent failure, or null if there hasn't been one
+     */
+    @Nullable
+    public synchronized Throwable getLastFailure() {
+        return lastFailure;
+    }
+
+    /**
+     * Save a database to a temporary file in the same directory as the destination, sync it to disk,
+     * then rename it over the destination
+     *
+     * @param database    the database to save
+     * @param credentials the credentials to save it with
+     * @param path        the destination
+     * @throws IOException on error, in which case the destination is unchanged
+     */
+    public static void saveAtomically(Database<?, ?, ?, ?> database, Credentials credentials, Path path) throws IOException {
+        saveAtomically(database, credentials, path, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Save a database to a temporary file in the same directory as the destination, sync it to disk,
+     * then rename it over the destination
+     *
+     * @param database    the database to save
+     * @param credentials the credentials to save it with
+     * @param path        the destination
+     * @param bufferSize  the size of the buffer written to the file
+     * @throws IOException on error, in which case the destination is unchanged
+     */
+    public static void saveAtomically(Database<?, ?, ?, ?> database, Credentials credentials, Path path, int bufferSize) throws IOException {
+        Path temp = saveToTempFile(database, credentials, path, bufferSize);
+        try {
+            replaceAtomically(temp, path);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Save a database to a new temporary file in the same directory as the destination, and sync it to disk,
+     * ready to be {@link #replaceAtomically renamed} over the destination
+     *
+     * @param database    the database to save
+     * @param credentials the credentials to save it with
+     * @param path        the destination
+     * @param bufferSize  the size of the buffer written to the file
+     * @return the temporary file, which the caller must delete if it doesn't rename it
+     * @throws IOException on error, in which case the temporary file has been deleted
+     */
+    public static Path saveToTempFile(Database<?, ?, ?, ?> database, Credentials credentials, Path path, int bufferSize) throws IOException {
+        Path target = path.toAbsolutePath();
+        Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+        boolean saved = false;
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ChannelOutputStream outputStream = new ChannelOutputStream(channel, bufferSize);
+                database.save(credentials, outputStream);
+                outputStream.flush();
+                channel.force(true);
+            }
+            saved = true;
+            return temp;
+        } finally {
+            if (!saved) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * Rename a file saved by {@link #saveToTempFile} over the destination, durably where the platform allows
+     *
+     * @param temp the temporary file
+     * @param path the destination
+     * @throws IOException on error
+     */
+    public static void replaceAtomically(Path temp, Path path) throws IOException {
+        Path target = path.toAbsolutePath();
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        syncDirectory(target.getParent());
+    }
+
+    /**
+     * Make a rename durable, on platforms that allow directories to be synced
+     */
+    private static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // e.g. Windows, which doesn't allow directories to be opened
+        }
+    }
+
+    /**
+     * Writes to a channel through a buffer. Databases close the stream they save to,
+     * but the channel needs to stay open to be synced, so closing only flushes.
+     */
+    private static class ChannelOutputStream extends OutputStream {
+        private final FileChannel channel;
+        private final ByteBuffer buffer;
+
+        ChannelOutputStream(FileChannel channel, int bufferSize) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                int count = Math.min(len, buffer.remaining());
+                buffer.put(b, off, count);
+                off += count;
+                len -= count;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // called through Buffer so as not to link to the covariant overrides added in Java 9
+            ((Buffer) buffer).flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            ((Buffer) buffer).clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
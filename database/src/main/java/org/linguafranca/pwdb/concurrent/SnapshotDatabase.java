@@ -0,0 +1,287 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.concurrent;
+
+import org.jetbrains.annotations.Nullable;
+import org.linguafranca.pwdb.*;
+import org.linguafranca.pwdb.base.AbstractDatabase;
+
+import java.io.OutputStream;
+import java.util.*;
+
+/**
+ * An immutable copy of a {@link Database}, which any number of threads may read without locking.
+ * <p>
+ * A snapshot is taken from any implementation using {@link #of(Database)}, via the {@link Group} and {@link Entry}
+ * interfaces. Taking a snapshot reads the whole database, so the database must not be changed while that is
+ * happening. {@link ConcurrentDatabase#snapshot()} takes care of that, and publishes a new snapshot after each change,
+ * reading only what has changed since the last one.
+ * <p>
+ * When a snapshot is taken with reference to a previous one, using {@link #of(Database, SnapshotDatabase)},
+ * the content of entries and groups that have not changed is shared with the previous snapshot rather than copied.
+ * <p>
+ * The groups and entries of a snapshot are created as they are first navigated to, and the index used to find
+ * them by UUID when it is first needed.
+ * <p>
+ * Any attempt to change a snapshot throws {@link UnsupportedOperationException}.
+ *
+ * @author jo
+ */
+@SuppressWarnings("WeakerAccess")
+public class SnapshotDatabase extends AbstractDatabase<SnapshotDatabase, SnapshotGroup, SnapshotEntry, SnapshotIcon> {
+
+    private final String name;
+    private final String description;
+    private final boolean recycleBinEnabled;
+    private final Map<String, Boolean> protectedProperties;
+    private final boolean supportsNonStandardPropertyNames;
+    private final boolean supportsBinaryProperties;
+    private final boolean supportsRecycleBin;
+    private final SnapshotGroup rootGroup;
+    private volatile Index index;
+
+    private SnapshotDatabase(Database<?, ?, ?, ?> database, SnapshotGroup.State root) {
+        this.name = database.getName();
+        this.description = database.getDescription();
+        this.recycleBinEnabled = database.isRecycleBinEnabled();
+        this.protectedProperties = new HashMap<>();
+        for (String propertyName : Entry.STANDARD_PROPERTY_NAMES) {
+            protectedProperties.put(propertyName, database.shouldProtect(propertyName));
+        }
+        this.supportsNonStandardPropertyNames = database.supportsNonStandardPropertyNames();
+        this.supportsBinaryProperties = database.supportsBinaryProperties();
+        this.supportsRecycleBin = database.supportsRecycleBin();
+        this.rootGroup = new SnapshotGroup(this, null, root, false);
+    }
+
+    /**
+     * Take a snapshot of a database
+     *
+     * @param database the database, which must not change while the snapshot is being taken
+     * @return a snapshot
+     */
+    public static SnapshotDatabase of(Database<?, ?, ?, ?> database) {
+        return of(database, null);
+    }
+
+    /**
+     * Take a snapshot of a database, sharing whatever hasn't changed with a previous snapshot of it. This still
+     * reads the whole database, comparing it with the previous snapshot, so saves memory but not time.
+     *
+     * @param database the database, which must not change while the snapshot is being taken
+     * @param previous a previous snapshot of the same database, or null
+     * @return a snapshot
+     */
+    public static SnapshotDatabase of(Database<?, ?, ?, ?> database, @Nullable SnapshotDatabase previous) {
+        Map<UUID, SnapshotGroup.State> previousGroups = new HashMap<>();
+        Map<UUID, SnapshotEntry.State> previousEntries = new HashMap<>();
+        if (previous != null) {
+            Index index = previous.index();
+            for (SnapshotGroup group : index.groups.values()) {
+                previousGroups.put(group.getUuid(), group.state);
+            }
+            for (SnapshotEntry entry : index.entries.values()) {
+                previousEntries.put(entry.getUuid(), entry.state);
+            }
+        }
+        return new SnapshotDatabase(database, SnapshotGroup.State.of(database.getRootGroup(), previousGroups, previousEntries));
+    }
+
+    /**
+     * Take a snapshot of a database, reading only the groups and entries that are known to have changed
+     * since a previous snapshot and sharing everything else with it
+     *
+     * @param database       the database, which must not change while the snapshot is being taken
+     * @param previous       the previous snapshot
+     * @param changedGroups  the groups that have changed since the previous snapshot, or contain something that has
+     * @param changedEntries the entries that have changed since the previous snapshot
+     * @return a snapshot
+     */
+    static SnapshotDatabase of(Database<?, ?, ?, ?> database, SnapshotDatabase previous,
+                               Set<UUID> changedGroups, Set<UUID> changedEntries) {
+        return new SnapshotDatabase(database, SnapshotGroup.State.of(database.getRootGroup(),
+                previous.rootGroup.state, changedGroups, changedEntries));
+    }
+
+    static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Database snapshots are read only");
+    }
+
+    /* several readers may build the index at once, which does no harm since they all build the same one */
+    private Index index() {
+        Index result = index;
+        if (result == null) {
+            result = new Index(rootGroup);
+            index = result;
+        }
+        return result;
+    }
+
+    @Override
+    public SnapshotGroup getRootGroup() {
+        return rootGroup;
+    }
+
+    @Override
+    public SnapshotGroup newGroup() {
+        throw readOnly();
+    }
+
+    @Override
+    public SnapshotEntry newEntry() {
+        throw readOnly();
+    }
+
+    @Override
+    public SnapshotIcon newIcon() {
+        throw readOnly();
+    }
+
+    @Override
+    public SnapshotIcon newIcon(Integer i) {
+        throw readOnly();
+    }
+
+    /**
+     * Entries in the recycle bin are not found, as for other implementations
+     */
+    @Override
+    public SnapshotEntry findEntry(UUID uuid) {
+        SnapshotEntry entry = index().entries.get(uuid);
+        return entry == null || entry.inRecycleBin ? null : entry;
+    }
+
+    @Override
+    public boolean deleteEntry(UUID uuid) {
+        throw readOnly();
+    }
+
+    /**
+     * The recycle bin is found but groups it contains are not, as for other implementations
+     */
+    @Override
+    public SnapshotGroup findGroup(UUID uuid) {
+        SnapshotGroup group = index().groups.get(uuid);
+        return group == null || group.inRecycleBin ? null : group;
+    }
+
+    @Override
+    public boolean deleteGroup(UUID uuid) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean isRecycleBinEnabled() {
+        return recycleBinEnabled;
+    }
+
+    @Override
+    public void enableRecycleBin(boolean enable) {
+        throw readOnly();
+    }
+
+    /**
+     * The recycle bin, if there was one when the snapshot was taken
+     */
+    @Nullable
+    @Override
+    public SnapshotGroup getRecycleBin() {
+        return index().recycleBin;
+    }
+
+    @Override
+    public void emptyRecycleBin() {
+        throw readOnly();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void setName(String name) {
+        throw readOnly();
+    }
+
+    @Override
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public void setDescription(String description) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean isDirty() {
+        return false;
+    }
+
+    @Override
+    public void save(Credentials credentials, OutputStream outputStream) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean shouldProtect(String propertyName) {
+        Boolean result = protectedProperties.get(propertyName);
+        return result != null && result;
+    }
+
+    @Override
+    public boolean supportsNonStandardPropertyNames() {
+        return supportsNonStandardPropertyNames;
+    }
+
+    @Override
+    public boolean supportsBinaryProperties() {
+        return supportsBinaryProperties;
+    }
+
+    @Override
+    public boolean supportsRecycleBin() {
+        return supportsRecycleBin;
+    }
+
+    /**
+     * The groups and entries of a snapshot by UUID
+     */
+    private static class Index {
+        final Map<UUID, SnapshotEntry> entries = new HashMap<>();
+        final Map<UUID, SnapshotGroup> groups = new HashMap<>();
+        SnapshotGroup recycleBin;
+
+        Index(SnapshotGroup root) {
+            add(root);
+        }
+
+        private void add(SnapshotGroup group) {
+            groups.put(group.getUuid(), group);
+            if (group.isRecycleBin()) {
+                recycleBin = group;
+            }
+            for (SnapshotEntry entry : group.getEntries()) {
+                entries.put(entry.getUuid(), entry);
+            }
+            for (SnapshotGroup child : group.getGroups()) {
+                add(child);
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.concurrent;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.linguafranca.pwdb.Entry;
+import org.linguafranca.pwdb.base.AbstractEntry;
+
+import java.util.*;
+
+/**
+ * An entry of a {@link SnapshotDatabase}, which is immutable and so may be read by any number of threads without locking
+ *
+ * @author jo
+ */
+@SuppressWarnings("WeakerAccess")
+public class SnapshotEntry extends AbstractEntry<SnapshotDatabase, SnapshotGroup, SnapshotEntry, SnapshotIcon> {
+
+    private final SnapshotGroup parent;
+    final State state;
+    final boolean inRecycleBin;
+
+    SnapshotEntry(SnapshotGroup parent, State state, boolean inRecycleBin) {
+        this.parent = parent;
+        this.state = state;
+        this.inRecycleBin = inRecycleBin;
+    }
+
+    @Override
+    public char[] getProperty(String name) {
+        String value = state.properties.get(name);
+        return value == null ? null : value.toCharArray();
+    }
+
+    @Override
+    public void setProperty(String name, String value) {
+        throw SnapshotDatabase.readOnly();
+    }
+
+    @Override
+    public boolean removeProperty(String name) {
+        throw SnapshotDatabase.readOnly();
+    }
+
+    @Override
+    public List<String> getPropertyNames() {
+        return new ArrayList<>(state.properties.keySet());
+    }
+
+    @Override
+    public byte[] getBinaryProperty(String name) {
+        byte[] value = state.binaries.get(name);
+        return value == null ? null : value.clone();
+    }
+
+    @Override
+    public void setBinaryProperty(String name, byte[] value) {
+        throw SnapshotDatabase.readOnly();
+    }
+
+    @Override
+    public boolean removeBinaryProperty(String name) {
+        throw SnapshotDatabase.readOnly();
+    }
+
+    @Override
+    public List<String> getBinaryPropertyNames() {
+        return new ArrayList<>(state.binaries.keySet());
+    }
+
+    @Nullable
+    @Override
+    public SnapshotGroup getParent() {
+        return parent;
+    }
+
+    @NotNull
+    @Override
+    public UUID getUuid() {
+        return state.uuid;
+    }
+
+    @Override
+    public SnapshotIcon getIcon() {
+        return new SnapshotIcon(state.iconIndex);
+    }
+
+    @Override
+    public void setIcon(SnapshotIcon icon) {
+        throw SnapshotDatabase.readOnly();
+    }
+
+    @Override
+    public Date getLastAccessTime() {
+        return toDate(state.lastAccessTime);
+    }
+
+    @Override
+    public Date getCreationTime() {
+        return toDate(state.creationTime);
+    }
+
+    @Override
+    public boolean getExpires() {
+        return state.expires;
+    }
+
+    @Override
+    public void setExpires(boolean expires) {
+        throw SnapshotDatabase.readOnly();
+    }
+
+    @Override
+    public Date getExpiryTime() {
+        return toDate(state.expiryTime);
+    }
+
+    @Override
+    public void setExpiryTime(Date expiryTime) {
+        throw SnapshotDatabase.readOnly();
+    }
+
+    @Override
+    public Date getLastModificationTime() {
+        return toDate(state.lastModificationTime);
+    }
+
+    @Override
+    protected void touch() {
+        throw SnapshotDatabase.readOnly();
+    }
+
+    private static Date toDate(Long time) {
+        return time == null ? null : new Date(time);
+    }
+
+    private static Long fromDate(Date date) {
+        return date == null ? null : date.getTime();
+    }
+
+    /**
+     * The content of an entry, shared between successive snapshots for as long as the entry doesn't change
+     */
+    static class State {
+        final UUID uuid;
+        final Map<String, String> properties;
+        final Map<String, byte[]> binaries;
+        final int iconIndex;
+        final Long lastAccessTime;
+        final Long creationTime;
+        final boolean expires;
+        final Long expiryTime;
+        final Long lastModificationTime;
+
+        private State(Entry<?, ?, ?, ?> entry, Map<String, String> properties, Map<String, byte[]> binaries) {
+            this.uuid = entry.getUuid();
+            this.properties = properties;
+            this.binaries = binaries;
+            this.iconIndex = entry.getIcon().getIndex();
+            this.lastAccessTime = fromDate(entry.getLastAccessTime());
+            this.creationTime = fromDate(entry.getCreationTime());
+            this.expires = entry.getExpires();
+            this.expiryTime = fromDate(entry.getExpiryTime());
+            this.lastModificationTime = fromDate(entry.getLastModificationTime());
+        }
+
+        /**
+         * Capture the state of an entry, returning the previous state if it is unchanged
+         *
+         * @param entry    the entry to capture
+         * @param previous the state of the entry in a previous snapshot, or null
+         */
+        static State of(Entry<?, ?, ?, ?> entry, @Nullable State previous) {
+            Map<String, String> properties = new LinkedHashMap<>();
+            for (String name : entry.getPropertyNames()) {
+                char[] value = entry.getProperty(name);
+                properties.put(name, value == null ? null : String.valueOf(value));
+            }
+            Map<String, byte[]> binaries = new LinkedHashMap<>();
+            try {
+                for (String name : entry.getBinaryPropertyNames()) {
+                    binaries.put(name, entry.getBinaryProperty(name));
+                }
+            } catch (UnsupportedOperationException e) {
+                // no binaries then
+            }
+            if (previous != null && previous.matches(entry, properties, binaries)) {
+                return previous;
+            }
+            return new State(entry, Collections.unmodifiableMap(properties), Collections.unmodifiableMap(binaries));
+        }
+
+        private boolean matches(Entry<?, ?, ?, ?> entry, Map<String, String> properties, Map<String, byte[]> binaries) {
+            if (!uuid.equals(entry.getUuid()) || !this.properties.equals(properties) ||
+                    !this.binaries.keySet().equals(binaries.keySet())) {
+                return false;
+            }
+            for (Map.Entry<String, byte[]> binary : binaries.entrySet()) {
+                if (!Arrays.equals(this.binaries.get(binary.getKey()), binary.getValue())) {
+                    return false;
+                }
+            }
+            return iconIndex == entry.getIcon().getIndex() &&
+                    expires == entry.getExpires() &&
+                    Objects.equals(lastAccessTime, fromDate(entry.getLastAccessTime())) &&
+                    Objects.equals(creationTime, fromDate(entry.getCreationTime())) &&
+                    Objects.equals(expiryTime, fromDate(entry.getExpiryTime())) &&
+                    Objects.equals(lastModificationTime, fromDate(entry.getLastModificationTime()));
+        }
+    }
+}
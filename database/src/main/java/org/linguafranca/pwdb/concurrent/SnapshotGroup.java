@@ -0,0 +1,291 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.concurrent;
+
+import org.jetbrains.annotations.NotNull;
+import org.linguafranca.pwdb.*;
+import org.linguafranca.pwdb.base.AbstractGroup;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * A group of a {@link SnapshotDatabase}, which is immutable and so may be read by any number of threads without locking
+ *
+ * @author jo
+ */
+@SuppressWarnings("WeakerAccess")
+public class SnapshotGroup extends AbstractGroup<SnapshotDatabase, SnapshotGroup, SnapshotEntry, SnapshotIcon> {
+
+    private final SnapshotDatabase database;
+    private final SnapshotGroup parent;
+    final State state;
+    final boolean inRecycleBin;
+    // created when first asked for
+    private volatile List<SnapshotGroup> groups;
+    private volatile List<SnapshotEntry> entries;
+
+    SnapshotGroup(SnapshotDatabase database, @Nullable SnapshotGroup parent, State state, boolean inRecycleBin) {
+        this.database = database;
+        this.parent = parent;
+        this.state = state;
+        this.inRecycleBin = inRecycleBin;
+    }
+
+    @Override
+    public boolean isRootGroup() {
+        return state.root;
+    }
+
+    @Override
+    public boolean isRecycleBin() {
+        return state.recycleBin;
+    }
+
+    @Nullable
+    @Override
+    public SnapshotGroup getParent() {
+        return parent;
+    }
+
+    @Override
+    public void setParent(SnapshotGroup parent) {
+        throw SnapshotDatabase.readOnly();
+    }
+
+    @Override
+    public List<SnapshotGroup> getGroups() {
+        List<SnapshotGroup> result = groups;
+        if (result == null) {
+            // the same groups must be returned to every reader
+            synchronized (this) {
+                result = groups;
+                if (result == null) {
+                    result = new ArrayList<>(state.groups.size());
+                    for (State group : state.groups) {
+                        result.add(new SnapshotGroup(database, this, group, inRecycleBin || state.recycleBin));
+                    }
+                    result = Collections.unmodifiableList(result);
+                    groups = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int getGroupsCount() {
+        return state.groups.size();
+    }
+
+    @Override
+    public SnapshotGroup addGroup(SnapshotGroup group) {
+        throw SnapshotDatabase.readOnly();
+    }
+
+    @Override
+    public SnapshotGroup removeGroup(SnapshotGroup group) {
+        throw SnapshotDatabase.readOnly();
+    }
+
+    @Override
+    public List<SnapshotEntry> getEntries() {
+        List<SnapshotEntry> result = entries;
+        if (result == null) {
+            synchronized (this) {
+                result = entries;
+                if (result == null) {
+                    result = new ArrayList<>(state.entries.size());
+                    for (SnapshotEntry.State entry : state.entries) {
+                        result.add(new SnapshotEntry(this, entry, inRecycleBin || state.recycleBin));
+                    }
+                    result = Collections.unmodifiableList(result);
+                    entries = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int getEntriesCount() {
+        return state.entries.size();
+    }
+
+    @Override
+    public SnapshotEntry addEntry(SnapshotEntry entry) {
+        throw SnapshotDatabase.readOnly();
+    }
+
+    @Override
+    public SnapshotEntry removeEntry(SnapshotEntry entry) {
+        throw SnapshotDatabase.readOnly();
+    }
+
+    @Override
+    public void copy(Group<? extends Database, ? extends Group, ? extends Entry, ? extends Icon> parent) {
+        throw SnapshotDatabase.readOnly();
+    }
+
+    @Override
+    public String getName() {
+        return state.name;
+    }
+
+    @Override
+    public void setName(String name) {
+        throw SnapshotDatabase.readOnly();
+    }
+
+    @Override
+    public UUID getUuid() {
+        return state.uuid;
+    }
+
+    @Override
+    public SnapshotIcon getIcon() {
+        return new SnapshotIcon(state.iconIndex);
+    }
+
+    @Override
+    public void setIcon(SnapshotIcon icon) {
+        throw SnapshotDatabase.readOnly();
+    }
+
+    @NotNull
+    @Override
+    public SnapshotDatabase getDatabase() {
+        return database;
+    }
+
+    /**
+     * The content of a group, shared between successive snapshots for as long as neither it nor anything it
+     * contains changes
+     */
+    static class State {
+        final UUID uuid;
+        final String name;
+        final int iconIndex;
+        final boolean root;
+        final boolean recycleBin;
+        final List<State> groups;
+        final List<SnapshotEntry.State> entries;
+
+        private State(Group<?, ?, ?, ?> group, List<State> groups, List<SnapshotEntry.State> entries) {
+            this.uuid = group.getUuid();
+            this.name = group.getName();
+            this.iconIndex = group.getIcon().getIndex();
+            this.root = group.isRootGroup();
+            this.recycleBin = group.isRecycleBin();
+            this.groups = groups;
+            this.entries = entries;
+        }
+
+        /**
+         * Capture the state of a group and everything it contains, reusing unchanged state from a previous snapshot
+         *
+         * @param group           the group to capture
+         * @param previousGroups  the states of groups in a previous snapshot, by UUID
+         * @param previousEntries the states of entries in a previous snapshot, by UUID
+         */
+        static State of(Group<?, ?, ?, ?> group, Map<UUID, State> previousGroups,
+                        Map<UUID, SnapshotEntry.State> previousEntries) {
+            State previous = previousGroups.get(group.getUuid());
+            boolean unchanged = previous != null;
+
+            List<SnapshotEntry.State> entries = new ArrayList<>(group.getEntriesCount());
+            for (Entry<?, ?, ?, ?> entry : group.getEntries()) {
+                entries.add(SnapshotEntry.State.of(entry, previousEntries.get(entry.getUuid())));
+            }
+            List<State> groups = new ArrayList<>(group.getGroupsCount());
+            for (Group<?, ?, ?, ?> child : group.getGroups()) {
+                groups.add(of(child, previousGroups, previousEntries));
+            }
+
+            if (unchanged) {
+                unchanged = sameElements(previous.entries, entries) && sameElements(previous.groups, groups) &&
+                        (previous.name == null ? group.getName() == null : previous.name.equals(group.getName())) &&
+                        previous.iconIndex == group.getIcon().getIndex() &&
+                        previous.root == group.isRootGroup() &&
+                        previous.recycleBin == group.isRecycleBin();
+            }
+            if (unchanged) {
+                return previous;
+            }
+            return new State(group, Collections.unmodifiableList(groups), Collections.unmodifiableList(entries));
+        }
+
+        /**
+         * Capture the state of a group again, reading only the groups and entries that are known to have changed
+         * since a previous snapshot and reusing the previous state of everything else
+         *
+         * @param group          the group to capture
+         * @param previous       the state of the group in the previous snapshot, or null if it wasn't there
+         * @param changedGroups  the groups that have changed, or contain something that has
+         * @param changedEntries the entries that have changed
+         */
+        static State of(Group<?, ?, ?, ?> group, @Nullable State previous,
+                        Set<UUID> changedGroups, Set<UUID> changedEntries) {
+            if (previous != null && !changedGroups.contains(previous.uuid)) {
+                return previous;
+            }
+            Map<UUID, SnapshotEntry.State> previousEntries = new HashMap<>();
+            Map<UUID, State> previousGroups = new HashMap<>();
+            if (previous != null) {
+                for (SnapshotEntry.State entry : previous.entries) {
+                    previousEntries.put(entry.uuid, entry);
+                }
+                for (State child : previous.groups) {
+                    previousGroups.put(child.uuid, child);
+                }
+            }
+
+            List<SnapshotEntry.State> entries = new ArrayList<>(group.getEntriesCount());
+            for (Entry<?, ?, ?, ?> entry : group.getEntries()) {
+                SnapshotEntry.State state = previousEntries.get(entry.getUuid());
+                if (state == null || changedEntries.contains(state.uuid)) {
+                    state = SnapshotEntry.State.of(entry, null);
+                }
+                entries.add(state);
+            }
+            List<State> groups = new ArrayList<>(group.getGroupsCount());
+            for (Group<?, ?, ?, ?> child : group.getGroups()) {
+                groups.add(of(child, previousGroups.get(child.getUuid()), changedGroups, changedEntries));
+            }
+            return new State(group, Collections.unmodifiableList(groups), Collections.unmodifiableList(entries));
+        }
+
+        /* true if both lists contain the same objects in the same order */
+        private static boolean sameElements(List<?> a, List<?> b) {
+            if (a.size() != b.size()) {
+                return false;
+            }
+            for (int i = 0; i < a.size(); i++) {
+                if (a.get(i) != b.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.concurrent;
+
+import org.linguafranca.pwdb.Icon;
+
+/**
+ * An icon of a {@link SnapshotDatabase}, which is immutable
+ *
+ * @author jo
+ */
+@SuppressWarnings("WeakerAccess")
+public class SnapshotIcon implements Icon {
+
+    private final int index;
+
+    SnapshotIcon(int index) {
+        this.index = index;
+    }
+
+    @Override
+    public int getIndex() {
+        return index;
+    }
+
+    @Override
+    public void setIndex(int index) {
+        throw SnapshotDatabase.readOnly();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof SnapshotIcon && ((SnapshotIcon) o).index == index;
+    }
+
+    @Override
+    public int hashCode() {
+        return index;
+    }
+}
@@ -8,11 +8,21 @@ import org.bouncycastle.crypto.paddings.PaddedBufferedBlockCipher;
 import org.bouncycastle.crypto.params.KeyParameter;
 import org.bouncycastle.crypto.params.ParametersWithIV;
 
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.SecureRandom;
+import java.util.Arrays;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 
 import static org.linguafranca.pwdb.security.Aes.KdfKeys.ParamRounds;
 import static org.linguafranca.pwdb.security.Aes.KdfKeys.ParamSeed;
@@ -27,12 +37,8 @@ public class Aes implements CipherAlgorithm, KeyDerivationFunction {
 
     /** UUID specifying that AES is to be used as the Key Derivation Function in KDBX */
     private static final UUID KDF = UUID.fromString("C9D9F39A-628A-4460-BF74-0D08C18A4FEA");
-    private static VariantDictionary kdfParameters = new VariantDictionary((short) 1);
-    static {
-        kdfParameters.putUuid("$UUID", KDF);
-        kdfParameters.putLong(ParamRounds, 60000L);
-        kdfParameters.putByteArray(ParamSeed, SecureRandom.getSeed(32));
-    }
+    public static final long DEFAULT_ROUNDS = 60000L;
+    private static final SecureRandom random = new SecureRandom();
 
     /** v4 variant dictionary keys for use of AES as the KDF */
     public static class KdfKeys {
@@ -51,12 +57,49 @@ public class Aes implements CipherAlgorithm, KeyDerivationFunction {
         return instance;
     }
 
+    /** the rounds used for new files, see {@link KdfCalibration} */
+    private volatile long defaultRounds = DEFAULT_ROUNDS;
+
+    /**
+     * The number of rounds of key transformation used for new files
+     */
+    public long getDefaultRounds() {
+        return defaultRounds;
+    }
+
+    /**
+     * Set the number of rounds of key transformation used for new files
+     * @param rounds the number of rounds
+     */
+    public void setDefaultRounds(long rounds) {
+        if (rounds < 1) {
+            throw new IllegalArgumentException("Rounds must be positive");
+        }
+        this.defaultRounds = rounds;
+    }
+
     /**
-     * get a copy of the Aes Variant dictionary
-     * @return a copy
+     * Create an Aes Variant dictionary with the {@link #getDefaultRounds() default rounds} and a fresh seed
+     * @return a new dictionary
      */
     public static VariantDictionary createKdfParameters() {
-        return kdfParameters.copy();
+        byte[] seed = new byte[32];
+        random.nextBytes(seed);
+        return createKdfParameters(seed, instance.defaultRounds);
+    }
+
+    /**
+     * Create an Aes Variant dictionary from the V3 header fields
+     * @param transformSeed the seed
+     * @param transformRounds number of rounds
+     * @return a new dictionary
+     */
+    public static VariantDictionary createKdfParameters(byte[] transformSeed, long transformRounds) {
+        VariantDictionary kdfParameters = new VariantDictionary((short) 1);
+        kdfParameters.putUuid("$UUID", KDF);
+        kdfParameters.putLong(ParamRounds, transformRounds);
+        kdfParameters.putByteArray(ParamSeed, transformSeed);
+        return kdfParameters;
     }
 
 
@@ -100,22 +143,150 @@ public class Aes implements CipherAlgorithm, KeyDerivationFunction {
      * @param transformRounds number of rounds
      * @return a transformed key
      */
-    public static byte[] getTransformedKey(byte[] key, byte [] transformSeed, long transformRounds) {
-
-        AESEngine engine = new AESEngine();
-        engine.init(true, new KeyParameter(transformSeed));
+    public static byte[] getTransformedKey(byte[] key, final byte [] transformSeed, final long transformRounds) {
 
         // copy input key
-        byte[] transformedKey = new byte[key.length];
+        final byte[] transformedKey = new byte[key.length];
         System.arraycopy(key, 0, transformedKey, 0, transformedKey.length);
 
-        // transform rounds times
-        for (long rounds = 0; rounds < transformRounds; rounds++) {
-            engine.processBlock(transformedKey, 0, transformedKey, 0);
-            engine.processBlock(transformedKey, 16, transformedKey, 16);
+        // transform rounds times, the two halves being independent of each other
+        // if every helper thread is busy with other keys, the second half would only queue, so do it here instead
+        if (instance.parallel && transformRounds >= PARALLEL_MIN_ROUNDS && helpersFree.tryAcquire()) {
+            Future<?> secondHalf = getExecutor().submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        transform(transformedKey, 16, 16, transformSeed, transformRounds);
+                    } finally {
+                        helpersFree.release();
+                    }
+                }
+            });
+            try {
+                transform(transformedKey, 0, 16, transformSeed, transformRounds);
+                secondHalf.get();
+            } catch (InterruptedException e) {
+                // the helper isn't interrupted, it finishes its half and frees itself
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted transforming key", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        } else {
+            transform(transformedKey, 0, 32, transformSeed, transformRounds);
         }
 
         MessageDigest md = getSha256MessageDigestInstance();
-        return md.digest(transformedKey);
+        byte[] result = md.digest(transformedKey);
+        Arrays.fill(transformedKey, (byte) 0);
+        return result;
+    }
+
+    /**
+     * Whether the JCE's AES, which on most JVMs uses the processor's AES instructions, is used for
+     * key transformation. It isn't if the JCE doesn't allow 256 bit keys, in which case Bouncy Castle is used.
+     */
+    public static boolean isJceAvailable() {
+        return JCE_AVAILABLE;
+    }
+
+    /** fewer rounds than this take less time than handing half of them to another thread */
+    private static final long PARALLEL_MIN_ROUNDS = 10000L;
+
+    /** whether the halves of the key are transformed on separate threads */
+    private volatile boolean parallel = Runtime.getRuntime().availableProcessors() > 1;
+
+    /** one helper for each processor other than the calling thread's */
+    private static final int HELPERS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    /** a permit for each helper not currently transforming a key, so that a task is never queued */
+    private static final Semaphore helpersFree = new Semaphore(HELPERS);
+    private static ExecutorService executor;
+
+    /**
+     * Whether the two halves of the key are transformed on separate threads,
+     * by default if there is more than one processor
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /**
+     * Set whether the two halves of the key are transformed on separate threads
+     * @param parallel true to use a second thread
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(HELPERS, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "pwdb-aes-kdf");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    private static final String JCE_TRANSFORMATION = "AES/ECB/NoPadding";
+    private static final boolean JCE_AVAILABLE = checkJceAvailable();
+
+    private static boolean checkJceAvailable() {
+        try {
+            Cipher.getInstance(JCE_TRANSFORMATION).init(Cipher.ENCRYPT_MODE, new SecretKeySpec(new byte[32], "AES"));
+            return true;
+        } catch (GeneralSecurityException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Transform blocks of the key in place
+     */
+    private static void transform(byte[] key, int offset, int length, byte[] transformSeed, long transformRounds) {
+        if (JCE_AVAILABLE) {
+            transformJce(key, offset, length, transformSeed, transformRounds);
+        } else {
+            transformBouncyCastle(key, offset, length, transformSeed, transformRounds);
+        }
+    }
+
+    /**
+     * Encrypt all the blocks with each call to the cipher, alternating between two arrays,
+     * since the cipher copies its input if it overlaps its output
+     */
+    private static void transformJce(byte[] key, int offset, int length, byte[] transformSeed, long transformRounds) {
+        byte[] input = Arrays.copyOfRange(key, offset, offset + length);
+        byte[] output = new byte[length];
+        try {
+            Cipher cipher = Cipher.getInstance(JCE_TRANSFORMATION);
+            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(transformSeed, "AES"));
+            for (long rounds = 0; rounds < transformRounds; rounds++) {
+                cipher.update(input, 0, length, output, 0);
+                byte[] swap = input;
+                input = output;
+                output = swap;
+            }
+            System.arraycopy(input, 0, key, offset, length);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            Arrays.fill(input, (byte) 0);
+            Arrays.fill(output, (byte) 0);
+        }
+    }
+
+    private static void transformBouncyCastle(byte[] key, int offset, int length, byte[] transformSeed, long transformRounds) {
+        AESEngine engine = new AESEngine();
+        engine.init(true, new KeyParameter(transformSeed));
+        for (long rounds = 0; rounds < transformRounds; rounds++) {
+            for (int block = offset; block < offset + length; block += 16) {
+                engine.processBlock(key, block, key, block);
+            }
+        }
     }
 }
@@ -1,8 +1,8 @@
 package org.linguafranca.pwdb.security;
 
+import java.security.SecureRandom;
 import java.util.UUID;
 
-import static com.kosprov.jargon2.api.Jargon2.*;
 import static org.linguafranca.pwdb.security.Argon2.VariantDictionaryKeys.*;
 
 
@@ -18,6 +18,16 @@ public class Argon2 implements KeyDerivationFunction {
      */
     private static final UUID argon2_kdf = UUID.fromString("EF636DDF-8C29-444B-91F7-A9A403E30A0C");
 
+    /**
+     * defaults as used by KeePass
+     */
+    public static final long DEFAULT_MEMORY = 64 * 1024 * 1024;
+    public static final long DEFAULT_ITERATIONS = 2;
+    public static final int DEFAULT_PARALLELISM = 2;
+    private static final int VERSION_13 = 0x13;
+
+    private static final SecureRandom random = new SecureRandom();
+
     /**
      * hide constructor
      */
@@ -30,6 +40,57 @@ public class Argon2 implements KeyDerivationFunction {
         return instance;
     }
 
+    /**
+     * the costs used for new files, see {@link KdfCalibration}, replaced together
+     * so that a reader doesn't see a mixture
+     */
+    private volatile long[] defaults = {DEFAULT_MEMORY, DEFAULT_ITERATIONS, DEFAULT_PARALLELISM};
+
+    private volatile Argon2Backend backend = new Jargon2Backend();
+
+    /**
+     * The implementation of Argon2 in use, by default {@link Jargon2Backend}
+     */
+    public Argon2Backend getBackend() {
+        return backend;
+    }
+
+    /**
+     * Choose the implementation of Argon2, e.g. {@link JavaArgon2Backend}
+     */
+    public void setBackend(Argon2Backend backend) {
+        if (backend == null) {
+            throw new IllegalArgumentException("Backend must not be null");
+        }
+        this.backend = backend;
+    }
+
+    public long getDefaultMemory() {
+        return defaults[0];
+    }
+
+    public long getDefaultIterations() {
+        return defaults[1];
+    }
+
+    public int getDefaultParallelism() {
+        return (int) defaults[2];
+    }
+
+    /**
+     * Set the costs used for new files
+     *
+     * @param memory      memory in bytes, at least 8KB per lane
+     * @param iterations  number of passes over the memory
+     * @param parallelism number of lanes
+     */
+    public void setDefaults(long memory, long iterations, int parallelism) {
+        if (parallelism < 1 || iterations < 1 || memory < 8 * 1024 * parallelism) {
+            throw new IllegalArgumentException("Argon2 costs out of range");
+        }
+        this.defaults = new long[]{memory, iterations, parallelism};
+    }
+
 
     /**
      * keys into the variant dictionary supplied as a KDBX header
@@ -51,26 +112,45 @@ public class Argon2 implements KeyDerivationFunction {
         return argon2_kdf;
     }
 
+    /**
+     * Create an Argon2 variant dictionary with the default costs and a fresh salt
+     *
+     * @return a new dictionary
+     */
+    public static VariantDictionary createKdfParameters() {
+        long[] costs = instance.defaults;
+        return createKdfParameters(costs[0], costs[1], (int) costs[2]);
+    }
+
+    /**
+     * Create an Argon2 variant dictionary with a fresh salt
+     *
+     * @param memory      memory in bytes
+     * @param iterations  number of passes over the memory
+     * @param parallelism number of lanes
+     * @return a new dictionary
+     */
+    public static VariantDictionary createKdfParameters(long memory, long iterations, int parallelism) {
+        VariantDictionary kdfParameters = new VariantDictionary((short) 1);
+        kdfParameters.putUuid("$UUID", argon2_kdf);
+        byte[] salt = new byte[32];
+        random.nextBytes(salt);
+        kdfParameters.putByteArray(paramSalt, salt);
+        kdfParameters.putInt(paramParallelism, parallelism);
+        kdfParameters.putLong(paramMemory, memory);
+        kdfParameters.putLong(paramIterations, iterations);
+        kdfParameters.putInt(paramVersion, VERSION_13);
+        return kdfParameters;
+    }
+
     @Override
     public byte[] getTransformedKey(byte[] digest, VariantDictionary argonParameterKeys) {
         byte bVersion = argonParameterKeys.mustGet(paramVersion).asByteArray()[0];
-        Version version = bVersion == 0x13 ? Version.V13 : Version.V10;
         byte[] salt = argonParameterKeys.mustGet(paramSalt).asByteArray();
         int parallelism = argonParameterKeys.mustGet(paramParallelism).asInteger();
-        int memoryCost = (int) argonParameterKeys.mustGet(paramMemory).asLong();
+        int memoryCost = (int) (argonParameterKeys.mustGet(paramMemory).asLong() / 1024); // block size 1024
         int timeCost = (int) argonParameterKeys.mustGet(paramIterations).asLong();
 
-        // Configure the hasher
-        Hasher hasher = jargon2Hasher()
-                .type(Type.ARGON2d)
-                .version(version)
-                .salt(salt)
-                .parallelism(parallelism)
-                .memoryCost(memoryCost / 1024) // block size 1024
-                .timeCost(timeCost)
-                .hashLength(32);
-
-        // do the hash
-        return hasher.password(digest).rawHash();
+        return backend.hash(digest, salt, parallelism, memoryCost, timeCost, bVersion == 0x13 ? 0x13 : 0x10, 32);
     }
 }
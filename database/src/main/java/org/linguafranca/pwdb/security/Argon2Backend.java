@@ -0,0 +1,25 @@
+package org.linguafranca.pwdb.security;
+
+/**
+ * An implementation of the Argon2d hash, as used by {@link Argon2} for key derivation.
+ * <p>
+ * Select an implementation using {@link Argon2#setBackend(Argon2Backend)}.
+ *
+ * @author jo
+ */
+public interface Argon2Backend {
+
+    /**
+     * Compute an Argon2d hash
+     *
+     * @param password    the data to hash
+     * @param salt        the salt
+     * @param parallelism the number of lanes
+     * @param memoryKiB   the memory cost, in kibibytes, at least 8 per lane
+     * @param iterations  the number of passes over the memory
+     * @param version     0x10 or 0x13
+     * @param hashLength  the number of bytes of hash to produce
+     * @return the hash
+     */
+    byte[] hash(byte[] password, byte[] salt, int parallelism, int memoryKiB, int iterations, int version, int hashLength);
+}
@@ -131,13 +131,14 @@ public class Encryption {
 
     /**
      * A list of ciphers that we may apply to the database contents.
-     * Enum constants forward to underlying implementation.
+     * Enum constants forward to underlying implementation, which is the JCE one if the JCE supports the cipher,
+     * or the Bouncy Castle one if not.
      */
     public enum Cipher implements CipherAlgorithm {
-        CHACHA(ChaCha.getInstance()),
-        AES(Aes.getInstance());
+        CHACHA(ChaCha.getInstance(), JceChaCha.getInstance()),
+        AES(Aes.getInstance(), JceAes.getInstance());
 
-        private final CipherAlgorithm ef;
+        private volatile CipherAlgorithm ef;
 
         /**
          * Find a cipher that matches this Uuid
@@ -155,8 +156,33 @@ public class Encryption {
             throw new IllegalArgumentException("Unknown Cipher UUID");
         }
 
-        Cipher(CipherAlgorithm ef) {
-            this.ef = ef;
+        Cipher(CipherAlgorithm ef, JceCipherAlgorithm jce) {
+            this.ef = jce.isAvailable() ? jce : ef;
+        }
+
+        /**
+         * The implementation this cipher forwards to
+         */
+        public CipherAlgorithm getImplementation() {
+            return ef;
+        }
+
+        /**
+         * Choose the implementation this cipher forwards to, e.g. {@link Aes} to use Bouncy Castle rather than
+         * {@link JceAes}
+         *
+         * @param implementation an implementation of the same cipher
+         * @throws IllegalArgumentException if the implementation is of a different cipher, is itself one of these,
+         * or is a JCE implementation the JCE doesn't support
+         */
+        public void setImplementation(CipherAlgorithm implementation) {
+            if (implementation instanceof Cipher || !implementation.getCipherUuid().equals(ef.getCipherUuid())) {
+                throw new IllegalArgumentException("Implementation is of a different cipher");
+            }
+            if (implementation instanceof JceCipherAlgorithm && !((JceCipherAlgorithm) implementation).isAvailable()) {
+                throw new IllegalArgumentException("Implementation is not supported by the JCE");
+            }
+            this.ef = implementation;
         }
 
         @Override
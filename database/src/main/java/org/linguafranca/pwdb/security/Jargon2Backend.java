@@ -0,0 +1,25 @@
+package org.linguafranca.pwdb.security;
+
+import static com.kosprov.jargon2.api.Jargon2.*;
+
+/**
+ * Argon2 using the jargon2 API, which uses whichever jargon2 backend is on the classpath,
+ * by default the native reference implementation
+ *
+ * @author jo
+ */
+public class Jargon2Backend implements Argon2Backend {
+
+    @Override
+    public byte[] hash(byte[] password, byte[] salt, int parallelism, int memoryKiB, int iterations, int version, int hashLength) {
+        Hasher hasher = jargon2Hasher()
+                .type(Type.ARGON2d)
+                .version(version == 0x13 ? Version.V13 : Version.V10)
+                .salt(salt)
+                .parallelism(parallelism)
+                .memoryCost(memoryKiB)
+                .timeCost(iterations)
+                .hashLength(hashLength);
+        return hasher.password(password).rawHash();
+    }
+}
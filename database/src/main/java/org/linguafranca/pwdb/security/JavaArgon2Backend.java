@@ -0,0 +1,454 @@
+package org.linguafranca.pwdb.security;
+
+import org.bouncycastle.crypto.digests.Blake2bDigest;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pure Java implementation of Argon2d (RFC 9106) which fills the lanes of each slice in parallel,
+ * on up to a given number of threads, and holds its memory outside the Java heap.
+ * <p>
+ * The memory is zeroed once the hash has been computed. Since it is allocated as direct buffers, it is returned
+ * to the operating system when they are collected, which doesn't depend on there being pressure on the heap.
+ *
+ * @author jo
+ */
+@SuppressWarnings("WeakerAccess")
+public class JavaArgon2Backend implements Argon2Backend {
+
+    private static final int BLOCK_SIZE = 1024;
+    private static final int QWORDS_IN_BLOCK = BLOCK_SIZE / 8;
+    private static final int SYNC_POINTS = 4;
+    private static final int PREHASH_DIGEST_LENGTH = 64;
+    private static final int TYPE_D = 0;
+    private static final int VERSION_10 = 0x10;
+
+    /* lanes are held in chunks of at most this many blocks, so that a chunk fits in a buffer */
+    private static final int CHUNK_SHIFT = 20;
+    private static final int CHUNK_BLOCKS = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_BLOCKS - 1;
+
+    private static final long[] ZERO_BLOCK = new long[QWORDS_IN_BLOCK];
+
+    private final int threads;
+    // guarded by this
+    private ExecutorService executor;
+
+    /**
+     * Use as many threads as there are processors
+     */
+    public JavaArgon2Backend() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads the most threads to fill lanes on, including the calling thread
+     */
+    public JavaArgon2Backend(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be positive");
+        }
+        this.threads = threads;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    @Override
+    public byte[] hash(byte[] password, byte[] salt, int parallelism, int memoryKiB, int iterations, int version, int hashLength) {
+        if (parallelism < 1 || iterations < 1 || hashLength < 4 || memoryKiB < 2 * SYNC_POINTS * parallelism) {
+            throw new IllegalArgumentException("Argon2 parameters out of range");
+        }
+        final Instance instance = new Instance(parallelism, memoryKiB / (SYNC_POINTS * parallelism), version);
+        final byte[] h0 = initialHash(password, salt, parallelism, memoryKiB, iterations, version, hashLength);
+        try {
+            runLanes(instance, new LaneTask() {
+                @Override
+                public void run(int lane, LongBuffer[][] views) {
+                    fillFirstBlocks(views, h0, lane);
+                }
+            });
+            for (int pass = 0; pass < iterations; pass++) {
+                for (int slice = 0; slice < SYNC_POINTS; slice++) {
+                    final int currentPass = pass;
+                    final int currentSlice = slice;
+                    runLanes(instance, new LaneTask() {
+                        @Override
+                        public void run(int lane, LongBuffer[][] views) {
+                            fillSegment(instance, views, currentPass, currentSlice, lane);
+                        }
+                    });
+                }
+            }
+            return finalHash(instance, hashLength);
+        } finally {
+            Arrays.fill(h0, (byte) 0);
+            runLanes(instance, new LaneTask() {
+                @Override
+                public void run(int lane, LongBuffer[][] views) {
+                    wipe(views, lane);
+                }
+            });
+        }
+    }
+
+    /**
+     * The block matrix, and the shape of the computation
+     */
+    private static class Instance {
+        final int lanes;
+        final int segmentLength;
+        final int laneLength;
+        final int version;
+        final LongBuffer[][] memory;
+
+        Instance(int lanes, int segmentLength, int version) {
+            this.lanes = lanes;
+            this.segmentLength = segmentLength;
+            this.laneLength = segmentLength * SYNC_POINTS;
+            this.version = version;
+            this.memory = new LongBuffer[lanes][];
+            int chunks = (laneLength + CHUNK_BLOCKS - 1) / CHUNK_BLOCKS;
+            for (int lane = 0; lane < lanes; lane++) {
+                memory[lane] = new LongBuffer[chunks];
+                for (int chunk = 0; chunk < chunks; chunk++) {
+                    int blocks = Math.min(CHUNK_BLOCKS, laneLength - chunk * CHUNK_BLOCKS);
+                    memory[lane][chunk] = ByteBuffer.allocateDirect(blocks * BLOCK_SIZE)
+                            .order(ByteOrder.LITTLE_ENDIAN)
+                            .asLongBuffer();
+                }
+            }
+        }
+
+        /**
+         * Buffers for a thread's own use, since buffer positions are not thread safe
+         */
+        LongBuffer[][] views() {
+            LongBuffer[][] views = new LongBuffer[lanes][];
+            for (int lane = 0; lane < lanes; lane++) {
+                views[lane] = new LongBuffer[memory[lane].length];
+                for (int chunk = 0; chunk < memory[lane].length; chunk++) {
+                    views[lane][chunk] = memory[lane][chunk].duplicate();
+                }
+            }
+            return views;
+        }
+    }
+
+    private interface LaneTask {
+        void run(int lane, LongBuffer[][] views);
+    }
+
+    /**
+     * Run a task for each lane, on up to the number of threads allowed, returning when all are complete
+     */
+    private void runLanes(final Instance instance, final LaneTask task) {
+        int workers = Math.min(threads, instance.lanes);
+        if (workers == 1) {
+            LongBuffer[][] views = instance.views();
+            for (int lane = 0; lane < instance.lanes; lane++) {
+                task.run(lane, views);
+            }
+            return;
+        }
+        final AtomicInteger nextLane = new AtomicInteger();
+        Runnable worker = new Runnable() {
+            @Override
+            public void run() {
+                LongBuffer[][] views = instance.views();
+                int lane;
+                while ((lane = nextLane.getAndIncrement()) < instance.lanes) {
+                    task.run(lane, views);
+                }
+            }
+        };
+        ExecutorService executor = getExecutor();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 1; i < workers; i++) {
+            futures.add(executor.submit(worker));
+        }
+        try {
+            // the calling thread does its share
+            worker.run();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted computing Argon2", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threads - 1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "pwdb-argon2");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * H0, a digest of all the parameters
+     */
+    private static byte[] initialHash(byte[] password, byte[] salt, int parallelism, int memoryKiB, int iterations,
+                                      int version, int hashLength) {
+        Blake2bDigest digest = new Blake2bDigest(PREHASH_DIGEST_LENGTH * 8);
+        update(digest, parallelism);
+        update(digest, hashLength);
+        update(digest, memoryKiB);
+        update(digest, iterations);
+        update(digest, version);
+        update(digest, TYPE_D);
+        update(digest, password.length);
+        digest.update(password, 0, password.length);
+        update(digest, salt.length);
+        digest.update(salt, 0, salt.length);
+        // no secret
+        update(digest, 0);
+        // no associated data
+        update(digest, 0);
+        byte[] h0 = new byte[PREHASH_DIGEST_LENGTH];
+        digest.doFinal(h0, 0);
+        return h0;
+    }
+
+    private static void fillFirstBlocks(LongBuffer[][] views, byte[] h0, int lane) {
+        long[] block = new long[QWORDS_IN_BLOCK];
+        for (int i = 0; i < 2; i++) {
+            byte[] bytes = hashLong(BLOCK_SIZE, h0, littleEndian(i), littleEndian(lane));
+            ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(block);
+            write(views, lane, i, block);
+            Arrays.fill(bytes, (byte) 0);
+        }
+        Arrays.fill(block, 0);
+    }
+
+    private static void fillSegment(Instance instance, LongBuffer[][] views, int pass, int slice, int lane) {
+        long[] prev = new long[QWORDS_IN_BLOCK];
+        long[] ref = new long[QWORDS_IN_BLOCK];
+        long[] next = new long[QWORDS_IN_BLOCK];
+        long[] r = new long[QWORDS_IN_BLOCK];
+        boolean withXor = instance.version != VERSION_10 && pass != 0;
+
+        // the first two blocks of each lane were filled from H0
+        int startingIndex = pass == 0 && slice == 0 ? 2 : 0;
+        int currentIndex = slice * instance.segmentLength + startingIndex;
+        read(views, lane, currentIndex == 0 ? instance.laneLength - 1 : currentIndex - 1, prev);
+
+        for (int i = startingIndex; i < instance.segmentLength; i++, currentIndex++) {
+            long pseudoRandom = prev[0];
+            int refLane = pass == 0 && slice == 0 ? lane : (int) ((pseudoRandom >>> 32) % instance.lanes);
+            int refIndex = indexAlpha(instance, pass, slice, i, pseudoRandom & 0xFFFFFFFFL, refLane == lane);
+            read(views, refLane, refIndex, ref);
+            if (withXor) {
+                read(views, lane, currentIndex, next);
+            }
+            fillBlock(prev, ref, next, r, withXor);
+            write(views, lane, currentIndex, next);
+            // the block just filled is the previous block of the next
+            long[] filled = next;
+            next = prev;
+            prev = filled;
+        }
+        Arrays.fill(prev, 0);
+        Arrays.fill(ref, 0);
+        Arrays.fill(next, 0);
+        Arrays.fill(r, 0);
+    }
+
+    /**
+     * The index within the reference lane of the block to be mixed into the block being filled
+     */
+    private static int indexAlpha(Instance instance, int pass, int slice, int index, long pseudoRandom, boolean sameLane) {
+        long referenceAreaSize;
+        if (pass == 0) {
+            if (slice == 0) {
+                // all but the previous block
+                referenceAreaSize = index - 1;
+            } else if (sameLane) {
+                referenceAreaSize = slice * instance.segmentLength + index - 1;
+            } else {
+                referenceAreaSize = slice * instance.segmentLength + (index == 0 ? -1 : 0);
+            }
+        } else {
+            if (sameLane) {
+                referenceAreaSize = instance.laneLength - instance.segmentLength + index - 1;
+            } else {
+                referenceAreaSize = instance.laneLength - instance.segmentLength + (index == 0 ? -1 : 0);
+            }
+        }
+        // the products are of unsigned 32 bit values, so the top of the 64 bit result is correct when shifted unsigned
+        long relativePosition = (pseudoRandom * pseudoRandom) >>> 32;
+        relativePosition = referenceAreaSize - 1 - ((referenceAreaSize * relativePosition) >>> 32);
+        long startPosition = 0;
+        if (pass != 0) {
+            startPosition = slice == SYNC_POINTS - 1 ? 0 : (slice + 1) * instance.segmentLength;
+        }
+        return (int) ((startPosition + relativePosition) % instance.laneLength);
+    }
+
+    /**
+     * The compression function G, next = P(prev ^ ref) ^ prev ^ ref, XORed with the existing
+     * content of next if required
+     */
+    private static void fillBlock(long[] prev, long[] ref, long[] next, long[] r, boolean withXor) {
+        for (int i = 0; i < QWORDS_IN_BLOCK; i++) {
+            r[i] = prev[i] ^ ref[i];
+        }
+        if (withXor) {
+            for (int i = 0; i < QWORDS_IN_BLOCK; i++) {
+                next[i] ^= r[i];
+            }
+        } else {
+            System.arraycopy(r, 0, next, 0, QWORDS_IN_BLOCK);
+        }
+        // columns
+        for (int i = 0; i < 8; i++) {
+            int b = 16 * i;
+            round(r, b, b + 1, b + 2, b + 3, b + 4, b + 5, b + 6, b + 7,
+                    b + 8, b + 9, b + 10, b + 11, b + 12, b + 13, b + 14, b + 15);
+        }
+        // rows
+        for (int i = 0; i < 8; i++) {
+            int b = 2 * i;
+            round(r, b, b + 1, b + 16, b + 17, b + 32, b + 33, b + 48, b + 49,
+                    b + 64, b + 65, b + 80, b + 81, b + 96, b + 97, b + 112, b + 113);
+        }
+        for (int i = 0; i < QWORDS_IN_BLOCK; i++) {
+            next[i] ^= r[i];
+        }
+    }
+
+    private static void round(long[] v, int v0, int v1, int v2, int v3, int v4, int v5, int v6, int v7,
+                              int v8, int v9, int v10, int v11, int v12, int v13, int v14, int v15) {
+        g(v, v0, v4, v8, v12);
+        g(v, v1, v5, v9, v13);
+        g(v, v2, v6, v10, v14);
+        g(v, v3, v7, v11, v15);
+        g(v, v0, v5, v10, v15);
+        g(v, v1, v6, v11, v12);
+        g(v, v2, v7, v8, v13);
+        g(v, v3, v4, v9, v14);
+    }
+
+    private static void g(long[] v, int a, int b, int c, int d) {
+        v[a] = blaMka(v[a], v[b]);
+        v[d] = Long.rotateRight(v[d] ^ v[a], 32);
+        v[c] = blaMka(v[c], v[d]);
+        v[b] = Long.rotateRight(v[b] ^ v[c], 24);
+        v[a] = blaMka(v[a], v[b]);
+        v[d] = Long.rotateRight(v[d] ^ v[a], 16);
+        v[c] = blaMka(v[c], v[d]);
+        v[b] = Long.rotateRight(v[b] ^ v[c], 63);
+    }
+
+    private static long blaMka(long x, long y) {
+        return x + y + 2 * (x & 0xFFFFFFFFL) * (y & 0xFFFFFFFFL);
+    }
+
+    /**
+     * The hash of the XOR of the last block of each lane
+     */
+    private static byte[] finalHash(Instance instance, int hashLength) {
+        LongBuffer[][] views = instance.views();
+        long[] last = new long[QWORDS_IN_BLOCK];
+        long[] block = new long[QWORDS_IN_BLOCK];
+        for (int lane = 0; lane < instance.lanes; lane++) {
+            read(views, lane, instance.laneLength - 1, block);
+            for (int i = 0; i < QWORDS_IN_BLOCK; i++) {
+                last[i] ^= block[i];
+            }
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(BLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asLongBuffer().put(last);
+        byte[] hash = hashLong(hashLength, bytes.array());
+        Arrays.fill(bytes.array(), (byte) 0);
+        Arrays.fill(last, 0);
+        Arrays.fill(block, 0);
+        return hash;
+    }
+
+    private static void wipe(LongBuffer[][] views, int lane) {
+        for (LongBuffer chunk : views[lane]) {
+            // here and in read and write, called through Buffer so as not to link to the covariant overrides added in Java 9
+            ((Buffer) chunk).clear();
+            while (chunk.hasRemaining()) {
+                chunk.put(ZERO_BLOCK);
+            }
+        }
+    }
+
+    /**
+     * The variable length hash function H'
+     */
+    private static byte[] hashLong(int length, byte[]... inputs) {
+        byte[] out = new byte[length];
+        if (length <= PREHASH_DIGEST_LENGTH) {
+            Blake2bDigest digest = new Blake2bDigest(length * 8);
+            update(digest, length);
+            for (byte[] input : inputs) {
+                digest.update(input, 0, input.length);
+            }
+            digest.doFinal(out, 0);
+            return out;
+        }
+        Blake2bDigest digest = new Blake2bDigest(PREHASH_DIGEST_LENGTH * 8);
+        byte[] v = new byte[PREHASH_DIGEST_LENGTH];
+        update(digest, length);
+        for (byte[] input : inputs) {
+            digest.update(input, 0, input.length);
+        }
+        digest.doFinal(v, 0);
+        // the first half of each intermediate hash goes into the output
+        int halves = (length + 31) / 32 - 2;
+        System.arraycopy(v, 0, out, 0, 32);
+        for (int i = 1; i < halves; i++) {
+            digest.update(v, 0, v.length);
+            digest.doFinal(v, 0);
+            System.arraycopy(v, 0, out, i * 32, 32);
+        }
+        Blake2bDigest last = new Blake2bDigest((length - 32 * halves) * 8);
+        last.update(v, 0, v.length);
+        last.doFinal(out, 32 * halves);
+        Arrays.fill(v, (byte) 0);
+        return out;
+    }
+
+    private static void update(Blake2bDigest digest, int value) {
+        byte[] bytes = littleEndian(value);
+        digest.update(bytes, 0, bytes.length);
+    }
+
+    private static byte[] littleEndian(int value) {
+        return new byte[]{(byte) value, (byte) (value >>> 8), (byte) (value >>> 16), (byte) (value >>> 24)};
+    }
+
+    private static void read(LongBuffer[][] views, int lane, int index, long[] block) {
+        LongBuffer chunk = views[lane][index >>> CHUNK_SHIFT];
+        ((Buffer) chunk).position((index & CHUNK_MASK) * QWORDS_IN_BLOCK);
+        chunk.get(block);
+    }
+
+    private static void write(LongBuffer[][] views, int lane, int index, long[] block) {
+        LongBuffer chunk = views[lane][index >>> CHUNK_SHIFT];
+        ((Buffer) chunk).position((index & CHUNK_MASK) * QWORDS_IN_BLOCK);
+        chunk.put(block);
+    }
+}
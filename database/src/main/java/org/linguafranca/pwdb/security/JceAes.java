@@ -0,0 +1,42 @@
+package org.linguafranca.pwdb.security;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.GeneralSecurityException;
+import java.util.UUID;
+
+/**
+ * AES in CBC mode with PKCS#7 padding for the underlying database encryption, using the JCE
+ * <p>
+ * A singleton
+ */
+public class JceAes extends JceCipherAlgorithm {
+
+    // hide constructor to enforce singleton
+    private JceAes() {}
+    private static final JceAes instance = new JceAes();
+    private final boolean available = checkAvailable(32, 16);
+
+    public static JceAes getInstance() {
+        return instance;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return available;
+    }
+
+    @Override
+    public UUID getCipherUuid() {
+        return Aes.getInstance().getCipherUuid();
+    }
+
+    @Override
+    protected Cipher createCipher(int mode, byte[] key, byte[] iv) throws GeneralSecurityException {
+        // PKCS5 padding is the JCE's name for PKCS#7 padding of 16 byte blocks
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(mode, new SecretKeySpec(key, "AES"), new IvParameterSpec(iv));
+        return cipher;
+    }
+}
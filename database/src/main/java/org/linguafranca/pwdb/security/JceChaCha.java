@@ -0,0 +1,60 @@
+package org.linguafranca.pwdb.security;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.lang.reflect.InvocationTargetException;
+import java.security.GeneralSecurityException;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.UUID;
+
+/**
+ * ChaCha20 for the underlying database encryption, using the JCE, which supports it from Java 11
+ * <p>
+ * A singleton
+ */
+public class JceChaCha extends JceCipherAlgorithm {
+
+    // hide constructor to enforce singleton
+    private JceChaCha() {}
+    private static final JceChaCha instance = new JceChaCha();
+    private final boolean available = checkAvailable(32, 12);
+
+    public static JceChaCha getInstance() {
+        return instance;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return available;
+    }
+
+    @Override
+    public UUID getCipherUuid() {
+        return ChaCha.getInstance().getCipherUuid();
+    }
+
+    @Override
+    protected Cipher createCipher(int mode, byte[] key, byte[] iv) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance("ChaCha20");
+        cipher.init(mode, new SecretKeySpec(key, "ChaCha20"), createParameterSpec(iv));
+        return cipher;
+    }
+
+    /**
+     * The nonce with a starting block count of 0, as used by {@link ChaCha}. The spec class is only
+     * present from Java 11, so is found reflectively to allow loading on earlier versions.
+     */
+    private static AlgorithmParameterSpec createParameterSpec(byte[] iv) throws GeneralSecurityException {
+        try {
+            return (AlgorithmParameterSpec) Class.forName("javax.crypto.spec.ChaCha20ParameterSpec")
+                    .getConstructor(byte[].class, int.class)
+                    .newInstance(iv, 0);
+        } catch (InvocationTargetException e) {
+            throw new InvalidAlgorithmParameterException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new NoSuchAlgorithmException("ChaCha20 is not supported", e);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package org.linguafranca.pwdb.security;
+
+import javax.crypto.Cipher;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+
+/**
+ * Base for cipher algorithms that use the JCE rather than Bouncy Castle. Most JVMs implement
+ * AES using the processor's AES instructions, so these are considerably faster for large databases.
+ * <p>
+ * The streams encrypt and decrypt in large chunks, rather than the small ones that
+ * {@link javax.crypto.CipherInputStream} uses, and report a corrupt stream as an {@link IOException}.
+ */
+public abstract class JceCipherAlgorithm implements CipherAlgorithm {
+
+    /** the size of the chunks encrypted or decrypted in one go */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Create a cipher initialised for encryption or decryption
+     * @param mode {@link Cipher#ENCRYPT_MODE} or {@link Cipher#DECRYPT_MODE}
+     * @param key the key
+     * @param iv the iv
+     * @return a cipher
+     * @throws GeneralSecurityException if the JCE doesn't support the algorithm
+     */
+    protected abstract Cipher createCipher(int mode, byte[] key, byte[] iv) throws GeneralSecurityException;
+
+    /**
+     * Whether the JCE supports this algorithm, checked with a key and iv of the given lengths
+     */
+    protected boolean checkAvailable(int keyLength, int ivLength) {
+        try {
+            createCipher(Cipher.ENCRYPT_MODE, new byte[keyLength], new byte[ivLength]);
+            return true;
+        } catch (GeneralSecurityException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Whether the JCE supports this algorithm, if not {@link Encryption.Cipher} uses the Bouncy Castle one
+     */
+    public abstract boolean isAvailable();
+
+    @Override
+    public InputStream getDecryptedInputStream(InputStream encryptedInputStream, byte[] key, byte[] iv) {
+        return new JceCipherInputStream(encryptedInputStream, getCipher(Cipher.DECRYPT_MODE, key, iv));
+    }
+
+    @Override
+    public OutputStream getEncryptedOutputStream(OutputStream decryptedOutputStream, byte[] key, byte[] iv) {
+        return new JceCipherOutputStream(decryptedOutputStream, getCipher(Cipher.ENCRYPT_MODE, key, iv));
+    }
+
+    private Cipher getCipher(int mode, byte[] key, byte[] iv) {
+        try {
+            return createCipher(mode, key, iv);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decrypts an input stream a chunk at a time
+     */
+    private static class JceCipherInputStream extends InputStream {
+        private final InputStream in;
+        private final Cipher cipher;
+        private final byte[] inputBuffer = new byte[BUFFER_SIZE];
+        // room for the blocks the cipher may be holding back from the previous chunk
+        private final byte[] outputBuffer = new byte[BUFFER_SIZE + 64];
+        private int outputPosition;
+        private int outputLimit;
+        private boolean finished;
+
+        JceCipherInputStream(InputStream in, Cipher cipher) {
+            this.in = in;
+            this.cipher = cipher;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return outputBuffer[outputPosition++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int count = Math.min(len, outputLimit - outputPosition);
+            System.arraycopy(outputBuffer, outputPosition, b, off, count);
+            outputPosition += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return outputLimit - outputPosition;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        /**
+         * Decrypt the next chunk if there's nothing left of the last one
+         * @return false at the end of the stream
+         */
+        private boolean fill() throws IOException {
+            while (outputPosition == outputLimit) {
+                if (finished) {
+                    return false;
+                }
+                int count = in.read(inputBuffer);
+                try {
+                    if (count == -1) {
+                        finished = true;
+                        outputLimit = cipher.doFinal(outputBuffer, 0);
+                    } else {
+                        outputLimit = cipher.update(inputBuffer, 0, count, outputBuffer, 0);
+                    }
+                } catch (GeneralSecurityException e) {
+                    throw new IOException("Error decrypting stream", e);
+                }
+                outputPosition = 0;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Encrypts to an output stream a chunk at a time
+     */
+    private static class JceCipherOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final Cipher cipher;
+        private final byte[] outputBuffer = new byte[BUFFER_SIZE + 64];
+        private final byte[] singleByte = new byte[1];
+        private boolean closed;
+
+        JceCipherOutputStream(OutputStream out, Cipher cipher) {
+            this.out = out;
+            this.cipher = cipher;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            singleByte[0] = (byte) b;
+            write(singleByte, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                while (len > 0) {
+                    int count = Math.min(len, BUFFER_SIZE);
+                    out.write(outputBuffer, 0, cipher.update(b, off, count, outputBuffer, 0));
+                    off += count;
+                    len -= count;
+                }
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Error encrypting stream", e);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        /**
+         * Write the final block, including any padding, and close the underlying stream
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                out.write(outputBuffer, 0, cipher.doFinal(outputBuffer, 0));
+                out.flush();
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Error encrypting stream", e);
+            } finally {
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.linguafranca.pwdb.security;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of key derivation on the current machine and chooses parameters that take
+ * about a target time, e.g. 250ms, to transform a key. Since an attacker pays the same cost
+ * for each guess, this is as strong as can be afforded without making opening a file too slow.
+ * <p>
+ * A calibration may be used for the parameters of a particular file, or {@link #apply() applied} as
+ * the defaults for new files, which are used when a KDBX header is created, e.g.
+ * <pre>
+ *     KdfCalibration.calibrate(250).apply();
+ * </pre>
+ * AES is calibrated by the number of rounds. Argon2 is calibrated by the number of iterations,
+ * with memory halved from the starting point if a single iteration takes longer than the target.
+ *
+ * @author jo
+ */
+@SuppressWarnings("WeakerAccess")
+public class KdfCalibration {
+
+    /** Argon2 is not calibrated below this amount of memory */
+    public static final long MIN_ARGON2_MEMORY = 1024 * 1024;
+
+    /** samples are timed for at most this long */
+    private static final long MAX_SAMPLE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int SAMPLES = 3;
+
+    private static final SecureRandom random = new SecureRandom();
+
+    private final long targetMillis;
+    private final long aesRounds;
+    private final long argon2Memory;
+    private final long argon2Iterations;
+    private final int argon2Parallelism;
+
+    public KdfCalibration(long targetMillis, long aesRounds, long argon2Memory, long argon2Iterations, int argon2Parallelism) {
+        this.targetMillis = targetMillis;
+        this.aesRounds = aesRounds;
+        this.argon2Memory = argon2Memory;
+        this.argon2Iterations = argon2Iterations;
+        this.argon2Parallelism = argon2Parallelism;
+    }
+
+    /**
+     * Calibrate AES and Argon2, starting Argon2 from the KeePass default memory and parallelism
+     *
+     * @param targetMillis the time a key transformation should take
+     * @return the calibration
+     */
+    public static KdfCalibration calibrate(long targetMillis) {
+        return calibrate(targetMillis, Argon2.DEFAULT_MEMORY, Argon2.DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Calibrate AES and Argon2
+     *
+     * @param targetMillis      the time a key transformation should take
+     * @param argon2Memory      the most memory for Argon2 to use, in bytes
+     * @param argon2Parallelism the number of lanes for Argon2
+     * @return the calibration
+     */
+    public static KdfCalibration calibrate(long targetMillis, long argon2Memory, int argon2Parallelism) {
+        long aesRounds = calibrateAesRounds(targetMillis);
+        long[] argon2 = calibrateArgon2(targetMillis, argon2Memory, argon2Parallelism);
+        return new KdfCalibration(targetMillis, aesRounds, argon2[0], argon2[1], argon2Parallelism);
+    }
+
+    /**
+     * Find the number of rounds of AES key transformation that take about the target time
+     *
+     * @param targetMillis the time a key transformation should take
+     * @return the number of rounds, at least 1
+     */
+    public static long calibrateAesRounds(long targetMillis) {
+        long targetNanos = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+        long sampleNanos = Math.min(MAX_SAMPLE_NANOS, Math.max(1, targetNanos / 4));
+        byte[] key = randomBytes();
+        byte[] seed = randomBytes();
+        long rounds = 1000;
+        long nanos = timeAes(key, seed, rounds);
+        // until the sample is long enough to measure reliably
+        while (nanos < sampleNanos) {
+            rounds *= 2;
+            nanos = timeAes(key, seed, rounds);
+        }
+        for (int i = 1; i < SAMPLES; i++) {
+            nanos = Math.min(nanos, timeAes(key, seed, rounds));
+        }
+        return Math.max(1, (long) ((double) rounds * targetNanos / nanos));
+    }
+
+    /**
+     * Find the Argon2 memory and iterations that take about the target time
+     *
+     * @param targetMillis the time a key transformation should take
+     * @param memory       the most memory to use, in bytes
+     * @param parallelism  the number of lanes
+     * @return the memory and the number of iterations
+     */
+    public static long[] calibrateArgon2(long targetMillis, long memory, int parallelism) {
+        long targetNanos = TimeUnit.MILLISECONDS.toNanos(targetMillis);
+        byte[] key = randomBytes();
+        // warm up, so that the first measurement is not of the interpreter
+        timeArgon2(key, Math.min(memory, MIN_ARGON2_MEMORY), parallelism);
+        long nanos = timeArgon2(key, memory, parallelism);
+        while (nanos > targetNanos && memory / 2 >= MIN_ARGON2_MEMORY) {
+            memory /= 2;
+            nanos = timeArgon2(key, memory, parallelism);
+        }
+        nanos = Math.min(nanos, timeArgon2(key, memory, parallelism));
+        return new long[]{memory, Math.max(1, Math.round((double) targetNanos / nanos))};
+    }
+
+    /**
+     * Make this calibration the default for new files
+     */
+    public void apply() {
+        Aes.getInstance().setDefaultRounds(aesRounds);
+        Argon2.getInstance().setDefaults(argon2Memory, argon2Iterations, argon2Parallelism);
+    }
+
+    /**
+     * Parameters for AES key derivation with a fresh seed
+     */
+    public VariantDictionary createAesParameters() {
+        return Aes.createKdfParameters(randomBytes(), aesRounds);
+    }
+
+    /**
+     * Parameters for Argon2 key derivation with a fresh salt
+     */
+    public VariantDictionary createArgon2Parameters() {
+        return Argon2.createKdfParameters(argon2Memory, argon2Iterations, argon2Parallelism);
+    }
+
+    public long getTargetMillis() {
+        return targetMillis;
+    }
+
+    public long getAesRounds() {
+        return aesRounds;
+    }
+
+    public long getArgon2Memory() {
+        return argon2Memory;
+    }
+
+    public long getArgon2Iterations() {
+        return argon2Iterations;
+    }
+
+    public int getArgon2Parallelism() {
+        return argon2Parallelism;
+    }
+
+    @Override
+    public String toString() {
+        return "KdfCalibration{targetMillis=" + targetMillis + ", aesRounds=" + aesRounds +
+                ", argon2Memory=" + argon2Memory + ", argon2Iterations=" + argon2Iterations +
+                ", argon2Parallelism=" + argon2Parallelism + "}";
+    }
+
+    private static long timeAes(byte[] key, byte[] seed, long rounds) {
+        long start = System.nanoTime();
+        Aes.getTransformedKey(key, seed, rounds);
+        return Math.max(1, System.nanoTime() - start);
+    }
+
+    private static long timeArgon2(byte[] key, long memory, int parallelism) {
+        VariantDictionary parameters = Argon2.createKdfParameters(memory, 1, parallelism);
+        long start = System.nanoTime();
+        Argon2.getInstance().getTransformedKey(key, parameters);
+        return Math.max(1, System.nanoTime() - start);
+    }
+
+    private static byte[] randomBytes() {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.security;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.linguafranca.pwdb.security.Encryption.getSha256MessageDigestInstance;
+
+/**
+ * A bounded, time limited cache of transformed keys, so that repeatedly opening the same
+ * database does not repeat the (deliberately expensive) key derivation.
+ * <p>
+ * Entries are keyed on a SHA-256 of the composite key and the KDF parameters (which include the KDF UUID and
+ * seed), so neither the credentials nor the parameters are held. Cached keys are zeroed when they are evicted,
+ * expire or the cache is cleared. Expired entries are zeroed by a daemon thread even if the cache is not used again.
+ * <p>
+ * The shared instance used by the KDBX header is disabled (maximum size 0) by default, since holding derived
+ * keys in memory is a trade-off that applications must opt into, e.g.
+ * <pre>
+ *     TransformedKeyCache.setInstance(new TransformedKeyCache(16, 10, TimeUnit.MINUTES));
+ * </pre>
+ *
+ * @author jo
+ */
+@SuppressWarnings("WeakerAccess")
+public class TransformedKeyCache {
+
+    private static volatile TransformedKeyCache instance = new TransformedKeyCache(0, 1, TimeUnit.MINUTES);
+
+    private final int maximumSize;
+    private final long timeToLiveNanos;
+    private final LinkedHashMap<ByteBuffer, CachedKey> cache;
+    private ScheduledExecutorService purger;
+    private long hits;
+    private long misses;
+
+    private static class CachedKey {
+        final byte[] value;
+        final long expires;
+
+        CachedKey(byte[] value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+    /**
+     * Create a cache
+     *
+     * @param maximumSize the maximum number of keys held, least recently used are evicted first, 0 disables caching
+     * @param timeToLive  how long a key is held after it was derived
+     * @param unit        the unit of timeToLive
+     */
+    public TransformedKeyCache(final int maximumSize, long timeToLive, TimeUnit unit) {
+        if (maximumSize < 0 || timeToLive <= 0) {
+            throw new IllegalArgumentException("Maximum size must not be negative and time to live must be positive");
+        }
+        this.maximumSize = maximumSize;
+        this.timeToLiveNanos = unit.toNanos(timeToLive);
+        this.cache = new LinkedHashMap<ByteBuffer, CachedKey>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, CachedKey> eldest) {
+                if (size() > maximumSize) {
+                    Arrays.fill(eldest.getValue().value, (byte) 0);
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * The cache used when transforming KDBX keys
+     */
+    public static TransformedKeyCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Replace the cache used when transforming KDBX keys, the previous cache is cleared
+     */
+    public static void setInstance(TransformedKeyCache cache) {
+        TransformedKeyCache previous = instance;
+        instance = cache;
+        if (previous != cache) {
+            previous.clear();
+        }
+    }
+
+    /**
+     * Transform a key using the KDF identified by the "$UUID" member of the parameters, or return
+     * the result of a previous identical transformation
+     *
+     * @param key           the composite key digest
+     * @param kdfParameters the KDF parameters
+     * @return the transformed key, a copy which the caller may zero
+     */
+    public byte[] getTransformedKey(byte[] key, VariantDictionary kdfParameters) {
+        KeyDerivationFunction kdf = Encryption.Kdf.getKdf(kdfParameters.mustGet("$UUID").asUuid());
+        if (maximumSize == 0) {
+            return kdf.getTransformedKey(key, kdfParameters);
+        }
+        ByteBuffer cacheKey = ByteBuffer.wrap(getCacheKey(key, kdfParameters));
+        synchronized (cache) {
+            CachedKey cached = cache.get(cacheKey);
+            if (cached != null && cached.expires - System.nanoTime() > 0) {
+                hits++;
+                return cached.value.clone();
+            }
+            misses++;
+        }
+        byte[] transformed = kdf.getTransformedKey(key, kdfParameters);
+        synchronized (cache) {
+            purgeExpired();
+            CachedKey previous = cache.put(cacheKey, new CachedKey(transformed.clone(), System.nanoTime() + timeToLiveNanos));
+            if (previous != null) {
+                Arrays.fill(previous.value, (byte) 0);
+            }
+            schedulePurge();
+        }
+        return transformed;
+    }
+
+    /**
+     * Zero and remove all entries, and stop the purge thread until more entries are added
+     */
+    public void clear() {
+        synchronized (cache) {
+            for (CachedKey cached : cache.values()) {
+                Arrays.fill(cached.value, (byte) 0);
+            }
+            cache.clear();
+            if (purger != null) {
+                purger.shutdownNow();
+                purger = null;
+            }
+        }
+    }
+
+    /**
+     * Zero and remove entries that have expired
+     */
+    public void purgeExpired() {
+        synchronized (cache) {
+            long now = System.nanoTime();
+            Iterator<CachedKey> iterator = cache.values().iterator();
+            while (iterator.hasNext()) {
+                CachedKey cached = iterator.next();
+                if (cached.expires - now <= 0) {
+                    Arrays.fill(cached.value, (byte) 0);
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public long getHitCount() {
+        synchronized (cache) {
+            return hits;
+        }
+    }
+
+    public long getMissCount() {
+        synchronized (cache) {
+            return misses;
+        }
+    }
+
+    private void schedulePurge() {
+        if (purger == null) {
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "transformed-key-cache-purge");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            purger = executor;
+        }
+        purger.schedule(new Runnable() {
+            @Override
+            public void run() {
+                purgeExpired();
+            }
+        }, timeToLiveNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Digest the key with the parameters in key order, so that dictionaries
+     * with the same content but different insertion order coincide
+     */
+    private static byte[] getCacheKey(byte[] key, VariantDictionary kdfParameters) {
+        MessageDigest md = getSha256MessageDigestInstance();
+        md.update(key);
+        List<String> names = new ArrayList<>(kdfParameters.keySet());
+        Collections.sort(names);
+        for (String name : names) {
+            VariantDictionary.Entry entry = kdfParameters.mustGet(name);
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            md.update(ByteBuffer.allocate(4).putInt(nameBytes.length).array());
+            md.update(nameBytes);
+            md.update(entry.getType());
+            md.update(ByteBuffer.allocate(4).putInt(entry.asByteArray().length).array());
+            md.update(entry.asByteArray());
+        }
+        return md.digest();
+    }
+}
@@ -6,12 +6,15 @@ import org.jetbrains.annotations.Nullable;
 import javax.annotation.concurrent.Immutable;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static org.linguafranca.pwdb.security.VariantDictionary.EntryType.ARRRAY;
+import static org.linguafranca.pwdb.security.VariantDictionary.EntryType.UINT32;
 import static org.linguafranca.pwdb.security.VariantDictionary.EntryType.UINT64;
 
 /**
@@ -24,7 +27,7 @@ import static org.linguafranca.pwdb.security.VariantDictionary.EntryType.UINT64;
 public class VariantDictionary {
 
     private final short version;
-    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
 
     private final static String knn = "VariantDictionary key must not be null";
     private final static String vnn = "VariantDictionary.Entry value must not be null";
@@ -125,7 +128,7 @@ public class VariantDictionary {
         for (Map.Entry<String, VariantDictionary.Entry> e : this.entries.entrySet()) {
             vd.entries.put(e.getKey(), e.getValue());
         }
-        return null;
+        return vd;
     }
 
     /**
@@ -137,6 +140,15 @@ public class VariantDictionary {
         return version;
     }
 
+    /**
+     * The keys of this dictionary in the order they were added
+     *
+     * @return an unmodifiable set of keys
+     */
+    public Set<String> keySet() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
     /**
      * Return an entry for the key supplied
      *
@@ -199,4 +211,14 @@ public class VariantDictionary {
         bb.putLong(value);
         entries.put(checkNotNull(key, knn), new Entry(UINT64, buf));
     }
+
+    /**
+     * Put an int as an unsigned32 under the key defined
+     */
+    public void putInt(@NotNull String key, int value) {
+        byte[] buf = new byte[4];
+        ByteBuffer bb = ByteBuffer.wrap(buf).order(ByteOrder.LITTLE_ENDIAN);
+        bb.putInt(value);
+        entries.put(checkNotNull(key, knn), new Entry(UINT32, buf));
+    }
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.linguafranca.pwdb.security;
+
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.junit.After;
+import org.junit.Test;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * The JCE key transformation, with or without helper threads, produces the same keys as Bouncy Castle
+ *
+ * @author jo
+ */
+public class AesKdfTest {
+
+    private static final boolean PARALLEL = Aes.getInstance().isParallel();
+
+    @After
+    public void restoreDefault() {
+        Aes.getInstance().setParallel(PARALLEL);
+    }
+
+    @Test
+    public void testSameAsBouncyCastle() throws Exception {
+        Random random = new Random(42);
+        for (long rounds : new long[]{0, 1, 2, 3, 1000, 6001}) {
+            byte[] key = new byte[32];
+            byte[] seed = new byte[32];
+            random.nextBytes(key);
+            random.nextBytes(seed);
+            byte[] original = key.clone();
+            assertArrayEquals(bouncyCastle(key, seed, rounds), Aes.getTransformedKey(key, seed, rounds));
+            // the key passed in is left alone
+            assertArrayEquals(original, key);
+        }
+    }
+
+    @Test
+    public void testParallel() throws Exception {
+        Random random = new Random(42);
+        byte[] key = new byte[32];
+        byte[] seed = new byte[32];
+        random.nextBytes(key);
+        random.nextBytes(seed);
+        byte[] expected = bouncyCastle(key, seed, 20001);
+        Aes.getInstance().setParallel(true);
+        assertArrayEquals(expected, Aes.getTransformedKey(key, seed, 20001));
+        Aes.getInstance().setParallel(false);
+        assertArrayEquals(expected, Aes.getTransformedKey(key, seed, 20001));
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        Aes.getInstance().setParallel(true);
+        final Random random = new Random(42);
+        final byte[] seed = new byte[32];
+        random.nextBytes(seed);
+        // more callers than helpers, so that some do both halves themselves
+        int callers = Runtime.getRuntime().availableProcessors() * 2 + 2;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<byte[]> keys = new ArrayList<>();
+            List<Future<byte[]>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                final byte[] key = new byte[32];
+                random.nextBytes(key);
+                keys.add(key);
+                results.add(executor.submit(new Callable<byte[]>() {
+                    @Override
+                    public byte[] call() {
+                        return Aes.getTransformedKey(key, seed, 20001);
+                    }
+                }));
+            }
+            for (int i = 0; i < callers; i++) {
+                assertArrayEquals(bouncyCastle(keys.get(i), seed, 20001), results.get(i).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static byte[] bouncyCastle(byte[] key, byte[] seed, long rounds) throws Exception {
+        byte[] transformed = key.clone();
+        AESEngine engine = new AESEngine();
+        engine.init(true, new KeyParameter(seed));
+        for (long i = 0; i < rounds; i++) {
+            engine.processBlock(transformed, 0, transformed, 0);
+            engine.processBlock(transformed, 16, transformed, 16);
+        }
+        return MessageDigest.getInstance("SHA-256").digest(transformed);
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.linguafranca.pwdb.security;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The Java implementation of Argon2 produces the same hashes as the native one
+ *
+ * @author jo
+ */
+public class Argon2BackendTest {
+
+    private static final Argon2Backend NATIVE = new Jargon2Backend();
+
+    @Test
+    public void testSameAsNative() {
+        Random random = new Random(42);
+        JavaArgon2Backend single = new JavaArgon2Backend(1);
+        JavaArgon2Backend multiple = new JavaArgon2Backend(3);
+        int[][] parameters = {
+                // parallelism, memory KiB, iterations, version, hash length
+                {1, 8, 1, 0x13, 32},
+                {1, 64, 3, 0x13, 32},
+                {2, 256, 2, 0x13, 32},
+                {4, 1024, 2, 0x13, 64},
+                {4, 1000, 1, 0x13, 100},
+                {3, 300, 3, 0x10, 32},
+                {8, 2048, 2, 0x13, 16},
+        };
+        for (int[] p : parameters) {
+            byte[] password = new byte[32];
+            byte[] salt = new byte[16 + p[0]];
+            random.nextBytes(password);
+            random.nextBytes(salt);
+            byte[] expected = NATIVE.hash(password, salt, p[0], p[1], p[2], p[3], p[4]);
+            assertArrayEquals(expected, single.hash(password, salt, p[0], p[1], p[2], p[3], p[4]));
+            assertArrayEquals(expected, multiple.hash(password, salt, p[0], p[1], p[2], p[3], p[4]));
+        }
+    }
+}
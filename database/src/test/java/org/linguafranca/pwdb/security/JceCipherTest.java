@@ -0,0 +1,176 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.linguafranca.pwdb.security;
+
+import com.google.common.io.ByteStreams;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * The JCE ciphers encrypt and decrypt the same as the Bouncy Castle ones
+ *
+ * @author jo
+ */
+public class JceCipherTest {
+
+    private static final int[] SIZES = {0, 1, 15, 16, 17, 1000, 65536, 65537, 200003};
+
+    private CipherAlgorithm aes;
+    private CipherAlgorithm chaCha;
+
+    @Before
+    public void saveImplementations() {
+        aes = Encryption.Cipher.AES.getImplementation();
+        chaCha = Encryption.Cipher.CHACHA.getImplementation();
+    }
+
+    @After
+    public void restoreImplementations() {
+        Encryption.Cipher.AES.setImplementation(aes);
+        Encryption.Cipher.CHACHA.setImplementation(chaCha);
+    }
+
+    @Test
+    public void testDefault() {
+        assertSame(JceAes.getInstance().isAvailable() ? JceAes.getInstance() : Aes.getInstance(),
+                Encryption.Cipher.AES.getImplementation());
+        assertSame(JceChaCha.getInstance().isAvailable() ? JceChaCha.getInstance() : ChaCha.getInstance(),
+                Encryption.Cipher.CHACHA.getImplementation());
+        try {
+            Encryption.Cipher.AES.setImplementation(ChaCha.getInstance());
+            fail("Should not accept a different cipher");
+        } catch (IllegalArgumentException ignored) {
+        }
+        try {
+            Encryption.Cipher.AES.setImplementation(Encryption.Cipher.AES);
+            fail("Should not accept itself");
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @Test
+    public void testUnavailable() {
+        JceCipherAlgorithm unavailable = new JceCipherAlgorithm() {
+            @Override
+            protected javax.crypto.Cipher createCipher(int mode, byte[] key, byte[] iv) throws GeneralSecurityException {
+                throw new NoSuchAlgorithmException("Not supported");
+            }
+
+            @Override
+            public boolean isAvailable() {
+                return false;
+            }
+
+            @Override
+            public UUID getCipherUuid() {
+                return ChaCha.getInstance().getCipherUuid();
+            }
+        };
+        try {
+            Encryption.Cipher.CHACHA.setImplementation(unavailable);
+            fail("Should not accept a cipher the JCE doesn't support");
+        } catch (IllegalArgumentException ignored) {
+        }
+        assertSame(chaCha, Encryption.Cipher.CHACHA.getImplementation());
+    }
+
+    @Test
+    public void testAes() throws IOException {
+        assumeTrue(JceAes.getInstance().isAvailable());
+        checkSame(Aes.getInstance(), JceAes.getInstance(), 16);
+    }
+
+    @Test
+    public void testChaCha() throws IOException {
+        assumeTrue(JceChaCha.getInstance().isAvailable());
+        checkSame(ChaCha.getInstance(), JceChaCha.getInstance(), 12);
+    }
+
+    @Test
+    public void testCorrupt() throws IOException {
+        assumeTrue(JceAes.getInstance().isAvailable());
+        Random random = new Random(42);
+        byte[] key = new byte[32];
+        byte[] iv = new byte[16];
+        random.nextBytes(key);
+        byte[] encrypted = encrypt(Aes.getInstance(), key, iv, new byte[1000]);
+        // the padding no longer decrypts correctly
+        encrypted[encrypted.length - 1] ^= 1;
+        try {
+            decrypt(JceAes.getInstance(), key, iv, encrypted, false);
+            fail("Corrupt stream should not decrypt");
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static void checkSame(CipherAlgorithm bouncyCastle, CipherAlgorithm jce, int ivLength) throws IOException {
+        Random random = new Random(42);
+        for (int size : SIZES) {
+            byte[] key = new byte[32];
+            byte[] iv = new byte[ivLength];
+            byte[] plain = new byte[size];
+            random.nextBytes(key);
+            random.nextBytes(iv);
+            random.nextBytes(plain);
+            byte[] encrypted = encrypt(bouncyCastle, key, iv, plain);
+            assertArrayEquals(encrypted, encrypt(jce, key, iv, plain));
+            assertArrayEquals(plain, decrypt(jce, key, iv, encrypted, false));
+            assertArrayEquals(plain, decrypt(jce, key, iv, encrypted, true));
+        }
+    }
+
+    private static byte[] encrypt(CipherAlgorithm cipher, byte[] key, byte[] iv, byte[] plain) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream outputStream = cipher.getEncryptedOutputStream(bytes, key, iv)) {
+            // a single byte then the rest, to exercise both writes
+            if (plain.length > 0) {
+                outputStream.write(plain[0]);
+                outputStream.write(plain, 1, plain.length - 1);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] decrypt(CipherAlgorithm cipher, byte[] key, byte[] iv, byte[] encrypted, boolean byteAtATime) throws IOException {
+        try (InputStream inputStream = cipher.getDecryptedInputStream(new ByteArrayInputStream(encrypted), key, iv)) {
+            if (!byteAtATime) {
+                return ByteStreams.toByteArray(inputStream);
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            int b;
+            while ((b = inputStream.read()) != -1) {
+                bytes.write(b);
+            }
+            return bytes.toByteArray();
+        }
+    }
+}
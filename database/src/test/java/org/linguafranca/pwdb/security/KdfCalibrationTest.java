@@ -0,0 +1,64 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.linguafranca.pwdb.security;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Calibration finds costs that take about the time asked for, and applies them as the defaults
+ *
+ * @author jo
+ */
+public class KdfCalibrationTest {
+
+    @After
+    public void tearDown() {
+        Aes.getInstance().setDefaultRounds(Aes.DEFAULT_ROUNDS);
+        Argon2.getInstance().setDefaults(Argon2.DEFAULT_MEMORY, Argon2.DEFAULT_ITERATIONS, Argon2.DEFAULT_PARALLELISM);
+    }
+
+    @Test
+    public void testAesRounds() {
+        long fast = KdfCalibration.calibrateAesRounds(10);
+        long slow = KdfCalibration.calibrateAesRounds(80);
+        assertTrue(fast > 0);
+        // allowing for a noisy machine
+        assertTrue(slow > fast * 2);
+    }
+
+    @Test
+    public void testArgon2() {
+        long[] costs = KdfCalibration.calibrateArgon2(0, 4 * 1024 * 1024, 1);
+        // nothing is fast enough, so memory is reduced as far as it goes
+        assertEquals(KdfCalibration.MIN_ARGON2_MEMORY, costs[0]);
+        assertEquals(1, costs[1]);
+    }
+
+    @Test
+    public void testApply() {
+        new KdfCalibration(250, 12345, 2 * 1024 * 1024, 3, 1).apply();
+        assertEquals(12345, Aes.getInstance().getDefaultRounds());
+        assertEquals(2 * 1024 * 1024, Argon2.getInstance().getDefaultMemory());
+        assertEquals(3, Argon2.getInstance().getDefaultIterations());
+        assertEquals(1, Argon2.getInstance().getDefaultParallelism());
+        assertEquals(12345, Aes.createKdfParameters().mustGet(Aes.KdfKeys.ParamRounds).asLong());
+    }
+}
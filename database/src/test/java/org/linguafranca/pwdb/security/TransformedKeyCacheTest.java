@@ -0,0 +1,54 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.linguafranca.pwdb.security;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * The cache is bounded in size and entries expire
+ *
+ * @author jo
+ */
+public class TransformedKeyCacheTest {
+
+    @Test
+    public void testBoundedAndExpiring() throws Exception {
+        TransformedKeyCache cache = new TransformedKeyCache(2, 200, TimeUnit.MILLISECONDS);
+        byte[] key = new byte[32];
+        byte[] first = cache.getTransformedKey(key, Aes.createKdfParameters(new byte[32], 10));
+        for (int i = 1; i < 4; i++) {
+            byte[] seed = new byte[32];
+            seed[0] = (byte) i;
+            cache.getTransformedKey(key, Aes.createKdfParameters(seed, 10));
+        }
+        assertEquals(2, cache.size());
+
+        // the first was evicted, and the copy returned to the caller is intact
+        assertArrayEquals(first, cache.getTransformedKey(key, Aes.createKdfParameters(new byte[32], 10)));
+        assertEquals(5, cache.getMissCount());
+
+        Thread.sleep(300);
+        cache.purgeExpired();
+        assertEquals(0, cache.size());
+        cache.clear();
+    }
+}
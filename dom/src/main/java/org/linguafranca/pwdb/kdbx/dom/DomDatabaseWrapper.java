@@ -68,11 +68,15 @@ public class DomDatabaseWrapper extends AbstractDatabase<DomDatabaseWrapper, Dom
     private void init() {
         document = domDatabase.getDoc();
         try {
-            dbRootGroup = ((Element) DomHelper.xpath.evaluate("/KeePassFile/Root/Group", document, XPathConstants.NODE));
-            dbMeta = ((Element) DomHelper.xpath.evaluate("/KeePassFile/Meta", document, XPathConstants.NODE));
+            dbRootGroup = ((Element) DomHelper.xpath().evaluate("/KeePassFile/Root/Group", document, XPathConstants.NODE));
+            dbMeta = ((Element) DomHelper.xpath().evaluate("/KeePassFile/Meta", document, XPathConstants.NODE));
         } catch (XPathExpressionException e) {
             throw new IllegalStateException(e);
         }
+        // so that reading entries doesn't change the DOM
+        for (Element entry : DomHelper.getElements("descendant-or-self::Group/Entry", dbRootGroup)) {
+            DomEntryWrapper.indexProperties(entry);
+        }
     }
 
     @Override
@@ -123,9 +127,9 @@ public class DomDatabaseWrapper extends AbstractDatabase<DomDatabaseWrapper, Dom
 
     @Override
     public DomGroupWrapper getRecycleBin() {
-        String UUIDcontent = String.valueOf(getElementContent(RECYCLE_BIN_UUID_ELEMENT_NAME, dbMeta));
+        char[] UUIDcontent = getElementContent(RECYCLE_BIN_UUID_ELEMENT_NAME, dbMeta);
         if (UUIDcontent != null){
-            final UUID uuid = Helpers.uuidFromBase64(UUIDcontent);
+            final UUID uuid = Helpers.uuidFromBase64(String.valueOf(UUIDcontent));
             if (uuid.getLeastSignificantBits() != 0 && uuid.getMostSignificantBits() != 0) {
                 for (DomGroupWrapper g: getRootGroup().getGroups()) {
                     if (g.getUuid().equals(uuid)) {
@@ -144,7 +148,7 @@ public class DomDatabaseWrapper extends AbstractDatabase<DomDatabaseWrapper, Dom
         DomGroupWrapper g = newGroup();
         g.setName("Recycle Bin");
         getRootGroup().addGroup(g);
-        ensureElementContent(RECYCLE_BIN_UUID_ELEMENT_NAME, dbMeta, base64FromUuid(g.getUuid()));
+        setElementContent(RECYCLE_BIN_UUID_ELEMENT_NAME, dbMeta, base64FromUuid(g.getUuid()));
         touchElement(RECYCLE_BIN_CHANGED_ELEMENT_NAME, dbMeta);
         return g;
     }
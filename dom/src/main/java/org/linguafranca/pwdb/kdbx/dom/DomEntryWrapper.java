@@ -50,6 +50,7 @@ public class DomEntryWrapper extends AbstractEntry <DomDatabaseWrapper, DomGroup
         this.database = database;
         if (newElement) {
             DomHelper.ensureElements(element, mandatoryEntryElements);
+            indexProperties(element);
             ensureProperty("Notes");
             ensureProperty("Title");
             ensureProperty("URL");
@@ -60,7 +61,7 @@ public class DomEntryWrapper extends AbstractEntry <DomDatabaseWrapper, DomGroup
 
     @Override
     public char[] getProperty(String name) {
-        Element property = DomHelper.getElement(String.format(DomHelper.PROPERTY_ELEMENT_FORMAT, name), element, false);
+        Element property = getPropertyElements(DomHelper.PROPERTY_ELEMENT_NAME).get(name);
         if (property == null) {
             return null;
         }
@@ -69,37 +70,35 @@ public class DomEntryWrapper extends AbstractEntry <DomDatabaseWrapper, DomGroup
 
     @Override
     public void setProperty(String name, String value) {
-        Element property = DomHelper.getElement(String.format(DomHelper.PROPERTY_ELEMENT_FORMAT, name), element, false);
+        Element property = getPropertyElements(DomHelper.PROPERTY_ELEMENT_NAME).get(name);
         if (property == null) {
-            property = DomHelper.newElement("String", element);
-            DomHelper.setElementContent("Key", property, name);
+            property = newPropertyElement(DomHelper.PROPERTY_ELEMENT_NAME, name);
         }
         DomHelper.setElementContent(DomHelper.VALUE_ELEMENT_NAME, property, value);
         DomHelper.touchElement(DomHelper.LAST_MODIFICATION_TIME_ELEMENT_NAME, element);
         database.setDirty(true);
+        database.entryChanged(this);
     }
 
     @Override
     public boolean removeProperty(String name) throws IllegalArgumentException {
         if (STANDARD_PROPERTY_NAMES.contains(name)) throw new IllegalArgumentException("may not remove property: " + name);
-        boolean wasRemoved = DomHelper.removeElement(String.format(DomHelper.PROPERTY_ELEMENT_FORMAT, name), element);
-        if (wasRemoved) database.setDirty(true);
+        boolean wasRemoved = removePropertyElement(DomHelper.PROPERTY_ELEMENT_NAME, name);
+        if (wasRemoved) {
+            database.setDirty(true);
+            database.entryChanged(this);
+        }
         return wasRemoved;
     }
 
     @Override
     public List<String> getPropertyNames() {
-        ArrayList<String> result = new ArrayList<>();
-        List<Element> list = DomHelper.getElements("String", element);
-        for (Element listElement: list) {
-            result.add(String.valueOf(DomHelper.getElementContent("Key", listElement)));
-        }
-        return result;
+        return new ArrayList<>(getPropertyElements(DomHelper.PROPERTY_ELEMENT_NAME).keySet());
     }
 
     @Override
     public byte[] getBinaryProperty(String name) {
-        Element property = DomHelper.getElement(String.format(DomHelper.BINARY_PROPERTY_ELEMENT_FORMAT, name), element, false);
+        Element property = getPropertyElements(DomHelper.BINARY_PROPERTY_ELEMENT_NAME).get(name);
         if (property == null) {
             return null;
         }
@@ -108,10 +107,9 @@ public class DomEntryWrapper extends AbstractEntry <DomDatabaseWrapper, DomGroup
 
     @Override
     public void setBinaryProperty(String name, byte[] value) {
-        Element property = DomHelper.getElement(String.format(DomHelper.BINARY_PROPERTY_ELEMENT_FORMAT, name), element, false);
+        Element property = getPropertyElements(DomHelper.BINARY_PROPERTY_ELEMENT_NAME).get(name);
         if (property == null) {
-            property = DomHelper.newElement("Binary", element);
-            DomHelper.setElementContent("Key", property, name);
+            property = newPropertyElement(DomHelper.BINARY_PROPERTY_ELEMENT_NAME, name);
         }
         DomHelper.setBinaryElementContent(DomHelper.VALUE_ELEMENT_NAME, property, value);
         DomHelper.touchElement(DomHelper.LAST_MODIFICATION_TIME_ELEMENT_NAME, element);
@@ -121,28 +119,78 @@ public class DomEntryWrapper extends AbstractEntry <DomDatabaseWrapper, DomGroup
 
     @Override
     public boolean removeBinaryProperty(String name) {
-        boolean wasRemoved = DomHelper.removeElement(String.format(DomHelper.BINARY_PROPERTY_ELEMENT_FORMAT, name), element);
+        boolean wasRemoved = removePropertyElement(DomHelper.BINARY_PROPERTY_ELEMENT_NAME, name);
         if (wasRemoved) database.setDirty(true);
         return wasRemoved;
     }
 
     @Override
     public List<String> getBinaryPropertyNames() {
-        ArrayList<String> result = new ArrayList<>();
-        List<Element> list = DomHelper.getElements("Binary", element);
-        for (Element listElement: list) {
-        	result.add(String.valueOf(DomHelper.getElementContent("Key", listElement)));
+        return new ArrayList<>(getPropertyElements(DomHelper.BINARY_PROPERTY_ELEMENT_NAME).keySet());
+    }
+
+    private void ensureProperty(String name){
+        if (!getPropertyElements(DomHelper.PROPERTY_ELEMENT_NAME).containsKey(name)) {
+            Element container = newPropertyElement(DomHelper.PROPERTY_ELEMENT_NAME, name);
+            DomHelper.getElement(DomHelper.VALUE_ELEMENT_NAME, container, true);
+        }
+    }
+
+    /**
+     * Build the maps of the String and Binary children of an entry element keyed by property name, and keep
+     * them as user data on the element, so they are shared by all wrappers of the element. This is done when
+     * an entry is loaded or created, rather than when it is first read, so that reads don't change the DOM.
+     * @param entry an entry element
+     */
+    static void indexProperties(Element entry) {
+        entry.setUserData(DomHelper.PROPERTY_ELEMENT_NAME, propertyElements(DomHelper.PROPERTY_ELEMENT_NAME, entry), null);
+        entry.setUserData(DomHelper.BINARY_PROPERTY_ELEMENT_NAME, propertyElements(DomHelper.BINARY_PROPERTY_ELEMENT_NAME, entry), null);
+    }
+
+    private static Map<String, Element> propertyElements(String elementName, Element entry) {
+        Map<String, Element> result = new LinkedHashMap<>();
+        for (Element property : DomHelper.getChildElements(elementName, entry)) {
+            String key = String.valueOf(DomHelper.getElementContent(DomHelper.KEY_ELEMENT_NAME, property));
+            if (!result.containsKey(key)) {
+                result.put(key, property);
+            }
         }
         return result;
     }
 
-    private void ensureProperty(String name){
-        Element property = DomHelper.getElement(String.format(DomHelper.PROPERTY_ELEMENT_FORMAT, name), element, false);
+    /**
+     * The String or Binary children of the entry element keyed by property name, as indexed by
+     * {@link #indexProperties(Element)} and maintained by the methods that add and remove properties.
+     * An element that was not indexed is read without caching.
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Element> getPropertyElements(String elementName) {
+        Map<String, Element> result = (Map<String, Element>) element.getUserData(elementName);
+        return result == null ? propertyElements(elementName, element) : result;
+    }
+
+    /* the map of properties to change, indexing the element first if it wasn't */
+    private Map<String, Element> getPropertyElementsForUpdate(String elementName) {
+        if (element.getUserData(elementName) == null) {
+            indexProperties(element);
+        }
+        return getPropertyElements(elementName);
+    }
+
+    private Element newPropertyElement(String elementName, String name) {
+        Element property = DomHelper.newElement(elementName, element);
+        DomHelper.setElementContent(DomHelper.KEY_ELEMENT_NAME, property, name);
+        getPropertyElementsForUpdate(elementName).put(name, property);
+        return property;
+    }
+
+    private boolean removePropertyElement(String elementName, String name) {
+        Element property = getPropertyElementsForUpdate(elementName).remove(name);
         if (property == null) {
-            Element container = DomHelper.newElement("String", element);
-            DomHelper.setElementContent("Key", container, name);
-            DomHelper.getElement("Value", container, true);
+            return false;
         }
+        element.removeChild(property);
+        return true;
     }
 
     @Override
@@ -70,9 +70,9 @@ public class DomGroupWrapper extends AbstractGroup<DomDatabaseWrapper, DomGroupW
 
     @Override
     public boolean isRecycleBin() {
-        String UUIDcontent = String.valueOf(getElementContent(RECYCLE_BIN_UUID_ELEMENT_NAME, database.dbMeta));
+        char[] UUIDcontent = getElementContent(RECYCLE_BIN_UUID_ELEMENT_NAME, database.dbMeta);
         if (UUIDcontent != null){
-            UUID uuid = Helpers.uuidFromBase64(UUIDcontent);
+            UUID uuid = Helpers.uuidFromBase64(String.valueOf(UUIDcontent));
             return uuid.equals(this.getUuid());
         }
         return false;
@@ -125,6 +125,7 @@ public class DomGroupWrapper extends AbstractGroup<DomDatabaseWrapper, DomGroupW
         element.appendChild(group.element);
         touchElement("Times/LocationChanged", group.element);
         touch();
+        database.groupAdded(group);
         return group;
     }
 
@@ -132,6 +133,7 @@ public class DomGroupWrapper extends AbstractGroup<DomDatabaseWrapper, DomGroupW
     public DomGroupWrapper removeGroup(DomGroupWrapper g1) {
         element.removeChild(g1.element);
         database.setDirty(true);
+        database.groupRemoved(g1);
         return g1;
     }
 
@@ -153,10 +155,11 @@ public class DomGroupWrapper extends AbstractGroup<DomDatabaseWrapper, DomGroupW
     @Override
     public DomEntryWrapper addEntry(DomEntryWrapper entry) {
         if (entry.getParent() != null) {
-            entry.element.getParentNode().removeChild(element);
+            entry.getParent().removeEntry(entry);
         }
         element.appendChild(entry.element);
         database.setDirty(true);
+        database.entryAdded(entry);
         return entry;
     }
 
@@ -164,6 +167,7 @@ public class DomGroupWrapper extends AbstractGroup<DomDatabaseWrapper, DomGroupW
     public DomEntryWrapper removeEntry(DomEntryWrapper e12) {
         element.removeChild(e12.element);
         database.setDirty(true);
+        database.entryRemoved(e12);
         return e12;
     }
 
@@ -21,6 +21,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.linguafranca.pwdb.kdbx.Helpers;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 //import javax.xml.bind.DatatypeConverter;
@@ -35,11 +36,27 @@ import java.util.*;
 /**
  * The class contains static helper methods for access to the underlying XML DOM
  *
+ * <p>Element paths consisting only of element names separated by "/" are resolved by
+ * walking child elements, anything else is evaluated as XPath.
+ *
  * @author jo
  */
 class DomHelper {
 
-    static XPath xpath = XPathFactory.newInstance().newXPath();
+    // XPath objects are not thread safe
+    private static final ThreadLocal<XPath> xpath = new ThreadLocal<XPath>() {
+        @Override
+        protected XPath initialValue() {
+            return XPathFactory.newInstance().newXPath();
+        }
+    };
+
+    /**
+     * An XPath for the use of the current thread
+     */
+    static XPath xpath() {
+        return xpath.get();
+    }
 
     //static SimpleDateFormat dateFormatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssX");
 
@@ -62,11 +79,12 @@ class DomHelper {
     static final String USAGE_COUNT_ELEMENT_NAME = "Times/UsageCount";
     static final String LOCATION_CHANGED = "Times/LocationChanged";
 
-    static final String PROPERTY_ELEMENT_FORMAT = "String[Key/text()='%s']";
-    static final String BINARY_PROPERTY_ELEMENT_FORMAT = "Binary[Key/text()='%s']";
+    static final String PROPERTY_ELEMENT_NAME = "String";
+    static final String BINARY_PROPERTY_ELEMENT_NAME = "Binary";
+    static final String KEY_ELEMENT_NAME = "Key";
     static final String VALUE_ELEMENT_NAME = "Value";
 
-    static final String RECYCLE_BIN_UUID_ELEMENT_NAME = "RecycleBinUuid";
+    static final String RECYCLE_BIN_UUID_ELEMENT_NAME = "RecycleBinUUID";
     static final String RECYCLE_BIN_ENABLED_ELEMENT_NAME = "RecycleBinEnabled";
     static final String RECYCLE_BIN_CHANGED_ELEMENT_NAME = "RecycleBinChanged";
 
@@ -109,15 +127,73 @@ class DomHelper {
 
     @Nullable @Contract("_,_,true -> !null")
     static  Element getElement(String elementPath, Element parentElement, boolean create) {
-        try {
-            Element result = (Element) xpath.evaluate(elementPath, parentElement, XPathConstants.NODE);
-            if (result == null && create) {
-                result = createHierarchically(elementPath, parentElement);
+        Element result;
+        if (elementPath.equals(".")) {
+            result = parentElement;
+        } else if (isSimplePath(elementPath)) {
+            result = parentElement;
+            int start = 0;
+            while (result != null && start <= elementPath.length()) {
+                int end = elementPath.indexOf('/', start);
+                if (end < 0) {
+                    end = elementPath.length();
+                }
+                result = getChildElement(elementPath.substring(start, end), result);
+                start = end + 1;
+            }
+        } else {
+            try {
+                result = (Element) xpath().evaluate(elementPath, parentElement, XPathConstants.NODE);
+            } catch (XPathExpressionException e) {
+                throw new IllegalStateException(e);
             }
-            return result;
-        } catch (XPathExpressionException e) {
-            throw new IllegalStateException(e);
         }
+        if (result == null && create) {
+            result = createHierarchically(elementPath, parentElement);
+        }
+        return result;
+    }
+
+    /**
+     * true if the path consists only of element names separated by "/"
+     */
+    static boolean isSimplePath(String elementPath) {
+        if (elementPath.isEmpty() || elementPath.charAt(0) == '/' || elementPath.charAt(elementPath.length() - 1) == '/') {
+            return false;
+        }
+        for (int i = 0; i < elementPath.length(); i++) {
+            char c = elementPath.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '/' && c != '_' && c != '-') {
+                return false;
+            }
+        }
+        return !elementPath.contains("//");
+    }
+
+    /**
+     * The first child element of the parent with the name supplied, or null if there is none
+     */
+    @Nullable
+    static Element getChildElement(String elementName, Element parentElement) {
+        for (Node node = parentElement.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeType() == Node.ELEMENT_NODE && node.getNodeName().equals(elementName)) {
+                return (Element) node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * All the child elements of the parent with the name supplied
+     */
+    static List<Element> getChildElements(String elementName, Element parentElement) {
+        List<Element> result = new ArrayList<>();
+        for (Node node = parentElement.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeType() == Node.ELEMENT_NODE && node.getNodeName().equals(elementName)) {
+                result.add((Element) node);
+            }
+        }
+        return result;
     }
 
     static boolean removeElement(String elementPath, Element parentElement) {
@@ -131,8 +207,11 @@ class DomHelper {
     }
 
     static List<Element> getElements (String elementPath, Element parentElement) {
+        if (isSimplePath(elementPath) && elementPath.indexOf('/') < 0) {
+            return getChildElements(elementPath, parentElement);
+        }
         try {
-            NodeList nodes = (NodeList) xpath.evaluate(elementPath, parentElement, XPathConstants.NODESET);
+            NodeList nodes = (NodeList) xpath().evaluate(elementPath, parentElement, XPathConstants.NODESET);
             ArrayList<Element> result = new ArrayList<>(nodes.getLength());
             for (int i = 0; i < nodes.getLength(); i++) {
                 result.add(((Element) nodes.item(i)));
@@ -144,8 +223,17 @@ class DomHelper {
     }
 
     static int getElementsCount (String elementPath, Element parentElement) {
+        if (isSimplePath(elementPath) && elementPath.indexOf('/') < 0) {
+            int count = 0;
+            for (Node node = parentElement.getFirstChild(); node != null; node = node.getNextSibling()) {
+                if (node.getNodeType() == Node.ELEMENT_NODE && node.getNodeName().equals(elementPath)) {
+                    count++;
+                }
+            }
+            return count;
+        }
         try {
-            NodeList nodes = (NodeList) xpath.evaluate(elementPath, parentElement, XPathConstants.NODESET);
+            NodeList nodes = (NodeList) xpath().evaluate(elementPath, parentElement, XPathConstants.NODESET);
             return nodes.getLength();
         } catch (XPathExpressionException e) {
             throw new IllegalStateException(e);
@@ -189,7 +277,16 @@ class DomHelper {
             return null;
         }
         String id = result.getAttribute("Ref");
-        Element content = getElement("//Binaries/Binary[@ID=" + id + "]", parentElement.getOwnerDocument().getDocumentElement(),false);
+        Element content = null;
+        Element binaries = getElement("Meta/Binaries", parentElement.getOwnerDocument().getDocumentElement(), false);
+        if (binaries != null) {
+            for (Element binary : getChildElements("Binary", binaries)) {
+                if (binary.getAttribute("ID").equals(id)) {
+                    content = binary;
+                    break;
+                }
+            }
+        }
         if (content == null) {
             throw new IllegalStateException("Could not find binary content with ID " + id);
         }
@@ -198,24 +295,24 @@ class DomHelper {
 
     @NotNull
     static Element setBinaryElementContent(String elementPath, Element parentElement, byte[] value) {
-        try {
-            String b64 = Helpers.encodeBase64Content(value, true);
-
-            //Find the highest numbered existing content
-            String max = xpath.evaluate("//Binaries/Binary/@ID[not(. < ../../Binary/@ID)][1]", parentElement.getOwnerDocument().getDocumentElement());
-            Integer newIndex = Integer.valueOf(max) + 1;
-
-            addBinary(parentElement.getOwnerDocument().getDocumentElement(), b64, newIndex);
-
-            Element result = getElement(elementPath, parentElement, true);
-            result.setAttribute("Ref", newIndex.toString());
+        String b64 = Helpers.encodeBase64Content(value, true);
+
+        //Find the highest numbered existing content
+        int max = -1;
+        Element binaries = getElement("Meta/Binaries", parentElement.getOwnerDocument().getDocumentElement(), false);
+        if (binaries != null) {
+            for (Element binary : getChildElements("Binary", binaries)) {
+                max = Math.max(max, Integer.parseInt(binary.getAttribute("ID")));
+            }
+        }
+        Integer newIndex = max + 1;
 
+        addBinary(parentElement.getOwnerDocument().getDocumentElement(), b64, newIndex);
 
-            return result;
+        Element result = getElement(elementPath, parentElement, true);
+        result.setAttribute("Ref", newIndex.toString());
 
-        } catch (XPathExpressionException e) {
-            throw new IllegalStateException(e);
-        }
+        return result;
     }
 
     /**
@@ -241,15 +338,11 @@ class DomHelper {
     private static Element createHierarchically(String elementPath, Element startElement) {
         Element currentElement = startElement;
         for (String elementName : elementPath.split("/")) {
-            try {
-                Element nextElement = (Element) xpath.evaluate(elementName, currentElement, XPathConstants.NODE);
-                if (nextElement == null) {
-                    nextElement = (Element) currentElement.appendChild(currentElement.getOwnerDocument().createElement(elementName));
-                }
-                currentElement = nextElement;
-            } catch (XPathExpressionException e) {
-                throw new IllegalStateException(e);
+            Element nextElement = getChildElement(elementName, currentElement);
+            if (nextElement == null) {
+                nextElement = (Element) currentElement.appendChild(currentElement.getOwnerDocument().createElement(elementName));
             }
+            currentElement = nextElement;
         }
         return currentElement;
     }
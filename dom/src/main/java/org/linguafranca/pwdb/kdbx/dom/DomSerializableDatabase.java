@@ -18,6 +18,7 @@ package org.linguafranca.pwdb.kdbx.dom;
 
 import org.linguafranca.pwdb.kdbx.Helpers;
 import org.linguafranca.pwdb.kdbx.SerializableDatabase;
+import org.linguafranca.pwdb.kdbx.SerializableDatabaseV4;
 import org.linguafranca.pwdb.kdbx.StreamEncryptor;
 import org.apache.commons.codec.binary.Base64;
 import org.w3c.dom.Document;
@@ -40,7 +41,9 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.SecureRandom;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 /**
  * This class is an XML DOM implementation of a KDBX database. The data is maintained as a DOM,
@@ -52,10 +55,13 @@ import java.util.Date;
  *
  * @author jo
  */
-public class DomSerializableDatabase implements SerializableDatabase {
+public class DomSerializableDatabase implements SerializableDatabaseV4 {
 
     private Document doc;
     private StreamEncryptor encryption;
+    private int version = 3;
+    // the header hash to save, which is kept out of the document so that saving doesn't change it
+    private byte[] headerHash;
 
     private DomSerializableDatabase() {}
 
@@ -67,13 +73,13 @@ public class DomSerializableDatabase implements SerializableDatabase {
             // replace all placeholder dates with now (this is now already done in the loader)
 /*
             String now = DomHelper.dateFormatter.format(new Date());
-            NodeList list = (NodeList) DomHelper.xpath.evaluate("//*[contains(text(),'${creationDate}')]", result.doc.getDocumentElement(), XPathConstants.NODESET);
+            NodeList list = (NodeList) DomHelper.xpath().evaluate("//*[contains(text(),'${creationDate}')]", result.doc.getDocumentElement(), XPathConstants.NODESET);
             for (int i = 0; i < list.getLength(); i++) {
                 list.item(i).setTextContent(now);
             }
 */
             // set the root group UUID
-            Node uuid = (Node) DomHelper.xpath.evaluate("//"+ DomHelper.UUID_ELEMENT_NAME, result.doc.getDocumentElement(), XPathConstants.NODE);
+            Node uuid = (Node) DomHelper.xpath().evaluate("//"+ DomHelper.UUID_ELEMENT_NAME, result.doc.getDocumentElement(), XPathConstants.NODE);
             uuid.setTextContent(DomHelper.base64RandomUuid());
         } catch (XPathExpressionException e) {
             throw new IllegalStateException(e);
@@ -84,13 +90,20 @@ public class DomSerializableDatabase implements SerializableDatabase {
     @Override
     public SerializableDatabase load(InputStream inputStream) throws IOException {
         DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
+        try {
+            // deferred nodes are filled in when first read, which would make reads unsafe to do concurrently
+            dbFactory.setFeature("http://apache.org/xml/features/dom/defer-node-expansion", false);
+        } catch (ParserConfigurationException ignored) {
+            // not a Xerces parser, so not deferred
+        }
         try {
             DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
             doc = dBuilder.parse(inputStream);
+            headerHash = null;
 
             // we need to decrypt all protected fields
             // TODO we assume they are all strings, which is wrong
-            NodeList protectedContent = (NodeList) DomHelper.xpath.evaluate("//*[@Protected='True']", doc, XPathConstants.NODESET);
+            NodeList protectedContent = (NodeList) DomHelper.xpath().evaluate("//*[@Protected='True']", doc, XPathConstants.NODESET);
             for (int i = 0; i < protectedContent.getLength(); i++){
                 Element element = ((Element) protectedContent.item(i));
                 String base64 = String.valueOf(DomHelper.getElementContent(".", element));
@@ -116,10 +129,10 @@ public class DomSerializableDatabase implements SerializableDatabase {
     public void dateConvert() {
         try {
             // finding all elements name ending Changed and Time
-            NodeList dateContent = (NodeList) DomHelper.xpath.evaluate("//*[substring(local-name(), string-length(local-name()) -3) = 'Time']", doc, XPathConstants.NODESET);
+            NodeList dateContent = (NodeList) DomHelper.xpath().evaluate("//*[substring(local-name(), string-length(local-name()) -3) = 'Time']", doc, XPathConstants.NODESET);
             processDates(dateContent);
 
-            dateContent = (NodeList) DomHelper.xpath.evaluate("//*[substring(local-name(), string-length(local-name()) -6) = 'Changed']", doc, XPathConstants.NODESET);
+            dateContent = (NodeList) DomHelper.xpath().evaluate("//*[substring(local-name(), string-length(local-name()) -6) = 'Changed']", doc, XPathConstants.NODESET);
             processDates(dateContent);
         } catch (XPathExpressionException e) {
             throw new IllegalStateException(e);
@@ -132,6 +145,29 @@ public class DomSerializableDatabase implements SerializableDatabase {
         DomHelper.addBinary(doc.getDocumentElement(), Helpers.encodeBase64Content(payload, true),index);
     }
 
+    @Override
+    public List<byte[]> getBinaries() {
+        List<byte[]> result = new ArrayList<>();
+        Element binaries = DomHelper.getElement("Meta/Binaries", doc.getDocumentElement(), false);
+        if (binaries == null) {
+            return result;
+        }
+        for (Element binary : DomHelper.getChildElements("Binary", binaries)) {
+            int index = Integer.parseInt(binary.getAttribute("ID"));
+            // indexes are expected to be contiguous, fill any gaps
+            while (result.size() <= index) {
+                result.add(new byte[0]);
+            }
+            result.set(index, Helpers.decodeBase64Content(binary.getTextContent().getBytes(), binary.hasAttribute("Compressed")));
+        }
+        return result;
+    }
+
+    @Override
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
 /*
     private void processDates(NodeList dateContent) {
         Date now = new Date();
@@ -147,6 +183,19 @@ public class DomSerializableDatabase implements SerializableDatabase {
     @Override
     public void save(OutputStream outputStream) {
         Document copyDoc = (Document) doc.cloneNode(true);
+        if (headerHash != null) {
+            Element headerHashElement = DomHelper.getElement("Meta/HeaderHash", copyDoc.getDocumentElement(), false);
+            if (headerHashElement != null) {
+                // Android compatibility
+                headerHashElement.setTextContent(new String(Base64.encodeBase64(headerHash)));
+            }
+        }
+        if (version >= 4) {
+            // V4 binaries are in the inner header
+            DomHelper.removeElement("Meta/Binaries", copyDoc.getDocumentElement());
+        }
+        // times may have been loaded in either format
+        formatTimes(copyDoc.getDocumentElement());
         try {
             // check whether protection is required and if so mark the element with @Protected='True'
             prepareProtection(copyDoc, "Title");
@@ -156,7 +205,7 @@ public class DomSerializableDatabase implements SerializableDatabase {
             prepareProtection(copyDoc, "URL");
 
             // encrypt and base64 every element marked as protected
-            NodeList protectedContent = (NodeList) DomHelper.xpath.evaluate("//*[@Protected='True']", copyDoc, XPathConstants.NODESET);
+            NodeList protectedContent = (NodeList) DomHelper.xpath().evaluate("//*[@Protected='True']", copyDoc, XPathConstants.NODESET);
             for (int i = 0; i < protectedContent.getLength(); i++){
                 Element element = ((Element) protectedContent.item(i));  
                 String decrypted = String.valueOf(DomHelper.getElementContent(".", element));
@@ -187,17 +236,40 @@ public class DomSerializableDatabase implements SerializableDatabase {
         }
     }
 
+    /**
+     * Format the content of all time elements for the version being saved
+     */
+    private void formatTimes(Element parent) {
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeType() != Node.ELEMENT_NODE) {
+                continue;
+            }
+            Element element = (Element) node;
+            if (Helpers.isTimeElementName(element.getTagName())) {
+                String content = element.getTextContent();
+                // V3 times contain a colon, V4 (base64) times cannot
+                boolean isV4 = !content.contains(":");
+                if (!content.isEmpty() && isV4 != (version >= 4)) {
+                    Date date = Helpers.toDate(content);
+                    element.setTextContent(version >= 4 ? Helpers.fromDateV4(date) : Helpers.fromDate(date));
+                }
+            } else {
+                formatTimes(element);
+            }
+        }
+    }
+
     private static final String protectQuery = "//Meta/MemoryProtection/Protect%s";
     private static final String pattern = "//String/Key[text()='%s']/following-sibling::Value";
     private void prepareProtection(Document doc, String protect) throws XPathExpressionException {
         // does this require encryption
         String query = String.format(protectQuery, protect);
-        if (!((String) DomHelper.xpath.evaluate(query, doc, XPathConstants.STRING)).toLowerCase().equals("true")) {
+        if (!((String) DomHelper.xpath().evaluate(query, doc, XPathConstants.STRING)).toLowerCase().equals("true")) {
             return;
         }
         // mark the field as Protected but don't actually encrypt yet, that comes later
         String path = String.format(pattern, protect);
-        NodeList nodelist = (NodeList) DomHelper.xpath.evaluate(path, doc, XPathConstants.NODESET);
+        NodeList nodelist = (NodeList) DomHelper.xpath().evaluate(path, doc, XPathConstants.NODESET);
         for (int i = 0; i < nodelist.getLength(); i++) {
             Element element = (Element) nodelist.item(i);
             element.setAttribute("Protected", "True");
@@ -206,8 +278,11 @@ public class DomSerializableDatabase implements SerializableDatabase {
 
     @Override
     public byte[] getHeaderHash() {
+        if (headerHash != null) {
+            return headerHash;
+        }
         try {
-            String base64 = (String) DomHelper.xpath.evaluate("//HeaderHash", doc, XPathConstants.STRING);
+            String base64 = (String) DomHelper.xpath().evaluate("//HeaderHash", doc, XPathConstants.STRING);
             // Android compatibility
             return Base64.decodeBase64(base64.getBytes());
         } catch (XPathExpressionException e) {
@@ -217,13 +292,7 @@ public class DomSerializableDatabase implements SerializableDatabase {
 
     @Override
     public void setHeaderHash(byte[] hash) {
-        // Android compatibility
-        String base64String = new String(Base64.encodeBase64(hash));
-        try {
-            ((Element) DomHelper.xpath.evaluate("//HeaderHash", doc, XPathConstants.NODE)).setTextContent(base64String);
-        } catch (XPathExpressionException e) {
-            throw new IllegalStateException("Can't set header hash", e);
-        }
+        this.headerHash = hash;
     }
 
 
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.dom;
+
+import org.junit.Test;
+import org.linguafranca.pwdb.concurrent.ConcurrentDatabase;
+import org.linguafranca.pwdb.concurrent.ConcurrentEntry;
+import org.linguafranca.pwdb.kdbx.KdbxCreds;
+import org.w3c.dom.Element;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reading a DOM database doesn't change it, so that a {@link ConcurrentDatabase} may read it from several threads
+ *
+ * @author jo
+ */
+public class DomConcurrentReadTest {
+
+    private static final int READERS = 8;
+    private static final int READS = 200;
+
+    private static DomDatabaseWrapper load() throws Exception {
+        InputStream inputStream = DomConcurrentReadTest.class.getClassLoader().getResourceAsStream("test123.kdbx");
+        return DomDatabaseWrapper.load(new KdbxCreds("123".getBytes()), inputStream);
+    }
+
+    @Test
+    public void testIndexedOnLoad() throws Exception {
+        DomDatabaseWrapper database = load();
+        for (DomEntryWrapper entry : database.findEntries("")) {
+            assertNotNull(entry.element.getUserData(DomHelper.PROPERTY_ELEMENT_NAME));
+            assertNotNull(entry.element.getUserData(DomHelper.BINARY_PROPERTY_ELEMENT_NAME));
+        }
+        DomEntryWrapper entry = database.newEntry("new");
+        assertNotNull(entry.element.getUserData(DomHelper.PROPERTY_ELEMENT_NAME));
+
+        // an element that wasn't indexed is read without being changed
+        Element copy = (Element) entry.element.cloneNode(true);
+        DomEntryWrapper unindexed = new DomEntryWrapper(copy, database, false);
+        assertEquals("new", new String(unindexed.getTitle()));
+        assertNull(copy.getUserData(DomHelper.PROPERTY_ELEMENT_NAME));
+        // until it is changed
+        unindexed.setProperty("Custom", "custom");
+        assertNotNull(copy.getUserData(DomHelper.PROPERTY_ELEMENT_NAME));
+        assertEquals("custom", new String(unindexed.getProperty("Custom")));
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        final ConcurrentDatabase database = new ConcurrentDatabase(load());
+        final Map<UUID, String> expected = new HashMap<>();
+        for (ConcurrentEntry entry : database.findEntries("")) {
+            expected.put(entry.getUuid(), describe(entry));
+        }
+        assertFalse(expected.isEmpty());
+
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(READERS);
+        List<Future<?>> readers = new ArrayList<>();
+        for (int r = 0; r < READERS; r++) {
+            readers.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+                    for (int i = 0; i < READS; i++) {
+                        for (ConcurrentEntry entry : database.findEntries("")) {
+                            assertEquals(expected.get(entry.getUuid()), describe(entry));
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        start.countDown();
+        try {
+            for (Future<?> reader : readers) {
+                reader.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static String describe(ConcurrentEntry entry) {
+        StringBuilder builder = new StringBuilder(entry.getParent().getName());
+        for (String name : entry.getPropertyNames()) {
+            char[] value = entry.getProperty(name);
+            builder.append(" ").append(name).append("=").append(value == null ? null : new String(value));
+        }
+        return builder.toString();
+    }
+}
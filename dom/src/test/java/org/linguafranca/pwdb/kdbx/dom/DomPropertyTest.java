@@ -0,0 +1,69 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.dom;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Property changes made through one wrapper are seen by other wrappers of the same entry
+ *
+ * @author jo
+ */
+public class DomPropertyTest {
+
+    @Test
+    public void testProperties() throws IOException {
+        DomDatabaseWrapper database = new DomDatabaseWrapper();
+        DomEntryWrapper entry = database.getRootGroup().addEntry(database.newEntry("entry1"));
+        // a wrapper created afresh by navigation
+        DomEntryWrapper other = database.getRootGroup().getEntries().get(0);
+        assertEquals("entry1", String.valueOf(other.getTitle()));
+
+        entry.setProperty("Custom", "value1");
+        assertEquals("value1", String.valueOf(other.getProperty("Custom")));
+        assertTrue(other.getPropertyNames().contains("Custom"));
+        entry.setProperty("Custom", "value2");
+        assertEquals("value2", String.valueOf(other.getProperty("Custom")));
+
+        assertTrue(other.removeProperty("Custom"));
+        assertNull(entry.getProperty("Custom"));
+        assertFalse(entry.removeProperty("Custom"));
+        assertEquals(Arrays.asList("Notes", "Title", "URL", "UserName", "Password"), entry.getPropertyNames());
+    }
+
+    @Test
+    public void testBinaryProperties() throws IOException {
+        DomDatabaseWrapper database = new DomDatabaseWrapper();
+        DomEntryWrapper entry = database.getRootGroup().addEntry(database.newEntry("entry1"));
+        DomEntryWrapper other = database.getRootGroup().getEntries().get(0);
+
+        entry.setBinaryProperty("letters", new byte[]{'a', 'b', 'c'});
+        entry.setBinaryProperty("digits", new byte[]{'1', '2', '3'});
+        assertArrayEquals(new byte[]{'a', 'b', 'c'}, other.getBinaryProperty("letters"));
+        assertArrayEquals(new byte[]{'1', '2', '3'}, other.getBinaryProperty("digits"));
+        assertEquals(Arrays.asList("letters", "digits"), other.getBinaryPropertyNames());
+
+        assertTrue(other.removeBinaryProperty("letters"));
+        assertNull(entry.getBinaryProperty("letters"));
+        assertEquals(Arrays.asList("digits"), entry.getBinaryPropertyNames());
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.dom;
+
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.base.AbstractDatabase;
+import org.linguafranca.pwdb.checks.TextIndexChecks;
+import org.linguafranca.pwdb.kdbx.KdbxCreds;
+
+import java.io.InputStream;
+
+/**
+ * @author jo
+ */
+public class DomTextIndexTest extends TextIndexChecks<DomDatabaseWrapper, DomGroupWrapper, DomEntryWrapper, DomIconWrapper> {
+
+    @Override
+    public AbstractDatabase<DomDatabaseWrapper, DomGroupWrapper, DomEntryWrapper, DomIconWrapper> loadDatabase(Credentials credentials, InputStream inputStream) throws Exception {
+        return DomDatabaseWrapper.load(credentials, inputStream);
+    }
+
+    @Override
+    public Credentials getCreds(byte[] creds) {
+        return new KdbxCreds(creds);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.dom;
+
+import org.junit.Test;
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.Entry;
+import org.linguafranca.pwdb.Group;
+import org.linguafranca.pwdb.Visitor;
+import org.linguafranca.pwdb.kdbx.KdbxCreds;
+import org.linguafranca.pwdb.kdbx.KdbxStreamingReader;
+import org.linguafranca.pwdb.kdbx.KdbxStreamingReader.StreamedEntry;
+
+import java.io.InputStream;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that streaming a KDBX file gives the same content as loading it
+ *
+ * @author jo
+ */
+public class KdbxStreamingReaderTest {
+
+    private static final Credentials credentials = new KdbxCreds("123".getBytes());
+
+    @Test
+    public void testV3() throws Exception {
+        compare("test123.kdbx");
+    }
+
+    @Test
+    public void testV3Attachment() throws Exception {
+        compare("Attachment.kdbx");
+    }
+
+    @Test
+    public void testV4() throws Exception {
+        compare("Attachment-ChaCha20-Argon2.kdbx");
+        compare("test123-AES-Argon2.kdbx");
+    }
+
+    private void compare(String resourceName) throws Exception {
+        final Map<String, String> expected = new TreeMap<>();
+        final Map<String, byte[]> expectedBinaries = new TreeMap<>();
+        final List<String> expectedGroups = new ArrayList<>();
+        DomDatabaseWrapper database = DomDatabaseWrapper.load(credentials, getResource(resourceName));
+        database.visit(new Visitor.Default() {
+            @Override
+            public void startVisit(Group group) {
+                expectedGroups.add(group.getName());
+            }
+
+            @Override
+            public void visit(Entry entry) {
+                for (Object name : entry.getPropertyNames()) {
+                    expected.put(entry.getUuid() + "/" + name, new String(entry.getProperty((String) name)));
+                }
+                for (Object name : entry.getBinaryPropertyNames()) {
+                    expectedBinaries.put(entry.getUuid() + "/" + name, entry.getBinaryProperty((String) name));
+                }
+            }
+        });
+
+        final Map<String, String> actual = new TreeMap<>();
+        final Map<Integer, byte[]> binaries = new HashMap<>();
+        final Map<String, Integer> binaryReferences = new TreeMap<>();
+        final List<String> groups = new ArrayList<>();
+        final Map<String, String> meta = new HashMap<>();
+        final int[] depth = {0};
+        KdbxStreamingReader.read(credentials, getResource(resourceName), new KdbxStreamingReader.Listener.Default() {
+            @Override
+            public void metaField(String path, String value) {
+                meta.put(path, value);
+            }
+
+            @Override
+            public void binary(int id, byte[] content) {
+                binaries.put(id, content);
+            }
+
+            @Override
+            public void startGroup(UUID uuid, String name) {
+                assertNotNull(uuid);
+                groups.add(name);
+                depth[0]++;
+            }
+
+            @Override
+            public void endGroup() {
+                depth[0]--;
+            }
+
+            @Override
+            public void entry(StreamedEntry entry) {
+                for (String name : entry.getPropertyNames()) {
+                    actual.put(entry.getUuid() + "/" + name, new String(entry.getProperty(name)));
+                }
+                for (String name : entry.getBinaryPropertyNames()) {
+                    binaryReferences.put(entry.getUuid() + "/" + name, entry.getBinaryReference(name));
+                }
+                assertNotNull(entry.getField("Times/CreationTime"));
+            }
+        });
+
+        assertEquals(0, depth[0]);
+        assertEquals(expectedGroups, groups);
+        assertEquals(expected, actual);
+        assertEquals(expectedBinaries.keySet(), binaryReferences.keySet());
+        for (Map.Entry<String, Integer> reference : binaryReferences.entrySet()) {
+            assertArrayEquals(expectedBinaries.get(reference.getKey()), binaries.get(reference.getValue()));
+        }
+        assertEquals(database.getName(), meta.get("DatabaseName"));
+    }
+
+    private InputStream getResource(String resourceName) {
+        return getClass().getClassLoader().getResourceAsStream(resourceName);
+    }
+}
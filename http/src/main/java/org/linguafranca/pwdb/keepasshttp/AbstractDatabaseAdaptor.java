@@ -0,0 +1,53 @@
+package org.linguafranca.pwdb.keepasshttp;
+
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.kdbx.KdbxFileStore;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Base for adaptors whose database is saved to a {@link KdbxFileStore}, so that a failed save
+ * leaves the file as it was. The processor saves adaptors that extend this with {@link #save()}
+ * rather than by writing to {@link #getOutputStream()}.
+ */
+public abstract class AbstractDatabaseAdaptor implements DatabaseAdaptor {
+
+    private final KdbxFileStore fileStore;
+
+    /**
+     * @param fileStore where the database is saved
+     */
+    protected AbstractDatabaseAdaptor(KdbxFileStore fileStore) {
+        this.fileStore = fileStore;
+    }
+
+    public KdbxFileStore getFileStore() {
+        return fileStore;
+    }
+
+    @Override
+    public Credentials getCredentials() {
+        return fileStore.getCredentials();
+    }
+
+    /**
+     * Save the database to the file store
+     *
+     * @throws IOException on error, in which case the file is unchanged
+     */
+    public void save() throws IOException {
+        fileStore.save(getDatabase());
+    }
+
+    /**
+     * @deprecated use {@link #save()}
+     * @throws UnsupportedOperationException always, since writing directly to the file would truncate it
+     * if saving failed
+     */
+    @Override
+    @Deprecated
+    public OutputStream getOutputStream() {
+        throw new UnsupportedOperationException("Save using save()");
+    }
+}
@@ -0,0 +1,83 @@
+package org.linguafranca.pwdb.keepasshttp;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * The crypto of each client that has associated, by the Id given to it on association.
+ * <p>
+ * A client associating again with the same key is given back its existing Id. The number of clients
+ * held is bounded, the least recently used being forgotten first, after which that client has to associate again.
+ */
+class ClientKeys {
+
+    static final int DEFAULT_MAXIMUM_SIZE = 64;
+
+    private final LinkedHashMap<String, Crypto> clients;
+
+    ClientKeys() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * @param maximumSize the most clients to hold, must be positive
+     */
+    ClientKeys(final int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Maximum size must be positive");
+        }
+        this.clients = new LinkedHashMap<String, Crypto>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Crypto> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    /**
+     * The crypto of an associated client
+     *
+     * @param id the Id given to the client
+     * @return the crypto, or null if the client has not associated or has been forgotten
+     */
+    @Nullable
+    Crypto get(String id) {
+        synchronized (clients) {
+            return clients.get(id);
+        }
+    }
+
+    /**
+     * Add a client that has associated
+     *
+     * @param prefix the start of any new Id
+     * @param crypto the client's crypto
+     * @return the Id of the client, the existing one if a client with the same key has already associated
+     */
+    String associate(String prefix, Crypto crypto) {
+        synchronized (clients) {
+            String id = null;
+            for (Map.Entry<String, Crypto> client : clients.entrySet()) {
+                if (Arrays.equals(client.getValue().getKey(), crypto.getKey())) {
+                    id = client.getKey();
+                    break;
+                }
+            }
+            if (id == null) {
+                id = prefix + " " + UUID.randomUUID();
+            }
+            clients.put(id, crypto);
+            return id;
+        }
+    }
+
+    int size() {
+        synchronized (clients) {
+            return clients.size();
+        }
+    }
+}
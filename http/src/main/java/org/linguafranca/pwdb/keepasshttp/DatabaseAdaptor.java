@@ -5,9 +5,12 @@ import org.bouncycastle.crypto.digests.SHA1Digest;
 import org.linguafranca.pwdb.Credentials;
 import org.linguafranca.pwdb.Database;
 import org.linguafranca.pwdb.kdbx.Helpers;
+import org.linguafranca.pwdb.kdbx.KdbxFileStore;
 import org.linguafranca.pwdb.kdbx.simple.SimpleDatabase;
 
-import java.io.*;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * Adaptor for {@link Database} supporting the requirements of the KeePassHttp protocol.
@@ -31,7 +34,11 @@ public interface DatabaseAdaptor {
 
     /**
      * Where to save, when saving. To be closed by caller.
+     *
+     * @deprecated writing to the file as the database is saved leaves it truncated if saving fails,
+     * extend {@link AbstractDatabaseAdaptor} so that the database is saved to a {@link KdbxFileStore} instead
      */
+    @Deprecated
     OutputStream getOutputStream();
 
     /**
@@ -47,11 +54,9 @@ public interface DatabaseAdaptor {
     /**
      * Default implementation of Adaptor
      */
-    class Default implements DatabaseAdaptor {
+    class Default extends AbstractDatabaseAdaptor {
         private final Database database;
         private final PwGenerator pwGenerator;
-        private final File databaseFile;
-        private final Credentials credentials;
 
         /**
          * Constructor for Databse from File
@@ -61,10 +66,11 @@ public interface DatabaseAdaptor {
          * @throws Exception if the database can't be constructed
          */
         Default(File file, Credentials credentials, PwGenerator pwGenerator) throws Exception {
-            this.databaseFile = file;
+            super(new KdbxFileStore(file.toPath(), credentials, 1));
             this.pwGenerator = pwGenerator;
-            this.credentials = credentials;
-            this.database = SimpleDatabase.load(credentials, new FileInputStream(file));
+            try (InputStream inputStream = getFileStore().newInputStream()) {
+                this.database = SimpleDatabase.load(credentials, inputStream);
+            }
         }
 
         @Override
@@ -94,19 +100,5 @@ public interface DatabaseAdaptor {
         public PwGenerator getPwGenerator() {
             return pwGenerator;
         }
-
-        @Override
-        public OutputStream getOutputStream() {
-            try {
-                return new FileOutputStream(databaseFile);
-            } catch (FileNotFoundException e) {
-                throw new IllegalStateException(e);
-            }
-        }
-
-        @Override
-        public Credentials getCredentials() {
-            return credentials;
-        }
     }
 }
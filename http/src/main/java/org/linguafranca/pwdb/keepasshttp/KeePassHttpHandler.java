@@ -17,6 +17,10 @@ import java.io.*;
 
 /**
  * Jetty Handler for PassIFox and ChromeIPass clients - emulates KeePassHttp plugin.
+ * <p>
+ * Each client that associates is given its own Id, by which its key is looked up in later requests,
+ * so any number of clients may use the handler at once. The keys of the least recently used clients
+ * are forgotten once there are more than {@link ClientKeys#DEFAULT_MAXIMUM_SIZE}.
  */
 public class KeePassHttpHandler extends AbstractHandler {
 
@@ -24,7 +28,8 @@ public class KeePassHttpHandler extends AbstractHandler {
     private final Processor processor;
     private Logger logger = LoggerFactory.getLogger(KeePassHttpHandler.class);
     private Gson gson = new GsonBuilder().disableHtmlEscaping().create();
-    private Crypto crypto = new Crypto();
+    // crypto for each associated client, by the Id given to it on association
+    private final ClientKeys clients = new ClientKeys();
 
     KeePassHttpHandler(DatabaseAdaptor adaptor) {
         this.adaptor = adaptor;
@@ -56,9 +61,18 @@ public class KeePassHttpHandler extends AbstractHandler {
 
         Message.Response response = new Message.Response(request1.RequestType, adaptor.getHash());
 
-        // set the crypto key on associate
+        // use the key sent on associate, otherwise the key of the client
+        Crypto crypto = new Crypto();
+        String clientId = request1.Id;
         if (request1.RequestType.equals(Message.Type.ASSOCIATE)) {
-            crypto.setKey(Helpers.decodeBase64Content(request1.Key.getBytes(), false));
+            if (request1.Key != null) {
+                crypto.setKey(Helpers.decodeBase64Content(request1.Key.getBytes(), false));
+            }
+        } else if (clientId != null) {
+            Crypto clientCrypto = clients.get(clientId);
+            if (clientCrypto != null) {
+                crypto = clientCrypto;
+            }
         }
 
         // send OK even when it's fail
@@ -72,7 +86,10 @@ public class KeePassHttpHandler extends AbstractHandler {
             try {
                 // processor is responsible for setting success
                 processor.process(request1, response);
-                response.Id = adaptor.getId();
+                if (request1.RequestType.equals(Message.Type.ASSOCIATE) && response.Success) {
+                    clientId = clients.associate(adaptor.getId(), crypto);
+                }
+                response.Id = clientId;
             } catch (Exception e) {
                 httpServletResponse.setStatus(HttpServletResponse.SC_BAD_REQUEST);
                 response.Success = false;
@@ -2,14 +2,23 @@ package org.linguafranca.pwdb.keepasshttp;
 
 import org.linguafranca.pwdb.Database;
 import org.linguafranca.pwdb.Entry;
+import org.linguafranca.pwdb.base.AbstractDatabase;
+import org.linguafranca.pwdb.concurrent.SaveScheduler;
 import org.linguafranca.pwdb.keepasshttp.Message.ResponseEntry;
 
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Contains message processors for processing messages (doh)
+ * <p>
+ * Messages may be processed concurrently. Those that change the database hold the write lock, others hold
+ * the read lock. Saves are done in the background, coalescing bursts of changes, and hold the read lock,
+ * so that changes wait for a save but other requests don't. This relies on saving not changing the database,
+ * as is the case for Simple and DOM databases.
  */
 class Processor {
 
@@ -19,15 +28,44 @@ class Processor {
 
     private final Database database;
     private final PwGenerator pwGenerator;
-    private final DatabaseAdaptor adaptor;
+    // null if the database doesn't support indexes
+    private final UrlIndex urlIndex;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final SaveScheduler saveScheduler;
 
     private Map<String, MessageProcessor> processors = new HashMap<>();
+    // message types that change the database
+    private Set<String> writers = new HashSet<>();
 
 
     Processor(DatabaseAdaptor adaptor) {
+        this(adaptor, 1000);
+    }
+
+    /**
+     * @param saveDelayMillis how long to wait for further changes before saving the database
+     */
+    Processor(final DatabaseAdaptor adaptor, long saveDelayMillis) {
         this.database = adaptor.getDatabase();
         this.pwGenerator = adaptor.getPwGenerator();
-        this.adaptor = adaptor;
+        if (database instanceof AbstractDatabase) {
+            urlIndex = new UrlIndex();
+            //noinspection unchecked
+            ((AbstractDatabase) database).addEntryIndex(urlIndex);
+        } else {
+            urlIndex = null;
+        }
+        this.saveScheduler = new SaveScheduler(database, saveDelayMillis, saveDelayMillis * 10, lock.readLock()) {
+            @Override
+            protected void save() throws IOException {
+                if (adaptor instanceof AbstractDatabaseAdaptor) {
+                    ((AbstractDatabaseAdaptor) adaptor).save();
+                } else {
+                    //noinspection deprecation
+                    database.save(adaptor.getCredentials(), adaptor.getOutputStream());
+                }
+            }
+        };
 
         processors.put(Message.Type.TEST_ASSOCIATE, new TestAssociate());
         processors.put(Message.Type.ASSOCIATE, new Associate());
@@ -36,6 +74,7 @@ class Processor {
         processors.put(Message.Type.GET_ALL_LOGINS, new GetAllLogins());
         processors.put(Message.Type.SET_LOGIN, new SetLogin());
         processors.put(Message.Type.GENERATE_PASSWORD, new GeneratePassword());
+        writers.add(Message.Type.SET_LOGIN);
     }
 
     void process(Message.Request request, Message.Response response) {
@@ -43,19 +82,62 @@ class Processor {
         if (mp == null) {
             throw new IllegalStateException("Unknown message type " + request.RequestType);
         }
-        mp.process(request, response);
+        if (writers.contains(request.RequestType)) {
+            lock.writeLock().lock();
+            try {
+                mp.process(request, response);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            saveScheduler.requestSave();
+        } else {
+            lock.readLock().lock();
+            try {
+                mp.process(request, response);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Save any changes now and wait for the save to complete
+     */
+    void flush() {
+        try {
+            saveScheduler.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    SaveScheduler getSaveScheduler() {
+        return saveScheduler;
     }
 
     private class GetLogins implements MessageProcessor {
         public void process(final Message.Request r, Message.Response resp) {
 
-            @SuppressWarnings("unchecked")
-            List<Entry> entries = database.findEntries(new Entry.Matcher() {
+            Entry.Matcher matcher = new Entry.Matcher() {
                 @Override
                 public boolean matches(Entry entry) {
-                    return new String(entry.getUrl()).startsWith(r.Url) || r.Url.startsWith(Arrays.toString(entry.getUrl()));
+                    return urlMatches(entry.getUrl(), r.Url);
                 }
-            });
+            };
+            // only entries for the same host are considered, so e.g. example.com doesn't match example.com.evil.com
+            List<Entry> entries = urlIndex == null ? null : urlIndex.findByHost(r.Url);
+            if (entries == null) {
+                //noinspection unchecked
+                entries = database.findEntries(matcher);
+            } else {
+                List<Entry> candidates = entries;
+                entries = new ArrayList<>(candidates.size());
+                for (Entry entry : candidates) {
+                    if (matcher.matches(entry)) {
+                        entries.add(entry);
+                    }
+                }
+            }
 
             for (Entry entry : entries) {
                 resp.Entries.add(new ResponseEntry(entry.getTitle(), entry.getUsername(), entry.getPassword(), entry.getUuid().toString()));
@@ -65,6 +147,17 @@ class Processor {
         }
     }
 
+    /**
+     * An entry URL matches the URL of a request if either is a prefix of the other
+     */
+    static boolean urlMatches(char[] entryUrl, String requestUrl) {
+        if (entryUrl == null || entryUrl.length == 0) {
+            return false;
+        }
+        String url = new String(entryUrl);
+        return url.startsWith(requestUrl) || requestUrl.startsWith(url);
+    }
+
     private class GetLoginsCount implements MessageProcessor {
         public void process(Message.Request r, Message.Response resp) {
             processors.get(Message.Type.GET_LOGINS).process(r, resp);
@@ -110,7 +203,7 @@ class Processor {
                         return entry.getUuid().toString().equals(r.Uuid);
                     }
                 });
-                entry = (Entry) entries.get(0);
+                entry = entries.isEmpty() ? null : (Entry) entries.get(0);
             }
             if (entry == null) {
                 entry = database.newEntry();
@@ -125,11 +218,7 @@ class Processor {
             entry.setProperty("SubmitUrl", r.SubmitUrl);
             //noinspection unchecked
             database.getRootGroup().addEntry(entry);
-            try {
-                database.save(adaptor.getCredentials(), adaptor.getOutputStream());
-            } catch (IOException e) {
-                throw new IllegalStateException(e);
-            }
+            // saved by the save scheduler
             resp.Success = true;
         }
     }
@@ -143,12 +232,10 @@ class Processor {
     }
 
     private class TestAssociate implements MessageProcessor {
+        // the handler has already verified the request using the key of the client with this Id
         @Override
         public void process(Message.Request request, Message.Response response) {
-            response.Success = false;
-            if (request.Id != null) {
-                response.Success = request.Id.equals(adaptor.getId());
-            }
+            response.Success = request.Id != null;
         }
 
     }
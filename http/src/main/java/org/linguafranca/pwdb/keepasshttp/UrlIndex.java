@@ -0,0 +1,184 @@
+package org.linguafranca.pwdb.keepasshttp;
+
+import com.google.common.net.InternetDomainName;
+import org.jetbrains.annotations.Nullable;
+import org.linguafranca.pwdb.Entry;
+import org.linguafranca.pwdb.Group;
+import org.linguafranca.pwdb.base.EntryIndex;
+
+import java.util.*;
+
+/**
+ * Index of entries by the scheme and host of their URL, and by the registrable domain of the host
+ * (e.g. example.co.uk for login.example.co.uk), so that the entries for a page can be found without
+ * looking at every entry
+ */
+class UrlIndex implements EntryIndex<Entry> {
+
+    // all entries, including those with no usable URL, which are not in the maps below
+    private final Map<UUID, Entry> entries = new HashMap<>();
+    private final Map<UUID, Url> urls = new HashMap<>();
+    private final Map<String, Set<UUID>> byHost = new HashMap<>();
+    private final Map<String, Set<UUID>> byDomain = new HashMap<>();
+
+    @Override
+    public synchronized void add(Entry entry) {
+        remove(entry.getUuid());
+        entries.put(entry.getUuid(), entry);
+        char[] value = entry.getUrl();
+        Url url = value == null ? null : Url.parse(new String(value));
+        if (url == null) {
+            return;
+        }
+        urls.put(entry.getUuid(), url);
+        put(byHost, url.host, entry.getUuid());
+        put(byDomain, url.domain, entry.getUuid());
+    }
+
+    @Override
+    public synchronized void remove(UUID uuid) {
+        entries.remove(uuid);
+        Url url = urls.remove(uuid);
+        if (url == null) {
+            return;
+        }
+        take(byHost, url.host, uuid);
+        take(byDomain, url.domain, uuid);
+    }
+
+    @Override
+    public synchronized boolean contains(UUID uuid) {
+        return entries.containsKey(uuid);
+    }
+
+    /**
+     * Entries whose URL has the same scheme, host and port as the URL given, other than those in the recycle bin
+     * @return a list of entries, or null if the URL given has no host
+     */
+    @Nullable
+    synchronized List<Entry> findByHost(String url) {
+        Url parsed = Url.parse(url);
+        return parsed == null ? null : get(byHost, parsed.host);
+    }
+
+    /**
+     * Entries whose URL has the same registrable domain as the URL given, other than those in the recycle bin
+     * @return a list of entries, or null if the URL given has no host
+     */
+    @Nullable
+    synchronized List<Entry> findByDomain(String url) {
+        Url parsed = Url.parse(url);
+        return parsed == null ? null : get(byDomain, parsed.domain);
+    }
+
+    private List<Entry> get(Map<String, Set<UUID>> map, String key) {
+        Set<UUID> uuids = map.get(key);
+        if (uuids == null) {
+            return new ArrayList<>();
+        }
+        List<Entry> result = new ArrayList<>(uuids.size());
+        for (UUID uuid : uuids) {
+            Entry entry = entries.get(uuid);
+            if (!isInRecycleBin(entry.getParent())) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isInRecycleBin(Group group) {
+        while (group != null) {
+            if (group.isRecycleBin()) {
+                return true;
+            }
+            group = group.getParent();
+        }
+        return false;
+    }
+
+    private static void put(Map<String, Set<UUID>> map, String key, UUID uuid) {
+        Set<UUID> uuids = map.get(key);
+        if (uuids == null) {
+            uuids = new LinkedHashSet<>();
+            map.put(key, uuids);
+        }
+        uuids.add(uuid);
+    }
+
+    private static void take(Map<String, Set<UUID>> map, String key, UUID uuid) {
+        Set<UUID> uuids = map.get(key);
+        uuids.remove(uuid);
+        if (uuids.isEmpty()) {
+            map.remove(key);
+        }
+    }
+
+    /**
+     * The normalised parts of a URL that are indexed
+     */
+    static class Url {
+        // scheme://host[:port], lower case, without default ports
+        final String host;
+        final String domain;
+
+        private Url(String host, String domain) {
+            this.host = host;
+            this.domain = domain;
+        }
+
+        /**
+         * Parse a URL, being tolerant of the sort of thing people put in the URL field
+         * @return the parsed URL or null if there is no host
+         */
+        @Nullable
+        static Url parse(String url) {
+            String value = url.trim().toLowerCase(Locale.ROOT);
+            String scheme = "";
+            int schemeEnd = value.indexOf("://");
+            if (schemeEnd >= 0) {
+                scheme = value.substring(0, schemeEnd);
+                value = value.substring(schemeEnd + 3);
+            }
+            int authorityEnd = value.length();
+            for (char c : new char[]{'/', '?', '#'}) {
+                int index = value.indexOf(c);
+                if (index >= 0 && index < authorityEnd) {
+                    authorityEnd = index;
+                }
+            }
+            String authority = value.substring(value.lastIndexOf('@', authorityEnd - 1) + 1, authorityEnd);
+
+            String hostName = authority;
+            String port = "";
+            int portStart = authority.lastIndexOf(':');
+            // careful of IPv6 literals
+            if (portStart >= 0 && authority.indexOf(']', portStart) < 0) {
+                hostName = authority.substring(0, portStart);
+                port = authority.substring(portStart + 1);
+            }
+            if (hostName.endsWith(".")) {
+                hostName = hostName.substring(0, hostName.length() - 1);
+            }
+            if (hostName.isEmpty() || hostName.matches(".*\\s.*")) {
+                return null;
+            }
+            if ((scheme.equals("http") && port.equals("80")) || (scheme.equals("https") && port.equals("443"))) {
+                port = "";
+            }
+            String host = (scheme.isEmpty() ? "" : scheme + "://") + hostName + (port.isEmpty() ? "" : ":" + port);
+            return new Url(host, registrableDomain(hostName));
+        }
+
+        private static String registrableDomain(String hostName) {
+            try {
+                InternetDomainName name = InternetDomainName.from(hostName);
+                if (name.isUnderPublicSuffix()) {
+                    return name.topPrivateDomain().toString();
+                }
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                // not a domain name, e.g. an IP address
+            }
+            return hostName;
+        }
+    }
+}
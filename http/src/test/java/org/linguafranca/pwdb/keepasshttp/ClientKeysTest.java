@@ -0,0 +1,44 @@
+package org.linguafranca.pwdb.keepasshttp;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author jo
+ */
+public class ClientKeysTest {
+
+    @Test
+    public void testReassociate() {
+        ClientKeys clients = new ClientKeys(4);
+        String id = clients.associate("db", crypto(1));
+        assertTrue(id.startsWith("db "));
+        assertEquals(id, clients.associate("db", crypto(1)));
+        assertNotEquals(id, clients.associate("db", crypto(2)));
+        assertEquals(2, clients.size());
+        assertArrayEquals(new byte[]{1}, clients.get(id).getKey());
+        assertNull(clients.get("unknown"));
+    }
+
+    @Test
+    public void testBounded() {
+        ClientKeys clients = new ClientKeys(4);
+        String first = clients.associate("db", crypto(0));
+        String second = clients.associate("db", crypto(1));
+        for (int i = 2; i < 100; i++) {
+            // keep the first in use
+            assertNotNull(clients.get(first));
+            clients.associate("db", crypto(i));
+        }
+        assertEquals(4, clients.size());
+        assertNotNull(clients.get(first));
+        assertNull(clients.get(second));
+    }
+
+    private static Crypto crypto(int key) {
+        Crypto crypto = new Crypto();
+        crypto.setKey(new byte[]{(byte) key});
+        return crypto;
+    }
+}
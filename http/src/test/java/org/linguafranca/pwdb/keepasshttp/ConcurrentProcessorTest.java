@@ -0,0 +1,232 @@
+package org.linguafranca.pwdb.keepasshttp;
+
+import org.junit.Test;
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.Database;
+import org.linguafranca.pwdb.concurrent.SaveScheduler;
+import org.linguafranca.pwdb.kdbx.KdbxCreds;
+import org.linguafranca.pwdb.kdbx.simple.SimpleDatabase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Concurrent requests to the processor, with saves coalesced in the background
+ *
+ * @author jo
+ */
+public class ConcurrentProcessorTest {
+
+    private static final int CLIENTS = 4;
+    private static final int LOGINS = 25;
+
+    @Test
+    public void testConcurrentSetLogin() throws Exception {
+        final KdbxCreds creds = new KdbxCreds("123".getBytes());
+        File file = File.createTempFile("pwdb", "tmp");
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            new SimpleDatabase().save(creds, outputStream);
+        }
+        final Processor processor = new Processor(new DatabaseAdaptor.Default(file, creds, new PwGenerator() {
+            @Override
+            public String generate() {
+                return "123";
+            }
+        }), 200);
+
+        ExecutorService executor = Executors.newFixedThreadPool(CLIENTS * 2);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            final int client = i;
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int j = 0; j < LOGINS; j++) {
+                        Message.Request request = new Message.Request();
+                        request.RequestType = Message.Type.SET_LOGIN;
+                        request.Url = "https://client" + client + ".example.com/";
+                        request.SubmitUrl = request.Url + "login";
+                        request.Login = "user" + j;
+                        request.Password = "password" + j;
+                        Message.Response response = new Message.Response(request.RequestType, "");
+                        processor.process(request, response);
+                        assertTrue(response.Success);
+                    }
+                    return null;
+                }
+            }));
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int j = 0; j < LOGINS; j++) {
+                        Message.Request request = new Message.Request();
+                        request.RequestType = Message.Type.GET_LOGINS;
+                        request.Url = "https://client" + client + ".example.com/";
+                        Message.Response response = new Message.Response(request.RequestType, "");
+                        processor.process(request, response);
+                        assertTrue(response.Success);
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        processor.flush();
+
+        SaveScheduler scheduler = processor.getSaveScheduler();
+        assertEquals(CLIENTS * LOGINS, scheduler.getRequestCount());
+        assertTrue(scheduler.getSaveCount() >= 1);
+        assertTrue(scheduler.getSaveCount() < scheduler.getRequestCount());
+        assertTrue(scheduler.getCoalescedCount() > 0);
+
+        try (FileInputStream inputStream = new FileInputStream(file)) {
+            SimpleDatabase saved = SimpleDatabase.load(creds, inputStream);
+            assertEquals(CLIENTS * LOGINS, saved.findEntries("example.com").size());
+        }
+    }
+
+    @Test
+    public void testReadersProceedDuringSave() throws Exception {
+        final KdbxCreds creds = new KdbxCreds("123".getBytes());
+        final SimpleDatabase database = new SimpleDatabase();
+        final CountDownLatch saving = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Processor processor = new Processor(adaptor(database, creds, new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                saving.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+            }
+        }), 60000);
+        processor.process(setLogin(), new Message.Response(Message.Type.SET_LOGIN, ""));
+
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<?> flush = executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    processor.flush();
+                    return null;
+                }
+            });
+            assertTrue(saving.await(10, TimeUnit.SECONDS));
+            // the save is stuck part way, but readers see the database as it was
+            Future<Message.Response> read = executor.submit(new Callable<Message.Response>() {
+                @Override
+                public Message.Response call() {
+                    Message.Request request = new Message.Request();
+                    request.RequestType = Message.Type.GET_LOGINS;
+                    request.Url = "https://example.com/";
+                    Message.Response response = new Message.Response(request.RequestType, "");
+                    processor.process(request, response);
+                    return response;
+                }
+            });
+            Message.Response response = read.get(10, TimeUnit.SECONDS);
+            assertTrue(response.Success);
+            assertEquals(1, response.Entries.size());
+            assertEquals("password", response.Entries.get(0).Password);
+
+            // writers wait for the save
+            Future<?> write = executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    processor.process(setLogin(), new Message.Response(Message.Type.SET_LOGIN, ""));
+                    return null;
+                }
+            });
+            try {
+                write.get(200, TimeUnit.MILLISECONDS);
+                fail("Writer should wait for the save");
+            } catch (TimeoutException ignored) {
+            }
+            release.countDown();
+            flush.get(10, TimeUnit.SECONDS);
+            write.get(10, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testAdaptorWithOutputStream() throws Exception {
+        final KdbxCreds creds = new KdbxCreds("123".getBytes());
+        final SimpleDatabase database = new SimpleDatabase();
+        ByteArrayOutputStream saved = new ByteArrayOutputStream();
+        // an adaptor written before adaptors could save themselves
+        Processor processor = new Processor(adaptor(database, creds, saved), 200);
+        Message.Request request = setLogin();
+        Message.Response response = new Message.Response(request.RequestType, "");
+        processor.process(request, response);
+        processor.flush();
+
+        SimpleDatabase loaded = SimpleDatabase.load(creds, new ByteArrayInputStream(saved.toByteArray()));
+        assertEquals(1, loaded.findEntries("example.com").size());
+    }
+
+    private static Message.Request setLogin() {
+        Message.Request request = new Message.Request();
+        request.RequestType = Message.Type.SET_LOGIN;
+        request.Url = "https://example.com/";
+        request.SubmitUrl = request.Url + "login";
+        request.Login = "user";
+        request.Password = "password";
+        return request;
+    }
+
+    /**
+     * An adaptor that saves by writing to an output stream
+     */
+    private static DatabaseAdaptor adaptor(final Database database, final Credentials creds, final OutputStream outputStream) {
+        return new DatabaseAdaptor() {
+            @Override
+            public String getId() {
+                return "id";
+            }
+
+            @Override
+            public String getHash() {
+                return "hash";
+            }
+
+            @Override
+            public PwGenerator getPwGenerator() {
+                return null;
+            }
+
+            @Override
+            public OutputStream getOutputStream() {
+                return outputStream;
+            }
+
+            @Override
+            public Credentials getCredentials() {
+                return creds;
+            }
+
+            @Override
+            public Database getDatabase() {
+                return database;
+            }
+        };
+    }
+}
@@ -0,0 +1,90 @@
+package org.linguafranca.pwdb.keepasshttp;
+
+import org.junit.Test;
+import org.linguafranca.pwdb.Entry;
+import org.linguafranca.pwdb.kdbx.simple.SimpleDatabase;
+import org.linguafranca.pwdb.kdbx.simple.SimpleEntry;
+import org.linguafranca.pwdb.kdbx.simple.SimpleGroup;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author jo
+ */
+public class UrlIndexTest {
+
+    @Test
+    public void testParse() {
+        assertEquals("https://www.example.com", UrlIndex.Url.parse("https://WWW.Example.com:443/login?x=y").host);
+        assertEquals("http://example.com:8080", UrlIndex.Url.parse(" http://user:pw@example.com.:8080#top").host);
+        assertEquals("example.com", UrlIndex.Url.parse("example.com/path").host);
+        assertEquals("example.co.uk", UrlIndex.Url.parse("https://login.example.co.uk/").domain);
+        assertEquals("192.168.1.1", UrlIndex.Url.parse("http://192.168.1.1/").domain);
+        assertNull(UrlIndex.Url.parse("https:///path"));
+        assertNull(UrlIndex.Url.parse(""));
+    }
+
+    @Test
+    public void testIndex() {
+        SimpleDatabase database = new SimpleDatabase();
+        SimpleEntry login = addEntry(database, "https://login.example.com/");
+        SimpleEntry www = addEntry(database, "https://www.example.com/path");
+        addEntry(database, "https://www.example.com.evil.com/");
+
+        UrlIndex index = new UrlIndex();
+        database.addEntryIndex(index);
+        assertEquals(uuids(www), uuids(index.findByHost("https://www.example.com/other")));
+        assertEquals(uuids(login, www), uuids(index.findByDomain("https://example.com/")));
+        assertTrue(index.findByHost("http://www.example.com/path").isEmpty());
+        assertNull(index.findByHost("no host here"));
+
+        // kept up to date
+        login.setUrl("https://www.example.com/login");
+        assertEquals(uuids(login, www), uuids(index.findByHost("https://www.example.com/")));
+        SimpleEntry added = addEntry(database, "https://www.example.com/new");
+        assertEquals(uuids(login, www, added), uuids(index.findByHost("https://www.example.com/")));
+        database.getRootGroup().removeEntry(www);
+        assertEquals(uuids(login, added), uuids(index.findByHost("https://www.example.com/")));
+
+        // not in the recycle bin
+        database.enableRecycleBin(true);
+        database.deleteEntry(added.getUuid());
+        assertEquals(uuids(login), uuids(index.findByHost("https://www.example.com/")));
+
+        // moves between groups
+        SimpleGroup group = database.getRootGroup().addGroup(database.newGroup("group"));
+        group.addEntry(login);
+        assertEquals(uuids(login), uuids(index.findByHost("https://www.example.com/")));
+    }
+
+    @Test
+    public void testUrlMatches() {
+        assertTrue(Processor.urlMatches("https://example.com/".toCharArray(), "https://example.com/login"));
+        assertTrue(Processor.urlMatches("https://example.com/login".toCharArray(), "https://example.com/"));
+        assertFalse(Processor.urlMatches("https://example.org/".toCharArray(), "https://example.com/"));
+        assertFalse(Processor.urlMatches("".toCharArray(), "https://example.com/"));
+    }
+
+    private static SimpleEntry addEntry(SimpleDatabase database, String url) {
+        SimpleEntry entry = database.getRootGroup().addEntry(database.newEntry(url));
+        entry.setUrl(url);
+        return entry;
+    }
+
+    private static Set<UUID> uuids(Entry... entries) {
+        Set<UUID> result = new HashSet<>();
+        for (Entry entry : entries) {
+            result.add(entry.getUuid());
+        }
+        return result;
+    }
+
+    private static Set<UUID> uuids(List<Entry> entries) {
+        return uuids(entries.toArray(new Entry[0]));
+    }
+}
@@ -53,13 +53,26 @@ public class JaxbDatabase extends AbstractDatabase<JaxbDatabase, JaxbGroup, Jaxb
         this.root = new JaxbGroup(this, keePassFile.getRoot().getGroup());
     }
 
+    /**
+     * Create a database from a copy of a template that is parsed once and kept
+     */
     public static JaxbDatabase createEmptyDatabase() {
-        InputStream inputStream = JaxbDatabase.class.getClassLoader().getResourceAsStream("base.kdbx.xml");
-        KeePassFile keePassFile = new JaxbSerializableDatabase().load(inputStream).keePassFile;
+        KeePassFile keePassFile = JaxbSerializableDatabase.copy(TemplateHolder.TEMPLATE);
         keePassFile.getRoot().getGroup().setUUID(UUID.randomUUID());
         return new JaxbDatabase(keePassFile);
     }
 
+    private static class TemplateHolder {
+        private static final KeePassFile TEMPLATE;
+        static {
+            try (InputStream inputStream = JaxbDatabase.class.getClassLoader().getResourceAsStream("base.kdbx.xml")) {
+                TEMPLATE = new JaxbSerializableDatabase().load(inputStream).getKeePassFile();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
     public static JaxbDatabase load(Credentials creds, InputStream inputStream) {
         StreamFormat format = new KdbxStreamFormat();
         return load(format, creds, inputStream);
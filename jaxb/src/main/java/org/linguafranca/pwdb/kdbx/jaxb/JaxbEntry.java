@@ -102,6 +102,7 @@ public class JaxbEntry extends AbstractEntry<JaxbDatabase, JaxbGroup, JaxbEntry,
         field.setValue(fieldValue);
         delegate.getString().add(field);
         touch();
+        database.entryChanged(this);
     }
 
     @Override
@@ -120,6 +121,7 @@ public class JaxbEntry extends AbstractEntry<JaxbDatabase, JaxbGroup, JaxbEntry,
         } else {
             delegate.getString().remove(toRemove);
             touch();
+            database.entryChanged(this);
             return true;
         }
     }
@@ -275,6 +277,21 @@ public class JaxbEntry extends AbstractEntry<JaxbDatabase, JaxbGroup, JaxbEntry,
         return delegate.getTimes().getLastModificationTime();
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        JaxbEntry that = (JaxbEntry) o;
+
+        return database.equals(that.database) && delegate.equals(that.delegate);
+    }
+
+    @Override
+    public int hashCode() {
+        return delegate.hashCode();
+    }
+
     @Override
     protected void touch() {
         database.setDirty(true);
@@ -123,11 +123,12 @@ public class JaxbGroup extends AbstractGroup<JaxbDatabase, JaxbGroup, JaxbEntry,
         }
 
         if (group.getParent() != null) {
-            group.getParent().delegate.getGroup().remove(group.delegate);
+            group.getParent().removeGroup(group);
         }
         group.delegate.parent = this.delegate;
         this.delegate.getGroup().add(group.delegate);
         touch();
+        database.groupAdded(group);
         return group;
     }
 
@@ -139,6 +140,7 @@ public class JaxbGroup extends AbstractGroup<JaxbDatabase, JaxbGroup, JaxbEntry,
         delegate.getGroup().remove(group.delegate);
         group.delegate.parent = null;
         touch();
+        database.groupRemoved(group);
         return group;
     }
 
@@ -167,6 +169,7 @@ public class JaxbGroup extends AbstractGroup<JaxbDatabase, JaxbGroup, JaxbEntry,
         delegate.getEntry().add(entry.delegate);
         entry.delegate.parent = this.delegate;
         touch();
+        database.entryAdded(entry);
         return entry;
     }
 
@@ -174,6 +177,7 @@ public class JaxbGroup extends AbstractGroup<JaxbDatabase, JaxbGroup, JaxbEntry,
     public JaxbEntry removeEntry(JaxbEntry entry) {
         delegate.getEntry().remove(entry.delegate);
         entry.delegate.parent = null;
+        database.entryRemoved(entry);
         return entry;
     }
 
@@ -18,7 +18,7 @@ package org.linguafranca.pwdb.kdbx.jaxb;
 
 import org.apache.commons.codec.binary.Base64;
 import org.linguafranca.pwdb.kdbx.Helpers;
-import org.linguafranca.pwdb.kdbx.SerializableDatabase;
+import org.linguafranca.pwdb.kdbx.SerializableDatabaseV4;
 import org.linguafranca.pwdb.kdbx.StreamEncryptor;
 import org.linguafranca.pwdb.kdbx.jaxb.binding.*;
 
@@ -26,57 +26,96 @@ import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.util.JAXBSource;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 
 /**
  * @author jo
  */
 @SuppressWarnings("WeakerAccess")
-public class JaxbSerializableDatabase implements SerializableDatabase {
+public class JaxbSerializableDatabase implements SerializableDatabaseV4 {
+
+    /**
+     * Marshallers and unmarshallers are not thread safe, but are expensive enough
+     * to create that each thread keeps its own
+     */
+    private static final ThreadLocal<Unmarshaller> UNMARSHALLER = new ThreadLocal<Unmarshaller>() {
+        @Override
+        protected Unmarshaller initialValue() {
+            try {
+                return getContext().createUnmarshaller();
+            } catch (JAXBException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    private static final ThreadLocal<Marshaller> MARSHALLER = new ThreadLocal<Marshaller>() {
+        @Override
+        protected Marshaller initialValue() {
+            try {
+                Marshaller marshaller = getContext().createMarshaller();
+                marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+                return marshaller;
+            } catch (JAXBException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    private static final Adapter1 V3_ADAPTER = new Adapter1();
+
+    private static final Adapter1 V4_ADAPTER = new Adapter1() {
+        @Override
+        public String marshal(Date value) {
+            return Helpers.fromDateV4(value);
+        }
+    };
 
     protected KeePassFile keePassFile;
     private StreamEncryptor encryption;
     private ObjectFactory objectFactory = new ObjectFactory();
+    private int version = 3;
 
 
     @Override
     public JaxbSerializableDatabase load(InputStream inputStream) {
+        Unmarshaller u = UNMARSHALLER.get();
+        u.setListener(new UnmarshalListener(encryption));
         try {
-            JAXBContext jc = JAXBContext.newInstance(KeePassFile.class);
-            Unmarshaller u = jc.createUnmarshaller();
-            u.setListener(new Unmarshaller.Listener() {
-                @Override
-                public void afterUnmarshal(Object target, Object parent) {
-                    try {
-                        if (target instanceof StringField.Value) {
-                            StringField.Value value = (StringField.Value) target;
-                            if (value.getProtected() !=null && value.getProtected()) {
-                                byte[] encrypted = Base64.decodeBase64(value.getValue().getBytes());
-                                String decrypted = new String(encryption.decrypt(encrypted), "UTF-8");
-                                value.setValue(decrypted);
-                                value.setProtected(false);
-                            }
-                        }
-                        if (target instanceof JaxbGroupBinding && (parent instanceof JaxbGroupBinding)) {
-                            ((JaxbGroupBinding) target).parent = ((JaxbGroupBinding) parent);
-                        }
-                        if (target instanceof JaxbEntryBinding && (parent instanceof JaxbGroupBinding)) {
-                            ((JaxbEntryBinding) target).parent = ((JaxbGroupBinding) parent);
-                        }
-                    } catch (UnsupportedEncodingException e) {
-                        throw new IllegalStateException();
-                    }
-                }
-            });
             keePassFile = (KeePassFile) u.unmarshal(inputStream);
             return this;
         } catch (JAXBException e) {
             throw new IllegalStateException(e);
+        } finally {
+            // don't keep hold of the encryption
+            u.setListener(null);
+        }
+    }
+
+    /**
+     * Make a deep copy of a KeePassFile, without serializing it to XML and parsing it again
+     *
+     * @param keePassFile the file to copy, which must not contain protected values
+     * @return a copy
+     */
+    public static KeePassFile copy(KeePassFile keePassFile) {
+        Marshaller m = MARSHALLER.get();
+        Unmarshaller u = UNMARSHALLER.get();
+        u.setListener(new UnmarshalListener(null));
+        try {
+            m.setAdapter(Adapter1.class, V3_ADAPTER);
+            return (KeePassFile) u.unmarshal(new JAXBSource(m, keePassFile));
+        } catch (JAXBException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            u.setListener(null);
         }
     }
 
@@ -98,31 +137,38 @@ public class JaxbSerializableDatabase implements SerializableDatabase {
         if (keePassFile.getMeta().getMemoryProtection().getProtectNotes()) {
             toEncrypt.add(org.linguafranca.pwdb.Entry.STANDARD_PROPERTY_NAME_NOTES);
         }
-        try {
-            JAXBContext jc = JAXBContext.newInstance(KeePassFile.class);
-            Marshaller u = jc.createMarshaller();
-            u.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
-            u.setListener(new Marshaller.Listener() {
-                @Override
-                public void beforeMarshal(Object source) {
-                    try {
-                        if (source instanceof StringField) {
-                            StringField field = (StringField) source;
-                            if (toEncrypt.contains(field.getKey())) {
-                                byte[] encrypted = encryption.encrypt(field.getValue().getValue().getBytes());
-                                String b64 = new String(Base64.encodeBase64(encrypted), "UTF-8");
-                                field.getValue().setValue(b64);
-                                field.getValue().setProtected(true);
-                            }
+        Marshaller u = MARSHALLER.get();
+        u.setListener(new Marshaller.Listener() {
+            @Override
+            public void beforeMarshal(Object source) {
+                try {
+                    if (source instanceof StringField) {
+                        StringField field = (StringField) source;
+                        if (toEncrypt.contains(field.getKey())) {
+                            byte[] encrypted = encryption.encrypt(field.getValue().getValue().getBytes());
+                            String b64 = new String(Base64.encodeBase64(encrypted), "UTF-8");
+                            field.getValue().setValue(b64);
+                            field.getValue().setProtected(true);
                         }
-                    } catch (UnsupportedEncodingException e) {
-                        throw new IllegalStateException();
                     }
+                } catch (UnsupportedEncodingException e) {
+                    throw new IllegalStateException();
                 }
-            });
+            }
+        });
+        // V4 binaries are not part of the payload, and times are formatted differently
+        Binaries binaries = keePassFile.getMeta().getBinaries();
+        if (version >= 4) {
+            keePassFile.getMeta().setBinaries(null);
+        }
+        try {
+            u.setAdapter(Adapter1.class, version >= 4 ? V4_ADAPTER : V3_ADAPTER);
             u.marshal(keePassFile, outputStream);
         } catch (JAXBException e) {
             throw new IllegalStateException(e);
+        } finally {
+            u.setListener(null);
+            keePassFile.getMeta().setBinaries(binaries);
         }
     }
 
@@ -151,6 +197,81 @@ public class JaxbSerializableDatabase implements SerializableDatabase {
         addBinary(keePassFile, objectFactory, index, value);
     }
 
+    @Override
+    public List<byte[]> getBinaries() {
+        List<byte[]> result = new ArrayList<>();
+        if (keePassFile.getMeta().getBinaries() == null) {
+            return result;
+        }
+        for (Binaries.Binary binary : keePassFile.getMeta().getBinaries().getBinary()) {
+            // indexes are expected to be contiguous, fill any gaps
+            while (result.size() <= binary.getID()) {
+                result.add(new byte[0]);
+            }
+            byte[] value = binary.getValue();
+            result.set(binary.getID(), binary.getCompressed() != null && binary.getCompressed() ? Helpers.unzipBinaryContent(value) : value);
+        }
+        return result;
+    }
+
+    @Override
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    /**
+     * The JAXB context for KeePassFile, created on first use and shared, since it is thread safe
+     * and very expensive to create
+     */
+    public static JAXBContext getContext() {
+        return ContextHolder.CONTEXT;
+    }
+
+    private static class ContextHolder {
+        private static final JAXBContext CONTEXT;
+        static {
+            try {
+                CONTEXT = JAXBContext.newInstance(KeePassFile.class);
+            } catch (JAXBException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * Decrypts protected values and links groups and entries to their parents
+     */
+    private static class UnmarshalListener extends Unmarshaller.Listener {
+        private final StreamEncryptor encryption;
+
+        UnmarshalListener(StreamEncryptor encryption) {
+            this.encryption = encryption;
+        }
+
+        @Override
+        public void afterUnmarshal(Object target, Object parent) {
+            try {
+                if (target instanceof StringField.Value) {
+                    StringField.Value value = (StringField.Value) target;
+                    if (value.getProtected() !=null && value.getProtected()) {
+                        byte[] encrypted = Base64.decodeBase64(value.getValue().getBytes());
+                        String decrypted = new String(encryption.decrypt(encrypted), "UTF-8");
+                        value.setValue(decrypted);
+                        value.setProtected(false);
+                    }
+                }
+                if (target instanceof JaxbGroupBinding && (parent instanceof JaxbGroupBinding)) {
+                    ((JaxbGroupBinding) target).parent = ((JaxbGroupBinding) parent);
+                }
+                if (target instanceof JaxbEntryBinding && (parent instanceof JaxbGroupBinding)) {
+                    ((JaxbEntryBinding) target).parent = ((JaxbGroupBinding) parent);
+                }
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException();
+            }
+        }
+    }
+
     public static void addBinary(KeePassFile keePassFile, ObjectFactory objectFactory, int index, byte[] value) {
         // create a new binary to put in the store
         Binaries.Binary newBin = objectFactory.createBinariesBinary();
@@ -20,7 +20,14 @@ import org.junit.Test;
 import org.linguafranca.pwdb.Visitor;
 import org.linguafranca.pwdb.kdbx.KdbxCreds;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
 
 /**
  * @author jo
@@ -31,6 +38,45 @@ public class JaxbSerializableDatabaseTest {
         JaxbDatabase db = JaxbDatabase.createEmptyDatabase();
         db.save(new KdbxCreds.None(), System.out);
     }
+    @Test
+    public void emptyDatabasesAreIndependent() throws Exception {
+        JaxbDatabase db1 = JaxbDatabase.createEmptyDatabase();
+        JaxbDatabase db2 = JaxbDatabase.createEmptyDatabase();
+        assertNotEquals(db1.getRootGroup().getUuid(), db2.getRootGroup().getUuid());
+        db1.setName("changed");
+        JaxbGroup group = db1.getRootGroup().addGroup(db1.newGroup("group"));
+        assertEquals(db1.getRootGroup(), group.getParent());
+        assertNotEquals("changed", db2.getName());
+        assertEquals(0, db2.getRootGroup().getGroups().size());
+        assertNotEquals("changed", JaxbDatabase.createEmptyDatabase().getName());
+    }
+
+    @Test
+    public void concurrentSaveAndLoad() throws Exception {
+        final KdbxCreds creds = new KdbxCreds("123".getBytes());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            final int n = i;
+            futures.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    JaxbDatabase database = JaxbDatabase.createEmptyDatabase();
+                    JaxbEntry entry = database.getRootGroup().addEntry(database.newEntry("entry " + n));
+                    entry.setPassword("password " + n);
+                    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                    database.save(creds, outputStream);
+                    JaxbDatabase loaded = JaxbDatabase.load(creds, new ByteArrayInputStream(outputStream.toByteArray()));
+                    return new String(loaded.findEntries("entry " + n).get(0).getPassword());
+                }
+            }));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals("password " + i, futures.get(i).get());
+        }
+        executor.shutdown();
+    }
+
     @Test
     public void loadXml() throws Exception {
         InputStream inputStream = getClass().getClassLoader().getResourceAsStream("test123.kdbx");
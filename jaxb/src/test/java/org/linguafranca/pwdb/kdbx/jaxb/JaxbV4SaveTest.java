@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.jaxb;
+
+import com.google.common.io.ByteStreams;
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.checks.V4SaveChecks;
+import org.linguafranca.pwdb.kdbx.KdbxCreds;
+import org.linguafranca.pwdb.kdbx.KdbxHeader;
+import org.linguafranca.pwdb.kdbx.KdbxSerializer;
+import org.linguafranca.pwdb.kdbx.KdbxStreamFormat;
+import org.linguafranca.pwdb.security.CipherAlgorithm;
+import org.linguafranca.pwdb.security.KeyDerivationFunction;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * @author jo
+ */
+public class JaxbV4SaveTest extends V4SaveChecks<JaxbDatabase, JaxbGroup, JaxbEntry, JaxbIcon> {
+
+    @Override
+    public JaxbDatabase newDatabase() throws IOException {
+        return new JaxbDatabase();
+    }
+
+    @Override
+    public JaxbDatabase loadDatabase(Credentials credentials, InputStream inputStream) throws Exception {
+        return JaxbDatabase.load(credentials, inputStream);
+    }
+
+    @Override
+    public void saveDatabase(JaxbDatabase database, CipherAlgorithm cipherAlgorithm, KeyDerivationFunction kdf, Credentials credentials, OutputStream outputStream) throws IOException {
+        database.save(new KdbxStreamFormat(KdbxStreamFormat.Version.KDBX4, cipherAlgorithm, kdf), credentials, outputStream);
+    }
+
+    @Override
+    public SavedFile decrypt(Credentials credentials, byte[] saved) throws IOException {
+        KdbxHeader kdbxHeader = new KdbxHeader();
+        InputStream plainText = KdbxSerializer.createUnencryptedInputStream(credentials, kdbxHeader, new ByteArrayInputStream(saved));
+        return new SavedFile(kdbxHeader.getVersion(), kdbxHeader.getCipherUuid(), kdbxHeader.getBinaries().size(), ByteStreams.toByteArray(plainText));
+    }
+
+    @Override
+    public Credentials getCreds(byte[] creds) {
+        return new KdbxCreds(creds);
+    }
+}
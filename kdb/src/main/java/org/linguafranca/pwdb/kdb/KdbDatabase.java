@@ -16,9 +16,7 @@
 
 package org.linguafranca.pwdb.kdb;
 
-import org.linguafranca.pwdb.Group;
 import org.linguafranca.pwdb.Icon;
-import org.linguafranca.pwdb.Visitor;
 import org.linguafranca.pwdb.base.AbstractDatabase;
 import org.linguafranca.pwdb.Credentials;
 import org.linguafranca.pwdb.Entry;
@@ -42,7 +40,7 @@ public class KdbDatabase extends AbstractDatabase<KdbDatabase, KdbGroup, KdbEntr
 
     public KdbDatabase() {
         // KDB files don't have a single root group, this is a synthetic surrogate
-        this.rootGroup = new KdbGroup();
+        this.rootGroup = newGroup();
         rootGroup.setRoot(true);
         rootGroup.setName("Root");
         rootGroup.setIcon(new KdbIcon(1));
@@ -53,20 +51,6 @@ public class KdbDatabase extends AbstractDatabase<KdbDatabase, KdbGroup, KdbEntr
         return KdbSerializer.createKdbDatabase(credentials, new KdbHeader(), inputStream);
     }
 
-    /**
-     * Primarily intended for finding the parent of an Entry, when deserializing KDB data.
-     *
-     * @param uuid the UUID of the group to find (these are a
-     *             simple transposition of the groupId int on deserialization)
-     *
-     * @return a group or null if none found
-     */
-    public KdbGroup findGroup(final UUID uuid) {
-        GroupFinder groupFinder = new GroupFinder(uuid);
-        this.visit(groupFinder);
-        return (KdbGroup) groupFinder.foundGroup;
-    }
-
     @Override
     public KdbGroup getRootGroup() {
         return rootGroup;
@@ -74,7 +58,9 @@ public class KdbDatabase extends AbstractDatabase<KdbDatabase, KdbGroup, KdbEntr
 
     @Override
     public KdbGroup newGroup() {
-        return new KdbGroup();
+        KdbGroup group = new KdbGroup();
+        group.database = this;
+        return group;
     }
 
     @Override
@@ -122,25 +108,6 @@ public class KdbDatabase extends AbstractDatabase<KdbDatabase, KdbGroup, KdbEntr
 
     }
 
-    private static class GroupFinder extends Visitor.Default {
-        Group foundGroup = null;
-        UUID uuid;
-
-        GroupFinder(UUID uuid) {
-            if (uuid==null) {
-                throw new IllegalArgumentException("UUID cannot be null");
-            }
-            this.uuid = uuid;
-        }
-
-        @Override
-        public void startVisit(Group group) {
-            if (group != null && uuid.equals(group.getUuid())) {
-                foundGroup = group;
-            }
-        }
-    }
-
     @Override
     public boolean isRecycleBinEnabled() {
         return false;
@@ -158,6 +125,16 @@ public class KdbDatabase extends AbstractDatabase<KdbDatabase, KdbGroup, KdbEntr
         return null;
     }
 
+    /**
+     * KDB entries also match on their binary description, which the text index doesn't know about
+     */
+    @Override
+    public void enableTextIndex(boolean enable, boolean includeProtected) {
+        if (enable) {
+            throw new UnsupportedOperationException("KDB files don't support a text index");
+        }
+    }
+
     @Override
     public boolean supportsNonStandardPropertyNames() {
         return false;
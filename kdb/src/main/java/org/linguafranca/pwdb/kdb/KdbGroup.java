@@ -56,11 +56,14 @@ public class KdbGroup extends AbstractGroup<KdbDatabase, KdbGroup, KdbEntry, Kdb
 
     @Override
     public KdbGroup addGroup(KdbGroup group) {
-        groups.add(group);
         if (group.getParent() != null) {
             group.getParent().removeGroup(group);
         }
+        groups.add(group);
         group.parent = this;
+        if (database != null) {
+            database.groupAdded(group);
+        }
         return group;
     }
 
@@ -68,6 +71,9 @@ public class KdbGroup extends AbstractGroup<KdbDatabase, KdbGroup, KdbEntry, Kdb
     public KdbGroup removeGroup(KdbGroup group) {
         groups.remove(group);
         group.parent = null;
+        if (database != null) {
+            database.groupRemoved(group);
+        }
         return group;
     }
 
@@ -89,6 +95,9 @@ public class KdbGroup extends AbstractGroup<KdbDatabase, KdbGroup, KdbEntry, Kdb
         }
         entries.add(entry);
         entry.parent = this;
+        if (database != null) {
+            database.entryAdded(entry);
+        }
         return entry;
     }
 
@@ -96,6 +105,9 @@ public class KdbGroup extends AbstractGroup<KdbDatabase, KdbGroup, KdbEntry, Kdb
     public KdbEntry removeEntry(KdbEntry entry) {
         entries.remove(entry);
         entry.parent = null;
+        if (database != null) {
+            database.entryRemoved(entry);
+        }
         return entry;
     }
 
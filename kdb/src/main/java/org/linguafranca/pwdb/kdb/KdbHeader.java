@@ -17,6 +17,7 @@
 package org.linguafranca.pwdb.kdb;
 
 import org.linguafranca.pwdb.security.Aes;
+import org.linguafranca.pwdb.security.TransformedKeyCache;
 
 import javax.crypto.Cipher;
 import java.io.InputStream;
@@ -62,7 +63,8 @@ public class KdbHeader {
             throw new IllegalStateException("StreamEncryptor algorithm is not supported");
         }
 
-        byte[] transformedKeyDigest = Aes.getTransformedKey(key, transformSeed, transformRounds);
+        byte[] transformedKeyDigest = TransformedKeyCache.getInstance()
+                .getTransformedKey(key, Aes.createKdfParameters(transformSeed, transformRounds));
         MessageDigest md = getSha256MessageDigestInstance();
         md.update(masterSeed);
         byte[] finalKeyDigest = md.digest(transformedKeyDigest);
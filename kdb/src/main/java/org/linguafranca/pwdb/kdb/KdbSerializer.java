@@ -18,7 +18,6 @@ package org.linguafranca.pwdb.kdb;
 
 import com.google.common.io.LittleEndianDataInputStream;
 import org.linguafranca.pwdb.Credentials;
-import org.linguafranca.pwdb.Group;
 import org.linguafranca.pwdb.security.Encryption;
 
 import java.io.DataInput;
@@ -83,14 +82,17 @@ public class KdbSerializer {
 
         // read the decrypted serialized form of all groups
         KdbDatabase kdbDatabase = new KdbDatabase();
-        KdbGroup lastGroup = (KdbGroup) kdbDatabase.getRootGroup();
+        KdbGroup lastGroup = kdbDatabase.getRootGroup();
+        // entries refer to their group by id, which we have made into a UUID
+        Map<UUID, KdbGroup> groups = new HashMap<>();
         for (long group = 0; group < kdbHeader.getGroupCount(); group++) {
-            lastGroup = deserializeGroup(lastGroup, dataInput);
+            lastGroup = deserializeGroup(kdbDatabase, lastGroup, dataInput);
+            groups.put(lastGroup.getUuid(), lastGroup);
         }
 
         // read the decrypted serialized form of all entries
         for (long entry = 0; entry < kdbHeader.getEntryCount(); entry++) {
-            deserializeEntry(kdbDatabase, dataInput);
+            deserializeEntry(groups, dataInput);
         }
 
         // check that the digest is correct (one would imagine that it would all have failed horribly by now if not)
@@ -104,13 +106,6 @@ public class KdbSerializer {
         return kdbDatabase;
     }
 
-    private static void setDatabase(KdbDatabase kdbDatabase, KdbGroup group) {
-        for (KdbGroup child: group.getGroups()){
-            ((KdbGroup) child).database = kdbDatabase;
-            setDatabase(kdbDatabase, child);
-        }
-    }
-
     // these are the signatures of a KDB "V3" file
     private static final int SIGNATURE1 = 0x9AA2D903;
     private static final int SIGNATURE2 = 0xB54BFB65;
@@ -164,14 +159,15 @@ public class KdbSerializer {
     /**
      * Deserialize a KdbGroup from a data source and attach it to the group structure of a database
      *
+     * @param database the database the group belongs to
      * @param lastGroup the last group loaded from this source, or the root group if none
      * @param dataInput a source of data
      * @return a new KdbxGroup
      * @throws IOException
      */
-    private static KdbGroup deserializeGroup(KdbGroup lastGroup, DataInput dataInput) throws IOException {
+    private static KdbGroup deserializeGroup(KdbDatabase database, KdbGroup lastGroup, DataInput dataInput) throws IOException {
         int fieldType;
-        KdbGroup group = new KdbGroup();
+        KdbGroup group = database.newGroup();
         while ((fieldType = dataInput.readUnsignedShort()) != 0xFFFF) {
             switch (fieldType) {
                 case 0x0000:
@@ -218,11 +214,11 @@ public class KdbSerializer {
     /**
      * Deserialize a KdbEntry from a data source
      *
-     * @param database  a database to insert the entry into
+     * @param groups    the groups of the database to insert the entry into, by UUID
      * @param dataInput a source of data
      * @throws IOException
      */
-    private static void deserializeEntry(KdbDatabase database, DataInput dataInput) throws IOException {
+    private static void deserializeEntry(Map<UUID, KdbGroup> groups, DataInput dataInput) throws IOException {
         int fieldType;
         KdbEntry entry = new KdbEntry();
         while ((fieldType = dataInput.readUnsignedShort()) != 0xFFFF) {
@@ -237,7 +233,7 @@ public class KdbSerializer {
                 case 0x0002:
                     int groupId = readInt(dataInput);
                     // group UUIDs are just the index of the group converted to a UUID
-                    Group group = database.findGroup(new UUID(0, groupId));
+                    KdbGroup group = groups.get(new UUID(0, groupId));
                     if (group == null) {
                         throw new IllegalStateException("Entry belongs to group that does not exist");
                     }
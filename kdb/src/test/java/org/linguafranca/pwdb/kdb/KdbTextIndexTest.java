@@ -0,0 +1,41 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdb;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+
+/**
+ * KDB databases don't support a text index, searches always scan the database
+ *
+ * @author jo
+ */
+public class KdbTextIndexTest {
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testEnable() {
+        new KdbDatabase().enableTextIndex(true);
+    }
+
+    @Test
+    public void testDisable() {
+        KdbDatabase database = new KdbDatabase();
+        database.enableTextIndex(false);
+        assertFalse(database.isTextIndexEnabled());
+    }
+}
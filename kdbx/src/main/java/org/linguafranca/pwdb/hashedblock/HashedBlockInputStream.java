@@ -16,10 +16,10 @@
 
 package org.linguafranca.pwdb.hashedblock;
 
-import java.io.ByteArrayInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
@@ -57,7 +57,16 @@ public class HashedBlockInputStream extends InputStream {
     private boolean littleEndian = false;
     private boolean done = false;
     private InputStream inputStream;
-    private ByteArrayInputStream blockInputStream = new ByteArrayInputStream(new byte[0]);
+
+    /* the current block, reused from block to block and grown as necessary */
+    private byte[] blockBuffer = new byte[0];
+    private int blockPosition = 0;
+    private int blockLength = 0;
+
+    /* scratch buffers for reading the block header and checking the hash */
+    private final byte[] hash = new byte[HASH_SIZE];
+    private final byte[] computedHash = new byte[HASH_SIZE];
+    private final byte[] uintBuffer = new byte[4];
 
     /**
      * Create a Big Endian Hash Block Input Stream
@@ -90,11 +99,18 @@ public class HashedBlockInputStream extends InputStream {
 
     @Override
     public int read() throws IOException {
-        byte[] buffer = new byte[1];
-        if (get(buffer, 0, 1) != 1) {
-            throw new IOException("Could not read int");
+        while (blockPosition == blockLength) {
+            if (done) {
+                return -1;
+            }
+            load();
         }
-        return buffer[0] & 0xFF;
+        return blockBuffer[blockPosition++] & 0xFF;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return blockLength - blockPosition;
     }
 
     @Override
@@ -103,29 +119,34 @@ public class HashedBlockInputStream extends InputStream {
     }
 
     /**
-     * Gets bytes from the internal buffer and replenishes the buffer as necessary
+     * Copies bytes from the current block and replenishes it as necessary
      * @param b a byte array to fill
-     * @param offset the offset to strat from
+     * @param offset the offset to start from
      * @param length the number of bytes to return
-     * @return the number of bytes actually returned, , -1 if end of file
+     * @return the number of bytes actually returned, -1 if end of file
      * @throws IOException
      */
     protected int get(byte[] b, int offset, int length) throws IOException {
-        if (done) {
-            return -1;
+        if (length == 0) {
+            return 0;
         }
         int totalBytesRead = 0;
-        int bytesRead;
-        while ((bytesRead = blockInputStream.read(b, offset, length)) < length && !done) {
-            if (bytesRead == -1) {
+        while (length > 0) {
+            if (blockPosition == blockLength) {
+                if (done) {
+                    break;
+                }
                 load();
-            } else {
-                offset += bytesRead;
-                length -= bytesRead;
-                totalBytesRead += bytesRead;
+                continue;
             }
+            int bytesToCopy = Math.min(length, blockLength - blockPosition);
+            System.arraycopy(blockBuffer, blockPosition, b, offset, bytesToCopy);
+            blockPosition += bytesToCopy;
+            offset += bytesToCopy;
+            length -= bytesToCopy;
+            totalBytesRead += bytesToCopy;
         }
-        return bytesRead > 0 ? totalBytesRead + bytesRead : totalBytesRead;
+        return totalBytesRead == 0 ? -1 : totalBytesRead;
     }
 
     /**
@@ -142,8 +163,7 @@ public class HashedBlockInputStream extends InputStream {
         expectedSequenceNumber++;
 
         // get the block hash
-        byte[] hash = new byte[HASH_SIZE];
-        readFully(hash);
+        readFully(hash, HASH_SIZE);
 
         // get the length
         long readLength = readUInt();
@@ -156,19 +176,28 @@ public class HashedBlockInputStream extends InputStream {
                 throw new IllegalStateException("Block hash was not zero on final block");
             }
             done = true;
+            blockPosition = blockLength = 0;
             return;
         }
 
-        // get the new buffer
-        byte[] readBuffer = new byte[(int) readLength];
-        readFully(readBuffer);
+        // fill the buffer, only allocating if it is too small
+        if (blockBuffer.length < readLength) {
+            blockBuffer = new byte[(int) readLength];
+        }
+        readFully(blockBuffer, (int) readLength);
 
         // check the hash
-        sha256.update(readBuffer);
-        if (!Arrays.equals(sha256.digest(), hash)) {
+        sha256.update(blockBuffer, 0, (int) readLength);
+        try {
+            sha256.digest(computedHash, 0, HASH_SIZE);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+        if (!Arrays.equals(computedHash, hash)) {
             throw new IllegalStateException("MD5 check failed while reading HashBlock");
         }
-        blockInputStream = new ByteArrayInputStream(readBuffer);
+        blockPosition = 0;
+        blockLength = (int) readLength;
     }
 
     /**
@@ -177,8 +206,8 @@ public class HashedBlockInputStream extends InputStream {
      * @throws IOException
      */
     private long readUInt() throws IOException {
-        byte[] buf = new byte[4];
-        readFully(buf);
+        byte[] buf = uintBuffer;
+        readFully(buf, 4);
         if (littleEndian) {
             return buf[3] << 24 | (buf[2] & 0xFF) << 16 | (buf[1] & 0xFF) << 8 | (buf[0] & 0xFF);
         }
@@ -186,14 +215,15 @@ public class HashedBlockInputStream extends InputStream {
     }
 
     /**
-     * Fill the buffer passed
+     * Fill the start of the buffer passed
      * @param buffer the buffer to fill
+     * @param length the number of bytes to read into it
      * @throws IOException if the buffer could not be filled
      */
-    private void readFully(byte[] buffer) throws IOException {
-        int bytesToRead = buffer.length;
+    private void readFully(byte[] buffer, int length) throws IOException {
+        int bytesToRead = length;
         int bytesSoFar = 0;
-        while (bytesSoFar < buffer.length) {
+        while (bytesSoFar < length) {
             int bytesRead = inputStream.read(buffer, bytesSoFar, bytesToRead);
             if (bytesRead <= 0) {
                 throw new EOFException();
@@ -3,14 +3,8 @@ package org.linguafranca.pwdb.hashedblock;
 import com.google.common.io.LittleEndianDataInputStream;
 import org.jetbrains.annotations.NotNull;
 
-import javax.crypto.Mac;
 import java.io.*;
 import java.nio.ByteOrder;
-import java.util.Arrays;
-
-import static org.linguafranca.pwdb.kdbx.Helpers.toBytes;
-import static org.linguafranca.pwdb.security.Encryption.getHMacSha256Instance;
-import static org.linguafranca.pwdb.security.Encryption.transformHmacKey;
 
 /**
  * Takes an underlying stream formatted as HMAC Hashed Blocks and provides
@@ -33,11 +27,19 @@ public class HmacBlockInputStream extends FilterInputStream {
 
     private final ByteOrder byteOrder;
     private final byte[] key;
-    private volatile ByteArrayInputStream bufferStream;
     private final DataInput input;
     private boolean finished;
     private int blockCount = 0;
 
+    /* the current block, reused from block to block and grown as necessary */
+    private byte[] buffer = new byte[0];
+    private int bufferPosition = 0;
+    private int bufferLength = 0;
+
+    /* the MAC and scratch buffers reused for each block */
+    private final HmacBlockVerifier verifier = new HmacBlockVerifier();
+    private final byte[] hmacSha256 = new byte[HmacBlockVerifier.HMAC_SIZE];
+
     /**
      * Create a (big endian) HMac Block input stream
      *
@@ -71,23 +73,27 @@ public class HmacBlockInputStream extends FilterInputStream {
 
     private void getBlock() throws IOException {
         // get the HMAC
-        byte[] hmacSha256 = new byte[32];
         input.readFully(hmacSha256);
 
         // get the block size
         int blockSize = input.readInt();
+        if (blockSize < 0) {
+            throw new IllegalStateException("Got negative length for block");
+        }
         if (blockSize == 0) {
             finished = true;
         }
 
-        // read the new block
-        byte[] buffer = new byte[blockSize];
-        input.readFully(buffer);
+        // read the new block, only allocating if the buffer is too small
+        if (buffer.length < blockSize) {
+            buffer = new byte[blockSize];
+        }
+        input.readFully(buffer, 0, blockSize);
 
-        verifyHmac(buffer, blockCount, hmacSha256);
+        verifyHmac(buffer, blockSize, blockCount, hmacSha256);
 
-        // create a new internal stream for the block
-        bufferStream = new ByteArrayInputStream(buffer);
+        bufferPosition = 0;
+        bufferLength = blockSize;
         blockCount++;
     }
 
@@ -95,17 +101,12 @@ public class HmacBlockInputStream extends FilterInputStream {
      * HmacBlockStream.cs ReadSafeBlock
      *
      * @param buffer      the buffer to check
+     * @param length      the length of the block in the buffer
      * @param blockNumber the block number of this buffer
      * @param hmacSha256  the hmac to verify
      */
-    private void verifyHmac(byte[] buffer, long blockNumber, byte[] hmacSha256) {
-        final byte[] transformedKey = transformHmacKey(this.key, toBytes(blockNumber, ByteOrder.LITTLE_ENDIAN));
-        final Mac mac = getHMacSha256Instance(transformedKey);
-        mac.update(toBytes(blockNumber, byteOrder));
-        mac.update(toBytes(buffer.length, byteOrder));
-        if (!Arrays.equals(mac.doFinal(buffer), hmacSha256)) {
-            throw new IllegalStateException("Block HMAC does not match");
-        }
+    private void verifyHmac(byte[] buffer, int length, long blockNumber, byte[] hmacSha256) {
+        verifier.verify(this.key, byteOrder, blockNumber, buffer, length, hmacSha256);
 
 /*      // using bouncy castle
         HMac hmac = new HMac(new SHA256Digest());
@@ -128,32 +129,59 @@ public class HmacBlockInputStream extends FilterInputStream {
 
     @Override
     public int read(@NotNull byte[] b, int off, int len) throws IOException {
-        if (finished) {
-            return -1;
+        if (len == 0) {
+            return 0;
         }
-        int bytesRead = bufferStream.read(b, off, len);
-        if (bufferStream.available() == 0) {
-            getBlock();
+        if (!replenish()) {
+            return -1;
         }
+        int bytesRead = Math.min(len, bufferLength - bufferPosition);
+        System.arraycopy(buffer, bufferPosition, b, off, bytesRead);
+        bufferPosition += bytesRead;
         return bytesRead;
     }
 
     @Override
     public int read() throws IOException {
-        if (finished) {
+        if (!replenish()) {
             return -1;
         }
-        int result = bufferStream.read();
-        if (result == -1) {
-            getBlock();
+        return buffer[bufferPosition++] & 0xFF;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return bufferLength - bufferPosition;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && replenish()) {
+            int bytesSkipped = (int) Math.min(n - skipped, bufferLength - bufferPosition);
+            bufferPosition += bytesSkipped;
+            skipped += bytesSkipped;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Make sure there is data in the buffer, reading further blocks as necessary
+     *
+     * @return false if the stream is at an end
+     */
+    private boolean replenish() throws IOException {
+        while (bufferPosition == bufferLength) {
             if (finished) {
-                return -1;
-            }
-            result = bufferStream.read();
-            if (result == -1) {
-                throw new IOException("Can't replenish buffer");
+                return false;
             }
+            getBlock();
         }
-        return result;
+        return true;
     }
 }
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.hashedblock;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.crypto.Mac;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteOrder;
+
+import static org.linguafranca.pwdb.kdbx.Helpers.toBytes;
+import static org.linguafranca.pwdb.security.Encryption.getHMacSha256Instance;
+import static org.linguafranca.pwdb.security.Encryption.transformHmacKey;
+
+/**
+ * Takes a stream of data and formats as HMac Blocks to the underlying output stream,
+ * the counterpart of {@link HmacBlockInputStream}.
+ * <p>
+ * An HMac block consists of
+ * <ol>
+ * <li>a 32 byte HMac checksum</li>
+ * <li>a 4 byte block size</li>
+ * <li>{blockSize} bytes of data</li>
+ * </ol>
+ * <p>
+ * The stream of blocks is terminated with a 0 length block, which has an HMac like any other.
+ * <p>
+ * KeePass streams are Little Endian.
+ *
+ * @author jo
+ */
+public class HmacBlockOutputStream extends OutputStream {
+
+    private static final int BLOCK_SIZE = 1024 * 1024;
+
+    private final OutputStream outputStream;
+    private final byte[] key;
+    private final ByteOrder byteOrder;
+    private final byte[] buffer = new byte[BLOCK_SIZE];
+    private int bufferLength = 0;
+    private long nextBlockNumber = 0;
+    private boolean isClosed = false;
+
+    /**
+     * Create a (big endian) HMac Block output stream
+     *
+     * @param key          the key digest
+     * @param outputStream the output stream to receive the HMac blocks
+     */
+    public HmacBlockOutputStream(byte[] key, OutputStream outputStream) {
+        this(key, outputStream, false);
+    }
+
+    /**
+     * Create an HMac Block output stream
+     *
+     * @param key          the key digest
+     * @param outputStream the output stream to receive the HMac blocks
+     * @param littleEndian true to encode in a little endian way
+     */
+    public HmacBlockOutputStream(byte[] key, OutputStream outputStream, boolean littleEndian) {
+        this.key = key;
+        this.outputStream = outputStream;
+        this.byteOrder = littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+    }
+
+    @Override
+    public void write(int i) throws IOException {
+        put(new byte[]{(byte) i}, 0, 1);
+    }
+
+    @Override
+    public void write(@NotNull byte[] b, int offset, int count) throws IOException {
+        put(b, offset, count);
+    }
+
+    /**
+     * Blocks are written when full or on close, a flush does not cause a short block to be written
+     */
+    @Override
+    public void flush() throws IOException {
+        outputStream.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (isClosed) {
+            throw new EOFException();
+        }
+        if (bufferLength > 0) {
+            save();
+        }
+        // terminating empty block
+        save();
+        isClosed = true;
+        outputStream.flush();
+        outputStream.close();
+    }
+
+    private void put(byte[] b, int offset, int length) throws IOException {
+        if (isClosed) {
+            throw new EOFException();
+        }
+        while (length > 0) {
+            int bytesToWrite = Math.min(BLOCK_SIZE - bufferLength, length);
+            System.arraycopy(b, offset, buffer, bufferLength, bytesToWrite);
+            bufferLength += bytesToWrite;
+            if (bufferLength == BLOCK_SIZE) {
+                save();
+            }
+            offset += bytesToWrite;
+            length -= bytesToWrite;
+        }
+    }
+
+    /**
+     * Write the internal buffer to the underlying stream as an HMac block
+     * HmacBlockStream.cs WriteSafeBlock
+     */
+    private void save() throws IOException {
+        long blockNumber = nextBlockNumber++;
+        final byte[] transformedKey = transformHmacKey(this.key, toBytes(blockNumber, ByteOrder.LITTLE_ENDIAN));
+        final Mac mac = getHMacSha256Instance(transformedKey);
+        byte[] length = toBytes(bufferLength, byteOrder);
+        mac.update(toBytes(blockNumber, byteOrder));
+        mac.update(length);
+        mac.update(buffer, 0, bufferLength);
+
+        outputStream.write(mac.doFinal());
+        outputStream.write(length);
+        outputStream.write(buffer, 0, bufferLength);
+        bufferLength = 0;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.hashedblock;
+
+import org.linguafranca.pwdb.security.Encryption;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.DigestException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Verifies the HMac of HMac Blocks, reusing its digest, MAC and scratch buffers from block to block.
+ * <p>
+ * Not thread safe, each thread verifying blocks needs its own instance.
+ *
+ * @author jo
+ */
+class HmacBlockVerifier {
+
+    static final int HMAC_SIZE = 32;
+
+    private final MessageDigest sha512 = Encryption.getSha512MessageDigestInstance();
+    private final Mac mac;
+    private final byte[] blockKey = new byte[64];
+    private final byte[] computedHmacSha256 = new byte[HMAC_SIZE];
+    private final ByteBuffer blockNumberLittleEndian = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer blockHeader = ByteBuffer.allocate(12);
+
+    HmacBlockVerifier() {
+        try {
+            this.mac = Mac.getInstance("HmacSHA256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("HmacSHA256 is not supported", e);
+        }
+    }
+
+    /**
+     * HmacBlockStream.cs ReadSafeBlock
+     *
+     * @param key         the key digest for the stream
+     * @param byteOrder   the byte order of the stream
+     * @param blockNumber the block number of this buffer
+     * @param buffer      the buffer to check
+     * @param length      the length of the block in the buffer
+     * @param hmacSha256  the hmac to verify
+     * @throws IllegalStateException if the hmac does not match
+     */
+    void verify(byte[] key, ByteOrder byteOrder, long blockNumber, byte[] buffer, int length, byte[] hmacSha256) {
+        try {
+            // the equivalent of Encryption.transformHmacKey
+            blockNumberLittleEndian.putLong(0, blockNumber);
+            sha512.update(blockNumberLittleEndian.array());
+            sha512.update(key);
+            sha512.digest(blockKey, 0, blockKey.length);
+            mac.init(new SecretKeySpec(blockKey, "HmacSHA256"));
+            Arrays.fill(blockKey, (byte) 0);
+
+            blockHeader.order(byteOrder);
+            blockHeader.putLong(0, blockNumber);
+            blockHeader.putInt(8, length);
+            mac.update(blockHeader.array());
+            mac.update(buffer, 0, length);
+            mac.doFinal(computedHmacSha256, 0);
+        } catch (DigestException | InvalidKeyException | ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+        if (!MessageDigest.isEqual(computedHmacSha256, hmacSha256)) {
+            throw new IllegalStateException("Block HMAC does not match");
+        }
+    }
+}
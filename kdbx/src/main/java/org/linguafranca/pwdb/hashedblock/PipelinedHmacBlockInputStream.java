@@ -0,0 +1,310 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.hashedblock;
+
+import com.google.common.io.LittleEndianDataInputStream;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.lang.ref.WeakReference;
+import java.nio.ByteOrder;
+import java.util.concurrent.*;
+
+/**
+ * A pipelined equivalent of {@link HmacBlockInputStream}.
+ * <p>
+ * Since the key for each HMac block depends only on its block number, blocks can be verified
+ * independently of each other. A reader thread reads blocks from the underlying stream and submits their
+ * verification to a worker pool, up to a bounded number of blocks ahead of consumption.
+ * Blocks are handed out in order, and only once their verification has succeeded.
+ * <p>
+ * The stream should be closed if it is not read to the end, to stop the reader thread. Failing that,
+ * the reader thread only holds the stream weakly, and stops once the stream has been garbage collected.
+ *
+ * @author jo
+ */
+@SuppressWarnings("WeakerAccess")
+public class PipelinedHmacBlockInputStream extends InputStream {
+
+    private static final ThreadLocal<HmacBlockVerifier> verifiers = new ThreadLocal<HmacBlockVerifier>() {
+        @Override
+        protected HmacBlockVerifier initialValue() {
+            return new HmacBlockVerifier();
+        }
+    };
+
+    private static ExecutorService sharedExecutor;
+
+    private final Reader reader;
+    private final BlockingQueue<Future<Block>> blocks;
+    private final Thread readerThread;
+
+    /* the block currently being consumed */
+    private Block current;
+    private int position;
+    private boolean finished;
+    private IOException failure;
+
+    private static class Block {
+        final byte[] data;
+        final int length;
+
+        Block(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Create an HMac Block input stream verifying blocks on a shared pool of one thread per processor
+     *
+     * @param key          the key digest
+     * @param inputStream  the stream to process
+     * @param littleEndian true if the stream is little endian
+     */
+    public PipelinedHmacBlockInputStream(byte[] key, InputStream inputStream, boolean littleEndian) {
+        this(key, inputStream, littleEndian, getSharedExecutor(), 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create an HMac Block input stream
+     *
+     * @param key          the key digest
+     * @param inputStream  the stream to process
+     * @param littleEndian true if the stream is little endian
+     * @param executor     the pool on which to verify blocks
+     * @param readAhead    the maximum number of blocks read ahead of consumption
+     */
+    public PipelinedHmacBlockInputStream(byte[] key, InputStream inputStream, boolean littleEndian,
+                                         ExecutorService executor, int readAhead) {
+        if (readAhead < 1) {
+            throw new IllegalArgumentException("Read ahead must be at least 1");
+        }
+        this.blocks = new ArrayBlockingQueue<>(readAhead);
+        this.reader = new Reader(this, key, inputStream,
+                littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN, executor, blocks);
+        this.readerThread = new Thread(reader, "hmac-block-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    private static synchronized ExecutorService getSharedExecutor() {
+        if (sharedExecutor == null) {
+            sharedExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+                @Override
+                public Thread newThread(@NotNull Runnable runnable) {
+                    Thread thread = new Thread(runnable, "hmac-block-verifier");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sharedExecutor;
+    }
+
+    /**
+     * Runs on the reader thread, reads blocks and queues their verification until the
+     * terminating empty block, an error, or the stream is closed or garbage collected.
+     * It doesn't refer to the stream other than weakly, so that the stream can be collected if it
+     * is abandoned without being closed, e.g. when parsing fails.
+     */
+    private static class Reader implements Runnable {
+        private final WeakReference<PipelinedHmacBlockInputStream> owner;
+        private final byte[] key;
+        private final InputStream inputStream;
+        private final ByteOrder byteOrder;
+        private final ExecutorService executor;
+        private final BlockingQueue<Future<Block>> blocks;
+        private volatile boolean closed;
+
+        Reader(PipelinedHmacBlockInputStream owner, byte[] key, InputStream inputStream, ByteOrder byteOrder,
+               ExecutorService executor, BlockingQueue<Future<Block>> blocks) {
+            this.owner = new WeakReference<>(owner);
+            this.key = key;
+            this.inputStream = inputStream;
+            this.byteOrder = byteOrder;
+            this.executor = executor;
+            this.blocks = blocks;
+        }
+
+        @Override
+        public void run() {
+            DataInput input = byteOrder == ByteOrder.LITTLE_ENDIAN ?
+                    new LittleEndianDataInputStream(inputStream) : new DataInputStream(inputStream);
+            long blockNumber = 0;
+            try {
+                while (!closed) {
+                    final byte[] hmacSha256 = new byte[HmacBlockVerifier.HMAC_SIZE];
+                    input.readFully(hmacSha256);
+                    final int blockSize = input.readInt();
+                    if (blockSize < 0) {
+                        throw new IllegalStateException("Got negative length for block");
+                    }
+                    final byte[] buffer = new byte[blockSize];
+                    input.readFully(buffer);
+
+                    final long thisBlockNumber = blockNumber++;
+                    Future<Block> verified = executor.submit(new Callable<Block>() {
+                        @Override
+                        public Block call() {
+                            verifiers.get().verify(key, byteOrder, thisBlockNumber, buffer, blockSize, hmacSha256);
+                            return new Block(buffer, blockSize);
+                        }
+                    });
+                    if (!enqueue(verified) || blockSize == 0) {
+                        return;
+                    }
+                }
+            } catch (final Exception e) {
+                FutureTask<Block> failed = new FutureTask<>(new Callable<Block>() {
+                    @Override
+                    public Block call() throws Exception {
+                        throw e;
+                    }
+                });
+                failed.run();
+                enqueue(failed);
+            }
+        }
+
+        /**
+         * Wait for room in the queue, giving up if the stream is closed or has been garbage collected
+         *
+         * @return true if the block was queued
+         */
+        private boolean enqueue(Future<Block> block) {
+            try {
+                while (!closed) {
+                    if (blocks.offer(block, 100, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                    if (owner.get() == null) {
+                        abandon();
+                    }
+                }
+            } catch (InterruptedException e) {
+                // closed
+            }
+            block.cancel(false);
+            return false;
+        }
+
+        /**
+         * Stop reading and discard the blocks read ahead
+         */
+        void close() {
+            closed = true;
+            Future<Block> queued;
+            while ((queued = blocks.poll()) != null) {
+                queued.cancel(false);
+            }
+        }
+
+        /**
+         * The stream was dropped without being closed, so nothing else will close the underlying stream
+         */
+        private void abandon() {
+            close();
+            try {
+                inputStream.close();
+            } catch (IOException ignored) {
+                // nobody to report it to
+            }
+        }
+    }
+
+    @Override
+    public int read(@NotNull byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!replenish()) {
+            return -1;
+        }
+        int bytesRead = Math.min(len, current.length - position);
+        System.arraycopy(current.data, position, b, off, bytesRead);
+        position += bytesRead;
+        return bytesRead;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!replenish()) {
+            return -1;
+        }
+        return current.data[position++] & 0xFF;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return current == null ? 0 : current.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reader.closed) {
+            return;
+        }
+        reader.close();
+        readerThread.interrupt();
+        reader.inputStream.close();
+    }
+
+    /**
+     * The thread reading blocks from the underlying stream
+     */
+    Thread getReaderThread() {
+        return readerThread;
+    }
+
+    /**
+     * Make sure there is verified data in the current block, waiting for further blocks as necessary
+     *
+     * @return false if the stream is at an end
+     */
+    private boolean replenish() throws IOException {
+        while (current == null || position == current.length) {
+            if (failure != null) {
+                throw failure;
+            }
+            if (finished) {
+                return false;
+            }
+            if (reader.closed) {
+                throw new IOException("Stream closed");
+            }
+            try {
+                current = blocks.take().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    // a verification failure is reported as it would be by HmacBlockInputStream
+                    failure = new IOException(cause);
+                    throw (RuntimeException) cause;
+                }
+                failure = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                throw failure;
+            }
+            position = 0;
+            finished = current.length == 0;
+        }
+        return true;
+    }
+}
@@ -75,13 +75,19 @@ public class Helpers {
         return value == null ? "False" : (value ? "True" : "False");
     }
 
-    private static SimpleDateFormat inFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssX");
+    // SimpleDateFormat is not thread safe
+    private static final ThreadLocal<SimpleDateFormat> inFormat = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssX");
+        }
+    };
 
     private static Date baseDate;
 
     static {
         try {
-            baseDate = inFormat.parse("0001-01-01T00:00:00Z");
+            baseDate = inFormat.get().parse("0001-01-01T00:00:00Z");
         } catch (ParseException ignore) {
             // hmm, cannot happen
         }
@@ -90,7 +96,7 @@ public class Helpers {
     // in V3 this is just a date, in V4 it's a base64 encoded serial number of seconds after the base date above
     public static Date toDate(String value) {
         try {
-            return inFormat.parse(value);
+            return inFormat.get().parse(value);
         } catch (ParseException ignored) {}
         // V4
         byte [] b = decodeBase64Content(value.getBytes());
@@ -99,7 +105,21 @@ public class Helpers {
     }
 
     public static String fromDate(Date value) {
-        return inFormat.format(value);
+        return inFormat.get().format(value);
+    }
+
+    // V4 format of the above
+    public static String fromDateV4(Date value) {
+        long secondsSinceBaseDate = (value.getTime() - baseDate.getTime()) / 1000;
+        return encodeBase64Content(toBytes(secondsSinceBaseDate, ByteOrder.LITTLE_ENDIAN));
+    }
+
+    /**
+     * Times are held in elements whose names end with Time (e.g. LastModificationTime)
+     * or with Changed (e.g. LocationChanged, DatabaseNameChanged)
+     */
+    public static boolean isTimeElementName(String elementName) {
+        return elementName.endsWith("Time") || elementName.endsWith("Changed");
     }
 
     public static byte[] decodeBase64Content(byte[] content) {
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx;
+
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.Database;
+import org.linguafranca.pwdb.concurrent.SaveScheduler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+
+/**
+ * A KDBX file that is saved safely.
+ * <p>
+ * The database is written to a temporary file in the same directory, which is synced to disk and then
+ * renamed over the file, so that a crash part way through a save leaves the file as it was.
+ * Optionally, a number of previous versions of the file are kept alongside it, with the suffixes
+ * {@code .1} (the most recent) to {@code .n}.
+ *
+ * @author jo
+ */
+@SuppressWarnings("WeakerAccess")
+public class KdbxFileStore {
+
+    private final Path path;
+    private final Credentials credentials;
+    private final int generations;
+    private int bufferSize = SaveScheduler.DEFAULT_BUFFER_SIZE;
+
+    /**
+     * A file that doesn't keep previous versions
+     *
+     * @param path        the file
+     * @param credentials the credentials to save with
+     */
+    public KdbxFileStore(Path path, Credentials credentials) {
+        this(path, credentials, 0);
+    }
+
+    /**
+     * @param path        the file
+     * @param credentials the credentials to save with
+     * @param generations the number of previous versions of the file to keep
+     */
+    public KdbxFileStore(Path path, Credentials credentials, int generations) {
+        if (generations < 0) {
+            throw new IllegalArgumentException("Generations must not be negative");
+        }
+        this.path = path.toAbsolutePath();
+        this.credentials = credentials;
+        this.generations = generations;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public Credentials getCredentials() {
+        return credentials;
+    }
+
+    public int getGenerations() {
+        return generations;
+    }
+
+    /**
+     * The size of the buffer through which the file is written
+     */
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * The path of a previous version of the file
+     *
+     * @param generation 1 for the most recent previous version
+     */
+    public Path getGenerationPath(int generation) {
+        return path.resolveSibling(path.getFileName() + "." + generation);
+    }
+
+    /**
+     * Open the file for loading
+     */
+    public InputStream newInputStream() throws IOException {
+        return Files.newInputStream(path);
+    }
+
+    /**
+     * Save a database to the file, keeping the previous version if required.
+     * <p>
+     * The previous version is linked (or copied) under a temporary name before the file is replaced, and
+     * previous versions are only moved along once the file has been replaced.
+     *
+     * @param database the database to save
+     * @throws IOException on error. If the database could not be saved the file and its previous versions
+     * are unchanged. If it was saved but the previous versions could not then be moved along, some may not have been,
+     * and the version just replaced is left alongside the file with the suffix {@code .prev}.
+     */
+    public synchronized void save(Database<?, ?, ?, ?> database) throws IOException {
+        Path temp = SaveScheduler.saveToTempFile(database, credentials, path, bufferSize);
+        Path previous = null;
+        boolean replaced = false;
+        try {
+            if (generations > 0 && Files.exists(path)) {
+                previous = keepPrevious();
+            }
+            SaveScheduler.replaceAtomically(temp, path);
+            replaced = true;
+        } finally {
+            Files.deleteIfExists(temp);
+            if (!replaced && previous != null) {
+                Files.deleteIfExists(previous);
+            }
+        }
+        if (previous != null) {
+            rotate(previous);
+        }
+    }
+
+    /**
+     * Link the current version to a temporary name, copying it if links aren't supported
+     */
+    private Path keepPrevious() throws IOException {
+        Path previous = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".prev");
+        boolean kept = false;
+        try {
+            try {
+                // the file is about to be replaced rather than changed, so a link is as good as a copy
+                Files.delete(previous);
+                Files.createLink(previous, path);
+            } catch (IOException | UnsupportedOperationException e) {
+                Files.copy(path, previous, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            }
+            kept = true;
+            return previous;
+        } finally {
+            if (!kept) {
+                Files.deleteIfExists(previous);
+            }
+        }
+    }
+
+    /**
+     * Move each previous version down one, discarding the oldest, and make the version just replaced the most recent
+     */
+    private void rotate(Path previous) throws IOException {
+        Files.deleteIfExists(getGenerationPath(generations));
+        for (int i = generations - 1; i > 0; i--) {
+            Path generation = getGenerationPath(i);
+            if (Files.exists(generation)) {
+                Files.move(generation, getGenerationPath(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(previous, getGenerationPath(1), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
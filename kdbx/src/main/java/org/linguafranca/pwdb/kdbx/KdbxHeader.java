@@ -121,6 +121,10 @@ public class KdbxHeader {
     /* the bytes that compose the outer header, required for V4 to calculate the HMac */
     private byte[] headerBytes;
 
+    /* the most recent key transformation and the key digest it was made from */
+    private byte[] transformedKey;
+    private byte[] transformedKeySource;
+
     /**
      * Construct a default KDBX header
      */
@@ -128,21 +132,60 @@ public class KdbxHeader {
         this(3);
     }
 
+    /**
+     * Construct a KDBX header of the version supplied, using AES for encryption and key derivation
+     */
     public KdbxHeader(int version) {
+        this(version, Aes.getInstance(), Aes.getInstance());
+    }
+
+    /**
+     * Construct a KDBX header using the cipher and key derivation function supplied,
+     * which other than AES require V4.
+     *
+     * @param version the file version, 3 or 4
+     * @param cipherAlgorithm the cipher for the payload
+     * @param keyDerivationFunction the key derivation function
+     */
+    public KdbxHeader(int version, CipherAlgorithm cipherAlgorithm, KeyDerivationFunction keyDerivationFunction) {
         SecureRandom random = new SecureRandom();
 
         this.version = version;
-        cipherUuid = Aes.getInstance().getCipherUuid();
+        cipherUuid = cipherAlgorithm.getCipherUuid();
         compressionFlags = CompressionFlags.GZIP;
         masterSeed = random.generateSeed(32);
         transformSeed = random.generateSeed(32);
-        transformRounds = 60000;
-        encryptionIv = random.generateSeed(16);
-        innerRandomStreamKey = random.generateSeed(32);
+        transformRounds = Aes.getInstance().getDefaultRounds();
+        // ChaCha20 takes a 96 bit nonce
+        encryptionIv = random.generateSeed(cipherUuid.equals(ChaCha.getInstance().getCipherUuid()) ? 12 : 16);
         streamStartBytes = new byte[32];
-        protectedStreamAlgorithm = ProtectedStreamAlgorithm.SALSA_20;
 
-        kdfParameters = Aes.createKdfParameters();
+        if (version < 4) {
+            if (!cipherUuid.equals(Aes.getInstance().getCipherUuid()) ||
+                    !keyDerivationFunction.getKdfUuid().equals(Aes.getInstance().getKdfUuid())) {
+                throw new IllegalArgumentException("KDBX V3 supports only AES encryption and key derivation");
+            }
+            innerRandomStreamKey = random.generateSeed(32);
+            protectedStreamAlgorithm = ProtectedStreamAlgorithm.SALSA_20;
+        } else {
+            innerRandomStreamKey = random.generateSeed(64);
+            protectedStreamAlgorithm = ProtectedStreamAlgorithm.CHA_CHA_20;
+            kdfParameters = createKdfParameters(keyDerivationFunction);
+        }
+    }
+
+    /**
+     * Default parameters with a fresh seed or salt for a key derivation function
+     */
+    private static VariantDictionary createKdfParameters(KeyDerivationFunction keyDerivationFunction) {
+        UUID kdfUuid = keyDerivationFunction.getKdfUuid();
+        if (kdfUuid.equals(Aes.getInstance().getKdfUuid())) {
+            return Aes.createKdfParameters();
+        }
+        if (kdfUuid.equals(Argon2.getInstance().getKdfUuid())) {
+            return Argon2.createKdfParameters();
+        }
+        throw new IllegalArgumentException("Unknown key derivation function " + kdfUuid);
     }
 
     /**
@@ -168,13 +211,22 @@ public class KdbxHeader {
      * @param bytes the bytes to compare to verify
      */
     public void verifyHeaderHmac(byte[] key, byte[] bytes) {
-        Mac mac = Encryption.getHMacSha256Instance(key);
-        byte[] computedHmacSha256 = mac.doFinal(getHeaderBytes());
-        if (!Arrays.equals(computedHmacSha256, bytes)) {
+        if (!Arrays.equals(getHeaderHmac(key), bytes)) {
             throw new IllegalStateException("Header HMAC does not match");
         }
     }
 
+    /**
+     * Compute the header Hmac
+     *
+     * @param key the transformed Hmac Key for the header
+     * @return the Hmac of the header bytes
+     */
+    public byte[] getHeaderHmac(byte[] key) {
+        Mac mac = Encryption.getHMacSha256Instance(key);
+        return mac.doFinal(getHeaderBytes());
+    }
+
     // Alternative implementation of above using bouncy castle
     /*
         HMac hmac = new HMac(new SHA256Digest());
@@ -209,16 +261,22 @@ public class KdbxHeader {
 
     /**
      * Takes the composite credentials and transforms them according to the underlying KDF algorithm.
+     * The transformation is made at most once per header, and is shared between headers
+     * via the {@link TransformedKeyCache} if that is enabled.
      * @param digest the credentials digested
      * @return the transformed digest
      */
     public byte[] getTransformedKeyDigest(byte[] digest) {
-        // v3 doesn't have a kdf therefore AES
-        if (kdfParameters == null) {
-            return Aes.getTransformedKey(digest, transformSeed, transformRounds);
+        // the key is needed more than once for V4, and the transformation is expensive
+        if (transformedKey != null && Arrays.equals(digest, transformedKeySource)) {
+            return transformedKey;
         }
-        KeyDerivationFunction kdf = Encryption.Kdf.getKdf(kdfParameters.mustGet("$UUID").asUuid());
-        return kdf.getTransformedKey(digest, kdfParameters);
+        // v3 doesn't have a kdf therefore AES
+        VariantDictionary parameters = version < 4 || kdfParameters == null ?
+                Aes.createKdfParameters(transformSeed, transformRounds) : kdfParameters;
+        transformedKey = TransformedKeyCache.getInstance().getTransformedKey(digest, parameters);
+        transformedKeySource = digest.clone();
+        return transformedKey;
     }
 
     /**
@@ -234,7 +292,8 @@ public class KdbxHeader {
         MessageDigest md = getSha256MessageDigestInstance();
         md.update(masterSeed);
         byte[] finalKeyDigest = md.digest(getTransformedKeyDigest(digest));
-        return Aes.getInstance().getEncryptedOutputStream(outputStream, finalKeyDigest, getEncryptionIv());
+        CipherAlgorithm ca = Encryption.Cipher.getCipherAlgorithm(cipherUuid);
+        return ca.getEncryptedOutputStream(outputStream, finalKeyDigest, getEncryptionIv());
     }
 
     public byte[] getTransformSeed() {
@@ -315,10 +374,12 @@ public class KdbxHeader {
 
     public void setTransformSeed(byte[] transformSeed) {
         this.transformSeed = transformSeed;
+        this.transformedKey = null;
     }
 
     public void setTransformRounds(long transformRounds) {
         this.transformRounds = transformRounds;
+        this.transformedKey = null;
     }
 
     public void setEncryptionIv(byte[] encryptionIv) {
@@ -362,6 +423,14 @@ public class KdbxHeader {
      */
     public void setKdfParameters(VariantDictionary kdfParameters) {
         this.kdfParameters = kdfParameters;
+        this.transformedKey = null;
+    }
+
+    /**
+     * V4 Key Definition Function Parameters
+     */
+    public VariantDictionary getKdfParameters() {
+        return kdfParameters;
     }
 
     /**
@@ -378,6 +447,18 @@ public class KdbxHeader {
         binaries.add(bytes);
     }
 
+    /**
+     * V4 add a binary for writing in the inner header, not flagged as protected
+     */
+    public void addUnprotectedBinary(byte[] payload) {
+        byte[] binary = new byte[payload.length + 1];
+        System.arraycopy(payload, 0, binary, 1, payload.length);
+        binaries.add(binary);
+    }
+
+    /**
+     * V4 binaries of the inner header, the first byte of each being a flag, as described above
+     */
     public List<byte[]> getBinaries() {
         return binaries;
     }
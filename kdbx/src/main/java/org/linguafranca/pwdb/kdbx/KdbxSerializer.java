@@ -23,6 +23,8 @@ import org.linguafranca.pwdb.hashedblock.CollectingInputStream;
 import org.linguafranca.pwdb.hashedblock.HashedBlockInputStream;
 import org.linguafranca.pwdb.hashedblock.HashedBlockOutputStream;
 import org.linguafranca.pwdb.hashedblock.HmacBlockInputStream;
+import org.linguafranca.pwdb.hashedblock.HmacBlockOutputStream;
+import org.linguafranca.pwdb.hashedblock.PipelinedHmacBlockInputStream;
 import org.linguafranca.pwdb.security.Encryption;
 import org.linguafranca.pwdb.security.VariantDictionary;
 
@@ -30,7 +32,6 @@ import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.security.DigestInputStream;
-import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.util.Arrays;
 import java.util.zip.GZIPInputStream;
@@ -86,6 +87,21 @@ public class KdbxSerializer {
     // make entirely static
     private KdbxSerializer() {}
 
+    private static volatile boolean pipelinedBlockVerification = false;
+
+    /**
+     * Choose whether V4 HMac blocks are verified serially as they are read (the default)
+     * or ahead of time on a pool of threads, see {@link PipelinedHmacBlockInputStream}
+     * @param pipelined true to verify on a pool of threads
+     */
+    public static void setPipelinedBlockVerification(boolean pipelined) {
+        pipelinedBlockVerification = pipelined;
+    }
+
+    public static boolean isPipelinedBlockVerification() {
+        return pipelinedBlockVerification;
+    }
+
     /**
      * Provides the payload of a KDBX file as an unencrypted {@link InputStream}.
      * @param credentials credentials for decryption of the stream
@@ -104,7 +120,9 @@ public class KdbxSerializer {
 
             verifyOuterHeader(kdbxHeader, credentials, new DataInputStream(inputStream));
 
-            HmacBlockInputStream hmacBlockInputStream = new HmacBlockInputStream(kdbxHeader.getHmacKey(credentials), inputStream, true);
+            InputStream hmacBlockInputStream = pipelinedBlockVerification ?
+                    new PipelinedHmacBlockInputStream(kdbxHeader.getHmacKey(credentials), inputStream, true) :
+                    new HmacBlockInputStream(kdbxHeader.getHmacKey(credentials), inputStream, true);
 
             plainTextStream = kdbxHeader.createDecryptedStream(credentials.getKey(), hmacBlockInputStream);
 
@@ -117,20 +135,26 @@ public class KdbxSerializer {
             plainTextStream = new HashedBlockInputStream(decryptedInputStream, true);
         }
 
-        if (kdbxHeader.getCompressionFlags().equals(KdbxHeader.CompressionFlags.GZIP)) {
-            plainTextStream = new GZIPInputStream(plainTextStream);
-        }
+        try {
+            if (kdbxHeader.getCompressionFlags().equals(KdbxHeader.CompressionFlags.GZIP)) {
+                plainTextStream = new GZIPInputStream(plainTextStream);
+            }
 
-        if (kdbxHeader.getVersion() >= 4) {
-            readInnerHeader(kdbxHeader, plainTextStream);
+            if (kdbxHeader.getVersion() >= 4) {
+                readInnerHeader(kdbxHeader, plainTextStream);
+            }
+        } catch (IOException | RuntimeException e) {
+            // the caller won't get the stream to close, which for pipelined verification stops the reader thread
+            plainTextStream.close();
+            throw e;
         }
 
         return plainTextStream;
     }
 
     /**
-     * Provides an {@link OutputStream} to be encoded and encrypted in KDBX format
-     * // TODO only writes in V3 format
+     * Provides an {@link OutputStream} to be encoded and encrypted in KDBX format. The version
+     * written is that of the header supplied.
      * @param credentials credentials for encryption of the stream
      * @param kdbxHeader a KDBX header to control the formatting and encryption operation
      * @param outputStream output stream to contain the KDBX formatted output
@@ -141,16 +165,34 @@ public class KdbxSerializer {
 
         writeKdbxHeader(kdbxHeader, outputStream);
 
-        OutputStream encryptedOutputStream = kdbxHeader.createEncryptedStream(credentials.getKey(), outputStream);
+        OutputStream plainTextStream;
+
+        if (kdbxHeader.getVersion() >= 4) {
 
-        writeStartBytes(kdbxHeader, encryptedOutputStream);
+            writeOuterHeaderVerification(kdbxHeader, credentials, outputStream);
+
+            HmacBlockOutputStream hmacBlockOutputStream = new HmacBlockOutputStream(kdbxHeader.getHmacKey(credentials), outputStream, true);
+
+            plainTextStream = kdbxHeader.createEncryptedStream(credentials.getKey(), hmacBlockOutputStream);
+
+        } else {
 
-        HashedBlockOutputStream blockOutputStream = new HashedBlockOutputStream(encryptedOutputStream, true);
+            OutputStream encryptedOutputStream = kdbxHeader.createEncryptedStream(credentials.getKey(), outputStream);
 
-        if(kdbxHeader.getCompressionFlags().equals(KdbxHeader.CompressionFlags.NONE)) {
-            return blockOutputStream;
+            writeStartBytes(kdbxHeader, encryptedOutputStream);
+
+            plainTextStream = new HashedBlockOutputStream(encryptedOutputStream, true);
         }
-        return new GZIPOutputStream(blockOutputStream);
+
+        if (kdbxHeader.getCompressionFlags().equals(KdbxHeader.CompressionFlags.GZIP)) {
+            plainTextStream = new GZIPOutputStream(plainTextStream);
+        }
+
+        if (kdbxHeader.getVersion() >= 4) {
+            writeInnerHeader(kdbxHeader, plainTextStream);
+        }
+
+        return plainTextStream;
     }
 
 
@@ -272,6 +314,22 @@ public class KdbxSerializer {
         kdbxHeader.verifyHeaderHmac(hmacKey64, getBytes(32, input));
     }
 
+    /**
+     * V4 header is followed by its SHA256 and then by its HMACSHA256.
+     * @param kdbxHeader the header, which has been written
+     * @param credentials the credentials - used to calculate the HMAC
+     * @param outputStream the destination
+     * @throws IOException on error
+     */
+    public static void writeOuterHeaderVerification(KdbxHeader kdbxHeader, Credentials credentials, OutputStream outputStream) throws IOException {
+        outputStream.write(kdbxHeader.getHeaderHash());
+
+        byte[] hmacKey = kdbxHeader.getHmacKey(credentials);
+        byte [] hmacKey64 = Encryption.transformHmacKey(hmacKey, Helpers.toBytes(-1L, ByteOrder.LITTLE_ENDIAN));
+
+        outputStream.write(kdbxHeader.getHeaderHmac(hmacKey64));
+    }
+
     private static void getOuterHeaderFields(KdbxHeader kdbxHeader, MessageDigest digest, DataInput input) throws IOException {
         byte headerType;
         do {
@@ -392,6 +450,33 @@ public class KdbxSerializer {
         } while (headerType != HeaderType.END);
     }
 
+    /**
+     * Write the V4 inner header, which precedes the XML payload
+     * @param kdbxHeader the header whose values are to be written
+     * @param plainTextStream the stream to write them to
+     * @throws IOException on error
+     */
+    private static void writeInnerHeader(KdbxHeader kdbxHeader, OutputStream plainTextStream) throws IOException {
+        LittleEndianDataOutputStream ledos = new LittleEndianDataOutputStream(plainTextStream);
+
+        ledos.writeByte(InnerHeaderType.INNER_RANDOM_STREAM_ID);
+        ledos.writeInt(4);
+        ledos.writeInt(kdbxHeader.getProtectedStreamAlgorithm().ordinal());
+
+        ledos.writeByte(InnerHeaderType.INNER_RANDOM_STREAM_KEY);
+        ledos.writeInt(kdbxHeader.getInnerRandomStreamKey().length);
+        ledos.write(kdbxHeader.getInnerRandomStreamKey());
+
+        for (byte[] binary: kdbxHeader.getBinaries()) {
+            ledos.writeByte(InnerHeaderType.BINARY);
+            ledos.writeInt(binary.length);
+            ledos.write(binary);
+        }
+
+        ledos.writeByte(InnerHeaderType.END);
+        ledos.writeInt(0);
+    }
+
     /**
      * Read a VariantDictionary from the supplied input
      * @param input source of data
@@ -429,68 +514,101 @@ public class KdbxSerializer {
 
 
     /**
-     * Write a KdbxHeader to the output stream supplied. The header is updated with the
-     * message digest of the written stream.
+     * Serialize a VariantDictionary, the counterpart of {@link #makeVariantDictionary}
+     * @param vd the dictionary
+     * @return the serialized form
+     * @throws IOException on error
+     */
+    private static byte[] serializeVariantDictionary(VariantDictionary vd) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        LittleEndianDataOutputStream ledos = new LittleEndianDataOutputStream(baos);
+
+        ledos.writeShort(vd.getVersion() << 8);
+        for (String key: vd.keySet()) {
+            VariantDictionary.Entry entry = vd.mustGet(key);
+            byte[] keyBytes = key.getBytes("UTF-8");
+            ledos.writeByte(entry.getType());
+            ledos.writeInt(keyBytes.length);
+            ledos.write(keyBytes);
+            ledos.writeInt(entry.asByteArray().length);
+            ledos.write(entry.asByteArray());
+        }
+        ledos.writeByte(0);
+        return baos.toByteArray();
+    }
+
+    /* the end of header field's content */
+    private static final byte[] END_OF_HEADER = {'\r', '\n', '\r', '\n'};
+
+    /**
+     * Write a KdbxHeader to the output stream supplied, in the format of its version. The header is updated with the
+     * message digest of the written stream, and with the bytes written.
      * @param kdbxHeader the header to write and update
      * @param outputStream the output stream
      * @throws IOException on error
      */
     public static void writeKdbxHeader(KdbxHeader kdbxHeader, OutputStream outputStream) throws IOException {
-        MessageDigest messageDigest = Encryption.getSha256MessageDigestInstance();
-        DigestOutputStream digestOutputStream = new DigestOutputStream(outputStream, messageDigest);
-        LittleEndianDataOutputStream ledos = new LittleEndianDataOutputStream(digestOutputStream);
+        // collect the bytes of the header, V4 needs them for the HMac
+        ByteArrayOutputStream headerOutputStream = new ByteArrayOutputStream();
+        LittleEndianDataOutputStream ledos = new LittleEndianDataOutputStream(headerOutputStream);
+        int version = kdbxHeader.getVersion();
 
         // write the magic number
         ledos.writeInt(SIG1);
         ledos.writeInt(SIG2);
         // write a file version
-        ledos.writeInt(FILE_VERSION_32);
+        ledos.writeInt(version >= 4 ? FILE_VERSION_4 : FILE_VERSION_32);
 
-        ledos.writeByte(HeaderType.CIPHER_ID);
-        ledos.writeShort(16);
         byte[] b = new byte[16];
         ByteBuffer bb = ByteBuffer.wrap(b);
         bb.putLong(kdbxHeader.getCipherUuid().getMostSignificantBits());
         bb.putLong(8, kdbxHeader.getCipherUuid().getLeastSignificantBits());
-        ledos.write(b);
+        writeField(ledos, version, HeaderType.CIPHER_ID, b);
 
-        ledos.writeByte(HeaderType.COMPRESSION_FLAGS);
-        ledos.writeShort(4);
-        ledos.writeInt(kdbxHeader.getCompressionFlags().ordinal());
+        writeField(ledos, version, HeaderType.COMPRESSION_FLAGS, Helpers.toBytes(kdbxHeader.getCompressionFlags().ordinal(), ByteOrder.LITTLE_ENDIAN));
 
-        ledos.writeByte(HeaderType.MASTER_SEED);
-        ledos.writeShort(kdbxHeader.getMasterSeed().length);
-        ledos.write(kdbxHeader.getMasterSeed());
+        writeField(ledos, version, HeaderType.MASTER_SEED, kdbxHeader.getMasterSeed());
 
-        ledos.writeByte(HeaderType.TRANSFORM_SEED);
-        ledos.writeShort(kdbxHeader.getTransformSeed().length);
-        ledos.write(kdbxHeader.getTransformSeed());
+        if (version < 4) {
+            writeField(ledos, version, HeaderType.TRANSFORM_SEED, kdbxHeader.getTransformSeed());
 
-        ledos.writeByte(HeaderType.TRANSFORM_ROUNDS);
-        ledos.writeShort(8);
-        ledos.writeLong(kdbxHeader.getTransformRounds());
+            writeField(ledos, version, HeaderType.TRANSFORM_ROUNDS, Helpers.toBytes(kdbxHeader.getTransformRounds(), ByteOrder.LITTLE_ENDIAN));
+        } else {
+            writeField(ledos, version, HeaderType.KDF_PARAMETERS, serializeVariantDictionary(kdbxHeader.getKdfParameters()));
+        }
 
-        ledos.writeByte(HeaderType.ENCRYPTION_IV);
-        ledos.writeShort(kdbxHeader.getEncryptionIv().length);
-        ledos.write(kdbxHeader.getEncryptionIv());
+        writeField(ledos, version, HeaderType.ENCRYPTION_IV, kdbxHeader.getEncryptionIv());
 
-        ledos.writeByte(HeaderType.INNER_RANDOM_STREAM_KEY);
-        ledos.writeShort(kdbxHeader.getInnerRandomStreamKey().length);
-        ledos.write(kdbxHeader.getInnerRandomStreamKey());
+        if (version < 4) {
+            writeField(ledos, version, HeaderType.INNER_RANDOM_STREAM_KEY, kdbxHeader.getInnerRandomStreamKey());
 
-        ledos.writeByte(HeaderType.STREAM_START_BYTES);
-        ledos.writeShort(kdbxHeader.getStreamStartBytes().length);
-        ledos.write(kdbxHeader.getStreamStartBytes());
+            writeField(ledos, version, HeaderType.STREAM_START_BYTES, kdbxHeader.getStreamStartBytes());
 
-        ledos.writeByte(HeaderType.INNER_RANDOM_STREAM_ID);
-        ledos.writeShort(4);
-        ledos.writeInt(kdbxHeader.getProtectedStreamAlgorithm().ordinal());
+            writeField(ledos, version, HeaderType.INNER_RANDOM_STREAM_ID, Helpers.toBytes(kdbxHeader.getProtectedStreamAlgorithm().ordinal(), ByteOrder.LITTLE_ENDIAN));
 
-        ledos.writeByte(HeaderType.END);
-        ledos.writeShort(0);
+            writeField(ledos, version, HeaderType.END, new byte[0]);
+        } else {
+            writeField(ledos, version, HeaderType.END, END_OF_HEADER);
+        }
 
-        MessageDigest digest = digestOutputStream.getMessageDigest();
-        kdbxHeader.setHeaderHash(digest.digest());
+        byte[] headerBytes = headerOutputStream.toByteArray();
+        outputStream.write(headerBytes);
+
+        kdbxHeader.setHeaderBytes(headerBytes);
+        kdbxHeader.setHeaderHash(Encryption.getSha256MessageDigestInstance().digest(headerBytes));
+    }
+
+    /**
+     * Write a TLV header field, the length being 2 bytes in V3 and 4 bytes in V4
+     */
+    private static void writeField(LittleEndianDataOutputStream ledos, int version, byte type, byte[] value) throws IOException {
+        ledos.writeByte(type);
+        if (version < 4) {
+            ledos.writeShort(value.length);
+        } else {
+            ledos.writeInt(value.length);
+        }
+        ledos.write(value);
     }
 
 
@@ -17,6 +17,9 @@
 package org.linguafranca.pwdb.kdbx;
 
 import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.security.Aes;
+import org.linguafranca.pwdb.security.CipherAlgorithm;
+import org.linguafranca.pwdb.security.KeyDerivationFunction;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -30,6 +33,8 @@ import java.util.Arrays;
 public class KdbxStreamFormat implements StreamFormat {
 
     private final Version version;
+    private final CipherAlgorithm cipherAlgorithm;
+    private final KeyDerivationFunction keyDerivationFunction;
 
     public enum Version {
         KDBX31(3),
@@ -50,42 +55,68 @@ public class KdbxStreamFormat implements StreamFormat {
      * Create a StreamFormat for reading or for writing v3
      */
     public KdbxStreamFormat() {
-        this.version = Version.KDBX31;
+        this(Version.KDBX31);
     }
 
     /**
-     * Specify a version for writing
+     * Specify a version for writing, using AES for encryption and key derivation
      * @param version the version
      */
     public KdbxStreamFormat(Version version) {
+        this(version, Aes.getInstance(), Aes.getInstance());
+    }
+
+    /**
+     * Specify a version, cipher and key derivation function for writing. Other than AES, these require V4.
+     * @param version the version
+     * @param cipherAlgorithm the cipher
+     * @param keyDerivationFunction the key derivation function
+     */
+    public KdbxStreamFormat(Version version, CipherAlgorithm cipherAlgorithm, KeyDerivationFunction keyDerivationFunction) {
         this.version = version;
+        this.cipherAlgorithm = cipherAlgorithm;
+        this.keyDerivationFunction = keyDerivationFunction;
     }
 
     @Override
     public void load(SerializableDatabase serializableDatabase, Credentials credentials, InputStream encryptedInputStream) throws IOException {
         KdbxHeader kdbxHeader = new KdbxHeader();
-        InputStream decryptedInputStream = KdbxSerializer.createUnencryptedInputStream(credentials, kdbxHeader, encryptedInputStream);
-        serializableDatabase.setEncryption(kdbxHeader.getStreamEncryptor());
-        serializableDatabase.load(decryptedInputStream);
-        if (kdbxHeader.getVersion() == 3 && !Arrays.equals(serializableDatabase.getHeaderHash(), kdbxHeader.getHeaderHash())) {
-            throw new IllegalStateException("Header hash does not match");
-        }
-        if (kdbxHeader.getVersion() == 4) {
-            int count = 0;
-            for (byte[] binary: kdbxHeader.getBinaries()) {
-                serializableDatabase.addBinary(count, Arrays.copyOfRange(binary,1, binary.length));
-                count++;
+        try (InputStream decryptedInputStream = KdbxSerializer.createUnencryptedInputStream(credentials, kdbxHeader, encryptedInputStream)) {
+            serializableDatabase.setEncryption(kdbxHeader.getStreamEncryptor());
+            serializableDatabase.load(decryptedInputStream);
+            if (kdbxHeader.getVersion() == 3 && !Arrays.equals(serializableDatabase.getHeaderHash(), kdbxHeader.getHeaderHash())) {
+                throw new IllegalStateException("Header hash does not match");
+            }
+            if (kdbxHeader.getVersion() == 4) {
+                int count = 0;
+                for (byte[] binary: kdbxHeader.getBinaries()) {
+                    serializableDatabase.addBinary(count, Arrays.copyOfRange(binary,1, binary.length));
+                    count++;
+                }
             }
         }
-        decryptedInputStream.close();
     }
 
     @Override
     public void save(SerializableDatabase serializableDatabase, Credentials credentials, OutputStream encryptedOutputStream) throws IOException {
         // fresh kdbx header
-        KdbxHeader kdbxHeader = new KdbxHeader(version.getVersionNum());
+        KdbxHeader kdbxHeader = new KdbxHeader(version.getVersionNum(), cipherAlgorithm, keyDerivationFunction);
+        if (serializableDatabase instanceof SerializableDatabaseV4) {
+            SerializableDatabaseV4 serializableDatabaseV4 = (SerializableDatabaseV4) serializableDatabase;
+            if (version == Version.KDBX4) {
+                // V4 binaries go in the inner header
+                for (byte[] binary: serializableDatabaseV4.getBinaries()) {
+                    kdbxHeader.addUnprotectedBinary(binary);
+                }
+            }
+            serializableDatabaseV4.setVersion(version.getVersionNum());
+        } else if (version == Version.KDBX4) {
+            throw new IllegalArgumentException("Database does not support saving as KDBX V4");
+        }
         OutputStream unencrytedOutputStream = KdbxSerializer.createEncryptedOutputStream(credentials, kdbxHeader, encryptedOutputStream);
-        if (version == Version.KDBX31) {
+        byte[] headerHash = serializableDatabase.getHeaderHash();
+        if (version == Version.KDBX31 || (headerHash != null && headerHash.length > 0)) {
+            // V4 does not need the hash in the payload, but must not carry a stale one
             serializableDatabase.setHeaderHash(kdbxHeader.getHeaderHash());
         }
         serializableDatabase.setEncryption(kdbxHeader.getStreamEncryptor());
@@ -0,0 +1,417 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx;
+
+import org.jetbrains.annotations.Nullable;
+import org.linguafranca.pwdb.Credentials;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static javax.xml.stream.XMLStreamConstants.*;
+
+/**
+ * Reads a KDBX stream as a sequence of callbacks, without building an object model of the database,
+ * so that its memory use does not depend on the size of the database.
+ * <p>
+ * Values marked as protected are decrypted as they are encountered, since the inner stream
+ * cipher must be applied in document order. Callbacks are made in document order:
+ * <ol>
+ *     <li>{@link Listener#binary} for each V4 binary in the inner header</li>
+ *     <li>{@link Listener#metaField} for each value in Meta, and {@link Listener#binary} for each V3 binary</li>
+ *     <li>{@link Listener#startGroup}, then entries and subgroups, then {@link Listener#endGroup}
+ *     for the root group and each group within it</li>
+ * </ol>
+ * Entries refer to binaries by their id, see {@link StreamedEntry#getBinaryReference}.
+ *
+ * @author jo
+ */
+@SuppressWarnings("WeakerAccess")
+public class KdbxStreamingReader {
+
+    /**
+     * Receives the content of a KDBX stream
+     */
+    public interface Listener {
+        /**
+         * A value from Meta
+         * @param path the path of the value relative to Meta, e.g. "DatabaseName" or "MemoryProtection/ProtectTitle"
+         * @param value the value
+         */
+        void metaField(String path, String value);
+
+        /**
+         * The content of a binary, decrypted and decompressed as necessary
+         * @param id the id by which entries refer to it
+         * @param content the content
+         */
+        void binary(int id, byte[] content);
+
+        /**
+         * The start of a group, followed by its entries and subgroups
+         */
+        void startGroup(UUID uuid, String name);
+
+        void endGroup();
+
+        void entry(StreamedEntry entry);
+
+        /**
+         * A listener that ignores everything, to extend for the callbacks of interest
+         */
+        class Default implements Listener {
+            @Override
+            public void metaField(String path, String value) {}
+
+            @Override
+            public void binary(int id, byte[] content) {}
+
+            @Override
+            public void startGroup(UUID uuid, String name) {}
+
+            @Override
+            public void endGroup() {}
+
+            @Override
+            public void entry(StreamedEntry entry) {}
+        }
+    }
+
+    /**
+     * An entry with its protected values decrypted
+     */
+    public static class StreamedEntry {
+        private UUID uuid;
+        private final Map<String, String> properties = new LinkedHashMap<>();
+        private final Map<String, Integer> binaryReferences = new LinkedHashMap<>();
+        private final Map<String, String> fields = new LinkedHashMap<>();
+        private final List<StreamedEntry> history = new ArrayList<>();
+
+        public UUID getUuid() {
+            return uuid;
+        }
+
+        public List<String> getPropertyNames() {
+            return new ArrayList<>(properties.keySet());
+        }
+
+        public @Nullable char[] getProperty(String name) {
+            String value = properties.get(name);
+            return value == null ? null : value.toCharArray();
+        }
+
+        public List<String> getBinaryPropertyNames() {
+            return new ArrayList<>(binaryReferences.keySet());
+        }
+
+        /**
+         * The id of the binary with this name, as passed to {@link Listener#binary}
+         */
+        public @Nullable Integer getBinaryReference(String name) {
+            return binaryReferences.get(name);
+        }
+
+        /**
+         * Other values of the entry, by their path, e.g. "Tags" or "Times/CreationTime"
+         */
+        public @Nullable String getField(String path) {
+            return fields.get(path);
+        }
+
+        public List<String> getFieldNames() {
+            return new ArrayList<>(fields.keySet());
+        }
+
+        public List<StreamedEntry> getHistory() {
+            return Collections.unmodifiableList(history);
+        }
+    }
+
+    /* receives the leaf values of a subtree */
+    private interface LeafSink {
+        void leaf(String path, String value);
+    }
+
+    private static final LeafSink IGNORE = new LeafSink() {
+        @Override
+        public void leaf(String path, String value) {}
+    };
+
+    private final XMLStreamReader reader;
+    private final StreamEncryptor encryptor;
+    private final Listener listener;
+
+    private KdbxStreamingReader(XMLStreamReader reader, StreamEncryptor encryptor, Listener listener) {
+        this.reader = reader;
+        this.encryptor = encryptor;
+        this.listener = listener;
+    }
+
+    /**
+     * Read a KDBX stream, V3 or V4, passing its content to the listener
+     *
+     * @param credentials credentials for decryption of the stream
+     * @param inputStream a KDBX formatted input stream
+     * @param listener    receives the content
+     * @throws IOException on error
+     */
+    public static void read(Credentials credentials, InputStream inputStream, Listener listener) throws IOException {
+        KdbxHeader kdbxHeader = new KdbxHeader();
+        try (InputStream decryptedInputStream = KdbxSerializer.createUnencryptedInputStream(credentials, kdbxHeader, inputStream)) {
+            if (kdbxHeader.getVersion() >= 4) {
+                int id = 0;
+                for (byte[] binary : kdbxHeader.getBinaries()) {
+                    // first byte is the protection flag
+                    listener.binary(id++, Arrays.copyOfRange(binary, 1, binary.length));
+                }
+            }
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            XMLStreamReader reader = factory.createXMLStreamReader(decryptedInputStream, "UTF-8");
+            try {
+                new KdbxStreamingReader(reader, kdbxHeader.getInnerStreamEncryptor(), listener).parse();
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void parse() throws XMLStreamException {
+        reader.nextTag();
+        if (!reader.getLocalName().equals("KeePassFile")) {
+            throw new IllegalStateException("Expected KeePassFile but got " + reader.getLocalName());
+        }
+        while (nextChild()) {
+            switch (reader.getLocalName()) {
+                case "Meta":
+                    parseMeta();
+                    break;
+                case "Root":
+                    parseRoot();
+                    break;
+                default:
+                    readElement(reader.getLocalName(), IGNORE);
+            }
+        }
+    }
+
+    private void parseMeta() throws XMLStreamException {
+        LeafSink metaSink = new LeafSink() {
+            @Override
+            public void leaf(String path, String value) {
+                listener.metaField(path, value);
+            }
+        };
+        while (nextChild()) {
+            if (reader.getLocalName().equals("Binaries")) {
+                parseBinaries();
+            } else {
+                readElement(reader.getLocalName(), metaSink);
+            }
+        }
+    }
+
+    private void parseBinaries() throws XMLStreamException {
+        while (nextChild()) {
+            String id = reader.getAttributeValue(null, "ID");
+            boolean compressed = "True".equalsIgnoreCase(reader.getAttributeValue(null, "Compressed"));
+            boolean isProtected = isProtected();
+            byte[] content = Helpers.decodeBase64Content(reader.getElementText().getBytes(StandardCharsets.US_ASCII), false);
+            if (isProtected && content.length > 0) {
+                content = encryptor.decrypt(content);
+            }
+            if (compressed) {
+                content = Helpers.unzipBinaryContent(content);
+            }
+            listener.binary(Integer.parseInt(id), content);
+        }
+    }
+
+    private void parseRoot() throws XMLStreamException {
+        while (nextChild()) {
+            if (reader.getLocalName().equals("Group")) {
+                parseGroup();
+            } else {
+                readElement(reader.getLocalName(), IGNORE);
+            }
+        }
+    }
+
+    private void parseGroup() throws XMLStreamException {
+        UUID uuid = null;
+        String name = null;
+        boolean started = false;
+        while (nextChild()) {
+            String elementName = reader.getLocalName();
+            if (elementName.equals("Entry") || elementName.equals("Group")) {
+                // the group's own values precede its entries and subgroups
+                if (!started) {
+                    listener.startGroup(uuid, name);
+                    started = true;
+                }
+                if (elementName.equals("Entry")) {
+                    listener.entry(parseEntry());
+                } else {
+                    parseGroup();
+                }
+            } else if (elementName.equals("UUID")) {
+                uuid = Helpers.uuidFromBase64(readElement(elementName, IGNORE));
+            } else if (elementName.equals("Name")) {
+                name = readElement(elementName, IGNORE);
+            } else {
+                readElement(elementName, IGNORE);
+            }
+        }
+        if (!started) {
+            listener.startGroup(uuid, name);
+        }
+        listener.endGroup();
+    }
+
+    private StreamedEntry parseEntry() throws XMLStreamException {
+        final StreamedEntry entry = new StreamedEntry();
+        LeafSink fieldSink = new LeafSink() {
+            @Override
+            public void leaf(String path, String value) {
+                entry.fields.put(path, value);
+            }
+        };
+        while (nextChild()) {
+            switch (reader.getLocalName()) {
+                case "UUID":
+                    entry.uuid = Helpers.uuidFromBase64(readElement("UUID", IGNORE));
+                    break;
+                case "String": {
+                    String key = null;
+                    String value = null;
+                    while (nextChild()) {
+                        String elementName = reader.getLocalName();
+                        String text = readElement(elementName, IGNORE);
+                        if (elementName.equals("Key")) {
+                            key = text;
+                        } else if (elementName.equals("Value")) {
+                            value = text;
+                        }
+                    }
+                    if (key != null) {
+                        entry.properties.put(key, value == null ? "" : value);
+                    }
+                    break;
+                }
+                case "Binary": {
+                    String key = null;
+                    String ref = null;
+                    while (nextChild()) {
+                        String elementName = reader.getLocalName();
+                        if (elementName.equals("Value")) {
+                            ref = reader.getAttributeValue(null, "Ref");
+                        }
+                        String text = readElement(elementName, IGNORE);
+                        if (elementName.equals("Key")) {
+                            key = text;
+                        }
+                    }
+                    if (key != null && ref != null) {
+                        entry.binaryReferences.put(key, Integer.valueOf(ref));
+                    }
+                    break;
+                }
+                case "History":
+                    while (nextChild()) {
+                        if (reader.getLocalName().equals("Entry")) {
+                            entry.history.add(parseEntry());
+                        } else {
+                            readElement(reader.getLocalName(), IGNORE);
+                        }
+                    }
+                    break;
+                default:
+                    readElement(reader.getLocalName(), fieldSink);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Move to the next child of the current element
+     *
+     * @return true if positioned at the start of a child, false if at the end of the current element
+     */
+    private boolean nextChild() throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == START_ELEMENT) {
+                return true;
+            }
+            if (event == END_ELEMENT) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Read the element at which the reader is positioned, passing the values of its leaf elements to the sink.
+     * Protected values are decrypted, whether wanted or not, to keep the inner stream in step.
+     *
+     * @param path the path of the element for reporting
+     * @param sink receives leaf values
+     * @return the value of the element if it is a leaf, otherwise null
+     */
+    private String readElement(String path, LeafSink sink) throws XMLStreamException {
+        boolean isProtected = isProtected();
+        StringBuilder text = new StringBuilder();
+        boolean hasChildren = false;
+        while (true) {
+            switch (reader.next()) {
+                case CHARACTERS:
+                case CDATA:
+                case SPACE:
+                    text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    break;
+                case START_ELEMENT:
+                    hasChildren = true;
+                    readElement(path + "/" + reader.getLocalName(), sink);
+                    break;
+                case END_ELEMENT:
+                    if (hasChildren) {
+                        return null;
+                    }
+                    String value = text.toString();
+                    if (isProtected && value.length() > 0) {
+                        byte[] encrypted = Helpers.decodeBase64Content(value.getBytes(StandardCharsets.US_ASCII), false);
+                        value = new String(encryptor.decrypt(encrypted), StandardCharsets.UTF_8);
+                    }
+                    sink.leaf(path, value);
+                    return value;
+                default:
+            }
+        }
+    }
+
+    private boolean isProtected() {
+        return "True".equalsIgnoreCase(reader.getAttributeValue(null, "Protected"));
+    }
+}
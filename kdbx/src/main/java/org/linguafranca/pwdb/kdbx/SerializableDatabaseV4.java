@@ -0,0 +1,43 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx;
+
+import java.util.List;
+
+/**
+ * A {@link SerializableDatabase} that can also be saved in KDBX V4 format.
+ *
+ * <p>In V4 the binaries of the database are written in the inner header rather than in the payload,
+ * and times are written in a different format.
+ *
+ * @author jo
+ */
+public interface SerializableDatabaseV4 extends SerializableDatabase {
+
+    /**
+     * The binaries of the database, for writing in the inner header. Each is referenced
+     * by its position in the list.
+     */
+    List<byte[]> getBinaries();
+
+    /**
+     * Set the KDBX version in which {@link #save} is to write the payload. In V4 binaries are
+     * omitted, being saved in the inner header, and times are in V4 format.
+     * @param version 3 or 4
+     */
+    void setVersion(int version);
+}
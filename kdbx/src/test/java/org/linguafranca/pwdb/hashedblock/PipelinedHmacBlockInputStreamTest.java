@@ -0,0 +1,132 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.linguafranca.pwdb.hashedblock;
+
+import com.google.common.io.ByteStreams;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Blocks are verified and returned in order, and the reader thread stops when the stream is
+ * closed or abandoned
+ *
+ * @author jo
+ */
+public class PipelinedHmacBlockInputStreamTest {
+
+    private static final byte[] KEY = new byte[64];
+    private static final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @AfterClass
+    public static void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSameAsWritten() throws IOException {
+        byte[] content = content();
+        PipelinedHmacBlockInputStream inputStream = stream(blocks(content));
+        assertArrayEquals(content, ByteStreams.toByteArray(inputStream));
+        inputStream.close();
+    }
+
+    @Test
+    public void testCorruptBlock() throws Exception {
+        byte[] blocks = blocks(content());
+        // in the second block
+        blocks[blocks.length / 2] ^= 1;
+        PipelinedHmacBlockInputStream inputStream = stream(blocks);
+        try {
+            ByteStreams.toByteArray(inputStream);
+            fail("Corrupt block was not detected");
+        } catch (IllegalStateException e) {
+            assertEquals("Block HMAC does not match", e.getMessage());
+        }
+        // and it stays failed
+        try {
+            inputStream.read();
+            fail("Failed stream should not be readable");
+        } catch (IOException ignored) {
+        }
+        inputStream.close();
+        assertTrue(ended(inputStream.getReaderThread()));
+    }
+
+    @Test
+    public void testClosed() throws Exception {
+        PipelinedHmacBlockInputStream inputStream = stream(blocks(content()));
+        assertTrue(inputStream.read() != -1);
+        inputStream.close();
+        assertTrue(ended(inputStream.getReaderThread()));
+    }
+
+    @Test
+    public void testAbandoned() throws Exception {
+        PipelinedHmacBlockInputStream inputStream = stream(blocks(content()));
+        assertTrue(inputStream.read() != -1);
+        Thread readerThread = inputStream.getReaderThread();
+        // the reader is waiting for room in the queue
+        readerThread.join(200);
+        assertTrue(readerThread.isAlive());
+
+        //noinspection UnusedAssignment
+        inputStream = null;
+        for (int i = 0; i < 100 && readerThread.isAlive(); i++) {
+            System.gc();
+            readerThread.join(100);
+        }
+        assertFalse(readerThread.isAlive());
+    }
+
+    /**
+     * A stream reading one block ahead
+     */
+    private static PipelinedHmacBlockInputStream stream(byte[] blocks) {
+        return new PipelinedHmacBlockInputStream(KEY, new ByteArrayInputStream(blocks), true, executor, 1);
+    }
+
+    /* several 1MB blocks */
+    private static byte[] content() {
+        byte[] content = new byte[4 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(content);
+        return content;
+    }
+
+    private static byte[] blocks(byte[] content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream outputStream = new HmacBlockOutputStream(KEY, bytes, true)) {
+            outputStream.write(content);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static boolean ended(Thread thread) throws InterruptedException {
+        thread.join(10000);
+        return !thread.isAlive();
+    }
+}
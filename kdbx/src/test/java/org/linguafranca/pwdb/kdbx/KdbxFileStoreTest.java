@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.linguafranca.pwdb.kdbx;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.linguafranca.pwdb.Database;
+import org.linguafranca.pwdb.checks.FakeDatabase;
+import org.linguafranca.pwdb.checks.TempDirectory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.linguafranca.pwdb.checks.TempDirectory.read;
+
+/**
+ * Saves replace the file atomically and keep previous generations, which failed saves leave alone
+ *
+ * @author jo
+ */
+public class KdbxFileStoreTest {
+
+    private TempDirectory directory;
+    private KdbxFileStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = new TempDirectory();
+        store = new KdbxFileStore(directory.resolve("test.kdbx"), new KdbxCreds("123".getBytes()), 2);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        directory.delete();
+    }
+
+    @Test
+    public void testGenerations() throws Exception {
+        // a small buffer, so that it is written many times
+        store.setBufferSize(100);
+        for (int i = 1; i <= 4; i++) {
+            store.save(database("version " + i, false));
+        }
+        assertEquals("version 4", read(store.getPath()));
+        assertEquals("version 3", read(store.getGenerationPath(1)));
+        assertEquals("version 2", read(store.getGenerationPath(2)));
+        assertFalse(Files.exists(store.getGenerationPath(3)));
+        assertEquals(3, directory.count());
+    }
+
+    @Test
+    public void testFailedSavesLeaveGenerations() throws Exception {
+        for (int i = 1; i <= 3; i++) {
+            store.save(database("version " + i, false));
+        }
+        for (int i = 0; i < 3; i++) {
+            try {
+                store.save(database("failed", true));
+                fail("Save should have failed");
+            } catch (IOException ignored) {
+            }
+        }
+        assertEquals("version 3", read(store.getPath()));
+        assertEquals("version 2", read(store.getGenerationPath(1)));
+        assertEquals("version 1", read(store.getGenerationPath(2)));
+        assertEquals(3, directory.count());
+    }
+
+    @Test
+    public void testFailedRotationKeepsPrevious() throws Exception {
+        for (int i = 1; i <= 2; i++) {
+            store.save(database("version " + i, false));
+        }
+        // the oldest generation can't be discarded
+        Files.createDirectories(store.getGenerationPath(2).resolve("in the way"));
+        try {
+            store.save(database("version 3", false));
+            fail("Rotation should have failed");
+        } catch (IOException ignored) {
+        }
+        assertEquals("version 3", read(store.getPath()));
+        assertEquals("version 1", read(store.getGenerationPath(1)));
+        List<Path> previous = directory.list("*.prev");
+        assertEquals(1, previous.size());
+        assertEquals("version 2", read(previous.get(0)));
+    }
+
+    @Test
+    public void testNoGenerations() throws Exception {
+        KdbxFileStore store = new KdbxFileStore(directory.resolve("other.kdbx"), this.store.getCredentials());
+        store.save(database("version 1", false));
+        store.save(database("version 2", false));
+        assertEquals("version 2", read(store.getPath()));
+        assertEquals(1, directory.count());
+    }
+
+    /**
+     * A database that saves its content, or part of it before failing
+     */
+    private static Database<?, ?, ?, ?> database(String content, boolean failing) {
+        return new FakeDatabase(content).setFailing(failing).getDatabase();
+    }
+}
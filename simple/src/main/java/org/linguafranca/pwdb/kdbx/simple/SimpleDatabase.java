@@ -16,19 +16,18 @@
 
 package org.linguafranca.pwdb.kdbx.simple;
 
+import com.google.common.io.ByteStreams;
 import org.linguafranca.pwdb.base.AbstractDatabase;
 import org.linguafranca.pwdb.kdbx.Helpers;
 import org.linguafranca.pwdb.kdbx.StreamEncryptor;
 import org.linguafranca.pwdb.kdbx.simple.transformer.KdbxInputTransformer;
-import org.linguafranca.pwdb.kdbx.simple.transformer.KdbxOutputTransformer;
 import org.linguafranca.pwdb.kdbx.KdbxHeader;
 import org.linguafranca.pwdb.kdbx.KdbxSerializer;
 import org.linguafranca.pwdb.kdbx.simple.converter.*;
 import org.linguafranca.pwdb.kdbx.simple.model.EntryClasses;
 import org.linguafranca.pwdb.kdbx.simple.model.KeePassFile;
 import org.linguafranca.pwdb.Credentials;
-import org.linguafranca.xml.XmlInputStreamFilter;
-import org.linguafranca.xml.XmlOutputStreamFilter;
+import org.linguafranca.xml.XmlCursorInputStreamFilter;
 import org.simpleframework.xml.*;
 import org.simpleframework.xml.convert.AnnotationStrategy;
 import org.simpleframework.xml.convert.Registry;
@@ -71,6 +70,8 @@ public class SimpleDatabase extends AbstractDatabase<SimpleDatabase, SimpleGroup
         this.keePassFile = keePassFile;
         this.keePassFile.root.group.database = this;
         fixUp(this.keePassFile.root.group);
+        // from now on values are marked when they are set, so that saving doesn't need to
+        setProtection(this.keePassFile.root.group);
     }
 
     @Override
@@ -154,8 +155,8 @@ public class SimpleDatabase extends AbstractDatabase<SimpleDatabase, SimpleGroup
      * @throws Exception on failure
      */
     private static KeePassFile createEmptyDatabase() throws Exception {
-        InputStream inputStream = SimpleDatabase.class.getClassLoader().getResourceAsStream("base.kdbx.xml");
-        return getSerializer().read(KeePassFile.class, inputStream);
+        // the template is read afresh each time, since it gets the time of reading as its creation date
+        return getSerializer().read(KeePassFile.class, new ByteArrayInputStream(Serializers.TEMPLATE));
     }
 
     /**
@@ -183,29 +184,31 @@ public class SimpleDatabase extends AbstractDatabase<SimpleDatabase, SimpleGroup
 
         // load the KDBX header and get the inner Kdbx stream
         KdbxHeader kdbxHeader = new KdbxHeader();
-        InputStream kdbxInnerStream = KdbxSerializer.createUnencryptedInputStream(credentials, kdbxHeader, inputStream);
+        // closing the stream also stops any pipelined block verification if loading fails part way
+        try (InputStream kdbxInnerStream = KdbxSerializer.createUnencryptedInputStream(credentials, kdbxHeader, inputStream)) {
+            StreamEncryptor streamEncyptor = kdbxHeader.getInnerStreamEncryptor();
 
-        StreamEncryptor streamEncyptor = kdbxHeader.getInnerStreamEncryptor();
+            // decrypt the encrypted fields in the inner XML stream
+            InputStream plainTextXmlStream = new XmlCursorInputStreamFilter(kdbxInnerStream, new KdbxInputTransformer(streamEncyptor));
 
-        // decrypt the encrypted fields in the inner XML stream
-        InputStream plainTextXmlStream = new XmlInputStreamFilter(kdbxInnerStream, new KdbxInputTransformer(streamEncyptor));
+            // read the now entirely decrypted stream into database
+            KeePassFile result = getSerializer().read(KeePassFile.class, plainTextXmlStream);
 
-        // read the now entirely decrypted stream into database
-        KeePassFile result = getSerializer().read(KeePassFile.class, plainTextXmlStream);
-
-        if (kdbxHeader.getVersion() == 3 && result.meta.headerHash != null && !Arrays.equals(result.meta.headerHash.getContent(), kdbxHeader.getHeaderHash())) {
-            throw new IllegalStateException("Header Hash Mismatch");
-        }
+            if (kdbxHeader.getVersion() == 3 && result.meta.headerHash != null && !Arrays.equals(result.meta.headerHash.getContent(), kdbxHeader.getHeaderHash())) {
+                throw new IllegalStateException("Header Hash Mismatch");
+            }
 
-        if (kdbxHeader.getVersion() == 4) {
-            int index = 0;
-            for (byte[] binary : kdbxHeader.getBinaries()) {
-                addBinary(result, binary, index);
-                index++;
+            if (kdbxHeader.getVersion() == 4) {
+                int index = 0;
+                for (byte[] binary : kdbxHeader.getBinaries()) {
+                    // the first byte is a flag
+                    addBinary(result, Arrays.copyOfRange(binary, 1, binary.length), index);
+                    index++;
+                }
             }
-        }
 
-        return new SimpleDatabase(result);
+            return new SimpleDatabase(result);
+        }
     }
 
     public void addBinary(byte[] bytes, Integer index) {
@@ -232,9 +235,7 @@ public class SimpleDatabase extends AbstractDatabase<SimpleDatabase, SimpleGroup
      */
     public void save(OutputStream outputStream) {
         try {
-            prepareForSave(keePassFile.root.group);
-
-            // and save the database out
+            // save the database out
             getSerializer().write(this.keePassFile, outputStream);
 
         } catch (Exception e) {
@@ -245,27 +246,48 @@ public class SimpleDatabase extends AbstractDatabase<SimpleDatabase, SimpleGroup
 
     @Override
     public void save(Credentials credentials, OutputStream outputStream) throws IOException {
+        save(new KdbxHeader(), credentials, outputStream);
+    }
+
+    /**
+     * Save in the version of the header supplied, using its cipher and key derivation function.
+     * <p>
+     * Saving doesn't change the database, other than to mark it not dirty, so the database may be read while it is saved.
+     *
+     * @param kdbxHeader a fresh header
+     * @param credentials the credentials to use
+     * @param outputStream the destination to save to
+     * @throws IOException on error
+     */
+    public void save(KdbxHeader kdbxHeader, Credentials credentials, OutputStream outputStream) throws IOException {
+        // the header hash and binaries written differ from those held, so write a copy of the file with its own Meta
+        KeePassFile toWrite = keePassFile.copyForWriting();
+        List<KeePassFile.Binary> binaries = keePassFile.getBinaries();
         try {
+            if (kdbxHeader.getVersion() >= 4 && binaries != null) {
+                // V4 binaries go in the inner header, not the XML
+                for (byte[] binary : getBinaryPayloads(binaries)) {
+                    kdbxHeader.addUnprotectedBinary(binary);
+                }
+                toWrite.setBinaries(null);
+            }
+
             // create the stream to accept unencrypted data and output to encrypted
-            KdbxHeader kdbxHeader = new KdbxHeader();
             OutputStream kdbxInnerStream = KdbxSerializer.createEncryptedOutputStream(credentials, kdbxHeader, outputStream);
 
-            if(keePassFile.meta.headerHash != null){
+            if (toWrite.meta.headerHash != null) {
                 // the database contains the hash of the headers
-                keePassFile.meta.headerHash.setContent(kdbxHeader.getHeaderHash());
+                toWrite.meta.headerHash = new KeePassFile.ByteArray(kdbxHeader.getHeaderHash());
             }
 
-            // encrypt the fields in the XML inner stream
-            XmlOutputStreamFilter plainTextOutputStream = new XmlOutputStreamFilter(kdbxInnerStream,
-                    new KdbxOutputTransformer(new StreamEncryptor.Salsa20(kdbxHeader.getInnerRandomStreamKey())));
-
-            // set up the "protected" attributes of fields that need inner stream encryption
-            prepareForSave(keePassFile.root.group);
-
-            // and save the database out
-            getSerializer().write(this.keePassFile, plainTextOutputStream);
-            plainTextOutputStream.close();
-            plainTextOutputStream.await();
+            // and save the database out, encrypting protected fields as they are written
+            Serializers.VALUE_CONVERTER.setCurrentEncryptor(kdbxHeader.getStreamEncryptor());
+            try {
+                getSerializer(kdbxHeader.getVersion()).write(toWrite, kdbxInnerStream);
+            } finally {
+                Serializers.VALUE_CONVERTER.setCurrentEncryptor(null);
+            }
+            kdbxInnerStream.close();
             this.setDirty(false);
 
         } catch (Exception e) {
@@ -274,6 +296,21 @@ public class SimpleDatabase extends AbstractDatabase<SimpleDatabase, SimpleGroup
         }
     }
 
+    /**
+     * The content of binaries, the position of each in the list being its index
+     */
+    private static List<byte[]> getBinaryPayloads(List<KeePassFile.Binary> binaries) {
+        List<byte[]> result = new ArrayList<>();
+        for (KeePassFile.Binary binary : binaries) {
+            // indexes are expected to be contiguous, fill any gaps
+            while (result.size() <= binary.getId()) {
+                result.add(new byte[0]);
+            }
+            result.set(binary.getId(), Helpers.decodeBase64Content(binary.getValue().getBytes(), Boolean.TRUE.equals(binary.getCompressed())));
+        }
+        return result;
+    }
+
     @Override
     public boolean shouldProtect(String s) {
         return keePassFile.meta.memoryProtection.shouldProtect(s);
@@ -288,14 +325,53 @@ public class SimpleDatabase extends AbstractDatabase<SimpleDatabase, SimpleGroup
      * Utility to get a simple framework persister
      *
      * @return a persister
-     * @throws Exception when things get tough
      */
-    private static Serializer getSerializer() throws Exception {
-        Registry registry = new Registry();
-        registry.bind(String.class, EmptyStringConverter.class);
-        Strategy strategy = new AnnotationStrategy(new RegistryStrategy(registry));
-        return new Persister(strategy);
+    private static Serializer getSerializer() {
+        return getSerializer(3);
+    }
 
+    /**
+     * Utility to get a simple framework persister for writing. Protected values are written
+     * in the clear unless an encryptor is set on {@link Serializers#VALUE_CONVERTER}.
+     *
+     * @param version the KDBX version being written
+     * @return a persister
+     */
+    private static Serializer getSerializer(int version) {
+        return version >= 4 ? Serializers.V4 : Serializers.V3;
+    }
+
+    /**
+     * Persisters are thread safe and cache what they learn about the model classes,
+     * which is expensive, so they are created once and shared
+     */
+    private static class Serializers {
+        private static final ValueConverter VALUE_CONVERTER = new ValueConverter();
+        private static final Serializer V3 = createSerializer(3);
+        private static final Serializer V4 = createSerializer(4);
+        private static final byte[] TEMPLATE;
+
+        static {
+            try (InputStream inputStream = SimpleDatabase.class.getClassLoader().getResourceAsStream("base.kdbx.xml")) {
+                TEMPLATE = ByteStreams.toByteArray(inputStream);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private static Serializer createSerializer(int version) {
+            try {
+                Registry registry = new Registry();
+                registry.bind(String.class, EmptyStringConverter.class);
+                registry.bind(Date.class, new TimeConverter(version));
+                registry.bind(EntryClasses.StringProperty.Value.class, VALUE_CONVERTER);
+                registry.bind(KeePassFile.Binary.class, BinaryConverter.class);
+                Strategy strategy = new AnnotationStrategy(new RegistryStrategy(registry));
+                return new Persister(strategy);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
     }
 
     /**
@@ -320,9 +396,9 @@ public class SimpleDatabase extends AbstractDatabase<SimpleDatabase, SimpleGroup
      *
      * @param parent the group to start from
      */
-    private static void prepareForSave(SimpleGroup parent) {
+    private static void setProtection(SimpleGroup parent) {
         for (SimpleGroup group : parent.group) {
-            prepareForSave(group);
+            setProtection(group);
         }
         for (SimpleEntry entry : parent.entry) {
             for (EntryClasses.StringProperty property : entry.string) {
@@ -95,7 +95,7 @@ public class SimpleEntry extends AbstractEntry<SimpleDatabase, SimpleGroup, Simp
         result.parent = null;
         // avoiding setProperty as it does a touch();
         for (String p: STANDARD_PROPERTY_NAMES) {
-            result.string.add(new EntryClasses.StringProperty(p, new EntryClasses.StringProperty.Value("")));
+            result.string.add(new EntryClasses.StringProperty(p, new EntryClasses.StringProperty.Value("", database.shouldProtect(p))));
         }
         return result;
     }
@@ -111,8 +111,9 @@ public class SimpleEntry extends AbstractEntry<SimpleDatabase, SimpleGroup, Simp
         if ((sp = getStringProperty(s, string)) != null) {
             this.string.remove(sp);
         }
-        this.string.add(new EntryClasses.StringProperty(s, new EntryClasses.StringProperty.Value(s1)));
+        this.string.add(new EntryClasses.StringProperty(s, new EntryClasses.StringProperty.Value(s1, database.shouldProtect(s))));
         touch();
+        database.entryChanged(this);
     }
 
     @Override
@@ -125,6 +126,7 @@ public class SimpleEntry extends AbstractEntry<SimpleDatabase, SimpleGroup, Simp
         } else {
             this.string.remove(sp);
             touch();
+            database.entryChanged(this);
             return true;
         }
     }
@@ -153,6 +153,7 @@ public class SimpleGroup extends org.linguafranca.pwdb.base.AbstractGroup<Simple
         group.parent = this;
         this.group.add(group);
         touch();
+        database.groupAdded(group);
         return group;
     }
 
@@ -164,6 +165,7 @@ public class SimpleGroup extends org.linguafranca.pwdb.base.AbstractGroup<Simple
         this.group.remove(group);
         group.parent = null;
         touch();
+        database.groupRemoved(group);
         return group;
     }
 
@@ -192,6 +194,7 @@ public class SimpleGroup extends org.linguafranca.pwdb.base.AbstractGroup<Simple
         this.entry.add(entry);
         entry.parent=this;
         touch();
+        database.entryAdded(entry);
         return entry;
     }
 
@@ -202,6 +205,7 @@ public class SimpleGroup extends org.linguafranca.pwdb.base.AbstractGroup<Simple
         }
         this.entry.remove(entry);
         entry.parent = null;
+        database.entryRemoved(entry);
         return entry;
     }
 
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.simple.converter;
+
+import org.linguafranca.pwdb.kdbx.Helpers;
+import org.linguafranca.pwdb.kdbx.simple.model.KeePassFile;
+import org.simpleframework.xml.convert.Converter;
+import org.simpleframework.xml.stream.InputNode;
+import org.simpleframework.xml.stream.OutputNode;
+
+/**
+ * Converts binaries in the metadata, writing their Compressed attribute as KeePass expects
+ *
+ * @author jo
+ */
+public class BinaryConverter implements Converter<KeePassFile.Binary> {
+
+    @Override
+    public KeePassFile.Binary read(InputNode inputNode) throws Exception {
+        KeePassFile.Binary binary = new KeePassFile.Binary();
+        binary.setId(Integer.valueOf(inputNode.getAttribute("ID").getValue()));
+        InputNode compressed = inputNode.getAttribute("Compressed");
+        binary.setCompressed(compressed != null && Helpers.toBoolean(compressed.getValue()));
+        String value = inputNode.getValue();
+        binary.setValue(value == null ? "" : value);
+        return binary;
+    }
+
+    @Override
+    public void write(OutputNode outputNode, KeePassFile.Binary binary) throws Exception {
+        outputNode.setAttribute("ID", String.valueOf(binary.getId()));
+        outputNode.setAttribute("Compressed", Helpers.fromBoolean(binary.getCompressed()));
+        outputNode.setValue(binary.getValue());
+    }
+}
@@ -27,6 +27,20 @@ import java.util.Date;
  * @author jo
  */
 public class TimeConverter implements Converter<Date>{
+
+    private final int version;
+
+    public TimeConverter() {
+        this(3);
+    }
+
+    /**
+     * @param version the KDBX version being written, times are written in a different format from V4
+     */
+    public TimeConverter(int version) {
+        this.version = version;
+    }
+
     @Override
     public Date read(InputNode inputNode) throws Exception {
         String value = inputNode.getValue();
@@ -38,6 +52,6 @@ public class TimeConverter implements Converter<Date>{
 
     @Override
     public void write(OutputNode outputNode, Date date) throws Exception {
-        outputNode.setValue(Helpers.fromDate(date));
+        outputNode.setValue(version >= 4 ? Helpers.fromDateV4(date) : Helpers.fromDate(date));
     }
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.simple.converter;
+
+import org.jetbrains.annotations.Nullable;
+import org.linguafranca.pwdb.kdbx.Helpers;
+import org.linguafranca.pwdb.kdbx.StreamEncryptor;
+import org.linguafranca.pwdb.kdbx.simple.model.EntryClasses.StringProperty.Value;
+import org.simpleframework.xml.convert.Converter;
+import org.simpleframework.xml.stream.InputNode;
+import org.simpleframework.xml.stream.OutputNode;
+
+/**
+ * Converts the values of string properties, encrypting protected values as they are written.
+ * <p>
+ * Values are written in document order, which is the order in which the inner stream
+ * must encrypt them.
+ * <p>
+ * A converter may be shared by serializers used on several threads, in which case the encryptor for
+ * the save in progress on a thread is supplied with {@link #setCurrentEncryptor(StreamEncryptor)}.
+ *
+ * @author jo
+ */
+public class ValueConverter implements Converter<Value> {
+
+    private final StreamEncryptor encryptor;
+    private final ThreadLocal<StreamEncryptor> currentEncryptor = new ThreadLocal<>();
+
+    /**
+     * A converter that doesn't encrypt, e.g. for reading, or for writing plain XML
+     */
+    public ValueConverter() {
+        this(null);
+    }
+
+    /**
+     * @param encryptor the encryptor for protected values, or null to leave them as they are
+     */
+    public ValueConverter(@Nullable StreamEncryptor encryptor) {
+        this.encryptor = encryptor;
+    }
+
+    /**
+     * Use an encryptor in place of the one this converter was created with, for writes on the calling thread
+     *
+     * @param encryptor the encryptor, or null to stop using one
+     */
+    public void setCurrentEncryptor(@Nullable StreamEncryptor encryptor) {
+        if (encryptor == null) {
+            currentEncryptor.remove();
+        } else {
+            currentEncryptor.set(encryptor);
+        }
+    }
+
+    @Override
+    public Value read(InputNode inputNode) throws Exception {
+        InputNode protectInMemory = inputNode.getAttribute("ProtectInMemory");
+        InputNode isProtected = inputNode.getAttribute("Protected");
+        String text = inputNode.getValue();
+        Value value = new Value(text == null ? "" : text,
+                isProtected == null ? null : Helpers.toBoolean(isProtected.getValue()));
+        if (protectInMemory != null) {
+            value.setProtectInMemory(Helpers.toBoolean(protectInMemory.getValue()));
+        }
+        return value;
+    }
+
+    @Override
+    public void write(OutputNode outputNode, Value value) throws Exception {
+        if (value.getProtectInMemory() != null) {
+            outputNode.setAttribute("ProtectInMemory", value.getProtectInMemory().toString());
+        }
+        String text = value.getText();
+        StreamEncryptor encryptor = currentEncryptor.get();
+        if (encryptor == null) {
+            encryptor = this.encryptor;
+        }
+        boolean isProtected = Boolean.TRUE.equals(value.getProtected());
+        if (isProtected) {
+            outputNode.setAttribute("Protected", "True");
+        }
+        if (text == null || text.isEmpty()) {
+            outputNode.setValue(null);
+        } else if (isProtected && encryptor != null) {
+            outputNode.setValue(Helpers.encodeBase64Content(encryptor.encrypt(text.getBytes()), false));
+        } else {
+            outputNode.setValue(text);
+        }
+    }
+}
@@ -123,13 +123,10 @@ public abstract class EntryClasses {
                 this.text = text;
             }
 
+            // NB converters don't work on attributes - the Simple database registers ValueConverter for this class
             @Attribute(name = "ProtectInMemory", required = false)
-            @Convert(KeePassBooleanConverter.class)
-            // NB converters don't work on attributes -see KdbxOutputTransformer
             protected Boolean protectInMemory;
             @Attribute(name = "Protected", required = false)
-            @Convert(KeePassBooleanConverter.class)
-            // NB converters don't work on attributes -see KdbxOutputTransformer
             Boolean _protected;
             
             // possible security issue here?
@@ -137,9 +134,25 @@ public abstract class EntryClasses {
             @Text
             String text;
 
+            public String getText() {
+                return text;
+            }
+
+            public Boolean getProtected() {
+                return _protected;
+            }
+
             public void setProtected(boolean aProtected) {
                 this._protected = aProtected;
             }
+
+            public Boolean getProtectInMemory() {
+                return protectInMemory;
+            }
+
+            public void setProtectInMemory(Boolean protectInMemory) {
+                this.protectInMemory = protectInMemory;
+            }
         }
     }
 
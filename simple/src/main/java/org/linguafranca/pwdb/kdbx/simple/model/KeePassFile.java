@@ -20,7 +20,6 @@ import org.linguafranca.pwdb.Entry;
 import org.linguafranca.pwdb.kdbx.simple.SimpleGroup;
 import org.linguafranca.pwdb.kdbx.simple.converter.Base64ByteArrayConverter;
 import org.linguafranca.pwdb.kdbx.simple.converter.KeePassBooleanConverter;
-import org.linguafranca.pwdb.kdbx.simple.converter.TimeConverter;
 import org.linguafranca.pwdb.kdbx.simple.converter.UuidConverter;
 import org.simpleframework.xml.*;
 import org.simpleframework.xml.convert.Convert;
@@ -50,6 +49,21 @@ public class KeePassFile {
         meta.binaries = new ArrayList<>();
     }
 
+    public void setBinaries(List<Binary> binaries) {
+        meta.binaries = binaries;
+    }
+
+    /**
+     * A copy to write in place of this file, with its own copy of the {@link Meta}, so that what is written
+     * there can be changed without changing this file. Everything else is shared.
+     */
+    public KeePassFile copyForWriting() {
+        KeePassFile copy = new KeePassFile();
+        copy.meta = meta.copy();
+        copy.root = root;
+        return copy;
+    }
+
     public static class Root {
         @Element(name = "Group")
         public SimpleGroup group;
@@ -62,7 +76,7 @@ public class KeePassFile {
     }
 
     @SuppressWarnings("unused")
-    public static class Meta {
+    public static class Meta implements Cloneable {
         @Element(name = "Generator")
         protected String generator;
         @Element(name = "HeaderHash", required = false)
@@ -71,24 +85,20 @@ public class KeePassFile {
         @Element(name = "DatabaseName")
         public String databaseName;
         @Element(name = "DatabaseNameChanged", type = Date.class)
-        @Convert(TimeConverter.class)
         public Date databaseNameChanged;
         @Element(name = "DatabaseDescription")
         public String databaseDescription;
         @Element(name = "DatabaseDescriptionChanged", type = Date.class)
-        @Convert(TimeConverter.class)
         public Date databaseDescriptionChanged;
         @Element(name = "DefaultUserName")
         protected String defaultUserName;
         @Element(name = "DefaultUserNameChanged", type = Date.class)
-        @Convert(TimeConverter.class)
         protected Date defaultUserNameChanged;
         @Element(name = "MaintenanceHistoryDays")
         protected int maintenanceHistoryDays;
         @Element(name = "Color")
         protected String color;
         @Element(name = "MasterKeyChanged", type = Date.class)
-        @Convert(TimeConverter.class)
         protected Date masterKeyChanged;
         @Element(name = "MasterKeyChangeRec")
         protected int masterKeyChangeRec;
@@ -105,13 +115,11 @@ public class KeePassFile {
         @Convert(UuidConverter.class)
         public UUID recycleBinUUID;
         @Element(name = "RecycleBinChanged", type = Date.class)
-        @Convert(TimeConverter.class)
         public Date recycleBinChanged;
         @Element(name = "EntryTemplatesGroup", type = UUID.class)
         @Convert(UuidConverter.class)
         protected UUID entryTemplatesGroup;
         @Element(name = "EntryTemplatesGroupChanged", type = Date.class)
-        @Convert(TimeConverter.class)
         protected Date entryTemplatesGroupChanged;
         @Element(name = "LastSelectedGroup", type = UUID.class)
         @Convert(UuidConverter.class)
@@ -131,8 +139,18 @@ public class KeePassFile {
         /* version 4 */
 
         @Element(name = "SettingsChanged", required = false, type = Date.class)
-        @Convert(TimeConverter.class)
         protected Date settingsChanged;
+
+        /**
+         * A shallow copy
+         */
+        public Meta copy() {
+            try {
+                return (Meta) clone();
+            } catch (CloneNotSupportedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
     }
 
 
@@ -176,8 +194,8 @@ public class KeePassFile {
 
         @Attribute(name = "ID")
         protected Integer id;
+        // NB converters don't work on attributes - the Simple database registers BinaryConverter for this class
         @Attribute(name = "Compressed")
-        @Convert(KeePassBooleanConverter.class)
         protected Boolean compressed;
 
         @Override
@@ -262,7 +280,6 @@ public class KeePassFile {
         @Convert(UuidConverter.class)
         protected UUID uuid;
         @Element(name = "DeletionTime", type = Date.class)
-        @Convert(TimeConverter.class)
         protected Date deletionTime;
     }
 }
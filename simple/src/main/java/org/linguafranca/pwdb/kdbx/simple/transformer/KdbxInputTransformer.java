@@ -18,10 +18,12 @@ package org.linguafranca.pwdb.kdbx.simple.transformer;
 
 import org.linguafranca.pwdb.kdbx.Helpers;
 import org.linguafranca.pwdb.kdbx.StreamEncryptor;
+import org.linguafranca.xml.XmlCursorTransformer;
 import org.linguafranca.xml.XmlEventTransformer;
 
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.events.Attribute;
 import javax.xml.stream.events.XMLEvent;
 
@@ -35,7 +37,7 @@ import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
  * @author jo
  */
 @SuppressWarnings("WeakerAccess")
-public class KdbxInputTransformer implements XmlEventTransformer {
+public class KdbxInputTransformer implements XmlEventTransformer, XmlCursorTransformer {
     private XMLEventFactory xmlEventFactory = new com.fasterxml.aalto.stax.EventFactoryImpl();
     private final StreamEncryptor streamEncryptor;
     private boolean decryptContent;
@@ -59,13 +61,22 @@ public class KdbxInputTransformer implements XmlEventTransformer {
             }
             case CHARACTERS: {
                 if (decryptContent) {
-                    String text = event.asCharacters().getData();
-                    text = new String(streamEncryptor.decrypt(Helpers.decodeBase64Content(text.getBytes(), false)));
-                    event = xmlEventFactory.createCharacters(text);
+                    event = xmlEventFactory.createCharacters(transform(event.asCharacters().getData()));
                 }
                 break;
             }
         }
         return event;
     }
+
+    @Override
+    public boolean isTransformed(XMLStreamReader reader) {
+        String value = reader.getAttributeValue(null, "Protected");
+        return value != null && Helpers.toBoolean(value);
+    }
+
+    @Override
+    public String transform(String text) {
+        return new String(streamEncryptor.decrypt(Helpers.decodeBase64Content(text.getBytes(), false)));
+    }
 }
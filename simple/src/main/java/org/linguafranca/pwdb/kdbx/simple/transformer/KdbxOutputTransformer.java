@@ -34,7 +34,7 @@ import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
 import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
 
 /**
- * Transform protected elements on output
+ * Transform protected elements on output, and in V4 times
  *
  * @author jo
  */
@@ -43,16 +43,28 @@ public class KdbxOutputTransformer implements XmlEventTransformer {
 
     private XMLEventFactory eventFactory = com.fasterxml.aalto.stax.EventFactoryImpl.newInstance();
     private StreamEncryptor encryptor;
+    private final int version;
     private Boolean encryptContent = false;
+    private boolean formatTime = false;
 
     public KdbxOutputTransformer(StreamEncryptor encryptor) {
+        this(encryptor, 3);
+    }
+
+    /**
+     * @param encryptor encryptor for protected elements
+     * @param version the KDBX version being written
+     */
+    public KdbxOutputTransformer(StreamEncryptor encryptor, int version) {
         this.encryptor = encryptor;
+        this.version = version;
     }
 
     @Override
     public XMLEvent transform(XMLEvent event) {
         switch (event.getEventType()) {
             case START_ELEMENT: {
+                formatTime = version >= 4 && Helpers.isTimeElementName(event.asStartElement().getName().getLocalPart());
                 Iterator<Attribute> itr = event.asStartElement().getAttributes();
 
                 List<Attribute> attributes = new ArrayList<>();
@@ -89,11 +101,15 @@ public class KdbxOutputTransformer implements XmlEventTransformer {
                     String unencrypted = event.asCharacters().getData();
                     String encrypted = Helpers.encodeBase64Content(encryptor.encrypt(unencrypted.getBytes()), false);
                     event = eventFactory.createCharacters(encrypted);
+                } else if (formatTime) {
+                    String time = Helpers.fromDateV4(Helpers.toDate(event.asCharacters().getData()));
+                    event = eventFactory.createCharacters(time);
                 }
                 break;
             }
             case END_ELEMENT: {
                 encryptContent = false;
+                formatTime = false;
                 break;
             }
         }
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.xml;
+
+import org.jetbrains.annotations.NotNull;
+
+import javax.xml.stream.*;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An input stream filter to accept a stream, interpret as XML, transform the text content
+ * of selected elements, then forward as a stream.
+ *
+ * <p>Unlike {@link XmlInputStreamFilter} this uses the StAX cursor API, so no objects are created
+ * for each XML event, and writes many events at a time into a buffer that is reused. Only the text
+ * of the elements selected by the transformer is turned into strings.
+ *
+ * @author jo
+ */
+public class XmlCursorInputStreamFilter extends InputStream {
+
+    // the amount of output to produce before handing it on
+    private static final int BATCH_SIZE = 64 * 1024;
+    // the number of events to write between checks of the amount of output
+    private static final int EVENTS_PER_FLUSH = 256;
+
+    private final InputStream inputStream;
+    private final XmlCursorTransformer transformer;
+    private final XMLStreamReader reader;
+    private final XMLStreamWriter writer;
+    private final Buffer buffer = new Buffer(BATCH_SIZE * 2);
+    // the position in the buffer of the next byte to return
+    private int position;
+    private boolean transformText;
+    private boolean done;
+
+    public XmlCursorInputStreamFilter(InputStream inputStream, XmlCursorTransformer transformer) throws XMLStreamException {
+        this.inputStream = inputStream;
+        this.transformer = transformer;
+
+        XMLInputFactory inputFactory = new com.fasterxml.aalto.stax.InputFactoryImpl();
+        // so the text of an element is never split
+        inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        this.reader = inputFactory.createXMLStreamReader(inputStream);
+
+        XMLOutputFactory outputFactory = new com.fasterxml.aalto.stax.OutputFactoryImpl();
+        this.writer = outputFactory.createXMLStreamWriter(buffer, "UTF-8");
+        writer.writeStartDocument("UTF-8", "1.0");
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!fill()) {
+            return -1;
+        }
+        return buffer.bytes()[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(@NotNull byte[] b, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!fill()) {
+            return -1;
+        }
+        int count = Math.min(length, buffer.size() - position);
+        System.arraycopy(buffer.bytes(), position, b, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return buffer.size() - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } catch (XMLStreamException ignored) {
+        }
+        inputStream.close();
+    }
+
+    /**
+     * Make sure there is something in the buffer to read
+     *
+     * @return false if there is nothing left
+     */
+    private boolean fill() throws IOException {
+        while (position == buffer.size()) {
+            if (done) {
+                return false;
+            }
+            buffer.reset();
+            position = 0;
+            try {
+                copyEvents();
+            } catch (XMLStreamException e) {
+                throw new IOException(e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copy events from the reader to the writer until a batch has been written or there are no more
+     */
+    private void copyEvents() throws XMLStreamException {
+        while (buffer.size() < BATCH_SIZE) {
+            for (int i = 0; i < EVENTS_PER_FLUSH; i++) {
+                if (!reader.hasNext()) {
+                    writer.flush();
+                    done = true;
+                    return;
+                }
+                copyEvent();
+            }
+            // the writer has its own buffer, so flush it to see how much has been written
+            writer.flush();
+        }
+    }
+
+    private void copyEvent() throws XMLStreamException {
+        switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+                copyStartElement();
+                transformText = transformer.isTransformed(reader);
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                writer.writeEndElement();
+                transformText = false;
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.SPACE:
+                if (transformText) {
+                    writer.writeCharacters(transformer.transform(reader.getText()));
+                } else {
+                    writer.writeCharacters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                }
+                break;
+            case XMLStreamConstants.CDATA:
+                if (transformText) {
+                    writer.writeCharacters(transformer.transform(reader.getText()));
+                } else {
+                    writer.writeCData(reader.getText());
+                }
+                break;
+            case XMLStreamConstants.COMMENT:
+                writer.writeComment(reader.getText());
+                break;
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                writer.writeProcessingInstruction(reader.getPITarget(), reader.getPIData());
+                break;
+            case XMLStreamConstants.DTD:
+                writer.writeDTD(reader.getText());
+                break;
+            case XMLStreamConstants.END_DOCUMENT:
+                writer.writeEndDocument();
+                break;
+        }
+    }
+
+    private void copyStartElement() throws XMLStreamException {
+        writer.writeStartElement(nonNull(reader.getPrefix()), reader.getLocalName(), nonNull(reader.getNamespaceURI()));
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            writer.writeNamespace(nonNull(reader.getNamespacePrefix(i)), nonNull(reader.getNamespaceURI(i)));
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            writer.writeAttribute(nonNull(reader.getAttributePrefix(i)), nonNull(reader.getAttributeNamespace(i)),
+                    reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+        }
+    }
+
+    private static String nonNull(String value) {
+        return value == null ? "" : value;
+    }
+
+    /**
+     * Gives access to the bytes written without copying them
+     */
+    private static class Buffer extends ByteArrayOutputStream {
+        Buffer(int size) {
+            super(size);
+        }
+
+        byte[] bytes() {
+            return buf;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.xml;
+
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * An interface for allowing the text content of XML elements to be transformed
+ * by {@link XmlCursorInputStreamFilter}.
+ *
+ * @author jo
+ */
+public interface XmlCursorTransformer {
+
+    /**
+     * Called with the reader positioned at a start element
+     *
+     * @return true if the text content of the element is to be transformed
+     */
+    boolean isTransformed(XMLStreamReader reader);
+
+    /**
+     * Transform the text content of an element
+     */
+    String transform(String text);
+}
@@ -34,6 +34,9 @@ import java.io.InputStream;
  * twice, here and in the target application, some such applications
  * do not accept XML streams. e.g. the Simple XML framework.
  *
+ * <p>Each event is written separately. {@link XmlCursorInputStreamFilter} is much
+ * faster where only the text of elements needs to be transformed.
+ *
  * @author jo
  */
 public class XmlInputStreamFilter extends InputStream {
@@ -26,6 +26,7 @@ import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
@@ -37,6 +38,10 @@ import java.util.concurrent.Future;
  * twice, here and in the target application, some such applications
  * do not accept XML streams. e.g. the Simple XML framework.
  *
+ * <p>The output is interpreted on a separate thread. The Simple database
+ * no longer uses this class to save, it encrypts protected values as
+ * they are serialized instead.
+ *
  * @author jo
  */
 @SuppressWarnings({"WeakerAccess", "unused"})
@@ -63,7 +68,6 @@ public class XmlOutputStreamFilter extends PipedOutputStream {
                         event = eventReader.nextEvent();
                         event = eventTransformer.transform(event);
                         eventWriter.add(event);
-                        eventWriter.flush();
                     }
 
                     eventReader.close();
@@ -77,7 +81,10 @@ public class XmlOutputStreamFilter extends PipedOutputStream {
                 return true;
             }
         };
-        future = Executors.newSingleThreadExecutor().submit(output);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        future = executor.submit(output);
+        // the thread ends once the output is done
+        executor.shutdown();
     }
 
     public void cancel(boolean interrupt){
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.linguafranca.pwdb.kdbx.simple;
+
+import org.junit.Test;
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.kdbx.KdbxCreds;
+
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Files using AES key transformation load
+ *
+ * @author jo
+ */
+public class AesKdfTest {
+
+    @Test
+    public void testLoad() throws Exception {
+        Credentials credentials = new KdbxCreds("123".getBytes());
+        for (String name : new String[]{"test123.kdbx", "test123-ChaCha20-AES.kdbx"}) {
+            try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream(name)) {
+                SimpleDatabase database = SimpleDatabase.load(credentials, inputStream);
+                assertTrue(name, database.getRootGroup().getEntries().size() > 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.linguafranca.pwdb.kdbx.simple;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.kdbx.KdbxCreds;
+import org.linguafranca.pwdb.security.Argon2;
+import org.linguafranca.pwdb.security.Argon2Backend;
+import org.linguafranca.pwdb.security.JavaArgon2Backend;
+
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Files load with the Java implementation of Argon2
+ *
+ * @author jo
+ */
+public class Argon2BackendTest {
+
+    private Argon2Backend backend;
+
+    @Before
+    public void saveBackend() {
+        backend = Argon2.getInstance().getBackend();
+    }
+
+    @After
+    public void restoreBackend() {
+        Argon2.getInstance().setBackend(backend);
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        Argon2.getInstance().setBackend(new JavaArgon2Backend());
+        Credentials credentials = new KdbxCreds("123".getBytes());
+        try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream("test123-ChaCha20-Argon2.kdbx")) {
+            SimpleDatabase database = SimpleDatabase.load(credentials, inputStream);
+            assertTrue(database.getRootGroup().getEntries().size() > 0);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.simple;
+
+import org.junit.Test;
+import org.linguafranca.pwdb.Entry;
+import org.linguafranca.pwdb.Visitor;
+import org.linguafranca.pwdb.concurrent.ConcurrentDatabase;
+import org.linguafranca.pwdb.concurrent.ConcurrentEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Readers and writers contend for a {@link ConcurrentDatabase}. Writers update an entry's username and password
+ * together, from a counter, and add entries. Readers must never see the two differ, and must never see the counter
+ * or the number of entries go backwards.
+ *
+ * @author jo
+ */
+public class ConcurrentDatabaseStressTest {
+
+    private static final int WRITERS = 4;
+    private static final int READERS = 8;
+    private static final int WRITES = 500;
+    private static final int ADD_EVERY = 10;
+
+    @Test
+    public void testReadersAndWriters() throws Exception {
+        final ConcurrentDatabase database = new ConcurrentDatabase(new SimpleDatabase());
+        final ConcurrentEntry shared = database.getRootGroup().addEntry(database.newEntry("shared"));
+        shared.setUsername("0");
+        shared.setPassword("0");
+
+        final long[] counter = {0};
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(WRITERS + READERS);
+        List<Future<?>> writers = new ArrayList<>();
+        List<Future<?>> readers = new ArrayList<>();
+
+        for (int w = 0; w < WRITERS; w++) {
+            final int writer = w;
+            writers.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+                    for (int i = 0; i < WRITES; i++) {
+                        final int iteration = i;
+                        database.withWriteLock(new Callable<Void>() {
+                            @Override
+                            public Void call() {
+                                String value = String.valueOf(++counter[0]);
+                                shared.setUsername(value);
+                                shared.setPassword(value);
+                                if (iteration % ADD_EVERY == 0) {
+                                    ConcurrentEntry entry = database.newEntry("stress " + writer + " " + iteration);
+                                    entry.setPassword("secret");
+                                    database.getRootGroup().addEntry(entry);
+                                }
+                                return null;
+                            }
+                        });
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        for (int r = 0; r < READERS; r++) {
+            readers.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    start.await();
+                    long lastValue = 0;
+                    int lastCount = 0;
+                    while (writing.get()) {
+                        String[] values = database.withReadLock(new Callable<String[]>() {
+                            @Override
+                            public String[] call() {
+                                return new String[]{new String(shared.getUsername()), new String(shared.getPassword())};
+                            }
+                        });
+                        assertEquals("username and password were written together", values[0], values[1]);
+                        long value = Long.parseLong(values[0]);
+                        assertTrue("counter went backwards", value >= lastValue);
+                        lastValue = value;
+
+                        List<ConcurrentEntry> found = database.findEntries("stress");
+                        assertTrue("entries went missing", found.size() >= lastCount);
+                        lastCount = found.size();
+                        for (ConcurrentEntry entry : found) {
+                            assertEquals("entry was seen before it was complete", "secret", new String(entry.getPassword()));
+                        }
+
+                        final int[] visited = {0};
+                        database.visit(new Visitor.Default() {
+                            @Override
+                            public void visit(Entry entry) {
+                                visited[0]++;
+                            }
+                        });
+                        assertTrue(visited[0] > lastCount);
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> writer : writers) {
+            try {
+                writer.get(2, TimeUnit.MINUTES);
+            } catch (ExecutionException e) {
+                failures.add(e.getCause());
+            }
+        }
+        writing.set(false);
+        for (Future<?> reader : readers) {
+            try {
+                reader.get(2, TimeUnit.MINUTES);
+            } catch (ExecutionException e) {
+                failures.add(e.getCause());
+            }
+        }
+        executor.shutdown();
+
+        if (!failures.isEmpty()) {
+            throw new AssertionError(failures.peek());
+        }
+        assertEquals(String.valueOf(WRITERS * WRITES), new String(shared.getPassword()));
+        assertEquals(WRITERS * WRITES / ADD_EVERY, database.findEntries("stress").size());
+        assertEquals(WRITERS * WRITES / ADD_EVERY + 1, database.getRootGroup().getEntriesCount());
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.linguafranca.pwdb.kdbx.simple;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.kdbx.KdbxCreds;
+import org.linguafranca.pwdb.security.*;
+
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Files load with both the JCE and the Bouncy Castle ciphers
+ *
+ * @author jo
+ */
+public class JceCipherTest {
+
+    private CipherAlgorithm aes;
+    private CipherAlgorithm chaCha;
+
+    @Before
+    public void saveImplementations() {
+        aes = Encryption.Cipher.AES.getImplementation();
+        chaCha = Encryption.Cipher.CHACHA.getImplementation();
+    }
+
+    @After
+    public void restoreImplementations() {
+        Encryption.Cipher.AES.setImplementation(aes);
+        Encryption.Cipher.CHACHA.setImplementation(chaCha);
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        checkLoad();
+        Encryption.Cipher.AES.setImplementation(Aes.getInstance());
+        Encryption.Cipher.CHACHA.setImplementation(ChaCha.getInstance());
+        checkLoad();
+    }
+
+    private void checkLoad() throws Exception {
+        Credentials credentials = new KdbxCreds("123".getBytes());
+        for (String name : new String[]{"test123.kdbx", "test123-AES-AES.kdbx", "test123-ChaCha20-AES.kdbx"}) {
+            try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream(name)) {
+                SimpleDatabase database = SimpleDatabase.load(credentials, inputStream);
+                assertTrue(name, database.getRootGroup().getEntries().size() > 0);
+            }
+        }
+    }
+}
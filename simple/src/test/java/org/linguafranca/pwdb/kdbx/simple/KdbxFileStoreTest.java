@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.simple;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.checks.TempDirectory;
+import org.linguafranca.pwdb.kdbx.KdbxCreds;
+import org.linguafranca.pwdb.kdbx.KdbxFileStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+/**
+ * Simple databases saved to a file store, and their previous generations, reload
+ *
+ * @author jo
+ */
+public class KdbxFileStoreTest {
+
+    private static final Credentials CREDENTIALS = new KdbxCreds("123".getBytes());
+
+    private TempDirectory directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = new TempDirectory();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        directory.delete();
+    }
+
+    @Test
+    public void testGenerations() throws Exception {
+        KdbxFileStore store = new KdbxFileStore(directory.resolve("test.kdbx"), CREDENTIALS, 2);
+        for (int i = 1; i <= 4; i++) {
+            store.save(database("version " + i));
+        }
+        assertEquals("version 4", load(store.getPath()).getName());
+        assertEquals("version 3", load(store.getGenerationPath(1)).getName());
+        assertEquals("version 2", load(store.getGenerationPath(2)).getName());
+        assertFalse(Files.exists(store.getGenerationPath(3)));
+        assertEquals(3, directory.count());
+
+        try (InputStream inputStream = store.newInputStream()) {
+            assertEquals("version 4", SimpleDatabase.load(CREDENTIALS, inputStream).getName());
+        }
+    }
+
+    private static SimpleDatabase database(String name) {
+        SimpleDatabase database = new SimpleDatabase();
+        database.setName(name);
+        return database;
+    }
+
+    private static SimpleDatabase load(Path path) throws Exception {
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            return SimpleDatabase.load(CREDENTIALS, inputStream);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.linguafranca.pwdb.kdbx.simple;
+
+import org.junit.After;
+import org.junit.Test;
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.kdbx.KdbxCreds;
+import org.linguafranca.pwdb.kdbx.KdbxHeader;
+import org.linguafranca.pwdb.kdbx.KdbxSerializer;
+import org.linguafranca.pwdb.security.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Calibrated KDF parameters are used when saving
+ *
+ * @author jo
+ */
+public class KdfCalibrationTest {
+
+    private static final Credentials CREDENTIALS = new KdbxCreds("123".getBytes());
+
+    @After
+    public void tearDown() {
+        Aes.getInstance().setDefaultRounds(Aes.DEFAULT_ROUNDS);
+        Argon2.getInstance().setDefaults(Argon2.DEFAULT_MEMORY, Argon2.DEFAULT_ITERATIONS, Argon2.DEFAULT_PARALLELISM);
+    }
+
+    @Test
+    public void testAppliedOnSave() throws Exception {
+        new KdfCalibration(250, 12345, 2 * 1024 * 1024, 3, 1).apply();
+
+        KdbxHeader v3 = save(new KdbxHeader(3));
+        assertEquals(12345, v3.getTransformRounds());
+
+        KdbxHeader aes = save(new KdbxHeader(4));
+        assertEquals(12345, aes.getTransformRounds());
+
+        KdbxHeader argon2 = save(new KdbxHeader(4, ChaCha.getInstance(), Argon2.getInstance()));
+        VariantDictionary parameters = argon2.getKdfParameters();
+        assertEquals(2 * 1024 * 1024, parameters.mustGet("M").asLong());
+        assertEquals(3, parameters.mustGet("I").asLong());
+        assertEquals(1, parameters.mustGet("P").asInteger());
+    }
+
+    /**
+     * Save a database with a header, and return the header read back from the file
+     */
+    private static KdbxHeader save(KdbxHeader header) throws Exception {
+        SimpleDatabase database = new SimpleDatabase();
+        database.getRootGroup().addEntry(database.newEntry("calibrated"));
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        database.save(header, CREDENTIALS, outputStream);
+
+        KdbxHeader loaded = new KdbxHeader();
+        try (InputStream inputStream = KdbxSerializer.createUnencryptedInputStream(CREDENTIALS, loaded,
+                new ByteArrayInputStream(outputStream.toByteArray()))) {
+            assertTrue(inputStream.read() != -1);
+        }
+        return loaded;
+    }
+}
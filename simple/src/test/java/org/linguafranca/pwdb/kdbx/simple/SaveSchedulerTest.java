@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.simple;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.checks.TempDirectory;
+import org.linguafranca.pwdb.concurrent.SaveScheduler;
+import org.linguafranca.pwdb.kdbx.KdbxCreds;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * A burst of changes to a Simple database is saved once and reloads
+ *
+ * @author jo
+ */
+public class SaveSchedulerTest {
+
+    private static final Credentials CREDENTIALS = new KdbxCreds("123".getBytes());
+
+    private TempDirectory directory;
+    private Path path;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = new TempDirectory();
+        path = directory.resolve("test.kdbx");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        directory.delete();
+    }
+
+    @Test
+    public void testCoalesce() throws Exception {
+        SimpleDatabase database = new SimpleDatabase();
+        SaveScheduler scheduler = new SaveScheduler(database, CREDENTIALS, path, 200, 10000, null);
+        for (int i = 0; i < 50; i++) {
+            database.getRootGroup().addEntry(database.newEntry("entry " + i));
+            scheduler.requestSave();
+        }
+        assertTrue(scheduler.await(10, TimeUnit.SECONDS));
+        assertEquals(50, scheduler.getRequestCount());
+        assertEquals(1, scheduler.getSaveCount());
+        assertEquals(49, scheduler.getCoalescedCount());
+        assertEquals(50, load().findEntries("entry").size());
+        scheduler.close();
+    }
+
+    private SimpleDatabase load() throws IOException {
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            return SimpleDatabase.load(CREDENTIALS, inputStream);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.linguafranca.pwdb.kdbx.simple;
+
+import org.junit.Test;
+import org.linguafranca.pwdb.kdbx.KdbxCreds;
+import org.linguafranca.pwdb.kdbx.KdbxHeader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Serializers are shared between databases and threads
+ *
+ * @author jo
+ */
+public class SharedSerializerTest {
+
+    @Test
+    public void testEmptyDatabasesAreIndependent() {
+        SimpleDatabase database1 = new SimpleDatabase();
+        SimpleDatabase database2 = new SimpleDatabase();
+        database1.setName("changed");
+        database1.getRootGroup().addGroup(database1.newGroup("group"));
+        assertNotEquals("changed", database2.getName());
+        assertEquals(0, database2.getRootGroup().getGroups().size());
+        assertNotEquals(database1.getRootGroup().getUuid(), database2.getRootGroup().getUuid());
+    }
+
+    @Test
+    public void testConcurrentSaves() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            final int n = i;
+            futures.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    KdbxCreds credentials = new KdbxCreds(("password " + n).getBytes());
+                    SimpleDatabase database = new SimpleDatabase();
+                    for (int j = 0; j < 20; j++) {
+                        database.getRootGroup().addEntry(database.newEntry("entry " + j)).setPassword("secret " + n + " " + j);
+                    }
+                    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                    database.save(new KdbxHeader(n % 2 == 0 ? 3 : 4), credentials, outputStream);
+                    SimpleDatabase loaded = SimpleDatabase.load(credentials, new ByteArrayInputStream(outputStream.toByteArray()));
+                    return new String(loaded.findEntries("entry 19").get(0).getPassword());
+                }
+            }));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals("secret " + i + " 19", futures.get(i).get());
+        }
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.simple;
+
+import org.linguafranca.pwdb.base.AbstractDatabase;
+import org.linguafranca.pwdb.checks.IndexChecks;
+
+/**
+ * @author jo
+ */
+public class SimpleIndexTest extends IndexChecks<SimpleDatabase, SimpleGroup, SimpleEntry, SimpleIcon> {
+
+    @Override
+    public AbstractDatabase<SimpleDatabase, SimpleGroup, SimpleEntry, SimpleIcon> createDatabase() {
+        return new SimpleDatabase();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.simple;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.kdbx.KdbxCreds;
+import org.linguafranca.pwdb.kdbx.KdbxHeader;
+import org.linguafranca.pwdb.kdbx.KdbxSerializer;
+import org.linguafranca.pwdb.security.Aes;
+import org.linguafranca.pwdb.security.ChaCha;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Load KDBX 4 files verifying HMac blocks on a pool of threads
+ *
+ * @author jo
+ */
+public class SimplePipelinedLoadTest {
+
+    private static final Credentials credentials = new KdbxCreds("123".getBytes());
+
+    @Before
+    public void pipelined() {
+        KdbxSerializer.setPipelinedBlockVerification(true);
+    }
+
+    @After
+    public void serial() {
+        KdbxSerializer.setPipelinedBlockVerification(false);
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        InputStream inputStream = getClass().getClassLoader().getResourceAsStream("Attachment-ChaCha20-Argon2.kdbx");
+        SimpleDatabase database = SimpleDatabase.load(credentials, inputStream);
+        assertFalse(database.findEntries("Attachment").isEmpty());
+    }
+
+    @Test
+    public void testMultipleBlocks() throws Exception {
+        byte[] saved = saveWithAttachment(createAttachment());
+        SimpleDatabase reloaded = SimpleDatabase.load(credentials, new ByteArrayInputStream(saved));
+        SimpleEntry entry = reloaded.findEntries("entry1").get(0);
+        assertArrayEquals(createAttachment(), entry.getBinaryProperty("random.bin"));
+    }
+
+    @Test
+    public void testCorruptBlock() throws Exception {
+        byte[] saved = saveWithAttachment(createAttachment());
+        // the payload is several blocks long, damage one in the middle
+        saved[saved.length / 2] ^= 1;
+        try {
+            SimpleDatabase.load(credentials, new ByteArrayInputStream(saved));
+            fail("Corrupt block was not detected");
+        } catch (IllegalStateException e) {
+            assertEquals("Block HMAC does not match", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testReaderEndsAfterFailedLoad() throws Exception {
+        byte[] saved = saveWithAttachment(createAttachment());
+        // damage the first block, so that loading fails with most of the blocks still to read
+        saved[saved.length / 8] ^= 1;
+        try {
+            SimpleDatabase.load(credentials, new ByteArrayInputStream(saved));
+            fail("Corrupt block was not detected");
+        } catch (IllegalStateException ignored) {
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (readerThreadAlive() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertFalse(readerThreadAlive());
+    }
+
+    private static boolean readerThreadAlive() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("hmac-block-reader") && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /* random content doesn't compress, so spans several 1MB blocks */
+    private static byte[] createAttachment() {
+        byte[] attachment = new byte[3 * 1024 * 1024 + 17];
+        new Random(42).nextBytes(attachment);
+        return attachment;
+    }
+
+    private static byte[] saveWithAttachment(byte[] attachment) throws Exception {
+        SimpleDatabase database = new SimpleDatabase();
+        SimpleEntry entry = database.getRootGroup().addEntry(database.newEntry("entry1"));
+        entry.setBinaryProperty("random.bin", attachment);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        database.save(new KdbxHeader(4, ChaCha.getInstance(), Aes.getInstance()), credentials, outputStream);
+        return outputStream.toByteArray();
+    }
+}
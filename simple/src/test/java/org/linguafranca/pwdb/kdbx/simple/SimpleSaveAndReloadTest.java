@@ -26,6 +26,7 @@ import org.linguafranca.pwdb.kdbx.KdbxSerializer;
 
 import java.io.*;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -63,7 +64,7 @@ public class SimpleSaveAndReloadTest extends SaveAndReloadChecks {
 
 
     // check that boolean comes out in upper case - Simple Converters don't work on attributes
-    // so this is done in the output transformer
+    // so this is done in ValueConverter
     @Test
     public void uppercaseBooleanTest() throws IOException {
         SimpleDatabase s = new SimpleDatabase();
@@ -88,6 +89,26 @@ public class SimpleSaveAndReloadTest extends SaveAndReloadChecks {
         assertTrue(foundValue);
     }
 
+    // saving is done on the calling thread, protected values being encrypted as they are serialized
+    @Test
+    public void saveOnCallingThreadTest() throws Exception {
+        SimpleDatabase s = new SimpleDatabase();
+        SimpleEntry e = s.getRootGroup().addEntry(s.newEntry("entry"));
+        e.setPassword("secret");
+        Credentials credentials = new KdbxCreds("123".getBytes());
+        int threads = Thread.activeCount();
+        ByteArrayOutputStream outputStream = null;
+        for (int i = 0; i < 5; i++) {
+            outputStream = new ByteArrayOutputStream();
+            s.save(new KdbxHeader(4), credentials, outputStream);
+        }
+        assertEquals(threads, Thread.activeCount());
+
+        SimpleDatabase reloaded = SimpleDatabase.load(credentials, new ByteArrayInputStream(outputStream.toByteArray()));
+        SimpleEntry entry = reloaded.findEntry(e.getUuid());
+        assertEquals("secret", new String(entry.getPassword()));
+        assertEquals(e.getLastModificationTime().getTime() / 1000, entry.getLastModificationTime().getTime() / 1000);
+    }
 
     @Override
     public Credentials getCreds(byte[] creds) {
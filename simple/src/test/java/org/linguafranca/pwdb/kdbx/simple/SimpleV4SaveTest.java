@@ -0,0 +1,104 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.simple;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.checks.V4SaveChecks;
+import org.linguafranca.pwdb.kdbx.KdbxCreds;
+import org.linguafranca.pwdb.kdbx.KdbxHeader;
+import org.linguafranca.pwdb.kdbx.KdbxSerializer;
+import org.linguafranca.pwdb.kdbx.simple.model.EntryClasses;
+import org.linguafranca.pwdb.kdbx.simple.model.KeePassFile;
+import org.linguafranca.pwdb.security.Aes;
+import org.linguafranca.pwdb.security.CipherAlgorithm;
+import org.linguafranca.pwdb.security.KeyDerivationFunction;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author jo
+ */
+public class SimpleV4SaveTest extends V4SaveChecks<SimpleDatabase, SimpleGroup, SimpleEntry, SimpleIcon> {
+
+    @Override
+    public SimpleDatabase newDatabase() throws IOException {
+        return new SimpleDatabase();
+    }
+
+    @Override
+    public SimpleDatabase loadDatabase(Credentials credentials, InputStream inputStream) throws Exception {
+        return SimpleDatabase.load(credentials, inputStream);
+    }
+
+    @Override
+    public void saveDatabase(SimpleDatabase database, CipherAlgorithm cipherAlgorithm, KeyDerivationFunction kdf, Credentials credentials, OutputStream outputStream) throws IOException {
+        database.save(new KdbxHeader(4, cipherAlgorithm, kdf), credentials, outputStream);
+    }
+
+    @Override
+    public SavedFile decrypt(Credentials credentials, byte[] saved) throws IOException {
+        KdbxHeader kdbxHeader = new KdbxHeader();
+        InputStream plainText = KdbxSerializer.createUnencryptedInputStream(credentials, kdbxHeader, new ByteArrayInputStream(saved));
+        return new SavedFile(kdbxHeader.getVersion(), kdbxHeader.getCipherUuid(), kdbxHeader.getBinaries().size(), ByteStreams.toByteArray(plainText));
+    }
+
+    @Override
+    public Credentials getCreds(byte[] creds) {
+        return new KdbxCreds(creds);
+    }
+
+    /**
+     * Saving doesn't change the database, so that it may be read while being saved
+     */
+    @Test
+    public void testSaveLeavesDatabaseUnchanged() throws Exception {
+        final SimpleDatabase database = new SimpleDatabase();
+        SimpleEntry entry = database.getRootGroup().addEntry(database.newEntry("entry"));
+        entry.setPassword("password");
+        entry.setBinaryProperty("binary", new byte[]{1, 2, 3});
+        // protection is decided when the value is set, not on save
+        assertTrue(EntryClasses.getStringProperty("Password", entry.string).getValue().getProtected());
+
+        final List<KeePassFile.Binary> binaries = database.getBinaries();
+        final KeePassFile.ByteArray headerHash = database.keePassFile.meta.headerHash;
+        byte[] headerHashContent = headerHash.getContent().clone();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream() {
+            @Override
+            public synchronized void write(byte[] b, int off, int len) {
+                assertSame(binaries, database.getBinaries());
+                assertEquals(1, binaries.size());
+                assertSame(headerHash, database.keePassFile.meta.headerHash);
+                super.write(b, off, len);
+            }
+        };
+        database.save(new KdbxHeader(4, Aes.getInstance(), Aes.getInstance()), getCreds("123".getBytes()), outputStream);
+        assertArrayEquals(headerHashContent, headerHash.getContent());
+        assertFalse(database.isDirty());
+
+        SimpleDatabase loaded = loadDatabase(getCreds("123".getBytes()), new ByteArrayInputStream(outputStream.toByteArray()));
+        assertArrayEquals(new byte[]{1, 2, 3}, loaded.findEntries("entry").get(0).getBinaryProperty("binary"));
+    }
+}
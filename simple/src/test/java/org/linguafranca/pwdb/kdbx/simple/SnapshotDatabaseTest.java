@@ -0,0 +1,172 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.simple;
+
+import org.junit.Test;
+import org.linguafranca.pwdb.Database;
+import org.linguafranca.pwdb.Entry;
+import org.linguafranca.pwdb.Group;
+import org.linguafranca.pwdb.Visitor;
+import org.linguafranca.pwdb.concurrent.ConcurrentDatabase;
+import org.linguafranca.pwdb.concurrent.ConcurrentEntry;
+import org.linguafranca.pwdb.concurrent.ConcurrentGroup;
+import org.linguafranca.pwdb.concurrent.SnapshotDatabase;
+import org.linguafranca.pwdb.concurrent.SnapshotEntry;
+import org.linguafranca.pwdb.kdbx.KdbxCreds;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Snapshots have the same content as the database they were taken from, and don't change when it does
+ *
+ * @author jo
+ */
+public class SnapshotDatabaseTest {
+
+    @Test
+    public void testSameContent() throws Exception {
+        InputStream inputStream = getClass().getClassLoader().getResourceAsStream("test123.kdbx");
+        SimpleDatabase database = SimpleDatabase.load(new KdbxCreds("123".getBytes()), inputStream);
+        SnapshotDatabase snapshot = SnapshotDatabase.of(database);
+
+        assertEquals(database.getName(), snapshot.getName());
+        assertEquals(describe(database), describe(snapshot));
+        assertEquals(database.findEntries("test").size(), snapshot.findEntries("test").size());
+        for (SimpleEntry entry : database.findEntries("")) {
+            SnapshotEntry copy = snapshot.findEntry(entry.getUuid());
+            assertNotNull(copy);
+            assertArrayEquals(entry.getPassword(), copy.getPassword());
+            assertEquals(entry.getParent().getPath(), copy.getParent().getPath());
+        }
+    }
+
+    @Test
+    public void testImmutable() {
+        SimpleDatabase database = new SimpleDatabase();
+        SimpleEntry entry = database.getRootGroup().addEntry(database.newEntry("entry"));
+        SnapshotDatabase snapshot = SnapshotDatabase.of(database);
+
+        entry.setTitle("changed");
+        database.getRootGroup().addGroup(database.newGroup("group"));
+        assertEquals("entry", new String(snapshot.findEntry(entry.getUuid()).getTitle()));
+        assertEquals(0, snapshot.getRootGroup().getGroupsCount());
+
+        try {
+            snapshot.findEntry(entry.getUuid()).setTitle("changed");
+            fail("Snapshot should not be changeable");
+        } catch (UnsupportedOperationException ignored) {
+        }
+        try {
+            snapshot.getRootGroup().addGroup(snapshot.newGroup("group"));
+            fail("Snapshot should not be changeable");
+        } catch (UnsupportedOperationException ignored) {
+        }
+    }
+
+    @Test
+    public void testPublished() {
+        ConcurrentDatabase database = new ConcurrentDatabase(new SimpleDatabase());
+        ConcurrentEntry entry = database.getRootGroup().addEntry(database.newEntry("entry"));
+        SnapshotDatabase first = database.snapshot();
+        assertSame(first, database.snapshot());
+
+        // reads don't publish a new snapshot
+        database.findEntries("entry");
+        assertSame(first, database.snapshot());
+
+        entry.setUsername("user");
+        SnapshotDatabase second = database.snapshot();
+        assertNotSame(first, second);
+        assertEquals(0, first.findEntry(entry.getUuid()).getUsername().length);
+        assertEquals("user", new String(second.findEntry(entry.getUuid()).getUsername()));
+    }
+
+    @Test
+    public void testOnlyChangesRead() throws Exception {
+        InputStream inputStream = getClass().getClassLoader().getResourceAsStream("test123.kdbx");
+        SimpleDatabase delegate = SimpleDatabase.load(new KdbxCreds("123".getBytes()), inputStream);
+        ConcurrentDatabase database = new ConcurrentDatabase(delegate);
+        database.snapshot();
+
+        ConcurrentGroup group1 = database.getRootGroup().addGroup(database.newGroup("group1"));
+        ConcurrentEntry entry1 = group1.addEntry(database.newEntry("entry1"));
+        assertSameAs(delegate, database.snapshot());
+
+        entry1.setPassword("changed");
+        entry1.setProperty("Custom", "custom");
+        assertSameAs(delegate, database.snapshot());
+
+        ConcurrentGroup group2 = group1.addGroup(database.newGroup("group2"));
+        group2.addEntry(entry1);
+        group2.setName("renamed");
+        assertSameAs(delegate, database.snapshot());
+
+        // changes to a group while it isn't in the database are seen when it is added back
+        database.getRootGroup().removeGroup(group1);
+        assertSameAs(delegate, database.snapshot());
+        entry1.setTitle("detached");
+        group2.addEntry(database.newEntry("entry2"));
+        assertSameAs(delegate, database.snapshot());
+        database.getRootGroup().addGroup(group1);
+        assertSameAs(delegate, database.snapshot());
+
+        database.enableRecycleBin(true);
+        assertSameAs(delegate, database.snapshot());
+        assertTrue(database.deleteEntry(entry1.getUuid()));
+        assertNull(database.snapshot().findEntry(entry1.getUuid()));
+        assertSameAs(delegate, database.snapshot());
+        assertTrue(database.deleteGroup(group2.getUuid()));
+        assertSameAs(delegate, database.snapshot());
+        database.emptyRecycleBin();
+        assertSameAs(delegate, database.snapshot());
+        assertEquals(0, database.snapshot().getRecycleBin().getGroupsCount());
+    }
+
+    /* the snapshot has the same content as one of the whole database */
+    private static void assertSameAs(Database<?, ?, ?, ?> database, SnapshotDatabase snapshot) {
+        assertEquals(describe(SnapshotDatabase.of(database)), describe(snapshot));
+        for (SnapshotEntry entry : snapshot.findEntries("")) {
+            assertSame(entry, snapshot.findEntry(entry.getUuid()));
+        }
+    }
+
+    private static List<String> describe(Database<?, ?, ?, ?> database) {
+        final List<String> result = new ArrayList<>();
+        database.visit(new Visitor.Default() {
+            @Override
+            public void startVisit(Group group) {
+                result.add(group.getPath() + " " + group.getUuid() + " " + group.getIcon().getIndex());
+            }
+
+            @Override
+            public void visit(Entry entry) {
+                StringBuilder builder = new StringBuilder(entry.getParent().getPath());
+                for (Object name : entry.getPropertyNames()) {
+                    builder.append(" ").append(name).append("=").append(entry.getProperty((String) name));
+                }
+                builder.append(" ").append(entry.getBinaryPropertyNames());
+                builder.append(" ").append(entry.getLastModificationTime());
+                result.add(builder.toString());
+            }
+        });
+        return result;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.kdbx.simple;
+
+import org.junit.After;
+import org.junit.Test;
+import org.linguafranca.pwdb.Credentials;
+import org.linguafranca.pwdb.kdbx.KdbxCreds;
+import org.linguafranca.pwdb.security.TransformedKeyCache;
+
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that repeated loads of the same database transform the key once
+ *
+ * @author jo
+ */
+public class TransformedKeyCacheTest {
+
+    private static final Credentials credentials = new KdbxCreds("123".getBytes());
+
+    @After
+    public void restoreDefault() {
+        TransformedKeyCache.setInstance(new TransformedKeyCache(0, 1, TimeUnit.MINUTES));
+    }
+
+    @Test
+    public void testRepeatedLoad() throws Exception {
+        TransformedKeyCache cache = new TransformedKeyCache(4, 1, TimeUnit.MINUTES);
+        TransformedKeyCache.setInstance(cache);
+
+        load("Attachment-ChaCha20-Argon2.kdbx");
+        // the key is needed more than once during a V4 load but transformed only once
+        assertEquals(1, cache.getMissCount());
+        assertEquals(0, cache.getHitCount());
+
+        load("Attachment-ChaCha20-Argon2.kdbx");
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        load("Attachment-ChaCha20-Argon2.kdbx");
+        assertEquals(0, TransformedKeyCache.getInstance().size());
+        assertEquals(0, TransformedKeyCache.getInstance().getMissCount());
+    }
+
+    private void load(String resourceName) throws Exception {
+        InputStream inputStream = getClass().getClassLoader().getResourceAsStream(resourceName);
+        SimpleDatabase database = SimpleDatabase.load(credentials, inputStream);
+        assertNotNull(database.getRootGroup());
+        inputStream.close();
+    }
+}
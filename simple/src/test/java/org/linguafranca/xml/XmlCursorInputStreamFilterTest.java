@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.xml;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The text of selected elements is transformed, everything else is passed through
+ *
+ * @author jo
+ */
+public class XmlCursorInputStreamFilterTest {
+
+    private static final int ELEMENTS = 20000;
+
+    @Test
+    public void testTransform() throws Exception {
+        StringBuilder builder = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<Root xmlns:x=\"urn:test\">\n<!-- a comment -->\n");
+        for (int i = 0; i < ELEMENTS; i++) {
+            builder.append("  <Value x:n=\"").append(i).append("\" Protected=\"").append(i % 2 == 0 ? "True" : "False")
+                    .append("\">value &amp; ").append(i).append("</Value>\n");
+        }
+        builder.append("  <Empty Protected=\"True\"/>\n</Root>");
+
+        InputStream inputStream = new XmlCursorInputStreamFilter(new ByteArrayInputStream(builder.toString().getBytes("UTF-8")),
+                new XmlCursorTransformer() {
+                    @Override
+                    public boolean isTransformed(XMLStreamReader reader) {
+                        return "True".equals(reader.getAttributeValue(null, "Protected"));
+                    }
+
+                    @Override
+                    public String transform(String text) {
+                        return text.toUpperCase();
+                    }
+                });
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document document = factory.newDocumentBuilder().parse(inputStream);
+
+        NodeList values = document.getElementsByTagName("Value");
+        assertEquals(ELEMENTS, values.getLength());
+        for (int i = 0; i < ELEMENTS; i++) {
+            Element value = (Element) values.item(i);
+            assertEquals(String.valueOf(i), value.getAttributeNS("urn:test", "n"));
+            assertEquals(i % 2 == 0 ? "VALUE & " + i : "value & " + i, value.getTextContent());
+        }
+        assertEquals("", document.getElementsByTagName("Empty").item(0).getTextContent());
+    }
+}
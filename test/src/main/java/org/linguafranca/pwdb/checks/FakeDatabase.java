@@ -0,0 +1,104 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.checks;
+
+import org.linguafranca.pwdb.Database;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A database that only knows whether it is dirty and how to save its content,
+ * for testing saves without a database implementation
+ *
+ * @author jo
+ */
+public class FakeDatabase implements InvocationHandler {
+
+    private volatile String content = "";
+    private volatile boolean dirty;
+    private volatile boolean failing;
+    private volatile int saveCount;
+
+    public FakeDatabase() {
+    }
+
+    /**
+     * A dirty database with the content given
+     */
+    public FakeDatabase(String content) {
+        setContent(content);
+    }
+
+    /**
+     * Change the content, making the database dirty
+     */
+    public void setContent(String content) {
+        this.content = content;
+        this.dirty = true;
+    }
+
+    /**
+     * Make saves write part of the content and then fail
+     */
+    public FakeDatabase setFailing(boolean failing) {
+        this.failing = failing;
+        return this;
+    }
+
+    public int getSaveCount() {
+        return saveCount;
+    }
+
+    /**
+     * The database, which supports only {@link Database#isDirty()} and {@link Database#save}
+     */
+    public Database<?, ?, ?, ?> getDatabase() {
+        return (Database<?, ?, ?, ?>) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{Database.class}, this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws IOException {
+        switch (method.getName()) {
+            case "isDirty":
+                return dirty;
+            case "save":
+                save((OutputStream) args[1]);
+                return null;
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+
+    private void save(OutputStream outputStream) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        if (failing) {
+            outputStream.write(bytes, 0, bytes.length / 2);
+            throw new IOException("Failed");
+        }
+        outputStream.write(bytes);
+        // as the databases do
+        outputStream.close();
+        dirty = false;
+        saveCount++;
+    }
+}
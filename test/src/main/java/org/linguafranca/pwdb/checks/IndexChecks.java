@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.checks;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.linguafranca.pwdb.Database;
+import org.linguafranca.pwdb.Entry;
+import org.linguafranca.pwdb.Group;
+import org.linguafranca.pwdb.Icon;
+import org.linguafranca.pwdb.base.AbstractDatabase;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Lookups by UUID give the same results with and without the index
+ *
+ * @author jo
+ */
+public abstract class IndexChecks <D extends Database<D,G,E,I>, G extends Group<D,G,E,I>, E extends Entry<D,G,E,I>, I extends Icon> {
+
+    protected AbstractDatabase<D,G,E,I> database;
+    protected G group1;
+    protected E entry1;
+
+    public abstract AbstractDatabase<D,G,E,I> createDatabase() throws IOException;
+
+    @Before
+    public void setUp() throws IOException {
+        database = createDatabase();
+        database.enableIndex(true);
+        group1 = database.getRootGroup().addGroup(database.newGroup("group1"));
+        entry1 = group1.addEntry(database.newEntry("entry1"));
+    }
+
+    @Test
+    public void testFind() {
+        assertEquals(entry1, database.findEntry(entry1.getUuid()));
+        assertEquals(group1, database.findGroup(group1.getUuid()));
+        assertEquals(database.getRootGroup(), database.findGroup(database.getRootGroup().getUuid()));
+
+        // added after the index is built
+        G group2 = group1.addGroup(database.newGroup("group2"));
+        E entry2 = group2.addEntry(database.newEntry("entry2"));
+        assertEquals(group2, database.findGroup(group2.getUuid()));
+        assertEquals(entry2, database.findEntry(entry2.getUuid()));
+
+        group1.removeEntry(entry1);
+        assertNull(database.findEntry(entry1.getUuid()));
+
+        // removal of a group removes its contents
+        group1.removeGroup(group2);
+        assertNull(database.findGroup(group2.getUuid()));
+        assertNull(database.findEntry(entry2.getUuid()));
+
+        // contents of groups that are not in the database are not found
+        G detached = database.newGroup("detached");
+        detached.addEntry(entry1);
+        assertNull(database.findEntry(entry1.getUuid()));
+
+        // until they are added
+        database.getRootGroup().addGroup(detached);
+        assertEquals(detached, database.findGroup(detached.getUuid()));
+        assertEquals(entry1, database.findEntry(entry1.getUuid()));
+    }
+
+    @Test
+    public void testMove() {
+        G group2 = database.getRootGroup().addGroup(database.newGroup("group2"));
+        group2.addEntry(entry1);
+        assertEquals(group2, database.findEntry(entry1.getUuid()).getParent());
+        group2.addGroup(group1);
+        assertEquals(group2, database.findGroup(group1.getUuid()).getParent());
+    }
+
+    @Test
+    public void testDelete() {
+        if (database.supportsRecycleBin()) {
+            database.enableRecycleBin(true);
+        }
+        assertTrue(database.deleteEntry(entry1.getUuid()));
+        // entries in the recycle bin are not found
+        assertNull(database.findEntry(entry1.getUuid()));
+        assertFalse(database.deleteEntry(entry1.getUuid()));
+
+        assertTrue(database.deleteGroup(group1.getUuid()));
+        assertNull(database.findGroup(group1.getUuid()));
+        if (database.supportsRecycleBin()) {
+            assertNotNull(database.findGroup(database.getRecycleBin().getUuid()));
+        }
+
+        database.enableIndex(false);
+        assertNull(database.findEntry(entry1.getUuid()));
+        assertNull(database.findGroup(group1.getUuid()));
+    }
+}
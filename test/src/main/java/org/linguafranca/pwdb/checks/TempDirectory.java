@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.checks;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A temporary directory for tests that save files, created in a test's setUp and deleted, with
+ * anything in it, in its tearDown
+ *
+ * @author jo
+ */
+public class TempDirectory {
+
+    private final Path directory;
+
+    public TempDirectory() throws IOException {
+        directory = Files.createTempDirectory("pwdb");
+    }
+
+    public Path getPath() {
+        return directory;
+    }
+
+    /**
+     * A file in the directory
+     */
+    public Path resolve(String name) {
+        return directory.resolve(name);
+    }
+
+    /**
+     * The files in the directory whose names match a glob
+     */
+    public List<Path> list(String glob) throws IOException {
+        List<Path> result = new ArrayList<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, glob)) {
+            for (Path path : paths) {
+                result.add(path);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The number of files in the directory
+     */
+    public int count() throws IOException {
+        return list("*").size();
+    }
+
+    /**
+     * Delete the directory and everything in it
+     */
+    public void delete() throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                if (e != null) {
+                    throw e;
+                }
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * The content of a file as UTF-8
+     */
+    public static String read(Path path) throws IOException {
+        return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+    }
+}
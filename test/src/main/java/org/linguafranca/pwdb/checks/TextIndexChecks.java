@@ -0,0 +1,117 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.checks;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.linguafranca.pwdb.*;
+import org.linguafranca.pwdb.base.AbstractDatabase;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Text searches give the same results with and without the text index
+ *
+ * @author jo
+ */
+public abstract class TextIndexChecks <D extends Database<D,G,E,I>, G extends Group<D,G,E,I>, E extends Entry<D,G,E,I>, I extends Icon> {
+
+    private static final String[] SEARCHES = {"", "t", "te", "test", "TEST", "google.com", "user", "pass", "no such text"};
+
+    protected AbstractDatabase<D,G,E,I> database;
+
+    public abstract AbstractDatabase<D,G,E,I> loadDatabase(Credentials credentials, InputStream inputStream) throws Exception;
+    public abstract Credentials getCreds(byte[] creds);
+
+    @Before
+    public void setUp() throws Exception {
+        InputStream inputStream = getClass().getClassLoader().getResourceAsStream("test123.kdbx");
+        database = loadDatabase(getCreds("123".getBytes()), inputStream);
+        database.enableTextIndex(true);
+    }
+
+    @Test
+    public void testFind() {
+        assertSame();
+        G group = database.getRootGroup().addGroup(database.newGroup("group"));
+        E entry = group.addEntry(database.newEntry("Testing"));
+        entry.setUrl("https://example.com/login");
+        entry.setProperty("Custom", "Banana");
+        assertSame();
+        assertTrue(uuids(database.findEntries("example")).contains(entry.getUuid()));
+        assertTrue(uuids(database.searchEntries("banana")).contains(entry.getUuid()));
+        // custom properties are not matched by findEntries
+        assertTrue(database.findEntries("banana").isEmpty());
+
+        entry.setTitle("Changed");
+        entry.removeProperty("Custom");
+        assertSame();
+        assertTrue(database.searchEntries("banana").isEmpty());
+
+        database.getRootGroup().removeGroup(group);
+        assertSame();
+        assertFalse(uuids(database.findEntries("example")).contains(entry.getUuid()));
+
+        database.enableRecycleBin(true);
+        database.getRootGroup().addGroup(group);
+        assertTrue(uuids(database.findEntries("example")).contains(entry.getUuid()));
+        database.deleteEntry(entry.getUuid());
+        assertSame();
+        assertFalse(uuids(database.findEntries("example")).contains(entry.getUuid()));
+    }
+
+    @Test
+    public void testProtected() {
+        E entry = database.getRootGroup().addEntry(database.newEntry("entry"));
+        entry.setPassword("Sekrit");
+        assertTrue(database.searchEntries("sekrit").isEmpty());
+        database.enableTextIndex(true, true);
+        assertTrue(uuids(database.searchEntries("sekrit")).contains(entry.getUuid()));
+    }
+
+    /* the index, as maintained, gives the same results as searching the database */
+    private void assertSame() {
+        List<Set<UUID>> actual = new ArrayList<>();
+        for (String search : SEARCHES) {
+            actual.add(uuids(database.findEntries(search)));
+            actual.add(uuids(database.searchEntries(search)));
+        }
+        database.enableTextIndex(false);
+        List<Set<UUID>> expected = new ArrayList<>();
+        for (String search : SEARCHES) {
+            expected.add(uuids(database.findEntries(search)));
+            expected.add(uuids(database.searchEntries(search)));
+        }
+        database.enableTextIndex(true);
+        assertEquals(expected, actual);
+    }
+
+    private static Set<UUID> uuids(List<? extends Entry> entries) {
+        Set<UUID> result = new HashSet<>();
+        for (Entry entry : entries) {
+            result.add(entry.getUuid());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.checks;
+
+import org.junit.Test;
+import org.linguafranca.pwdb.*;
+import org.linguafranca.pwdb.security.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Save as KDBX 4 and reload
+ *
+ * @author jo
+ */
+public abstract class V4SaveChecks <D extends Database<D, G, E, I>, G extends Group<D,G,E,I>, E extends Entry<D,G,E,I>, I extends Icon> {
+
+    private static final byte[] attachment = "attachment content".getBytes();
+
+    /**
+     * The parts of a saved file that are checked, from its outer and inner header and its decrypted XML
+     */
+    public static class SavedFile {
+        final int version;
+        final UUID cipherUuid;
+        final int binariesCount;
+        final String xml;
+
+        public SavedFile(int version, UUID cipherUuid, int binariesCount, byte[] xml) throws UnsupportedEncodingException {
+            this.version = version;
+            this.cipherUuid = cipherUuid;
+            this.binariesCount = binariesCount;
+            this.xml = new String(xml, "UTF-8");
+        }
+    }
+
+    public abstract D newDatabase() throws IOException;
+    public abstract D loadDatabase(Credentials credentials, InputStream inputStream) throws Exception;
+    public abstract void saveDatabase(D database, CipherAlgorithm cipherAlgorithm, KeyDerivationFunction kdf, Credentials credentials, OutputStream outputStream) throws IOException;
+    public abstract SavedFile decrypt(Credentials credentials, byte[] saved) throws IOException;
+    public abstract Credentials getCreds(byte[] creds);
+
+    @Test
+    public void testChaChaArgon2() throws Exception {
+        saveAndReload(ChaCha.getInstance(), Argon2.getInstance());
+    }
+
+    @Test
+    public void testAesAes() throws Exception {
+        saveAndReload(Aes.getInstance(), Aes.getInstance());
+    }
+
+    @Test
+    public void testResave() throws Exception {
+        Credentials credentials = getCreds("123".getBytes());
+        InputStream inputStream = getClass().getClassLoader().getResourceAsStream("Attachment-ChaCha20-Argon2.kdbx");
+        D database = loadDatabase(credentials, inputStream);
+        E entry = database.findEntries("Attachment").get(0);
+        byte[] expected = entry.getBinaryProperty(entry.getBinaryPropertyNames().get(0));
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        saveDatabase(database, ChaCha.getInstance(), Argon2.getInstance(), credentials, outputStream);
+
+        D reloaded = loadDatabase(credentials, new ByteArrayInputStream(outputStream.toByteArray()));
+        E reloadedEntry = reloaded.findEntries("Attachment").get(0);
+        assertArrayEquals(expected, reloadedEntry.getBinaryProperty(reloadedEntry.getBinaryPropertyNames().get(0)));
+    }
+
+    private void saveAndReload(CipherAlgorithm cipherAlgorithm, KeyDerivationFunction kdf) throws Exception {
+        Credentials credentials = getCreds("123".getBytes());
+        D database = newDatabase();
+        E entry = database.getRootGroup().addEntry(database.newEntry("entry1"));
+        entry.setPassword("password1");
+        entry.setProperty("Custom", "custom1");
+        entry.setBinaryProperty("letter.txt", attachment);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        saveDatabase(database, cipherAlgorithm, kdf, credentials, outputStream);
+        byte[] saved = outputStream.toByteArray();
+
+        // binaries are in the inner header and not the XML
+        SavedFile savedFile = decrypt(credentials, saved);
+        assertEquals(4, savedFile.version);
+        assertEquals(cipherAlgorithm.getCipherUuid(), savedFile.cipherUuid);
+        assertEquals(1, savedFile.binariesCount);
+        assertFalse(savedFile.xml.contains("<Binaries"));
+        // and times are base64 encoded
+        assertFalse(savedFile.xml.matches("(?s).*<CreationTime>\\d{4}-.*"));
+        assertTrue(savedFile.xml.contains("<CreationTime>"));
+
+        D reloaded = loadDatabase(credentials, new ByteArrayInputStream(saved));
+        E reloadedEntry = reloaded.findEntries("entry1").get(0);
+        assertEquals("password1", String.valueOf(reloadedEntry.getPassword()));
+        assertEquals("custom1", String.valueOf(reloadedEntry.getProperty("Custom")));
+        assertArrayEquals(attachment, reloadedEntry.getBinaryProperty("letter.txt"));
+        assertEquals(entry.getCreationTime().getTime() / 1000, reloadedEntry.getCreationTime().getTime() / 1000);
+
+        // the database's own binaries survive the save
+        assertArrayEquals(attachment, entry.getBinaryProperty("letter.txt"));
+    }
+}
@@ -0,0 +1,373 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.linguafranca.pwdb.generator;
+
+import org.linguafranca.pwdb.Database;
+import org.linguafranca.pwdb.Entry;
+import org.linguafranca.pwdb.Group;
+import org.linguafranca.pwdb.Icon;
+import org.linguafranca.pwdb.security.Encryption;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Populates a database with synthetic groups and entries, for scale and performance testing.
+ *
+ * <p>Content is derived from a seeded {@link Random}, so the same {@link Spec} produces the same
+ * names, properties and attachments each time. UUIDs and timestamps are assigned by the
+ * implementation and so vary from run to run.
+ *
+ * <pre>
+ * DatabaseGenerator.Spec spec = new DatabaseGenerator.Spec()
+ *         .setDepth(3)
+ *         .setGroupsPerGroup(5)
+ *         .setEntriesPerGroup(20)
+ *         .setCustomProperties(2);
+ * DatabaseGenerator.populate(new SimpleDatabase(), spec);
+ * </pre>
+ *
+ * @author jo
+ */
+@SuppressWarnings("WeakerAccess")
+public class DatabaseGenerator {
+
+    /**
+     * Describes the database to generate. Setters return this for chaining.
+     */
+    public static class Spec {
+        private long seed = 1;
+        private int depth = 2;
+        private int groupsPerGroup = 3;
+        private int entriesPerGroup = 10;
+        private int customProperties = 0;
+        private int historyDepth = 0;
+        private int attachmentsPerEntry = 0;
+        private int attachmentSize = 1024;
+        private double protectedRatio = 1.0;
+        private Encryption.Cipher cipher = Encryption.Cipher.AES;
+        private Encryption.Kdf kdf = Encryption.Kdf.AES;
+
+        public long getSeed() {
+            return seed;
+        }
+
+        /**
+         * The seed from which all generated content derives
+         */
+        public Spec setSeed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        /**
+         * The number of levels of groups below the root group
+         */
+        public Spec setDepth(int depth) {
+            this.depth = checkNotNegative(depth, "depth");
+            return this;
+        }
+
+        public int getGroupsPerGroup() {
+            return groupsPerGroup;
+        }
+
+        /**
+         * The number of sub groups of the root and of each group above the lowest level
+         */
+        public Spec setGroupsPerGroup(int groupsPerGroup) {
+            this.groupsPerGroup = checkNotNegative(groupsPerGroup, "groupsPerGroup");
+            return this;
+        }
+
+        public int getEntriesPerGroup() {
+            return entriesPerGroup;
+        }
+
+        /**
+         * The number of entries in each group other than the root
+         */
+        public Spec setEntriesPerGroup(int entriesPerGroup) {
+            this.entriesPerGroup = checkNotNegative(entriesPerGroup, "entriesPerGroup");
+            return this;
+        }
+
+        public int getCustomProperties() {
+            return customProperties;
+        }
+
+        /**
+         * The number of non-standard properties of each entry, ignored if the database does not support them
+         */
+        public Spec setCustomProperties(int customProperties) {
+            this.customProperties = checkNotNegative(customProperties, "customProperties");
+            return this;
+        }
+
+        public int getHistoryDepth() {
+            return historyDepth;
+        }
+
+        /**
+         * The number of times each entry is revised after it is created. The Entry interface does not
+         * expose history, so the revisions contribute to the database only to the extent that the
+         * implementation records them.
+         */
+        public Spec setHistoryDepth(int historyDepth) {
+            this.historyDepth = checkNotNegative(historyDepth, "historyDepth");
+            return this;
+        }
+
+        public int getAttachmentsPerEntry() {
+            return attachmentsPerEntry;
+        }
+
+        /**
+         * The number of binary properties of each entry, ignored if the database does not support them
+         */
+        public Spec setAttachmentsPerEntry(int attachmentsPerEntry) {
+            this.attachmentsPerEntry = checkNotNegative(attachmentsPerEntry, "attachmentsPerEntry");
+            return this;
+        }
+
+        public int getAttachmentSize() {
+            return attachmentSize;
+        }
+
+        /**
+         * The size in bytes of each binary property
+         */
+        public Spec setAttachmentSize(int attachmentSize) {
+            this.attachmentSize = checkNotNegative(attachmentSize, "attachmentSize");
+            return this;
+        }
+
+        public double getProtectedRatio() {
+            return protectedRatio;
+        }
+
+        /**
+         * The proportion of entries that have a value for the protected Password property.
+         * Protection is decided by the database according to property name (see {@link Database#shouldProtect(String)})
+         * so this is the means by which the amount of protected content is controlled.
+         */
+        public Spec setProtectedRatio(double protectedRatio) {
+            if (protectedRatio < 0 || protectedRatio > 1) {
+                throw new IllegalArgumentException("protectedRatio must be between 0 and 1");
+            }
+            this.protectedRatio = protectedRatio;
+            return this;
+        }
+
+        public Encryption.Cipher getCipher() {
+            return cipher;
+        }
+
+        /**
+         * The cipher with which the generated database is to be saved
+         */
+        public Spec setCipher(Encryption.Cipher cipher) {
+            this.cipher = cipher;
+            return this;
+        }
+
+        public Encryption.Kdf getKdf() {
+            return kdf;
+        }
+
+        /**
+         * The key derivation function with which the generated database is to be saved
+         */
+        public Spec setKdf(Encryption.Kdf kdf) {
+            this.kdf = kdf;
+            return this;
+        }
+
+        /**
+         * The total number of groups, excluding the root, that this spec generates
+         */
+        public long getGroupCount() {
+            long total = 0;
+            long level = 1;
+            for (int d = 0; d < depth; d++) {
+                level *= groupsPerGroup;
+                total += level;
+            }
+            return total;
+        }
+
+        /**
+         * The total number of entries that this spec generates
+         */
+        public long getEntryCount() {
+            return getGroupCount() * entriesPerGroup;
+        }
+
+        /**
+         * A copy of this spec for each combination of {@link Encryption.Cipher} and {@link Encryption.Kdf}
+         */
+        public List<Spec> forAllEncryptions() {
+            List<Spec> result = new ArrayList<>();
+            for (Encryption.Cipher c : Encryption.Cipher.values()) {
+                for (Encryption.Kdf k : Encryption.Kdf.values()) {
+                    result.add(copy().setCipher(c).setKdf(k));
+                }
+            }
+            return result;
+        }
+
+        public Spec copy() {
+            return new Spec()
+                    .setSeed(seed)
+                    .setDepth(depth)
+                    .setGroupsPerGroup(groupsPerGroup)
+                    .setEntriesPerGroup(entriesPerGroup)
+                    .setCustomProperties(customProperties)
+                    .setHistoryDepth(historyDepth)
+                    .setAttachmentsPerEntry(attachmentsPerEntry)
+                    .setAttachmentSize(attachmentSize)
+                    .setProtectedRatio(protectedRatio)
+                    .setCipher(cipher)
+                    .setKdf(kdf);
+        }
+
+        @Override
+        public String toString() {
+            return "Spec{seed=" + seed +
+                    ", depth=" + depth +
+                    ", groupsPerGroup=" + groupsPerGroup +
+                    ", entriesPerGroup=" + entriesPerGroup +
+                    ", customProperties=" + customProperties +
+                    ", historyDepth=" + historyDepth +
+                    ", attachmentsPerEntry=" + attachmentsPerEntry +
+                    ", attachmentSize=" + attachmentSize +
+                    ", protectedRatio=" + protectedRatio +
+                    ", cipher=" + cipher +
+                    ", kdf=" + kdf + "}";
+        }
+
+        private static int checkNotNegative(int value, String name) {
+            if (value < 0) {
+                throw new IllegalArgumentException(name + " must not be negative");
+            }
+            return value;
+        }
+    }
+
+    /**
+     * A spec for a database of (exactly) the number of entries requested, in groups of up to 100 below the root
+     * @param entryCount the number of entries
+     */
+    public static Spec specForEntryCount(int entryCount) {
+        int entriesPerGroup = Math.min(entryCount, 100);
+        int groups = entriesPerGroup == 0 ? 0 : entryCount / entriesPerGroup;
+        if (groups * entriesPerGroup != entryCount) {
+            throw new IllegalArgumentException("Entry count must be a multiple of 100 or fewer than 100");
+        }
+        return new Spec().setDepth(1).setGroupsPerGroup(groups).setEntriesPerGroup(entriesPerGroup);
+    }
+
+    /**
+     * Add groups and entries as described by the spec to the root group of the database supplied
+     * @param database the database to populate
+     * @param spec the description of what to add
+     * @return the database
+     */
+    public static <D extends Database<D, G, E, I>, G extends Group<D, G, E, I>, E extends Entry<D, G, E, I>, I extends Icon>
+    Database<D, G, E, I> populate(Database<D, G, E, I> database, Spec spec) {
+        Random random = new Random(spec.getSeed());
+        populate(database, database.getRootGroup(), spec, random, "", spec.getDepth());
+        return database;
+    }
+
+    private static <D extends Database<D, G, E, I>, G extends Group<D, G, E, I>, E extends Entry<D, G, E, I>, I extends Icon>
+    void populate(Database<D, G, E, I> database, G parent, Spec spec, Random random, String path, int depth) {
+        if (depth == 0) {
+            return;
+        }
+        for (int g = 0; g < spec.getGroupsPerGroup(); g++) {
+            String groupPath = path + (path.isEmpty() ? "" : ".") + g;
+            G group = parent.addGroup(database.newGroup("Group " + groupPath));
+            group.setIcon(database.newIcon(random.nextInt(ICON_COUNT)));
+            for (int e = 0; e < spec.getEntriesPerGroup(); e++) {
+                group.addEntry(newEntry(database, spec, random, groupPath + "/" + e));
+            }
+            populate(database, group, spec, random, groupPath, depth - 1);
+        }
+    }
+
+    private static final int ICON_COUNT = 69;
+
+    private static final String[] WORDS = {
+            "alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel", "india", "juliet",
+            "kilo", "lima", "mike", "november", "oscar", "papa", "quebec", "romeo", "sierra", "tango",
+            "uniform", "victor", "whiskey", "xray", "yankee", "zulu"
+    };
+
+    private static <D extends Database<D, G, E, I>, G extends Group<D, G, E, I>, E extends Entry<D, G, E, I>, I extends Icon>
+    E newEntry(Database<D, G, E, I> database, Spec spec, Random random, String name) {
+        E entry = database.newEntry("Entry " + name);
+        entry.setIcon(database.newIcon(random.nextInt(ICON_COUNT)));
+        entry.setUsername(word(random) + "." + word(random) + "@example.com");
+        entry.setUrl("https://" + word(random) + random.nextInt(1000) + ".example.com/login");
+        entry.setNotes(words(random, 1 + random.nextInt(20)));
+        boolean hasPassword = random.nextDouble() < spec.getProtectedRatio();
+        if (hasPassword) {
+            entry.setPassword(password(random));
+        }
+        if (database.supportsNonStandardPropertyNames()) {
+            for (int p = 0; p < spec.getCustomProperties(); p++) {
+                entry.setProperty("Custom " + p, words(random, 1 + random.nextInt(5)));
+            }
+        }
+        if (database.supportsBinaryProperties()) {
+            for (int a = 0; a < spec.getAttachmentsPerEntry(); a++) {
+                byte[] attachment = new byte[spec.getAttachmentSize()];
+                random.nextBytes(attachment);
+                entry.setBinaryProperty("attachment-" + a + ".bin", attachment);
+            }
+        }
+        for (int h = 0; h < spec.getHistoryDepth(); h++) {
+            if (hasPassword) {
+                entry.setPassword(password(random));
+            }
+            entry.setNotes(words(random, 1 + random.nextInt(20)));
+        }
+        return entry;
+    }
+
+    private static String word(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder builder = new StringBuilder(word(random));
+        for (int i = 1; i < count; i++) {
+            builder.append(' ').append(word(random));
+        }
+        return builder.toString();
+    }
+
+    private static String password(Random random) {
+        return Long.toString(random.nextLong() & Long.MAX_VALUE, 36);
+    }
+}
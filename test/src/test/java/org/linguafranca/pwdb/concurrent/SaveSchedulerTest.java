@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015 Jo Rabin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.linguafranca.pwdb.concurrent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.linguafranca.pwdb.checks.FakeDatabase;
+import org.linguafranca.pwdb.checks.TempDirectory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Bursts of save requests are coalesced, and files are replaced atomically
+ *
+ * @author jo
+ */
+public class SaveSchedulerTest {
+
+    private TempDirectory directory;
+    private Path path;
+    private FakeDatabase database;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = new TempDirectory();
+        path = directory.resolve("test.kdbx");
+        database = new FakeDatabase();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        directory.delete();
+    }
+
+    @Test
+    public void testCoalesce() throws Exception {
+        SaveScheduler scheduler = new SaveScheduler(database.getDatabase(), null, path, 200, 10000, null);
+        for (int i = 0; i < 50; i++) {
+            database.setContent("version " + i);
+            scheduler.requestSave();
+        }
+        assertTrue(scheduler.await(10, TimeUnit.SECONDS));
+        assertEquals(50, scheduler.getRequestCount());
+        assertEquals(1, scheduler.getSaveCount());
+        assertEquals(49, scheduler.getCoalescedCount());
+        assertEquals("version 49", read());
+
+        // nothing changed, so nothing to save
+        scheduler.requestSave();
+        assertTrue(scheduler.await(10, TimeUnit.SECONDS));
+        assertEquals(1, scheduler.getSaveCount());
+        assertEquals(1, scheduler.getSkippedCount());
+        assertEquals(1, database.getSaveCount());
+        scheduler.close();
+    }
+
+    @Test
+    public void testMaxDelay() throws Exception {
+        // requests keep coming more often than the delay, but the maximum delay forces saves
+        SaveScheduler scheduler = new SaveScheduler(database.getDatabase(), null, path, 200, 400, null);
+        for (int i = 0; i < 20; i++) {
+            database.setContent("version " + i);
+            scheduler.requestSave();
+            Thread.sleep(100);
+        }
+        assertTrue(scheduler.await(10, TimeUnit.SECONDS));
+        assertTrue(scheduler.getSaveCount() > 1);
+        assertEquals("version 19", read());
+        scheduler.close();
+    }
+
+    @Test
+    public void testFlush() throws Exception {
+        SaveScheduler scheduler = new SaveScheduler(database.getDatabase(), null, path, 60000);
+        database.setContent("flushed");
+        scheduler.requestSave();
+        scheduler.flush();
+        assertEquals(1, scheduler.getSaveCount());
+        assertEquals("flushed", read());
+        assertTrue(scheduler.await(0, TimeUnit.SECONDS));
+        scheduler.close();
+        try {
+            scheduler.requestSave();
+            fail("Closed scheduler should reject requests");
+        } catch (IllegalStateException ignored) {
+        }
+    }
+
+    @Test
+    public void testFailedFlush() throws Exception {
+        SaveScheduler scheduler = new SaveScheduler(database.getDatabase(), null, path, 60000);
+        database.setContent("failing");
+        database.setFailing(true);
+        scheduler.requestSave();
+        try {
+            scheduler.flush();
+            fail("Flush should have failed");
+        } catch (IOException ignored) {
+        }
+        assertEquals(1, scheduler.getFailureCount());
+        assertNotNull(scheduler.getLastFailure());
+        assertFalse(Files.exists(path));
+        database.setFailing(false);
+        scheduler.close();
+        assertEquals("failing", read());
+    }
+
+    @Test
+    public void testErrorCounted() throws Exception {
+        final Error error = new Error("Failed");
+        SaveScheduler scheduler = new SaveScheduler(database.getDatabase(), 0, 0, null) {
+            @Override
+            protected void save() {
+                throw error;
+            }
+        };
+        database.setContent("erroring");
+        scheduler.requestSave();
+        assertTrue(scheduler.await(10, TimeUnit.SECONDS));
+        assertEquals(0, scheduler.getSaveCount());
+        assertEquals(1, scheduler.getFailureCount());
+        assertSame(error, scheduler.getLastFailure());
+        try {
+            scheduler.flush();
+            fail("Flush should have failed");
+        } catch (Error e) {
+            assertSame(error, e);
+        }
+        assertEquals(2, scheduler.getFailureCount());
+    }
+
+    @Test
+    public void testFailedSaveLeavesFile() throws Exception {
+        database.setContent("original");
+        SaveScheduler.saveAtomically(database.getDatabase(), null, path);
+
+        database.setContent("replacement");
+        database.setFailing(true);
+        try {
+            SaveScheduler.saveAtomically(database.getDatabase(), null, path);
+            fail("Save should have failed");
+        } catch (IOException ignored) {
+        }
+        assertEquals("original", read());
+        // the temporary file is gone
+        assertEquals(1, directory.count());
+    }
+
+    private String read() throws IOException {
+        return TempDirectory.read(path);
+    }
+}